@@ -0,0 +1,260 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.cache.benchmark;
+
+import org.glassfish.ha.store.criteria.Criteria;
+import org.glassfish.ha.store.criteria.ExpressionBuilder;
+import org.glassfish.ha.store.criteria.spi.AttributeAccessNode;
+import org.glassfish.ha.store.criteria.spi.BinaryExpressionNode;
+import org.glassfish.ha.store.criteria.spi.ExpressionNode;
+import org.glassfish.ha.store.criteria.spi.InExpressionNode;
+import org.glassfish.ha.store.criteria.spi.LiteralNode;
+import org.glassfish.ha.store.criteria.spi.LogicalExpressionNode;
+import org.glassfish.ha.store.criteria.spi.Opcode;
+import org.glassfish.ha.store.spi.AttributeMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.shoal.ha.cache.impl.criteria.CriteriaPredicate;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluating a criteria against every value of a ReplicaStore: walking the
+ *  Criteria's expression tree (reading the attributes through AttributeMetadata)
+ *  against the compiled CriteriaPredicate that the scans use. The criteria is
+ *  written with its least selective term first, which the compiled form reorders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CriteriaBenchmark {
+
+    private static final int VALUE_COUNT = 4096;
+
+    private Session[] values;
+
+    private Criteria<Session> criteria;
+
+    private CriteriaPredicate predicate;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(VALUE_COUNT);
+        values = new Session[VALUE_COUNT];
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            values[i] = new Session("user" + random.nextInt(100), "app" + random.nextInt(10),
+                    random.nextInt(1000), random.nextBoolean());
+        }
+
+        ExpressionBuilder<Session> eb = new ExpressionBuilder<Session>(Session.class);
+        LogicalExpressionNode hits = new LogicalExpressionNode(Opcode.GT,
+                eb.attr(new Getter<Long>("hits", Long.class)), eb.literal(Long.class, 100L));
+        criteria = eb.setCriteria(hits
+                .and(eb.eq(new Getter<Boolean>("active", Boolean.class), Boolean.TRUE))
+                .and(eb.eq(new Getter<String>("app", String.class), "app3"))
+                .and(eb.attr(new Getter<String>("principal", String.class)).in(Arrays.asList("user1", "user7"))));
+        predicate = CriteriaPredicate.compile(criteria);
+    }
+
+    @Benchmark
+    public int interpretTree()
+            throws Exception {
+        ExpressionNode<?> root = (ExpressionNode<?>) criteria.getExpression();
+        int matches = 0;
+        for (Session value : values) {
+            if (Boolean.TRUE.equals(interpret(root, value))) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int compiled() {
+        int matches = 0;
+        for (Session value : values) {
+            if (predicate.matches(value)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    private static Object interpret(ExpressionNode<?> node, Object v)
+            throws Exception {
+        switch (node.getOpcode()) {
+            case ATTR:
+                return ((AttributeAccessNode<?, ?>) node).getAttributeMetadata().getGetterMethod().invoke(v);
+            case LITERAL:
+                return ((LiteralNode<?>) node).getValue();
+            case IN:
+                InExpressionNode<?> in = (InExpressionNode<?>) node;
+                return in.getEntries().contains(interpret(in.getLeft(), v));
+            default:
+                BinaryExpressionNode<?> bin = (BinaryExpressionNode<?>) node;
+                Object l = interpret(bin.getLeft(), v);
+                if (node.getOpcode() == Opcode.AND && !Boolean.TRUE.equals(l)) {
+                    return false;
+                } else if (node.getOpcode() == Opcode.OR && Boolean.TRUE.equals(l)) {
+                    return true;
+                }
+                Object r = interpret(bin.getRight(), v);
+                switch (node.getOpcode()) {
+                    case AND:
+                    case OR:
+                        return Boolean.TRUE.equals(r);
+                    case EQ:
+                        return l == null ? r == null : l.equals(r);
+                    case NEQ:
+                        return l == null ? r != null : !l.equals(r);
+                    default:
+                        if (l == null || r == null) {
+                            return false;
+                        }
+                        int cmp = ((Comparable<Object>) l).compareTo(r);
+                        switch (node.getOpcode()) {
+                            case LT:
+                                return cmp < 0;
+                            case LTE:
+                                return cmp <= 0;
+                            case GT:
+                                return cmp > 0;
+                            default:
+                                return cmp >= 0;
+                        }
+                }
+        }
+    }
+
+    public static class Session
+            implements Serializable {
+
+        private String principal;
+
+        private String app;
+
+        private long hits;
+
+        private boolean active;
+
+        public Session(String principal, String app, long hits, boolean active) {
+            this.principal = principal;
+            this.app = app;
+            this.hits = hits;
+            this.active = active;
+        }
+
+        public String getPrincipal() {
+            return principal;
+        }
+
+        public String getApp() {
+            return app;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public boolean getActive() {
+            return active;
+        }
+    }
+
+    private static class Getter<T>
+            implements AttributeMetadata<Session, T> {
+
+        private String name;
+
+        private Class<T> type;
+
+        private Method method;
+
+        Getter(String name, Class<T> type) {
+            this.name = name;
+            this.type = type;
+            try {
+                method = Session.class.getMethod("get" + Character.toUpperCase(name.charAt(0)) + name.substring(1));
+            } catch (NoSuchMethodException nsmEx) {
+                throw new IllegalArgumentException(nsmEx);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Class<T> getAttributeType() {
+            return type;
+        }
+
+        public Method getGetterMethod() {
+            return method;
+        }
+
+        public Method getSetterMethod() {
+            return null;
+        }
+
+        public boolean isVersionAttribute() {
+            return false;
+        }
+
+        public boolean isHashKeyAttribute() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.cache.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.shoal.ha.cache.api.DataStoreContext;
+import org.shoal.ha.cache.api.DataStoreException;
+import org.shoal.ha.cache.impl.interceptor.AdaptiveBatchingPolicy;
+import org.shoal.ha.cache.impl.store.ReplicatedDataStore;
+import org.shoal.ha.group.GroupService;
+import org.shoal.ha.group.local.LocalGroup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * put/get/touch/remove on a ReplicatedDataStore that replicates to a second
+ *  member. Both throughput and the latency distribution are reported. "origin" is the member the application talks to
+ *  and "replica" is where the keys are replicated to, so getFromReplica is a
+ *  local hit and getFromOrigin is a load request round trip.
+ *
+ * With the "loopback" group service a message is handled on the sending
+ *  thread, so only the replication code is measured. With "local" the members
+ *  are LocalGroupServices, which hand each message to the receiver's own
+ *  dispatcher thread, as a real transport does.
+ *
+ * Saves and load requests are batched, so with few threads and the fixed
+ *  batching policy put (synchronous replication) and getFromOrigin mostly
+ *  measure the flush interval. With asynchronous replication put only queues
+ *  the save. If the replication thread pool falls behind (adaptive batching
+ *  sends small frames, so on few cores it does) its queue fills up and put
+ *  waits for room in the queue (up to the replication submit timeout of the
+ *  store), so put then measures the replication throughput too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+//The replication thread pools are not daemon threads and outlive close()
+@Fork(value = 1, jvmArgsAppend = "-Djmh.shutdownTimeout=1")
+public class DataStoreBenchmark {
+
+    private static final int KEY_COUNT = 1024;
+
+    private static final long REPLICATION_WAIT_IN_MILLIS = 30000;
+
+    @Param({"128", "4096", "65536"})
+    public int valueSize;
+
+    @Param({"false", "true"})
+    public boolean syncReplication;
+
+    @Param({"fixed", AdaptiveBatchingPolicy.NAME})
+    public String batchingPolicy;
+
+    @Param({"loopback", "local"})
+    public String groupService;
+
+    private String groupName;
+
+    private GroupService originGS;
+
+    private GroupService replicaGS;
+
+    private ReplicatedDataStore<String, byte[]> origin;
+
+    private ReplicatedDataStore<String, byte[]> replica;
+
+    private String[] keys;
+
+    private byte[] value;
+
+    @State(Scope.Thread)
+    public static class KeyCursor {
+
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setup(ThreadParams threadParams) {
+            next = threadParams.getThreadIndex() * 7919;
+        }
+
+        String nextKey(String[] keys) {
+            return keys[(next++ & Integer.MAX_VALUE) % keys.length];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup()
+            throws Exception {
+        groupName = "bench-" + System.nanoTime();
+        if ("local".equals(groupService)) {
+            LocalGroup group = LocalGroup.getGroup(groupName);
+            originGS = group.join("origin");
+            replicaGS = group.join("replica");
+        } else {
+            originGS = new LoopbackGroupService("origin", groupName);
+            replicaGS = new LoopbackGroupService("replica", groupName);
+        }
+        origin = createStore(originGS);
+        replica = createStore(replicaGS);
+
+        value = new byte[valueSize];
+        new Random(valueSize).nextBytes(value);
+
+        keys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = "key-" + i;
+            origin.putAsync(keys[i], value);
+        }
+
+        //The saves are batched, wait until all of them reached the replica
+        long giveUpAt = System.currentTimeMillis() + REPLICATION_WAIT_IN_MILLIS;
+        while (replica.getDataStoreContext().getReplicaStore().size() < KEY_COUNT) {
+            if (System.currentTimeMillis() > giveUpAt) {
+                throw new IllegalStateException("Only " + replica.getDataStoreContext().getReplicaStore().size()
+                        + " of " + KEY_COUNT + " keys were replicated");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private ReplicatedDataStore<String, byte[]> createStore(GroupService gs) {
+        DataStoreContext<String, byte[]> conf = new DataStoreContext<String, byte[]>();
+        conf.setStoreName("bench")
+                .setInstanceName(gs.getMemberName())
+                .setGroupName(gs.getGroupName())
+                .setKeyClazz(String.class)
+                .setValueClazz(byte[].class)
+                .setClassLoader(getClass().getClassLoader())
+                .setDoSynchronousReplication(syncReplication);
+        if (AdaptiveBatchingPolicy.NAME.equals(batchingPolicy)) {
+            conf.setBatchingPolicy(new AdaptiveBatchingPolicy());
+        }
+        return new ReplicatedDataStore<String, byte[]>(conf, gs);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        origin.close();
+        replica.close();
+        originGS.close();
+        replicaGS.close();
+        LocalGroup.removeGroup(groupName);
+    }
+
+    @Benchmark
+    public String put(KeyCursor cursor)
+            throws DataStoreException {
+        return origin.put(cursor.nextKey(keys), value);
+    }
+
+    @Benchmark
+    public byte[] getFromReplica(KeyCursor cursor)
+            throws DataStoreException {
+        return replica.get(cursor.nextKey(keys));
+    }
+
+    @Benchmark
+    public byte[] getFromOrigin(KeyCursor cursor)
+            throws DataStoreException {
+        return origin.get(cursor.nextKey(keys));
+    }
+
+    @Benchmark
+    public String touch(KeyCursor cursor)
+            throws DataStoreException {
+        long now = System.currentTimeMillis();
+        return origin.touch(cursor.nextKey(keys), 0, now, 60000);
+    }
+
+    /**
+     * Removes are broadcast to every member whether or not the key is still
+     *  present, so once the keys are gone this keeps measuring the same path.
+     */
+    @Benchmark
+    public void remove(KeyCursor cursor)
+            throws DataStoreException {
+        origin.remove(cursor.nextKey(keys));
+    }
+
+}
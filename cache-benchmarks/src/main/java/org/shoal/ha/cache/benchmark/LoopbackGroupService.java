@@ -0,0 +1,180 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.cache.benchmark;
+
+import com.sun.enterprise.ee.cms.impl.common.MessageSignalImpl;
+import org.shoal.ha.cache.impl.util.MessageReceiver;
+import org.shoal.ha.group.GroupMemberEventListener;
+import org.shoal.ha.group.GroupService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A GroupService whose members all live in this JVM. sendMessage() hands the
+ *  bytes straight to the target member's MessageReceiver on the calling thread,
+ *  so a benchmark measures the replication code and not the network.
+ *
+ * Members of the same group see each other as soon as they are created.
+ */
+public class LoopbackGroupService
+    implements GroupService {
+
+    private static final ConcurrentHashMap<String, Map<String, LoopbackGroupService>> groups
+            = new ConcurrentHashMap<String, Map<String, LoopbackGroupService>>();
+
+    private String memberName;
+
+    private String groupName;
+
+    private Map<String, LoopbackGroupService> members;
+
+    private ConcurrentHashMap<String, MessageReceiver> receivers
+            = new ConcurrentHashMap<String, MessageReceiver>();
+
+    private CopyOnWriteArrayList<GroupMemberEventListener> listeners
+            = new CopyOnWriteArrayList<GroupMemberEventListener>();
+
+    public LoopbackGroupService(String memberName, String groupName) {
+        this.memberName = memberName;
+        this.groupName = groupName;
+
+        Map<String, LoopbackGroupService> newMembers = new ConcurrentHashMap<String, LoopbackGroupService>();
+        members = groups.putIfAbsent(groupName, newMembers);
+        if (members == null) {
+            members = newMembers;
+        }
+
+        List<String> previous = getCurrentCoreMembers();
+        members.put(memberName, this);
+        fireViewChange(memberName, previous, true);
+    }
+
+    @Override
+    public String getGroupName() {
+        return groupName;
+    }
+
+    @Override
+    public String getMemberName() {
+        return memberName;
+    }
+
+    @Override
+    public List<String> getCurrentCoreMembers() {
+        return new ArrayList<String>(members.keySet());
+    }
+
+    @Override
+    public void registerGroupMemberEventListener(GroupMemberEventListener listener) {
+        listeners.add(listener);
+        //Same as GroupServiceProvider: a new listener is told about the current view
+        List<String> current = getCurrentCoreMembers();
+        listener.onViewChange(memberName, current, Collections.<String>emptyList(), true);
+    }
+
+    @Override
+    public void removeGroupMemberEventListener(GroupMemberEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void close() {
+        List<String> previous = getCurrentCoreMembers();
+        if (members.remove(memberName) != null) {
+            fireViewChange(memberName, previous, false);
+        }
+    }
+
+    @Override
+    public void registerGroupMessageReceiver(String messageToken, MessageReceiver receiver) {
+        receivers.put(messageToken, receiver);
+    }
+
+    @Override
+    public boolean sendMessage(String targetMemberName, String token, byte[] data) {
+        if (targetMemberName == null) {
+            for (LoopbackGroupService member : members.values()) {
+                if (member != this) {
+                    member.deliver(memberName, token, data);
+                }
+            }
+            return true;
+        }
+
+        LoopbackGroupService target = members.get(targetMemberName);
+        return target != null && target.deliver(memberName, token, data);
+    }
+
+    @Override
+    public boolean sendMessage(String targetMemberName, String token, byte[] data, int offset, int length) {
+        return sendMessage(targetMemberName, token, Arrays.copyOfRange(data, offset, offset + length));
+    }
+
+    private boolean deliver(String sender, String token, byte[] data) {
+        MessageReceiver receiver = receivers.get(token);
+        if (receiver == null) {
+            return false;
+        }
+        receiver.processNotification(new MessageSignalImpl(data, token, sender, groupName, System.currentTimeMillis()));
+        return true;
+    }
+
+    private void fireViewChange(String changedMember, List<String> previous, boolean isJoinEvent) {
+        List<String> current = getCurrentCoreMembers();
+        for (LoopbackGroupService member : members.values()) {
+            for (GroupMemberEventListener listener : member.listeners) {
+                listener.onViewChange(changedMember, current, previous, isJoinEvent);
+            }
+        }
+        if (!isJoinEvent) {
+            for (GroupMemberEventListener listener : listeners) {
+                listener.onViewChange(changedMember, current, previous, isJoinEvent);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.cache.benchmark;
+
+import com.sun.enterprise.ee.cms.impl.common.MessageSignalImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.shoal.adapter.store.commands.SaveCommand;
+import org.shoal.ha.cache.api.DataStoreContext;
+import org.shoal.ha.cache.impl.command.Command;
+import org.shoal.ha.cache.impl.command.CommandCodec;
+import org.shoal.ha.cache.impl.command.CommandManager;
+import org.shoal.ha.cache.impl.interceptor.ReplicationFramePayloadCommand;
+import org.shoal.ha.cache.impl.store.ReplicatedDataStore;
+import org.shoal.ha.group.GroupService;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a batch of saves into a ReplicationFramePayloadCommand frame
+ *  and back. encodeFrame is what the sender pays per frame, decodeFrame is the
+ *  parsing part of CommandManager.handleMessage and handleMessage is the whole
+ *  receive path, including executing the saves against the replica store.
+ *
+ * The frame is encoded once, so after the first handleMessage call every save
+ *  in it is older than the stored entry and takes the stale version check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+//The replication thread pools are not daemon threads and outlive close()
+@Fork(value = 1, jvmArgsAppend = "-Djmh.shutdownTimeout=1")
+public class ReplicationFrameBenchmark {
+
+    @Param({"128", "4096", "65536"})
+    public int valueSize;
+
+    @Param({"1", "16", "64"})
+    public int commandsPerFrame;
+
+    private GroupService senderGS;
+
+    private GroupService receiverGS;
+
+    private ReplicatedDataStore<String, byte[]> sender;
+
+    private ReplicatedDataStore<String, byte[]> receiver;
+
+    private ReplicationFramePayloadCommand<String, byte[]> frame;
+
+    private byte[] encodedFrame;
+
+    private CommandCodec<String, byte[]> senderCodec;
+
+    private CommandCodec<String, byte[]> receiverCodec;
+
+    private CommandManager<String, byte[]> receiverCM;
+
+    @Setup(Level.Trial)
+    public void setup()
+            throws Exception {
+        String groupName = "frame-bench-" + System.nanoTime();
+        senderGS = new LoopbackGroupService("sender", groupName);
+        receiverGS = new LoopbackGroupService("receiver", groupName);
+        sender = createStore(senderGS);
+        receiver = createStore(receiverGS);
+
+        DataStoreContext<String, byte[]> senderDsc = sender.getDataStoreContext();
+        senderCodec = senderDsc.getCommandManager().getCommandCodec();
+        receiverCM = receiver.getDataStoreContext().getCommandManager();
+        receiverCodec = receiverCM.getCommandCodec();
+
+        byte[] value = new byte[valueSize];
+        new Random(valueSize).nextBytes(value);
+
+        long now = System.currentTimeMillis();
+        frame = new ReplicationFramePayloadCommand<String, byte[]>();
+        frame.initialize(senderDsc);
+        frame.setTargetInstance("receiver");
+        for (int i = 0; i < commandsPerFrame; i++) {
+            Command<String, byte[]> save = new SaveCommand<String, byte[]>("key-" + i, value, 1, now, 60000);
+            save.initialize(senderDsc);
+            frame.addComamnd(save);
+        }
+        encodedFrame = senderCodec.encode(frame);
+    }
+
+    private ReplicatedDataStore<String, byte[]> createStore(GroupService gs) {
+        DataStoreContext<String, byte[]> conf = new DataStoreContext<String, byte[]>();
+        conf.setStoreName("bench")
+                .setInstanceName(gs.getMemberName())
+                .setGroupName(gs.getGroupName())
+                .setKeyClazz(String.class)
+                .setValueClazz(byte[].class)
+                .setClassLoader(getClass().getClassLoader());
+        return new ReplicatedDataStore<String, byte[]>(conf, gs);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sender.close();
+        receiver.close();
+        senderGS.close();
+        receiverGS.close();
+    }
+
+    @Benchmark
+    public byte[] encodeFrame()
+            throws IOException {
+        return senderCodec.encode(frame);
+    }
+
+    @Benchmark
+    public Command<String, byte[]> decodeFrame()
+            throws IOException, ClassNotFoundException {
+        return receiverCodec.decode(encodedFrame);
+    }
+
+    @Benchmark
+    public void handleMessage() {
+        receiverCM.processNotification(new MessageSignalImpl(encodedFrame, "bench", "sender", "frame-bench", 0));
+    }
+
+}
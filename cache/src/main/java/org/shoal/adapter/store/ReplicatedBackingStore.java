@@ -41,6 +41,8 @@
 package org.shoal.adapter.store;
 
 import org.glassfish.ha.store.api.*;
+import org.glassfish.ha.store.criteria.Criteria;
+import org.glassfish.ha.store.spi.StoreEntryEvaluator;
 import org.shoal.adapter.store.commands.*;
 import org.shoal.ha.cache.api.*;
 import org.shoal.ha.cache.impl.store.DataStoreEntry;
@@ -48,7 +50,11 @@ import org.shoal.ha.cache.impl.store.ReplicatedDataStore;
 import org.shoal.ha.mapper.KeyMapper;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -109,6 +115,45 @@ public class ReplicatedBackingStore<K extends Serializable, V extends Serializab
         }
     }
 
+    /**
+     * Same as save(), but returns without waiting for the replica to
+     *  acknowledge the save. Useful when synchronous replication is enabled
+     *  and the caller has other work to do while the data is replicated.
+     */
+    public Future<String> saveAsync(K key, V value, boolean isNew) throws BackingStoreException {
+        try {
+            return dataStore.putAsync(key, value);
+        } catch (DataStoreException dsEx) {
+            throw new BackingStoreException("Error during save: " + key, dsEx);
+        }
+    }
+
+    public Map<K, V> getAll(Collection<K> keys) throws BackingStoreException {
+        try {
+            return dataStore.getAll(keys);
+        } catch (DataStoreException dsEx) {
+            throw new BackingStoreException("Error during getAll", dsEx);
+        }
+    }
+
+    public Map<K, String> putAll(Map<K, V> entries) throws BackingStoreException {
+        try {
+            return dataStore.putAll(entries);
+        } catch (DataStoreException dsEx) {
+            throw new BackingStoreException("Error during putAll", dsEx);
+        }
+    }
+
+    public void removeAll(Collection<K> keys) throws BackingStoreException {
+        try {
+            if (dataStore != null) {
+                dataStore.removeAll(keys);
+            }
+        } catch (DataStoreException dsEx) {
+            throw new BackingStoreException("Error during removeAll", dsEx);
+        }
+    }
+
     @Override
     public void remove(K key) throws BackingStoreException {
         try {
@@ -125,6 +170,89 @@ public class ReplicatedBackingStore<K extends Serializable, V extends Serializab
         return dataStore.removeIdleEntries(idleTime);
     }
 
+    /**
+     * Finds the values that satisfy the criteria (every value if criteria is
+     *  null) and for which eval, if not null, returns Boolean.TRUE. The criteria
+     *  and the evaluator are evaluated by each instance against its own entries.
+     *  If some instances do not answer in time, the values found by the others
+     *  are returned.
+     */
+    public Collection findByCriteria(Criteria<V> criteria, StoreEntryEvaluator<K, V> eval) {
+        try {
+            if (dataStore != null) {
+                return new ArrayList<V>(dataStore.findByCriteria(criteria, eval, true).values());
+            }
+        } catch (PartialResultException prEx) {
+            _logger.log(Level.WARNING, "Partial result of findByCriteria", prEx);
+            return new ArrayList<V>(((Map<K, V>) prEx.getPartialResult()).values());
+        } catch (DataStoreException dsEx) {
+            _logger.log(Level.WARNING, "Error during findByCriteria", dsEx);
+        }
+        return Collections.EMPTY_LIST;
+    }
+
+    /**
+     * Same as findByCriteria(), but returns just the keys of the matching entries.
+     *  Since only the keys are sent back, eagerFetch is ignored.
+     */
+    public Collection synchronizeKeys(Criteria<V> criteria, StoreEntryEvaluator<K, V> eval, boolean eagerFetch) {
+        try {
+            if (dataStore != null) {
+                return new ArrayList<K>(dataStore.findByCriteria(criteria, eval, false).keySet());
+            }
+        } catch (PartialResultException prEx) {
+            _logger.log(Level.WARNING, "Partial result of synchronizeKeys", prEx);
+            return new ArrayList<K>(((Map<K, V>) prEx.getPartialResult()).keySet());
+        } catch (DataStoreException dsEx) {
+            _logger.log(Level.WARNING, "Error during synchronizeKeys", dsEx);
+        }
+        return Collections.EMPTY_LIST;
+    }
+
+    /**
+     * Removes the entries that satisfy the criteria (and eval, if not null)
+     *  from every instance. The values are never sent over the wire.
+     */
+    public void removeByCriteria(Criteria<V> criteria, StoreEntryEvaluator<K, V> eval)
+            throws BackingStoreException {
+        try {
+            if (dataStore != null) {
+                dataStore.removeByCriteria(criteria, eval);
+            }
+        } catch (DataStoreException dsEx) {
+            throw new BackingStoreException("Error during removeByCriteria", dsEx);
+        }
+    }
+
+    /**
+     * Executes the processor at the instance that holds the replica of key, so
+     *  that only the processor and its result travel instead of the value.
+     *
+     * @return the result of the processor or null if there is no entry for key
+     */
+    public Serializable executeOnKey(K key, StoreEntryProcessor<K, V> processor)
+            throws BackingStoreException {
+        try {
+            return dataStore.executeOnKey(key, processor);
+        } catch (DataStoreException dsEx) {
+            throw new BackingStoreException("Error during executeOnKey", dsEx);
+        }
+    }
+
+    /**
+     * Same as executeOnKey(), for many keys at once.
+     *
+     * @return the results of the processor by key
+     */
+    public Map<K, Serializable> executeOnKeys(Collection<K> keys, StoreEntryProcessor<K, V> processor)
+            throws BackingStoreException {
+        try {
+            return dataStore.executeOnKeys(keys, processor);
+        } catch (DataStoreException dsEx) {
+            throw new BackingStoreException("Error during executeOnKeys", dsEx);
+        }
+    }
+
     @Override
     public int size() throws BackingStoreException {
         return dataStore.size();
@@ -44,6 +44,8 @@ import org.shoal.ha.cache.api.DataStoreException;
 import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
 import org.shoal.ha.cache.impl.command.ReplicationCommandOpcode;
 import org.shoal.ha.cache.impl.store.DataStoreEntry;
+import org.shoal.ha.cache.impl.util.ReplicationInputStream;
+import org.shoal.ha.cache.impl.util.ReplicationOutputStream;
 
 import java.io.IOException;
 import java.util.logging.Level;
@@ -77,8 +79,17 @@ public abstract class AbstractSaveCommand<K, V>
         this.maxIdleTime = maxIdleTime;
     }
 
+    /**
+     * Sends this command to target instead of the key's mapped instance
+     */
+    public void setTarget(String target) {
+        this.targetInstanceName = target;
+    }
+
     public boolean beforeTransmit() {
-        targetInstanceName = dsc.getKeyMapper().getMappedInstance(dsc.getGroupName(), getKey());
+        if (targetInstanceName == null) {
+            targetInstanceName = dsc.getKeyMapper().getMappedInstance(dsc.getGroupName(), getKey());
+        }
         super.setTargetName(targetInstanceName);
         super.beforeTransmit();
         return getTargetName() != null;
@@ -126,6 +137,24 @@ public abstract class AbstractSaveCommand<K, V>
         maxIdleTime = in.readLong();
     }
 
+    @Override
+    protected void writeCommandState(ReplicationOutputStream ros)
+            throws IOException {
+        super.writeCommandState(ros);
+        ros.writeLong(version);
+        ros.writeLong(lastAccessedAt);
+        ros.writeLong(maxIdleTime);
+    }
+
+    @Override
+    protected void readCommandState(ReplicationInputStream ris)
+            throws IOException {
+        super.readCommandState(ris);
+        version = ris.readLong();
+        lastAccessedAt = ris.readLong();
+        maxIdleTime = ris.readLong();
+    }
+
     public boolean hasState() {
         return false;
     }
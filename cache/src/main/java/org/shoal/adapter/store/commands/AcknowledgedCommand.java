@@ -40,12 +40,21 @@
 
 package org.shoal.adapter.store.commands;
 
+import org.shoal.ha.cache.api.DataStoreContext;
 import org.shoal.ha.cache.api.DataStoreException;
 import org.shoal.ha.cache.impl.command.Command;
+import org.shoal.ha.cache.impl.util.AcknowledgementFuture;
 import org.shoal.ha.cache.impl.util.CommandResponse;
+import org.shoal.ha.cache.impl.util.ReplicationInputStream;
+import org.shoal.ha.cache.impl.util.ReplicationOutputStream;
 import org.shoal.ha.cache.impl.util.ResponseMediator;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -56,10 +65,20 @@ import java.util.concurrent.TimeoutException;
 public abstract class AcknowledgedCommand<K, V>
         extends Command<K, V> {
 
+    public static final long ACK_TIMEOUT_IN_MILLIS = 3000;
+
+    //Acks that are collected while a ReplicationFramePayloadCommand is being executed
+    private static final ThreadLocal<Map<String, List<Long>>> _pendingAcks
+            = new ThreadLocal<Map<String, List<Long>>>();
+
     private transient CommandResponse resp;
 
     private transient Future future;
 
+    private transient boolean asyncAck;
+
+    private transient BlockingQueue<CommandResponse> completionQueue;
+
     private long tokenId;
 
     private String originatingInstance;
@@ -72,7 +91,10 @@ public abstract class AcknowledgedCommand<K, V>
         if (dsc.isDoSynchronousReplication()) {
             originatingInstance = dsc.getInstanceName();
             ResponseMediator respMed = dsc.getResponseMediator();
-            resp = respMed.createCommandResponse();
+            //Expires even if nobody calls get() on the AcknowledgementFuture. Twice
+            //  the ack timeout leaves time to flush the frame before get() starts waiting
+            resp = respMed.createCommandResponse(2 * ACK_TIMEOUT_IN_MILLIS);
+            resp.setCompletionQueue(completionQueue);
             tokenId = resp.getTokenId();
             future = resp.getFuture();
         }
@@ -80,12 +102,107 @@ public abstract class AcknowledgedCommand<K, V>
         return true;
     }
 
+    /**
+     * When set, onSuccess() does not wait for the ack. The caller must use
+     *  getAcknowledgementFuture() to find out when the replica has applied
+     *  this command.
+     */
+    public void setAsyncAcknowledgement(boolean asyncAck) {
+        this.asyncAck = asyncAck;
+    }
+
+    /**
+     * The CommandResponse of this command will be added to the queue once
+     *  the ack (or a failure) arrives. Must be called before the command is executed.
+     */
+    public void setCompletionQueue(BlockingQueue<CommandResponse> completionQueue) {
+        this.completionQueue = completionQueue;
+    }
+
+    /**
+     * @return the response that the ack completes or null if synchronous
+     *  replication is off
+     */
+    public CommandResponse getCommandResponse() {
+        return resp;
+    }
+
+    /**
+     * @return a Future that completes when the ack is received. The Future
+     *  returns value. If synchronous replication is off, the Future is already done.
+     */
+    public <T> AcknowledgementFuture<T> getAcknowledgementFuture(T value) {
+        return new AcknowledgementFuture<T>(dsc.getResponseMediator(), resp, value, ACK_TIMEOUT_IN_MILLIS);
+    }
+
     protected void sendAcknowledgement() {
-        try {
-            dsc.getCommandManager().execute(
-                    new SimpleAckCommand<K, V>(originatingInstance, tokenId));
-        } catch (DataStoreException dse) {
-            //TODO: But can safely ignore
+        sendAcknowledgements(dsc, originatingInstance, tokenId);
+    }
+
+    /**
+     * Acknowledges tokenIds to originatingInstance. While an acknowledgement
+     *  batch is active the acks are only collected, otherwise they are sent at once.
+     */
+    public static <K, V> void sendAcknowledgements(DataStoreContext<K, V> dsc, String originatingInstance,
+                                                   long... tokenIds) {
+        Map<String, List<Long>> pendingAcks = _pendingAcks.get();
+        if (pendingAcks != null) {
+            List<Long> ids = pendingAcks.get(originatingInstance);
+            if (ids == null) {
+                ids = new ArrayList<Long>();
+                pendingAcks.put(originatingInstance, ids);
+            }
+            for (long id : tokenIds) {
+                ids.add(id);
+            }
+        } else {
+            try {
+                dsc.getCommandManager().execute(
+                        new SimpleAckCommand<K, V>(originatingInstance, tokenIds));
+            } catch (DataStoreException dse) {
+                //TODO: But can safely ignore
+            }
+        }
+    }
+
+    /**
+     * Starts collecting the acks sent by the current thread so that they can be
+     *  sent as one SimpleAckCommand per originating instance.
+     *
+     * @return true if a new batch was started. Only the caller that started
+     *  the batch must call flushAcknowledgements()
+     */
+    public static boolean beginAcknowledgementBatch() {
+        if (_pendingAcks.get() != null) {
+            return false;
+        }
+        _pendingAcks.set(new HashMap<String, List<Long>>());
+        return true;
+    }
+
+    /**
+     * Sends all acks collected since beginAcknowledgementBatch(), one
+     *  SimpleAckCommand per originating instance.
+     */
+    public static <K, V> void flushAcknowledgements(DataStoreContext<K, V> dsc) {
+        Map<String, List<Long>> pendingAcks = _pendingAcks.get();
+        _pendingAcks.remove();
+        if (pendingAcks == null) {
+            return;
+        }
+
+        for (Map.Entry<String, List<Long>> entry : pendingAcks.entrySet()) {
+            List<Long> ids = entry.getValue();
+            long[] tokenIds = new long[ids.size()];
+            for (int i = 0; i < tokenIds.length; i++) {
+                tokenIds[i] = ids.get(i);
+            }
+            try {
+                dsc.getCommandManager().execute(
+                        new SimpleAckCommand<K, V>(entry.getKey(), tokenIds));
+            } catch (DataStoreException dse) {
+                //Can safely ignore. The originating instance will time out
+            }
         }
     }
 
@@ -110,8 +227,31 @@ public abstract class AcknowledgedCommand<K, V>
     }
 
     @Override
-    public final void onSuccess() {
+    protected void writeCommandState(ReplicationOutputStream ros)
+            throws IOException {
+        super.writeCommandState(ros);
+        ros.writeBoolean(dsc.isDoSynchronousReplication());
+
         if (dsc.isDoSynchronousReplication()) {
+            ros.writeLong(tokenId);
+            ros.writeLengthPrefixedString(originatingInstance);
+        }
+    }
+
+    @Override
+    protected void readCommandState(ReplicationInputStream ris)
+            throws IOException {
+        super.readCommandState(ris);
+        boolean doSync = ris.readBoolean();
+        if (doSync) {
+            tokenId = ris.readLong();
+            originatingInstance = ris.readLengthPrefixedString();
+        }
+    }
+
+    @Override
+    public final void onSuccess() {
+        if (dsc.isDoSynchronousReplication() && !asyncAck) {
             try {
                 waitForAck();
             } catch (Exception ex) {
@@ -122,16 +262,23 @@ public abstract class AcknowledgedCommand<K, V>
 
     @Override
     public final void onFailure() {
-        if (dsc.isDoSynchronousReplication()) {
-            ResponseMediator respMed = dsc.getResponseMediator();
-            respMed.removeCommandResponse(tokenId);
+        onTransmitFailure();
+        if (resp != null) {
+            //Completes (and removes) the response so that async waiters do not block
+            resp.setException(new DataStoreException("Transmission of " + this + " failed"));
         }
     }
 
+    /**
+     * Called when this command could not be transmitted
+     */
+    protected void onTransmitFailure() {
+    }
+
     private void waitForAck()
         throws DataStoreException, TimeoutException {
         try {
-            future.get(3, TimeUnit.SECONDS);
+            future.get(ACK_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS);
         } catch (TimeoutException tEx) {
             throw tEx;
         } catch (Exception inEx) {
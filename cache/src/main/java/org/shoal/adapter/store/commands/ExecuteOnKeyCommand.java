@@ -0,0 +1,307 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.shoal.adapter.store.commands;
+
+import org.glassfish.ha.store.api.StoreEntryProcessor;
+import org.shoal.ha.cache.api.DataStoreException;
+import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
+import org.shoal.ha.cache.impl.command.Command;
+import org.shoal.ha.cache.impl.command.CommandCodec;
+import org.shoal.ha.cache.impl.command.ReplicationCommandOpcode;
+import org.shoal.ha.cache.impl.store.DataStoreEntry;
+import org.shoal.ha.cache.impl.store.DataStoreEntryUpdater;
+import org.shoal.ha.cache.impl.store.DeserializedValueCache;
+import org.shoal.ha.cache.impl.util.CommandResponse;
+import org.shoal.ha.cache.impl.util.ReplicationInputStream;
+import org.shoal.ha.cache.impl.util.ReplicationOutputStream;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ships a StoreEntryProcessor from the owner of a key to the instance that holds
+ *  its (first) replica. That instance runs the processor on its copy of the value
+ *  while holding the lock of the entry, saves the changed value in place, with the
+ *  version handed out by the owner, and sends it to the other replicas. Only the result of the processor is sent
+ *  back, in an ExecuteOnKeyResultCommand.
+ */
+public class ExecuteOnKeyCommand<K, V>
+        extends Command<K, V> {
+
+    private static final long serialVersionUID = 1409905087327842351L;
+
+    private static final Logger _logger = Logger.getLogger(ShoalCacheLoggerConstants.CACHE_EXECUTE_COMMAND);
+
+    private transient StoreEntryProcessor<K, ?> processor;
+
+    private transient byte[] rawProcessor;
+
+    private transient long version;
+
+    private transient String copyTargets;
+
+    private transient long tokenId;
+
+    private transient String originatingInstance;
+
+    private transient String target;
+
+    private transient CommandResponse resp;
+
+    private transient Future<ExecuteOnKeyResultCommand<K, V>> future;
+
+    public ExecuteOnKeyCommand() {
+        super(ReplicationCommandOpcode.EXECUTE_ON_KEY);
+    }
+
+    /**
+     * @param version the version to save the changed value with. It is handed out
+     *  by the owner of the entry, like the version of a save
+     * @param target the instance that holds the replica and executes the processor
+     * @param copyTargets the colon separated list of the other replicas to which
+     *  the changed value is sent. Can be null
+     */
+    public ExecuteOnKeyCommand(K key, StoreEntryProcessor<K, ?> processor, long version,
+                               String target, String copyTargets) {
+        this();
+        super.setKey(key);
+        this.processor = processor;
+        this.version = version;
+        this.target = target;
+        this.copyTargets = copyTargets;
+    }
+
+    protected boolean beforeTransmit() {
+        setTargetName(target);
+        originatingInstance = dsc.getInstanceName();
+        resp = dsc.getResponseMediator().createCommandResponse();
+        tokenId = resp.getTokenId();
+        future = resp.getFuture();
+
+        return target != null;
+    }
+
+    private void writeObject(ObjectOutputStream out)
+            throws IOException {
+        ReplicationOutputStream ros = new ReplicationOutputStream();
+        writeState(ros);
+        out.writeObject(ros.toByteArray());
+    }
+
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        readState(new ReplicationInputStream((byte[]) in.readObject()));
+    }
+
+    @Override
+    protected Command<K, V> createCommandForDecoding() {
+        return new ExecuteOnKeyCommand<K, V>();
+    }
+
+    @Override
+    protected void writeCommandState(ReplicationOutputStream ros)
+            throws IOException {
+        super.writeCommandState(ros);
+        writeState(ros);
+    }
+
+    @Override
+    protected void readCommandState(ReplicationInputStream ris)
+            throws IOException {
+        super.readCommandState(ris);
+        readState(ris);
+    }
+
+    private void writeState(ReplicationOutputStream ros)
+            throws IOException {
+        ros.writeLong(tokenId);
+        ros.writeLengthPrefixedString(originatingInstance);
+        ros.writeLong(version);
+        ros.writeLengthPrefixedString(copyTargets);
+        try {
+            ros.writeLengthPrefixedBytes(captureState(processor));
+        } catch (DataStoreException dsEx) {
+            IOException ioEx = new IOException("Error while writing processor: " + processor);
+            ioEx.initCause(dsEx);
+            throw ioEx;
+        }
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, dsc.getInstanceName() + getName() + " sending execute_on_key for "
+                    + getKey() + " to " + target + "; version = " + version);
+        }
+    }
+
+    private void readState(ReplicationInputStream ris) {
+        tokenId = ris.readLong();
+        originatingInstance = ris.readLengthPrefixedString();
+        version = ris.readLong();
+        copyTargets = ris.readLengthPrefixedString();
+        rawProcessor = ris.readLengthPrefixedBytes();
+    }
+
+    @Override
+    public void execute(String initiator)
+            throws DataStoreException {
+        ExecuteOnKeyResultCommand<K, V> rsp = null;
+        try {
+            processor = (StoreEntryProcessor<K, ?>) CommandCodec.deserialize(rawProcessor, dsc.getClassLoader());
+            rsp = process();
+        } catch (Exception ex) {
+            if (_logger.isLoggable(Level.FINE)) {
+                _logger.log(Level.FINE, dsc.getInstanceName() + getName() + " processor failed for "
+                        + getKey() + " from " + initiator, ex);
+            }
+            rsp = new ExecuteOnKeyResultCommand<K, V>(getKey(), false, DataStoreEntry.MIN_VERSION, null, String.valueOf(ex));
+        }
+
+        rsp.setTokenId(tokenId);
+        rsp.setOriginatingInstance(originatingInstance);
+        getCommandManager().execute(rsp);
+    }
+
+    private ExecuteOnKeyResultCommand<K, V> process()
+            throws DataStoreException {
+        DataStoreEntry<K, V> entry = dsc.getReplicaStore().getEntry(getKey());
+        if (entry == null) {
+            return new ExecuteOnKeyResultCommand<K, V>(getKey(), false, DataStoreEntry.MIN_VERSION, null, null);
+        }
+
+        DataStoreEntryUpdater<K, V> updater = dsc.getDataStoreEntryUpdater();
+        SaveCommand<K, V> save = null;
+        Serializable result = null;
+        synchronized (entry) {
+            //Only the state that the owner handed out the version for may be processed. A
+            //  replica that missed a save (or already has a later one) answers not found,
+            //  so that the owner falls back to load, process and save
+            V v = (entry.isRemoved() || entry.getVersion() != version - 1) ? null : updater.getV(entry);
+            if (v == null) {
+                return new ExecuteOnKeyResultCommand<K, V>(getKey(), false, DataStoreEntry.MIN_VERSION, null, null);
+            }
+
+            try {
+                result = ((StoreEntryProcessor<K, Serializable>) processor).process(getKey(), (Serializable) v);
+            } catch (RuntimeException rtEx) {
+                //The processor may have changed the (cached) deserialized value
+                DeserializedValueCache<K, V> valueCache = dsc.getReplicaStore().getValueCache();
+                if (valueCache != null) {
+                    valueCache.invalidate(getKey());
+                }
+                throw rtEx;
+            }
+
+            save = new SaveCommand<K, V>(getKey(), v, version, System.currentTimeMillis(), entry.getMaxIdleTime());
+            save.setRawV(updater.getState(v));
+            updater.executeSave(entry, save);
+            dsc.getReplicaStore().updateIndexes(entry);
+        }
+
+        if (copyTargets != null) {
+            for (String copyTarget : copyTargets.split(":")) {
+                if (copyTarget.length() > 0 && !copyTarget.equals(dsc.getInstanceName())) {
+                    SaveCommand<K, V> copy = save.createReplicaCopy(copyTarget);
+                    copy.setAsyncAcknowledgement(true);
+                    getCommandManager().execute(copy);
+                }
+            }
+        }
+
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, dsc.getInstanceName() + getName() + " executed processor on "
+                    + getKey() + "; version = " + save.getVersion() + "; copies = " + copyTargets);
+        }
+        return new ExecuteOnKeyResultCommand<K, V>(getKey(), true, save.getVersion(), captureState(result), null);
+    }
+
+    /**
+     * Stops waiting for the response. A response that arrives later
+     *  will be ignored by the ResponseMediator.
+     */
+    public void cancel() {
+        if (resp != null) {
+            dsc.getResponseMediator().removeCommandResponse(tokenId);
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * @return the response of the target. If the processor failed there, the
+     *  response carries the failure
+     * @throws DataStoreException if the target did not answer in time (in which
+     *  case the processor may or may not have been executed)
+     */
+    public ExecuteOnKeyResultCommand<K, V> getResult(long waitFor, TimeUnit unit)
+            throws DataStoreException {
+        try {
+            return future.get(waitFor, unit);
+        } catch (InterruptedException inEx) {
+            cancel();
+            throw new DataStoreException(inEx);
+        } catch (TimeoutException timeoutEx) {
+            cancel();
+            throw new DataStoreException("Timed out while executing processor on " + getKey() + " at " + target);
+        } catch (ExecutionException exeEx) {
+            cancel();
+            throw new DataStoreException(exeEx);
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public String toString() {
+        return getName() + "(" + getKey() + ")";
+    }
+
+}
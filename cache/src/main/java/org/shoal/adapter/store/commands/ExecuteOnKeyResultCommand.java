@@ -0,0 +1,209 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.shoal.adapter.store.commands;
+
+import org.shoal.ha.cache.api.DataStoreException;
+import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
+import org.shoal.ha.cache.impl.command.Command;
+import org.shoal.ha.cache.impl.command.CommandCodec;
+import org.shoal.ha.cache.impl.command.ReplicationCommandOpcode;
+import org.shoal.ha.cache.impl.util.CommandResponse;
+import org.shoal.ha.cache.impl.util.ReplicationInputStream;
+import org.shoal.ha.cache.impl.util.ReplicationOutputStream;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The answer to an ExecuteOnKeyCommand. Carries the (serialized) result of
+ *  the processor and the version that the changed value was saved with.
+ */
+public class ExecuteOnKeyResultCommand<K, V>
+        extends Command<K, V> {
+
+    private static final long serialVersionUID = 6546214837609018953L;
+
+    private static final Logger _logger = Logger.getLogger(ShoalCacheLoggerConstants.CACHE_EXECUTE_COMMAND);
+
+    private transient boolean found;
+
+    private transient long version;
+
+    private transient byte[] rawResult;
+
+    private transient String failure;
+
+    private transient long tokenId;
+
+    private transient String originatingInstance;
+
+    public ExecuteOnKeyResultCommand() {
+        super(ReplicationCommandOpcode.EXECUTE_ON_KEY_RESULT);
+    }
+
+    /**
+     * @param found false if the target did not have a value for the key
+     * @param version the version of the changed value
+     * @param rawResult the serialized result of the processor
+     * @param failure the reason why the processor could not be executed or null
+     */
+    public ExecuteOnKeyResultCommand(K key, boolean found, long version, byte[] rawResult, String failure) {
+        this();
+        super.setKey(key);
+        this.found = found;
+        this.version = version;
+        this.rawResult = rawResult;
+        this.failure = failure;
+    }
+
+    public void setTokenId(long tokenId) {
+        this.tokenId = tokenId;
+    }
+
+    public void setOriginatingInstance(String originatingInstance) {
+        this.originatingInstance = originatingInstance;
+    }
+
+    protected boolean beforeTransmit() {
+        setTargetName(originatingInstance);
+        return originatingInstance != null;
+    }
+
+    private void writeObject(ObjectOutputStream out)
+            throws IOException {
+        ReplicationOutputStream ros = new ReplicationOutputStream();
+        writeState(ros);
+        out.writeObject(ros.toByteArray());
+    }
+
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        readState(new ReplicationInputStream((byte[]) in.readObject()));
+    }
+
+    @Override
+    protected Command<K, V> createCommandForDecoding() {
+        return new ExecuteOnKeyResultCommand<K, V>();
+    }
+
+    @Override
+    protected void writeCommandState(ReplicationOutputStream ros)
+            throws IOException {
+        super.writeCommandState(ros);
+        writeState(ros);
+    }
+
+    @Override
+    protected void readCommandState(ReplicationInputStream ris)
+            throws IOException {
+        super.readCommandState(ris);
+        readState(ris);
+    }
+
+    private void writeState(ReplicationOutputStream ros)
+            throws IOException {
+        ros.writeLong(tokenId);
+        ros.writeLengthPrefixedString(originatingInstance);
+        ros.writeBoolean(found);
+        ros.writeLong(version);
+        ros.writeLengthPrefixedBytes(rawResult);
+        ros.writeBoolean(failure != null);
+        if (failure != null) {
+            ros.writeLengthPrefixedString(failure);
+        }
+    }
+
+    private void readState(ReplicationInputStream ris) {
+        tokenId = ris.readLong();
+        originatingInstance = ris.readLengthPrefixedString();
+        found = ris.readBoolean();
+        version = ris.readLong();
+        rawResult = ris.readLengthPrefixedBytes();
+        if (ris.readBoolean()) {
+            failure = ris.readLengthPrefixedString();
+        }
+    }
+
+    @Override
+    public void execute(String initiator)
+            throws DataStoreException {
+        CommandResponse resp = dsc.getResponseMediator().getCommandResponse(tokenId);
+        if (resp != null) {
+            if (_logger.isLoggable(Level.FINE)) {
+                _logger.log(Level.FINE, dsc.getInstanceName() + " received execute_on_key result for "
+                        + getKey() + "; found = " + found + "; version = " + version + "; from " + initiator);
+            }
+            resp.setRespondingInstanceName(initiator);
+            resp.setResult(this);
+        }
+    }
+
+    public boolean isFound() {
+        return found;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getFailure() {
+        return failure;
+    }
+
+    public Serializable getResult()
+            throws DataStoreException {
+        try {
+            return (Serializable) CommandCodec.deserialize(rawResult, dsc.getClassLoader());
+        } catch (IOException ioEx) {
+            throw new DataStoreException("Error while reading the result of the processor", ioEx);
+        }
+    }
+
+    public String toString() {
+        return getName() + "(" + getKey() + ")";
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.adapter.store.commands;
+
+import org.glassfish.ha.store.spi.StoreEntryEvaluator;
+import org.shoal.ha.cache.api.DataStoreException;
+import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
+import org.shoal.ha.cache.impl.command.Command;
+import org.shoal.ha.cache.impl.command.CommandCodec;
+import org.shoal.ha.cache.impl.command.ReplicationCommandOpcode;
+import org.shoal.ha.cache.impl.criteria.CriteriaPredicate;
+import org.shoal.ha.cache.impl.store.DataStoreEntry;
+import org.shoal.ha.cache.impl.store.DataStoreEntryUpdater;
+import org.shoal.ha.cache.impl.store.ReplicaStore;
+import org.shoal.ha.cache.impl.util.ReplicationInputStream;
+import org.shoal.ha.cache.impl.util.ReplicationOutputStream;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Asks a member to evaluate a criteria against the entries of its ReplicaStore.
+ *  The member answers with one or more FindByCriteriaResultCommands, each holding
+ *  at most DataStoreContext.getCriteriaPageSize() matching entries. The last page
+ *  is always sent, even when nothing matched. Pages are numbered, so the number
+ *  of the last page tells the caller how many pages to wait for.
+ */
+public class FindByCriteriaCommand<K, V>
+        extends Command<K, V> {
+
+    private static final long serialVersionUID = -1739971836205287512L;
+
+    private static final Logger _logger = Logger.getLogger(ShoalCacheLoggerConstants.CACHE_CRITERIA_COMMAND);
+
+    /**
+     * Only the keys of the matching entries are sent back
+     */
+    public static final byte FIND_KEYS = 0;
+
+    /**
+     * The keys and the values of the matching entries are sent back
+     */
+    public static final byte FIND_VALUES = 1;
+
+    /**
+     * The matching entries are removed and their keys are sent back
+     */
+    public static final byte REMOVE = 2;
+
+    private transient CriteriaPredicate predicate;
+
+    private transient StoreEntryEvaluator<K, V> eval;
+
+    private transient byte[] rawPredicate;
+
+    private transient byte[] rawEval;
+
+    private transient byte mode;
+
+    private transient long tokenId;
+
+    private transient String originatingInstance;
+
+    private transient String target;
+
+    public FindByCriteriaCommand() {
+        super(ReplicationCommandOpcode.FIND_BY_CRITERIA);
+    }
+
+    /**
+     * @param predicate the (compiled) criteria
+     * @param eval an optional evaluator that further narrows the result
+     * @param mode one of FIND_KEYS, FIND_VALUES or REMOVE
+     * @param tokenId the token of the CommandResponse that collects the results
+     * @param target the member that evaluates the criteria
+     */
+    public FindByCriteriaCommand(CriteriaPredicate predicate, StoreEntryEvaluator<K, V> eval,
+                                 byte mode, long tokenId, String target) {
+        this();
+        super.setKey((K) ("FindByCriteria:" + System.identityHashCode(this)));
+        this.predicate = predicate;
+        this.eval = eval;
+        this.mode = mode;
+        this.tokenId = tokenId;
+        this.target = target;
+    }
+
+    protected boolean beforeTransmit() {
+        setTargetName(target);
+        originatingInstance = dsc.getInstanceName();
+        return target != null;
+    }
+
+    private void writeObject(ObjectOutputStream out)
+            throws IOException {
+        ReplicationOutputStream ros = new ReplicationOutputStream();
+        writeState(ros);
+        out.writeObject(ros.toByteArray());
+    }
+
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        readState(new ReplicationInputStream((byte[]) in.readObject()));
+    }
+
+    @Override
+    protected Command<K, V> createCommandForDecoding() {
+        return new FindByCriteriaCommand<K, V>();
+    }
+
+    @Override
+    protected void writeCommandState(ReplicationOutputStream ros)
+            throws IOException {
+        super.writeCommandState(ros);
+        writeState(ros);
+    }
+
+    @Override
+    protected void readCommandState(ReplicationInputStream ris)
+            throws IOException {
+        super.readCommandState(ris);
+        readState(ris);
+    }
+
+    private void writeState(ReplicationOutputStream ros)
+            throws IOException {
+        ros.writeLong(tokenId);
+        ros.writeLengthPrefixedString(originatingInstance);
+        ros.writeInt(mode);
+        try {
+            ros.writeLengthPrefixedBytes(captureState(predicate));
+            ros.writeLengthPrefixedBytes(eval == null ? null : captureState(eval));
+        } catch (DataStoreException dsEx) {
+            IOException ioEx = new IOException("Error while writing criteria: " + predicate);
+            ioEx.initCause(dsEx);
+            throw ioEx;
+        }
+    }
+
+    private void readState(ReplicationInputStream ris) {
+        tokenId = ris.readLong();
+        originatingInstance = ris.readLengthPrefixedString();
+        mode = (byte) ris.readInt();
+        rawPredicate = ris.readLengthPrefixedBytes();
+        rawEval = ris.readLengthPrefixedBytes();
+    }
+
+    @Override
+    public void execute(String initiator)
+            throws DataStoreException {
+        ReplicaStore<K, V> replicaStore = dsc.getReplicaStore();
+        List<DataStoreEntry<K, V>> matches = Collections.emptyList();
+        try {
+            predicate = (CriteriaPredicate) CommandCodec.deserialize(rawPredicate, dsc.getClassLoader());
+            eval = (StoreEntryEvaluator<K, V>) CommandCodec.deserialize(rawEval, dsc.getClassLoader());
+            matches = replicaStore.findByCriteria(predicate, eval);
+        } catch (Exception ex) {
+            //Still send the (empty) last page so that the caller does not wait for us
+            _logger.log(Level.WARNING, "Error while evaluating criteria from " + initiator, ex);
+        }
+
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, dsc.getInstanceName() + getName() + " " + predicate + " matched "
+                    + matches.size() + " entries; mode = " + mode + "; requested by " + initiator);
+        }
+
+        DataStoreEntryUpdater<K, V> updater = dsc.getDataStoreEntryUpdater();
+        int pageSize = dsc.getCriteriaPageSize();
+        int index = 0;
+        int pageNumber = 0;
+        do {
+            int end = Math.min(index + pageSize, matches.size());
+            List<K> keys = new ArrayList<K>(end - index);
+            long[] versions = new long[end - index];
+            byte[][] rawVs = new byte[end - index][];
+            for (int i = index; i < end; i++) {
+                DataStoreEntry<K, V> entry = matches.get(i);
+                keys.add(entry.getKey());
+                if (mode == FIND_VALUES) {
+                    //Only replicas have the raw state. The caller gets the values of
+                    //  the entries that we own from their replicas
+                    LoadResponseCommand<K, V> rsp = null;
+                    synchronized (entry) {
+                        rsp = updater.createLoadResponseCommand(entry, entry.getKey(), DataStoreEntry.MIN_VERSION);
+                    }
+                    versions[i - index] = rsp.getVersion();
+                    rawVs[i - index] = rsp.getRawV();
+                } else if (mode == REMOVE) {
+                    replicaStore.remove(entry.getKey());
+                }
+            }
+
+            index = end;
+            getCommandManager().execute(new FindByCriteriaResultCommand<K, V>(
+                    originatingInstance, tokenId, keys, versions, rawVs, pageNumber++, index == matches.size()));
+        } while (index < matches.size());
+    }
+
+    @Override
+    protected boolean isArtificialKey() {
+        return true;
+    }
+
+    public String toString() {
+        return getName() + "(" + (predicate == null ? "" : predicate.toString()) + "; mode=" + mode + ")";
+    }
+
+}
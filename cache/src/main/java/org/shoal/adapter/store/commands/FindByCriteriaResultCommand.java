@@ -0,0 +1,356 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.adapter.store.commands;
+
+import org.glassfish.ha.store.util.KeyTransformer;
+import org.shoal.ha.cache.api.DataStoreException;
+import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
+import org.shoal.ha.cache.impl.command.Command;
+import org.shoal.ha.cache.impl.command.CommandCodec;
+import org.shoal.ha.cache.impl.command.ReplicationCommandOpcode;
+import org.shoal.ha.cache.impl.store.DataStoreEntry;
+import org.shoal.ha.cache.impl.util.CommandResponse;
+import org.shoal.ha.cache.impl.util.ReplicationInputStream;
+import org.shoal.ha.cache.impl.util.ReplicationOutputStream;
+import org.shoal.ha.cache.impl.util.ResponseMediator;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A page of the entries that matched a FindByCriteriaCommand. versions and rawVs
+ *  are in the same order as the keys. A null rawV means that the value was not
+ *  requested or that the responding instance does not hold the raw state of the
+ *  entry.
+ *
+ * Pages are numbered from 0 and may arrive in any order. The pages of all the
+ *  members are merged by the ResultCollector that is the (transient) result of
+ *  the CommandResponse. The result is set once every page of every member has
+ *  arrived, which the collector knows from the number of the last page.
+ */
+public class FindByCriteriaResultCommand<K, V>
+        extends Command<K, V> {
+
+    private static final long serialVersionUID = 8497293725102351769L;
+
+    private static final Logger _logger = Logger.getLogger(ShoalCacheLoggerConstants.CACHE_CRITERIA_COMMAND);
+
+    private transient long tokenId;
+
+    private transient String originatingInstance;
+
+    private transient String respondingInstanceName;
+
+    private transient List<K> keys;
+
+    private transient List<byte[]> rawKeys;
+
+    private transient boolean keysTransformed;
+
+    private transient long[] versions;
+
+    private transient byte[][] rawVs;
+
+    private transient int pageNumber;
+
+    private transient boolean lastPage;
+
+    public FindByCriteriaResultCommand() {
+        super(ReplicationCommandOpcode.FIND_BY_CRITERIA_RESULT);
+    }
+
+    public FindByCriteriaResultCommand(String originatingInstance, long tokenId, List<K> keys,
+                                       long[] versions, byte[][] rawVs, int pageNumber, boolean lastPage) {
+        this();
+        super.setKey((K) ("FindByCriteriaResp:" + tokenId));
+        this.originatingInstance = originatingInstance;
+        this.tokenId = tokenId;
+        this.keys = keys;
+        this.versions = versions;
+        this.rawVs = rawVs;
+        this.pageNumber = pageNumber;
+        this.lastPage = lastPage;
+    }
+
+    /**
+     * Merges a page of matching entries into the ResultCollector of resp and sets
+     *  the collector as the result of resp once every page has arrived.
+     *
+     * @param member the member that evaluated the criteria
+     * @param versions the versions of the entries in page. A key that has no
+     *  version is taken to be at DataStoreEntry.MIN_VERSION
+     * @param pageNumber the number of this page. The pages of a member are
+     *  numbered from 0
+     * @param lastPage true if this is the last page from member
+     */
+    public static <K, V> void addPage(CommandResponse resp, String member, Map<K, V> page,
+                                      Map<K, Long> versions, int pageNumber, boolean lastPage) {
+        ResultCollector<K, V> collector = (ResultCollector<K, V>) resp.getTransientResult();
+        if (collector.addPage(member, page, versions, pageNumber, lastPage)) {
+            resp.setResult(collector);
+        }
+    }
+
+    /**
+     * Collects the pages of the members that were asked to evaluate a criteria.
+     *  A key may be reported by more than one member (the owner and the
+     *  replicas), in which case the value with the highest version wins, so
+     *  that a replica that missed the last save cannot hide it. A null value
+     *  (not requested, or no raw state at that member) never replaces a value.
+     */
+    public static class ResultCollector<K, V> {
+
+        private final Map<K, V> result = new HashMap<K, V>();
+
+        //The version of the value of each key in result
+        private final Map<K, Long> versions = new HashMap<K, Long>();
+
+        private final Set<String> pendingMembers;
+
+        //The number of pages received from a member and, once its last page
+        //  has arrived, the number of pages that it sent
+        private final Map<String, int[]> pageCounts = new HashMap<String, int[]>();
+
+        public ResultCollector(Collection<String> members) {
+            this.pendingMembers = new HashSet<String>(members);
+        }
+
+        /**
+         * @return true if this page completed the result
+         */
+        synchronized boolean addPage(String member, Map<K, V> page, Map<K, Long> pageVersions,
+                                     int pageNumber, boolean lastPage) {
+            if (! pendingMembers.contains(member)) {
+                if (_logger.isLoggable(Level.FINE)) {
+                    _logger.log(Level.FINE, "Ignoring criteria result page " + pageNumber + " from " + member);
+                }
+                return false;
+            }
+
+            for (Map.Entry<K, V> e : page.entrySet()) {
+                K k = e.getKey();
+                Long pageVersion = pageVersions.get(k);
+                long version = pageVersion == null ? DataStoreEntry.MIN_VERSION : pageVersion;
+                if (!result.containsKey(k)) {
+                    result.put(k, e.getValue());
+                    versions.put(k, version);
+                } else if (e.getValue() != null
+                        && (result.get(k) == null || version > versions.get(k))) {
+                    result.put(k, e.getValue());
+                    versions.put(k, version);
+                }
+            }
+
+            int[] counts = pageCounts.get(member);
+            if (counts == null) {
+                counts = new int[] {0, -1};
+                pageCounts.put(member, counts);
+            }
+            counts[0]++;
+            if (lastPage) {
+                counts[1] = pageNumber + 1;
+            }
+            if (counts[0] == counts[1]) {
+                pendingMembers.remove(member);
+                return pendingMembers.isEmpty();
+            }
+
+            return false;
+        }
+
+        /**
+         * @return a copy of the entries collected so far
+         */
+        public synchronized Map<K, V> getResult() {
+            return new HashMap<K, V>(result);
+        }
+
+        /**
+         * @return the members from which some pages have not arrived yet
+         */
+        public synchronized Set<String> getPendingMembers() {
+            return new HashSet<String>(pendingMembers);
+        }
+    }
+
+    protected boolean beforeTransmit() {
+        setTargetName(originatingInstance);
+        return originatingInstance != null;
+    }
+
+    private void writeObject(ObjectOutputStream out)
+            throws IOException {
+        ReplicationOutputStream ros = new ReplicationOutputStream();
+        writeState(ros);
+        out.writeObject(ros.toByteArray());
+    }
+
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        readState(new ReplicationInputStream((byte[]) in.readObject()));
+    }
+
+    @Override
+    protected Command<K, V> createCommandForDecoding() {
+        return new FindByCriteriaResultCommand<K, V>();
+    }
+
+    @Override
+    protected void writeCommandState(ReplicationOutputStream ros)
+            throws IOException {
+        super.writeCommandState(ros);
+        writeState(ros);
+    }
+
+    @Override
+    protected void readCommandState(ReplicationInputStream ris)
+            throws IOException {
+        super.readCommandState(ris);
+        readState(ris);
+    }
+
+    private void writeState(ReplicationOutputStream ros)
+            throws IOException {
+        ros.writeLong(tokenId);
+        ros.writeLengthPrefixedString(originatingInstance);
+        ros.writeLengthPrefixedString(dsc.getInstanceName());
+        ros.writeInt(pageNumber);
+        ros.writeBoolean(lastPage);
+
+        KeyTransformer<K> kt = dsc.getKeyTransformer();
+        ros.writeBoolean(kt != null);
+        ros.writeInt(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            K k = keys.get(i);
+            try {
+                ros.writeLengthPrefixedBytes(kt != null ? kt.keyToByteArray(k) : captureState(k));
+            } catch (DataStoreException dsEx) {
+                IOException ioEx = new IOException("Error while writing key: " + k);
+                ioEx.initCause(dsEx);
+                throw ioEx;
+            }
+            ros.writeLong(versions[i]);
+            ros.writeLengthPrefixedBytes(rawVs[i]);
+        }
+    }
+
+    private void readState(ReplicationInputStream ris) {
+        tokenId = ris.readLong();
+        originatingInstance = ris.readLengthPrefixedString();
+        respondingInstanceName = ris.readLengthPrefixedString();
+        pageNumber = ris.readInt();
+        lastPage = ris.readBoolean();
+
+        keysTransformed = ris.readBoolean();
+        int size = ris.readInt();
+        rawKeys = new ArrayList<byte[]>(size);
+        versions = new long[size];
+        rawVs = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            rawKeys.add(ris.readLengthPrefixedBytes());
+            versions[i] = ris.readLong();
+            rawVs[i] = ris.readLengthPrefixedBytes();
+        }
+    }
+
+    private K toKey(byte[] rawKey)
+            throws IOException {
+        if (keysTransformed) {
+            return dsc.getKeyTransformer().byteArrayToKey(rawKey, 0, rawKey.length);
+        } else {
+            return (K) CommandCodec.deserialize(rawKey, dsc.getClassLoader());
+        }
+    }
+
+    @Override
+    public void execute(String initiator)
+            throws DataStoreException {
+        ResponseMediator respMed = getDataStoreContext().getResponseMediator();
+        CommandResponse resp = respMed.getCommandResponse(tokenId);
+        if (resp == null) {
+            _logger.log(Level.FINE, "FindByCriteriaResult: TOKEN already removed for tokenId = " + tokenId);
+            return;
+        }
+
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, dsc.getInstanceName() + " received find_by_criteria_result with "
+                    + rawKeys.size() + " entries from " + respondingInstanceName + "; page = " + pageNumber
+                    + "; lastPage = " + lastPage);
+        }
+
+        Map<K, V> page = new LinkedHashMap<K, V>();
+        Map<K, Long> pageVersions = new HashMap<K, Long>();
+        try {
+            for (int i = 0; i < rawKeys.size(); i++) {
+                K k = toKey(rawKeys.get(i));
+                V v = rawVs[i] == null ? null : dsc.getDataStoreEntryUpdater().extractVFrom(
+                        new LoadResponseCommand<K, V>(k, versions[i], rawVs[i]));
+                page.put(k, v);
+                pageVersions.put(k, versions[i]);
+            }
+        } catch (IOException ioEx) {
+            _logger.log(Level.WARNING, "Error while reading the result of a criteria from " + respondingInstanceName, ioEx);
+        } finally {
+            addPage(resp, respondingInstanceName, page, pageVersions, pageNumber, lastPage);
+        }
+    }
+
+    @Override
+    protected boolean isArtificialKey() {
+        return true;
+    }
+
+    public String toString() {
+        int size = keys != null ? keys.size() : (rawKeys != null ? rawKeys.size() : 0);
+        return getName() + "(" + size + " entries; page=" + pageNumber + "; lastPage=" + lastPage + ")";
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.adapter.store.commands;
+
+import org.glassfish.ha.store.util.KeyTransformer;
+import org.shoal.ha.cache.api.DataStoreException;
+import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
+import org.shoal.ha.cache.impl.command.Command;
+import org.shoal.ha.cache.impl.command.CommandCodec;
+import org.shoal.ha.cache.impl.command.ReplicationCommandOpcode;
+import org.shoal.ha.cache.impl.store.DataStoreEntry;
+import org.shoal.ha.cache.impl.util.CommandResponse;
+import org.shoal.ha.cache.impl.util.ReplicationInputStream;
+import org.shoal.ha.cache.impl.util.ReplicationOutputStream;
+import org.shoal.ha.cache.impl.util.ResponseMediator;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads a set of keys from a single replica. The replica answers with a single
+ *  LoadAllResponseCommand that holds the state of all the requested keys, in the
+ *  same order as they appear in the request.
+ */
+public class LoadAllRequestCommand<K, V>
+        extends Command<K, V> {
+
+    private static final long serialVersionUID = 8397036842327855351L;
+
+    private static final Logger _logger = Logger.getLogger(ShoalCacheLoggerConstants.CACHE_LOAD_REQUEST_COMMAND);
+
+    private transient CommandResponse resp;
+
+    private transient List<K> keys;
+
+    private transient List<byte[]> rawKeys;
+
+    private transient boolean keysTransformed;
+
+    private transient long[] minVersions;
+
+    private transient long tokenId;
+
+    private transient String originatingInstance;
+
+    private transient String target;
+
+    private transient Map<K, V> loadedValues = new HashMap<K, V>();
+
+    public LoadAllRequestCommand() {
+        super(ReplicationCommandOpcode.LOAD_ALL_REQUEST);
+    }
+
+    /**
+     * @param keys the keys to load
+     * @param minVersions the minimum acceptable version of each key
+     * @param target the replica to load from
+     */
+    public LoadAllRequestCommand(List<K> keys, long[] minVersions, String target) {
+        this();
+        super.setKey((K) ("LoadAll:" + System.identityHashCode(this)));
+        this.keys = keys;
+        this.minVersions = minVersions;
+        this.target = target;
+    }
+
+    protected boolean beforeTransmit() {
+        setTargetName(target);
+        originatingInstance = dsc.getInstanceName();
+        ResponseMediator respMed = dsc.getResponseMediator();
+        resp = respMed.createCommandResponse();
+        tokenId = resp.getTokenId();
+
+        return target != null;
+    }
+
+    private void writeObject(ObjectOutputStream out)
+            throws IOException {
+        ReplicationOutputStream ros = new ReplicationOutputStream();
+        writeState(ros);
+        out.writeObject(ros.toByteArray());
+    }
+
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        readState(new ReplicationInputStream((byte[]) in.readObject()));
+    }
+
+    @Override
+    protected Command<K, V> createCommandForDecoding() {
+        return new LoadAllRequestCommand<K, V>();
+    }
+
+    @Override
+    protected void writeCommandState(ReplicationOutputStream ros)
+            throws IOException {
+        super.writeCommandState(ros);
+        writeState(ros);
+    }
+
+    @Override
+    protected void readCommandState(ReplicationInputStream ris)
+            throws IOException {
+        super.readCommandState(ris);
+        readState(ris);
+    }
+
+    private void writeState(ReplicationOutputStream ros)
+            throws IOException {
+        ros.writeLong(tokenId);
+        ros.writeLengthPrefixedString(originatingInstance);
+
+        KeyTransformer<K> kt = dsc.getKeyTransformer();
+        ros.writeBoolean(kt != null);
+        ros.writeInt(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            K k = keys.get(i);
+            try {
+                ros.writeLengthPrefixedBytes(kt != null ? kt.keyToByteArray(k) : captureState(k));
+            } catch (DataStoreException dsEx) {
+                IOException ioEx = new IOException("Error while writing key: " + k);
+                ioEx.initCause(dsEx);
+                throw ioEx;
+            }
+            ros.writeLong(minVersions[i]);
+        }
+
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, dsc.getInstanceName() + getName() + " sending load_all_request for "
+                    + keys.size() + " keys to " + target);
+        }
+    }
+
+    private void readState(ReplicationInputStream ris) {
+        tokenId = ris.readLong();
+        originatingInstance = ris.readLengthPrefixedString();
+
+        keysTransformed = ris.readBoolean();
+        int size = ris.readInt();
+        rawKeys = new ArrayList<byte[]>(size);
+        minVersions = new long[size];
+        for (int i = 0; i < size; i++) {
+            rawKeys.add(ris.readLengthPrefixedBytes());
+            minVersions[i] = ris.readLong();
+        }
+    }
+
+    private K toKey(byte[] rawKey)
+            throws IOException {
+        if (keysTransformed) {
+            return dsc.getKeyTransformer().byteArrayToKey(rawKey, 0, rawKey.length);
+        } else {
+            return (K) CommandCodec.deserialize(rawKey, dsc.getClassLoader());
+        }
+    }
+
+    @Override
+    public void execute(String initiator)
+            throws DataStoreException {
+        int size = rawKeys.size();
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, dsc.getInstanceName() + getName() + " received load_all_request for "
+                    + size + " keys from " + initiator);
+        }
+
+        long[] versions = new long[size];
+        byte[][] rawVs = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            K k = null;
+            try {
+                k = toKey(rawKeys.get(i));
+            } catch (IOException ioEx) {
+                throw new DataStoreException("Error while reading key", ioEx);
+            }
+
+            LoadResponseCommand<K, V> rsp = null;
+            DataStoreEntry<K, V> e = dsc.getReplicaStore().getEntry(k);
+            if (e != null) {
+                synchronized (e) {
+                    rsp = dsc.getDataStoreEntryUpdater().createLoadResponseCommand(e, k, minVersions[i]);
+                }
+            } else {
+                rsp = dsc.getDataStoreEntryUpdater().createLoadResponseCommand(null, k, minVersions[i]);
+            }
+            versions[i] = rsp.getVersion();
+            rawVs[i] = rsp.getRawV();
+        }
+
+        getCommandManager().execute(
+                new LoadAllResponseCommand<K, V>(originatingInstance, tokenId, versions, rawVs));
+    }
+
+    /**
+     * Waits for the response from the replica.
+     *
+     * @return the keys (with their values) that were found in the replica
+     */
+    public Map<K, V> getResult(long waitFor, TimeUnit unit)
+            throws DataStoreException {
+        Map<K, V> result = new HashMap<K, V>();
+        loadedValues = result;
+        try {
+            Object value = resp.getFuture().get(waitFor, unit);
+            if (value instanceof Exception) {
+                throw new DataStoreException((Exception) value);
+            }
+
+            LoadAllResponseCommand<K, V> respCmd = (LoadAllResponseCommand<K, V>) value;
+            long[] versions = respCmd.getVersions();
+            byte[][] rawVs = respCmd.getRawVs();
+            for (int i = 0; i < keys.size() && i < versions.length; i++) {
+                if (rawVs[i] != null && versions[i] >= minVersions[i]) {
+                    K k = keys.get(i);
+                    V v = dsc.getDataStoreEntryUpdater().extractVFrom(
+                            new LoadResponseCommand<K, V>(k, versions[i], rawVs[i]));
+                    if (v != null) {
+                        result.put(k, v);
+                    }
+                }
+            }
+        } catch (InterruptedException inEx) {
+            _logger.log(Level.WARNING, "LoadAllRequestCommand Interrupted while waiting for result", inEx);
+            throw new DataStoreException(inEx);
+        } catch (TimeoutException timeoutEx) {
+            _logger.log(Level.WARNING, "LoadAllRequestCommand timed out while waiting for result " + timeoutEx);
+        } catch (ExecutionException exeEx) {
+            _logger.log(Level.WARNING, "LoadAllRequestCommand got an exception while waiting for result", exeEx);
+            throw new DataStoreException(exeEx);
+        } finally {
+            dsc.getResponseMediator().removeCommandResponse(tokenId);
+        }
+
+        return result;
+    }
+
+    public List<K> getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return the values returned by the last getResult() call
+     */
+    public Map<K, V> getLoadedValues() {
+        return loadedValues;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * @return true if the target has answered
+     */
+    public boolean isAnswered() {
+        return resp != null && resp.getFuture().isDone();
+    }
+
+    public String getRespondingInstanceName() {
+        return resp.getRespondingInstanceName();
+    }
+
+    @Override
+    protected boolean isArtificialKey() {
+        return true;
+    }
+
+    public String toString() {
+        int size = keys != null ? keys.size() : (rawKeys != null ? rawKeys.size() : 0);
+        return getName() + "(" + size + " keys)";
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.adapter.store.commands;
+
+import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
+import org.shoal.ha.cache.impl.command.Command;
+import org.shoal.ha.cache.impl.command.ReplicationCommandOpcode;
+import org.shoal.ha.cache.impl.util.CommandResponse;
+import org.shoal.ha.cache.impl.util.ReplicationInputStream;
+import org.shoal.ha.cache.impl.util.ReplicationOutputStream;
+import org.shoal.ha.cache.impl.util.ResponseMediator;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The response to a LoadAllRequestCommand. versions and rawVs are in the same
+ *  order as the keys of the request. A null rawV means that the key was not found.
+ */
+public class LoadAllResponseCommand<K, V>
+        extends Command<K, V> {
+
+    private static final long serialVersionUID = 3886200251180602147L;
+
+    private static final Logger _logger = Logger.getLogger(ShoalCacheLoggerConstants.CACHE_LOAD_RESPONSE_COMMAND);
+
+    private transient long tokenId;
+
+    private transient String originatingInstance;
+
+    private transient String respondingInstanceName;
+
+    private transient long[] versions;
+
+    private transient byte[][] rawVs;
+
+    public LoadAllResponseCommand() {
+        super(ReplicationCommandOpcode.LOAD_ALL_RESPONSE);
+    }
+
+    public LoadAllResponseCommand(String originatingInstance, long tokenId, long[] versions, byte[][] rawVs) {
+        this();
+        super.setKey((K) ("LoadAllResp:" + tokenId));
+        this.originatingInstance = originatingInstance;
+        this.tokenId = tokenId;
+        this.versions = versions;
+        this.rawVs = rawVs;
+    }
+
+    public long[] getVersions() {
+        return versions;
+    }
+
+    public byte[][] getRawVs() {
+        return rawVs;
+    }
+
+    protected boolean beforeTransmit() {
+        setTargetName(originatingInstance);
+        return originatingInstance != null;
+    }
+
+    private void writeObject(ObjectOutputStream out)
+            throws IOException {
+        ReplicationOutputStream ros = new ReplicationOutputStream();
+        writeState(ros);
+        out.writeObject(ros.toByteArray());
+    }
+
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        readState(new ReplicationInputStream((byte[]) in.readObject()));
+    }
+
+    @Override
+    protected Command<K, V> createCommandForDecoding() {
+        return new LoadAllResponseCommand<K, V>();
+    }
+
+    @Override
+    protected void writeCommandState(ReplicationOutputStream ros)
+            throws IOException {
+        super.writeCommandState(ros);
+        writeState(ros);
+    }
+
+    @Override
+    protected void readCommandState(ReplicationInputStream ris)
+            throws IOException {
+        super.readCommandState(ris);
+        readState(ris);
+    }
+
+    private void writeState(ReplicationOutputStream ros)
+            throws IOException {
+        ros.writeLong(tokenId);
+        ros.writeLengthPrefixedString(originatingInstance);
+        ros.writeLengthPrefixedString(dsc.getInstanceName());
+        ros.writeInt(versions.length);
+        for (int i = 0; i < versions.length; i++) {
+            ros.writeLong(versions[i]);
+            ros.writeLengthPrefixedBytes(rawVs[i]);
+        }
+    }
+
+    private void readState(ReplicationInputStream ris) {
+        tokenId = ris.readLong();
+        originatingInstance = ris.readLengthPrefixedString();
+        respondingInstanceName = ris.readLengthPrefixedString();
+        int size = ris.readInt();
+        versions = new long[size];
+        rawVs = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            versions[i] = ris.readLong();
+            rawVs[i] = ris.readLengthPrefixedBytes();
+        }
+    }
+
+    @Override
+    public void execute(String initiator) {
+        ResponseMediator respMed = getDataStoreContext().getResponseMediator();
+        CommandResponse resp = respMed.getCommandResponse(tokenId);
+        if (resp != null) {
+            if (_logger.isLoggable(Level.FINE)) {
+                _logger.log(Level.FINE, dsc.getInstanceName() + " received load_all_response for "
+                        + versions.length + " keys from " + respondingInstanceName);
+            }
+
+            resp.setRespondingInstanceName(respondingInstanceName);
+            resp.setResult(this);
+        }
+    }
+
+    @Override
+    protected boolean isArtificialKey() {
+        return true;
+    }
+
+    public String toString() {
+        return getName() + "(" + versions.length + " keys)";
+    }
+}
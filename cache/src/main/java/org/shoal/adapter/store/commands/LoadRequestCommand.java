@@ -48,6 +48,7 @@ import org.shoal.ha.cache.impl.command.ReplicationCommandOpcode;
 import org.shoal.ha.cache.impl.util.*;
 
 import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -67,6 +68,10 @@ public class LoadRequestCommand<K, V>
 
     private transient Future future;
 
+    private transient BlockingQueue<CommandResponse> completionQueue;
+
+    private transient V loadedValue;
+
     private long minVersion = -1;
 
     private long tokenId;
@@ -91,6 +96,7 @@ public class LoadRequestCommand<K, V>
         originatingInstance = dsc.getInstanceName();
         ResponseMediator respMed = dsc.getResponseMediator();
         resp = respMed.createCommandResponse();
+        resp.setCompletionQueue(completionQueue);
 
         future = resp.getFuture();
 
@@ -114,6 +120,32 @@ public class LoadRequestCommand<K, V>
         originatingInstance = in.readUTF();
     }
 
+    @Override
+    protected Command<K, V> createCommandForDecoding() {
+        return new LoadRequestCommand<K, V>();
+    }
+
+    @Override
+    protected void writeCommandState(ReplicationOutputStream ros)
+            throws IOException {
+        super.writeCommandState(ros);
+        ros.writeLong(minVersion);
+        ros.writeLong(resp.getTokenId());
+        ros.writeLengthPrefixedString(originatingInstance);
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, dsc.getInstanceName() + getName() + " sending load_request command for " + getKey() + "to " + target);
+        }
+    }
+
+    @Override
+    protected void readCommandState(ReplicationInputStream ris)
+            throws IOException {
+        super.readCommandState(ris);
+        minVersion = ris.readLong();
+        tokenId = ris.readLong();
+        originatingInstance = ris.readLengthPrefixedString();
+    }
+
     @Override
     public void execute(String initiator) {
 
@@ -157,6 +189,36 @@ public class LoadRequestCommand<K, V>
         return resp.getRespondingInstanceName();
     }
 
+    /**
+     * The CommandResponse of this request will be added to the queue
+     *  once the response arrives. Must be called before the command is executed.
+     */
+    public void setCompletionQueue(BlockingQueue<CommandResponse> completionQueue) {
+        this.completionQueue = completionQueue;
+    }
+
+    public long getTokenId() {
+        return resp.getTokenId();
+    }
+
+    /**
+     * @return the value returned by the last successful getResult() call
+     */
+    public V getLoadedValue() {
+        return loadedValue;
+    }
+
+    /**
+     * Stops waiting for the response. A response that arrives later
+     *  will be ignored by the ResponseMediator.
+     */
+    public void cancel() {
+        if (resp != null) {
+            dsc.getResponseMediator().removeCommandResponse(resp.getTokenId());
+            future.cancel(false);
+        }
+    }
+
     public V getResult(long waitFor, TimeUnit unit)
             throws DataStoreException {
         try {
@@ -170,7 +232,8 @@ public class LoadRequestCommand<K, V>
             } else {
                 result = null;
             }
-            return (V) result;
+            loadedValue = (V) result;
+            return loadedValue;
         } catch (DataStoreException dsEx) {
             throw dsEx;
         } catch (InterruptedException inEx) {
@@ -41,6 +41,7 @@
 package org.shoal.adapter.store.commands;
 
 import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
+import org.shoal.ha.cache.impl.command.Command;
 import org.shoal.ha.cache.impl.command.ReplicationCommandOpcode;
 
 import java.io.IOException;
@@ -73,6 +74,11 @@ public class RemoveCommand<K, V>
         return target != null;
     }
 
+    @Override
+    protected Command<K, V> createCommandForDecoding() {
+        return new RemoveCommand<K, V>(null);
+    }
+
     @Override
     public void execute(String initiator) {
         dsc.getReplicaStore().remove(getKey());
@@ -43,7 +43,12 @@ package org.shoal.adapter.store.commands;
 import org.shoal.ha.cache.impl.store.DataStoreEntry;
 import org.shoal.ha.cache.api.DataStoreException;
 import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
+import org.shoal.ha.cache.impl.command.Command;
 import org.shoal.ha.cache.impl.command.ReplicationCommandOpcode;
+import org.shoal.ha.cache.impl.util.ByteDelta;
+import org.shoal.ha.cache.impl.util.CommandResponse;
+import org.shoal.ha.cache.impl.util.ReplicationInputStream;
+import org.shoal.ha.cache.impl.util.ReplicationOutputStream;
 
 import java.io.IOException;
 import java.util.logging.Level;
@@ -59,6 +64,18 @@ public class SaveCommand<K, V>
 
     private transient byte[] rawV;
 
+    //Number of deltas after which a full save is sent, so that a replica
+    //  that missed a save does not stay behind for long
+    private static final int MAX_DELTAS_BETWEEN_FULL_SAVES = 16;
+
+    private transient DataStoreEntry<K, V> deltaSourceEntry;
+
+    private transient ByteDelta delta;
+
+    private transient long baseVersion;
+
+    private transient DataStoreEntry.DeltaBase sentBase;
+
     public SaveCommand() {
         super(ReplicationCommandOpcode.SAVE);
     }
@@ -81,6 +98,7 @@ public class SaveCommand<K, V>
         DataStoreEntry<K, V> entry = dsc.getReplicaStore().getOrCreateEntry(getKey());
         synchronized (entry) {
             dsc.getDataStoreEntryUpdater().executeSave(entry, this);
+            dsc.getReplicaStore().updateIndexes(entry);
         }
 
         if (dsc.isDoSynchronousReplication()) {
@@ -95,29 +113,167 @@ public class SaveCommand<K, V>
         return getName() + "(" + getKey() + ")";
     }
 
+    /**
+     * @return a new command that saves the same version of the value to target.
+     *  The copy always carries the full state, deltas are only computed
+     *  against the state last sent to the first replica
+     */
+    public SaveCommand<K, V> createReplicaCopy(String target) {
+        SaveCommand<K, V> copy = new SaveCommand<K, V>(getKey(), v, version, lastAccessedAt, maxIdleTime);
+        copy.setTarget(target);
+        return copy;
+    }
+
+    /**
+     * Enables delta replication for this command. When the command is transmitted,
+     *  its state is compared with the state last sent for this entry and only the
+     *  changed bytes are sent.
+     */
+    public void setDeltaSourceEntry(DataStoreEntry<K, V> entry) {
+        this.deltaSourceEntry = entry;
+    }
+
+    private void captureStateForTransmit()
+            throws IOException {
+        rawV = dsc.getDataStoreEntryUpdater().getState(v);
+
+        delta = null;
+        DataStoreEntry.DeltaBase base = deltaSourceEntry.getDeltaBase();
+        if (base != null && base.getVersion() >= version) {
+            return; //A later version has already been sent. Send the full state
+        }
+
+        //The replica may not have the state of a base that it has not acknowledged
+        boolean sameTarget = base != null && getTargetName() != null && getTargetName().equals(base.getTargetName());
+        if (sameTarget && base.getDeltaCount() < MAX_DELTAS_BETWEEN_FULL_SAVES && base.isAcknowledged()) {
+            delta = ByteDelta.compute(base.getState(), rawV, rawV.length / 2);
+        }
+
+        CommandResponse ackResponse = getCommandResponse();
+        DataStoreEntry.DeltaBase newBase = new DataStoreEntry.DeltaBase(version, getTargetName(), rawV,
+                delta == null ? 0 : base.getDeltaCount() + 1, ackResponse == null ? null : ackResponse.getFuture());
+        if (deltaSourceEntry.compareAndSetDeltaBase(base, newBase)) {
+            sentBase = newBase;
+            if (delta != null) {
+                baseVersion = base.getVersion();
+            }
+        } else {
+            delta = null;
+        }
+    }
+
+    @Override
+    protected void onTransmitFailure() {
+        //Without acks this is the only way to find out that the replica did not get the state
+        if (sentBase != null) {
+            deltaSourceEntry.compareAndSetDeltaBase(sentBase, null);
+        }
+    }
+
     private void writeObject(java.io.ObjectOutputStream out)
             throws IOException {
 
-        rawV = dsc.getDataStoreEntryUpdater().getState(v);
-        out.writeObject(rawV);
+        if (deltaSourceEntry != null) {
+            captureStateForTransmit();
+        } else {
+            rawV = dsc.getDataStoreEntryUpdater().getState(v);
+        }
+        out.writeBoolean(delta != null);
+        if (delta != null) {
+            out.writeLong(baseVersion);
+            delta.writeTo(out);
+        } else {
+            out.writeObject(rawV);
+        }
         
         if (_logger.isLoggable(Level.FINE)) {
             _logger.log(Level.FINE, dsc.getServiceName() + " sending save_command for key = " + getKey() + "; version = " + version + "; lastAccessedAt = " + lastAccessedAt + "; to " + getTargetName());
         }
     }
 
+    @Override
+    protected Command<K, V> createCommandForDecoding() {
+        return new SaveCommand<K, V>();
+    }
+
+    @Override
+    protected void writeCommandState(ReplicationOutputStream ros)
+            throws IOException {
+        super.writeCommandState(ros);
+        if (deltaSourceEntry != null) {
+            captureStateForTransmit();
+            ros.writeBoolean(delta != null);
+            if (delta != null) {
+                ros.writeLong(baseVersion);
+                delta.writeTo(ros);
+            } else {
+                ros.writeLengthPrefixedBytes(rawV);
+            }
+        } else {
+            ros.writeBoolean(false);
+            dsc.getDataStoreEntryUpdater().writeState(v, ros);
+        }
+
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, dsc.getServiceName() + " sending save_command for key = " + getKey() + "; version = " + version + "; lastAccessedAt = " + lastAccessedAt + "; to " + getTargetName());
+        }
+    }
+
+    @Override
+    protected void readCommandState(ReplicationInputStream ris)
+            throws IOException {
+        super.readCommandState(ris);
+        if (ris.readBoolean()) {
+            baseVersion = ris.readLong();
+            delta = ByteDelta.readFrom(ris);
+        } else {
+            rawV = ris.readLengthPrefixedBytes();
+        }
+    }
+
     public boolean hasState() {
         return true;
     }
 
+    /**
+     * Sets the full state, for a command that is applied to a local entry
+     *  without being transmitted (see ExecuteOnKeyCommand)
+     */
+    void setRawV(byte[] rawV) {
+        this.rawV = rawV;
+    }
+
+    /**
+     * @return the full state or null if this command carries a delta
+     */
     public byte[] getRawV() {
         return rawV;
     }
 
+    public boolean isDelta() {
+        return delta != null;
+    }
+
+    /**
+     * @return the version of the state that the delta must be applied to
+     */
+    public long getBaseVersion() {
+        return baseVersion;
+    }
+
+    public ByteDelta getDelta() {
+        return delta;
+    }
+
     private void readObject(java.io.ObjectInputStream in)
             throws IOException, ClassNotFoundException {
 
-        rawV = (byte[]) in.readObject();
+        if (in.readBoolean()) {
+            baseVersion = in.readLong();
+            delta = ByteDelta.readFrom(in);
+        } else {
+            rawV = (byte[]) in.readObject();
+        }
     }
     
 }
@@ -55,6 +55,10 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
+ * Acknowledges one or more AcknowledgedCommands. The receiver of a
+ * ReplicationFramePayloadCommand coalesces the acks for all the commands
+ * in the frame that came from the same instance into a single SimpleAckCommand.
+ *
  * @author Mahesh Kannan
  */
 public class SimpleAckCommand<K, V>
@@ -62,7 +66,7 @@ public class SimpleAckCommand<K, V>
 
     private static final Logger _logger = Logger.getLogger(ShoalCacheLoggerConstants.CACHE_LOAD_RESPONSE_COMMAND);
 
-    private long tokenId;
+    private long[] tokenIds;
 
     private String targetInstanceName;
 
@@ -73,17 +77,24 @@ public class SimpleAckCommand<K, V>
     }
 
     public SimpleAckCommand(String targetInstanceName, long tokenId) {
+        this(targetInstanceName, new long[] {tokenId});
+    }
+
+    public SimpleAckCommand(String targetInstanceName, long[] tokenIds) {
         this();
-        super.setKey("SimpleAck:" + tokenId);
+        super.setKey("SimpleAck:" + tokenIds[0]);
         this.targetInstanceName = targetInstanceName;
-        this.tokenId = tokenId;
+        this.tokenIds = tokenIds;
     }
 
     private void writeObject(ObjectOutputStream ros)
         throws IOException {
         setTargetName(targetInstanceName);
 
-        ros.writeLong(tokenId);
+        ros.writeInt(tokenIds.length);
+        for (long tokenId : tokenIds) {
+            ros.writeLong(tokenId);
+        }
         ros.writeUTF(targetInstanceName);
         ros.writeUTF(dsc.getInstanceName());
     }
@@ -96,18 +107,60 @@ public class SimpleAckCommand<K, V>
     private void readObject(ObjectInputStream ris)
         throws IOException {
 
-        tokenId = ris.readLong();
+        tokenIds = new long[ris.readInt()];
+        for (int i = 0; i < tokenIds.length; i++) {
+            tokenIds[i] = ris.readLong();
+        }
         targetInstanceName = ris.readUTF();
         respondingInstanceName = ris.readUTF();
     }
 
+    @Override
+    protected Command createCommandForDecoding() {
+        return new SimpleAckCommand<K, V>();
+    }
+
+    @Override
+    protected void writeCommandState(ReplicationOutputStream ros)
+            throws IOException {
+        super.writeCommandState(ros);
+        ros.writeInt(tokenIds.length);
+        for (long tokenId : tokenIds) {
+            ros.writeLong(tokenId);
+        }
+        ros.writeLengthPrefixedString(targetInstanceName);
+        ros.writeLengthPrefixedString(dsc.getInstanceName());
+    }
+
+    @Override
+    protected void readCommandState(ReplicationInputStream ris)
+            throws IOException {
+        super.readCommandState(ris);
+        tokenIds = new long[ris.readInt()];
+        for (int i = 0; i < tokenIds.length; i++) {
+            tokenIds[i] = ris.readLong();
+        }
+        targetInstanceName = ris.readLengthPrefixedString();
+        respondingInstanceName = ris.readLengthPrefixedString();
+    }
+
+    public long[] getTokenIds() {
+        return tokenIds;
+    }
+
     @Override
     public void execute(String initiator) {
         ResponseMediator respMed = getDataStoreContext().getResponseMediator();
-        CommandResponse resp = respMed.getCommandResponse(tokenId);
-        if (resp != null) {
-            resp.setRespondingInstanceName(respondingInstanceName);
-            resp.setResult(true);
+        for (long tokenId : tokenIds) {
+            CommandResponse resp = respMed.getCommandResponse(tokenId);
+            if (resp != null) {
+                resp.setRespondingInstanceName(respondingInstanceName);
+                resp.setResult(true);
+            }
+        }
+
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, "SimpleAckCommand received " + tokenIds.length + " acks from " + initiator);
         }
     }
 
@@ -117,6 +170,6 @@ public class SimpleAckCommand<K, V>
     }
 
     public String toString() {
-        return getName() + "()";
+        return getName() + "(" + (tokenIds == null ? 0 : tokenIds.length) + " acks)";
     }
 }
@@ -66,6 +66,11 @@ public class TouchCommand<K, V>
         super(ReplicationCommandOpcode.TOUCH, k, version, accessTime, maxIdleTime);
     }
 
+    @Override
+    protected Command<K, V> createCommandForDecoding() {
+        return new TouchCommand<K, V>();
+    }
+
     @Override
     public void execute(String initiator)
         throws DataStoreException {
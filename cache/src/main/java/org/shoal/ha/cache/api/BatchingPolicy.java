@@ -0,0 +1,94 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2012 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.cache.api;
+
+/**
+ * Decides how the commands that are sent to the same target are batched into a
+ * ReplicationFramePayloadCommand. A frame is sent as soon as it holds
+ * getMaxBatchSize() commands or once it has waited for getLingerTimeInMillis().
+ * A single policy instance is shared by all the targets of a DataStore, so
+ * implementations must be thread safe.
+ */
+public interface BatchingPolicy {
+
+    /**
+     * @return the name of this policy, as reported by the DataStoreMBean
+     */
+    public String getName();
+
+    /**
+     * @return the maximum number of commands in a frame. Byte based limits
+     *  must already be reflected in this value, since commands are encoded
+     *  only when the frame is sent.
+     */
+    public int getMaxBatchSize();
+
+    /**
+     * @return the (approximate) maximum number of bytes in a frame
+     */
+    public int getMaxBatchBytes();
+
+    /**
+     * @return the maximum time a partially filled frame may wait before being sent
+     */
+    public long getLingerTimeInMillis();
+
+    /**
+     * @return the interval at which the flush thread looks for frames to send.
+     *  This is read only once per target.
+     */
+    public long getFlushCheckIntervalInMillis();
+
+    /**
+     * Called every time a command is added to a frame.
+     */
+    public void commandAdded();
+
+    /**
+     * Called after a frame has been transmitted.
+     *
+     * @param commandCount the number of commands in the frame
+     * @param frameBytes the encoded size of the frame or 0 if unknown
+     * @param sendTimeInNanos the time taken to transmit the frame
+     */
+    public void batchSent(int commandCount, int frameBytes, long sendTimeInNanos);
+
+}
@@ -40,6 +40,15 @@
 
 package org.shoal.ha.cache.api;
 
+import org.glassfish.ha.store.api.StoreEntryProcessor;
+import org.glassfish.ha.store.criteria.Criteria;
+import org.glassfish.ha.store.spi.StoreEntryEvaluator;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Future;
+
 /**
  * A DataStore allows (#{Serializable} / #{Storable}) objects to be placed in the cache. The
  * cache itself is created and configured using a #{DataStoreFactory}.
@@ -58,6 +67,18 @@ public interface DataStore<K, V> {
     public String put(K k, V v)
             throws DataStoreException;
 
+    /**
+     * Same as put(k, v), but does not wait for the replica to acknowledge the
+     * save when synchronous replication is enabled. The returned Future
+     * completes once the ack has been received.
+     *
+     * @param k The Key
+     * @param v The value
+     * @return a Future that returns the same value as put(k, v)
+     */
+    public Future<String> putAsync(K k, V v)
+            throws DataStoreException;
+
     /**
      * Returns the value to which the specified key is mapped in this cache.
      *
@@ -67,6 +88,40 @@ public interface DataStore<K, V> {
     public V get(K k)
             throws DataStoreException;
 
+    /**
+     * Returns the values of all the given keys. Keys that are not available
+     * locally are requested from their replicas using one request per replica.
+     * The keys that their replica did not return are then requested from all
+     * the other instances at once.
+     *
+     * @param keys The keys
+     * @return The keys that were found along with their values
+     */
+    public Map<K, V> getAll(Collection<K> keys)
+            throws DataStoreException;
+
+    /**
+     * Creates or Replaces the objects associated with the given keys. The
+     * replicas are updated concurrently.
+     *
+     * @param entries The keys and their values
+     * @return the replica location of each key, as returned by put(k, v)
+     * @throws DataStoreException if some of the replicas did not acknowledge
+     *  their keys in time. The message names those keys
+     */
+    public Map<K, String> putAll(Map<K, V> entries)
+            throws DataStoreException;
+
+    /**
+     * Removes the mapping of all the given keys.
+     *
+     * @param keys The keys
+     * @throws DataStoreException if some of the replicas did not acknowledge
+     *  the removal in time. The message names those keys
+     */
+    public void removeAll(Collection<K> keys)
+            throws DataStoreException;
+
     /**
      * Removes the mapping between the key and the object.
      *
@@ -83,6 +138,57 @@ public interface DataStore<K, V> {
     public String touch(K k, long version, long timeStamp, long ttl)
             throws DataStoreException;
 
+    /**
+     * Finds the entries whose value satisfies the criteria and, if eval is not
+     *  null, for which eval returns Boolean.TRUE. The criteria is evaluated by
+     *  every instance against its own entries.
+     *
+     * @param criteria The criteria. A null criteria matches every entry
+     * @param eval An optional evaluator that further narrows the result
+     * @param fetchValues If false, only the keys are returned (and mapped to null)
+     * @throws PartialResultException if some instances did not answer in time.
+     *  It holds the entries found by the others
+     */
+    public Map<K, V> findByCriteria(Criteria<V> criteria, StoreEntryEvaluator<K, V> eval, boolean fetchValues)
+            throws DataStoreException;
+
+    /**
+     * Removes the entries whose value satisfies the criteria and, if eval is
+     *  not null, for which eval returns Boolean.TRUE.
+     *
+     * @return the number of (distinct) keys that were removed
+     * @throws PartialResultException if some instances did not answer in time.
+     *  Its partial result holds the keys that the others removed
+     */
+    public int removeByCriteria(Criteria<V> criteria, StoreEntryEvaluator<K, V> eval)
+            throws DataStoreException;
+
+    /**
+     * Executes the processor on the value of k at the instance that holds it.
+     *  The processor runs while the entry is locked and may change the value in
+     *  place. The changed value is saved with a new version and replicated. Only
+     *  the result of the processor is sent back.
+     *
+     * @param processor a StoreEntryProcessor for the values of this store
+     * @return the result of the processor or null if there is no entry for k
+     *  (in which case the processor is not executed)
+     */
+    public Serializable executeOnKey(K k, StoreEntryProcessor<K, ?> processor)
+            throws DataStoreException;
+
+    /**
+     * Executes the processor on each of the keys, as executeOnKey() does. The
+     *  requests to the other instances are all sent before waiting for any result.
+     *
+     * @return the results of the processor by key. Keys without an entry are
+     *  not in the map
+     * @throws PartialExecutionException if the processor failed for any of the
+     *  keys, or if their replica did not answer in time. It is still executed on
+     *  the others, whose results the exception holds
+     */
+    public Map<K, Serializable> executeOnKeys(Collection<K> keys, StoreEntryProcessor<K, ?> processor)
+            throws DataStoreException;
+
     /**
      * Removes all entries that were not accessed for more than 'idlefor' millis
      *
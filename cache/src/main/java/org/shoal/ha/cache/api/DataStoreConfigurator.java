@@ -93,6 +93,34 @@ public class DataStoreConfigurator<K, V> {
 
     private boolean broadcastRemovedExpired = true;
 
+    private BatchingPolicy batchingPolicy;
+
+    private long offHeapReplicaStorageSize;
+
+    private long deserializedValueCacheSize;
+
+    private boolean immutableValues;
+
+    private boolean deltaReplication;
+
+    private FrameCompressor frameCompressor;
+
+    private int frameCompressionThreshold = 1024;
+
+    private long replicationSubmitTimeoutInMillis = 5000;
+
+    private int replicationFactor = 1;
+
+    private boolean ackFromAllReplicas = true;
+
+    private int criteriaPageSize = 256;
+
+    private long criteriaTimeoutInMillis = 10000;
+
+    private long executeTimeoutInMillis = 10000;
+
+    private List<String> indexedAttributes = new ArrayList<String>();
+
     protected DataStoreConfigurator() {
 
     }
@@ -267,6 +295,209 @@ public class DataStoreConfigurator<K, V> {
         return this;
     }
 
+    public BatchingPolicy getBatchingPolicy() {
+        return batchingPolicy;
+    }
+
+    /**
+     * @param batchingPolicy the policy used to batch replication commands.
+     *  If null, a FixedBatchingPolicy is used
+     */
+    public DataStoreConfigurator<K, V> setBatchingPolicy(BatchingPolicy batchingPolicy) {
+        this.batchingPolicy = batchingPolicy;
+        return this;
+    }
+
+    public long getOffHeapReplicaStorageSize() {
+        return offHeapReplicaStorageSize;
+    }
+
+    /**
+     * @param offHeapReplicaStorageSize the maximum number of bytes of replica state
+     *  that are kept outside of the java heap. 0 (the default) keeps all replica
+     *  state on heap
+     */
+    public DataStoreConfigurator<K, V> setOffHeapReplicaStorageSize(long offHeapReplicaStorageSize) {
+        this.offHeapReplicaStorageSize = offHeapReplicaStorageSize;
+        return this;
+    }
+
+    public long getDeserializedValueCacheSize() {
+        return deserializedValueCacheSize;
+    }
+
+    /**
+     * @param deserializedValueCacheSize the maximum (estimated) number of bytes of
+     *  deserialized replica values that are cached. 0 (the default) disables the cache
+     */
+    public DataStoreConfigurator<K, V> setDeserializedValueCacheSize(long deserializedValueCacheSize) {
+        this.deserializedValueCacheSize = deserializedValueCacheSize;
+        return this;
+    }
+
+    public boolean isImmutableValues() {
+        return immutableValues;
+    }
+
+    /**
+     * @param immutableValues true if the values are never modified once they are
+     *  put into, or returned by, the store. Only then does the deserialized value
+     *  cache hold values of any type. Otherwise it only holds values of well known
+     *  immutable types, since every caller of get() shares the cached instance
+     */
+    public DataStoreConfigurator<K, V> setImmutableValues(boolean immutableValues) {
+        this.immutableValues = immutableValues;
+        return this;
+    }
+
+    public boolean isDeltaReplication() {
+        return deltaReplication;
+    }
+
+    /**
+     * @param deltaReplication if true, saves of (non Storeable) values send only
+     *  the bytes that changed since the last save of the same key
+     */
+    public DataStoreConfigurator<K, V> setDeltaReplication(boolean deltaReplication) {
+        this.deltaReplication = deltaReplication;
+        return this;
+    }
+
+    public FrameCompressor getFrameCompressor() {
+        return frameCompressor;
+    }
+
+    /**
+     * @param frameCompressor the compressor used for outgoing frames or null
+     *  (the default) to send frames uncompressed
+     */
+    public DataStoreConfigurator<K, V> setFrameCompressor(FrameCompressor frameCompressor) {
+        this.frameCompressor = frameCompressor;
+        return this;
+    }
+
+    public int getFrameCompressionThreshold() {
+        return frameCompressionThreshold;
+    }
+
+    /**
+     * @param frameCompressionThreshold frames smaller than this are sent uncompressed
+     */
+    public DataStoreConfigurator<K, V> setFrameCompressionThreshold(int frameCompressionThreshold) {
+        this.frameCompressionThreshold = frameCompressionThreshold;
+        return this;
+    }
+
+    public long getReplicationSubmitTimeoutInMillis() {
+        return replicationSubmitTimeoutInMillis;
+    }
+
+    /**
+     * @param replicationSubmitTimeoutInMillis how long a save waits for room in
+     *  the queue of the (shared) replication thread pool before it sends its
+     *  batch itself. 0 makes the save fail with a RejectedExecutionException
+     *  as soon as the queue is full
+     */
+    public DataStoreConfigurator<K, V> setReplicationSubmitTimeoutInMillis(long replicationSubmitTimeoutInMillis) {
+        if (replicationSubmitTimeoutInMillis < 0) {
+            throw new IllegalArgumentException("replicationSubmitTimeoutInMillis must not be negative: "
+                    + replicationSubmitTimeoutInMillis);
+        }
+        this.replicationSubmitTimeoutInMillis = replicationSubmitTimeoutInMillis;
+        return this;
+    }
+
+    public int getReplicationFactor() {
+        return replicationFactor;
+    }
+
+    /**
+     * @param replicationFactor the number of instances that each save is
+     *  written to. They are the first entries of the key's replica choices
+     */
+    public DataStoreConfigurator<K, V> setReplicationFactor(int replicationFactor) {
+        if (replicationFactor < 1) {
+            throw new IllegalArgumentException("replicationFactor must be positive: " + replicationFactor);
+        }
+        this.replicationFactor = replicationFactor;
+        return this;
+    }
+
+    public boolean isAckFromAllReplicas() {
+        return ackFromAllReplicas;
+    }
+
+    /**
+     * @param ackFromAllReplicas if true a synchronous save completes once every
+     *  replica has acknowledged it, otherwise once any one of them has
+     */
+    public DataStoreConfigurator<K, V> setAckFromAllReplicas(boolean ackFromAllReplicas) {
+        this.ackFromAllReplicas = ackFromAllReplicas;
+        return this;
+    }
+
+    public int getCriteriaPageSize() {
+        return criteriaPageSize;
+    }
+
+    /**
+     * @param criteriaPageSize the maximum number of matching entries that a
+     *  member sends back in a single response to a criteria query
+     */
+    public DataStoreConfigurator<K, V> setCriteriaPageSize(int criteriaPageSize) {
+        if (criteriaPageSize < 1) {
+            throw new IllegalArgumentException("criteriaPageSize must be positive: " + criteriaPageSize);
+        }
+        this.criteriaPageSize = criteriaPageSize;
+        return this;
+    }
+
+    public long getCriteriaTimeoutInMillis() {
+        return criteriaTimeoutInMillis;
+    }
+
+    /**
+     * @param criteriaTimeoutInMillis how long a criteria query waits for the
+     *  results of the other members before it throws a PartialResultException
+     */
+    public DataStoreConfigurator<K, V> setCriteriaTimeoutInMillis(long criteriaTimeoutInMillis) {
+        if (criteriaTimeoutInMillis < 1) {
+            throw new IllegalArgumentException("criteriaTimeoutInMillis must be positive: " + criteriaTimeoutInMillis);
+        }
+        this.criteriaTimeoutInMillis = criteriaTimeoutInMillis;
+        return this;
+    }
+
+    public long getExecuteTimeoutInMillis() {
+        return executeTimeoutInMillis;
+    }
+
+    /**
+     * @param executeTimeoutInMillis how long executeOnKey(s) waits for the
+     *  replicas that run the processor before it reports the keys as undetermined
+     */
+    public DataStoreConfigurator<K, V> setExecuteTimeoutInMillis(long executeTimeoutInMillis) {
+        if (executeTimeoutInMillis < 1) {
+            throw new IllegalArgumentException("executeTimeoutInMillis must be positive: " + executeTimeoutInMillis);
+        }
+        this.executeTimeoutInMillis = executeTimeoutInMillis;
+        return this;
+    }
+
+    public List<String> getIndexedAttributes() {
+        return indexedAttributes;
+    }
+
+    /**
+     * @param indexedAttributes the names of the @Attribute getters of the value
+     *  class for which the replica store keeps a secondary index. The name is the
+     *  value() of the annotation or, if that is empty, the property name of the getter
+     */
+    public DataStoreConfigurator<K, V> setIndexedAttributes(List<String> indexedAttributes) {
+        this.indexedAttributes = new ArrayList<String>(indexedAttributes);
+        return this;
+    }
+
     @Override
     public String toString() {
         return "DataStoreConfigurator{" +
@@ -281,6 +512,20 @@ public class DataStoreConfigurator<K, V> {
                 ", clazzLoader=" + clazzLoader +
                 ", doSynchronousReplication=" + doSynchronousReplication +
                 ", broadcastRemovedExpired=" + broadcastRemovedExpired +
+                ", batchingPolicy=" + ((batchingPolicy == null) ? null : batchingPolicy.getName()) +
+                ", offHeapReplicaStorageSize=" + offHeapReplicaStorageSize +
+                ", deserializedValueCacheSize=" + deserializedValueCacheSize +
+                ", immutableValues=" + immutableValues +
+                ", deltaReplication=" + deltaReplication +
+                ", frameCompressor=" + ((frameCompressor == null) ? null : frameCompressor.getName()) +
+                ", frameCompressionThreshold=" + frameCompressionThreshold +
+                ", replicationSubmitTimeoutInMillis=" + replicationSubmitTimeoutInMillis +
+                ", replicationFactor=" + replicationFactor +
+                ", ackFromAllReplicas=" + ackFromAllReplicas +
+                ", criteriaPageSize=" + criteriaPageSize +
+                ", criteriaTimeoutInMillis=" + criteriaTimeoutInMillis +
+                ", executeTimeoutInMillis=" + executeTimeoutInMillis +
+                ", indexedAttributes=" + indexedAttributes +
                 ", keyTransformer=" + ((keyTransformer == null) ? null : keyTransformer.getClass().getName()) +
                 '}';
     }
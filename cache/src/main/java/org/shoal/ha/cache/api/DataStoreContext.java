@@ -47,11 +47,17 @@ import org.shoal.ha.cache.impl.store.DataStoreEntry;
 import org.shoal.ha.cache.impl.store.ReplicaStore;
 import org.shoal.ha.group.GroupService;
 import org.shoal.ha.cache.impl.command.CommandManager;
+import org.shoal.ha.cache.impl.interceptor.AdaptiveBatchingPolicy;
+import org.shoal.ha.cache.impl.util.DeflateFrameCompressor;
+import org.shoal.ha.cache.impl.util.StripedReadWriteGate;
 import org.shoal.ha.cache.impl.util.ResponseMediator;
+import org.shoal.ha.mapper.ConsistentHashKeyMapper;
 import org.shoal.ha.mapper.KeyMapper;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -73,7 +79,8 @@ public class DataStoreContext<K, V>
 
     private ReplicatedDataStoreStatsHolder dscMBean;
 
-    private ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock(true);
+    //Only close() takes the write side, so readers must not contend with each other
+    private StripedReadWriteGate closeGate = new StripedReadWriteGate();
 
     public DataStoreContext(String serviceName, GroupService gs, ClassLoader loader) {
         super.setStoreName(serviceName);
@@ -87,19 +94,19 @@ public class DataStoreContext<K, V>
     }
 
     public void acquireReadLock() {
-        rwLock.readLock().lock();
+        closeGate.acquireRead();
     }
 
     public void releaseReadLock() {
-        rwLock.readLock().unlock();
+        closeGate.releaseRead();
     }
 
     public void acquireWriteLock() {
-        rwLock.writeLock().lock();
+        closeGate.acquireWrite();
     }
 
     public void releaseWriteLock() {
-        rwLock.writeLock().unlock();
+        closeGate.releaseWrite();
     }
 
     public DataStoreContext(BackingStoreConfiguration conf) {
@@ -167,9 +174,25 @@ public class DataStoreContext<K, V>
                 ? true : (Boolean) vendorSpecificMap.get("async.replication");
         setDoSynchronousReplication(! asyncReplication);
 
-        KeyMapper keyMapper = (KeyMapper) vendorSpecificMap.get("key.mapper");
-        if (keyMapper != null) {
-            setKeyMapper(keyMapper);
+        Object keyMapperObj = vendorSpecificMap.get("key.mapper");
+        if (keyMapperObj instanceof KeyMapper) {
+            setKeyMapper((KeyMapper) keyMapperObj);
+        } else if (ConsistentHashKeyMapper.NAME.equals(keyMapperObj)) {
+            int virtualNodes = ConsistentHashKeyMapper.DEFAULT_VIRTUAL_NODES;
+            Object virtualNodesObj = vendorSpecificMap.get("key.mapper.virtual.nodes");
+            if (virtualNodesObj instanceof Number) {
+                virtualNodes = ((Number) virtualNodesObj).intValue();
+            } else if (virtualNodesObj instanceof String) {
+                try {
+                    virtualNodes = Integer.valueOf((String) virtualNodesObj);
+                } catch (NumberFormatException nfEx) {
+                    _logger.log(Level.WARNING, "Ignoring invalid key.mapper.virtual.nodes: " + virtualNodesObj);
+                }
+            }
+            setKeyMapper(new ConsistentHashKeyMapper(conf.getInstanceName(), conf.getClusterName(),
+                    Math.max(1, virtualNodes)));
+        } else if (keyMapperObj != null) {
+            _logger.log(Level.WARNING, "Ignoring invalid key.mapper: " + keyMapperObj);
         }
 
         KeyTransformer<K> kt = (KeyTransformer<K>) vendorSpecificMap.get("key.transformer");
@@ -239,6 +262,150 @@ public class DataStoreContext<K, V>
 
             setBroadcastRemovedExpired(bcastRemExp);
         }
+
+        Object batchingPolicyObj = vendorSpecificMap.get("batching.policy");
+        if (batchingPolicyObj instanceof BatchingPolicy) {
+            setBatchingPolicy((BatchingPolicy) batchingPolicyObj);
+        } else if (AdaptiveBatchingPolicy.NAME.equals(batchingPolicyObj)) {
+            setBatchingPolicy(new AdaptiveBatchingPolicy());
+        }
+
+        Object offHeapSizeObj = vendorSpecificMap.get("offheap.replica.storage.size");
+        if (offHeapSizeObj instanceof Number) {
+            setOffHeapReplicaStorageSize(((Number) offHeapSizeObj).longValue());
+        } else if (offHeapSizeObj instanceof String) {
+            try {
+                setOffHeapReplicaStorageSize(Long.valueOf((String) offHeapSizeObj));
+            } catch (NumberFormatException nfEx) {
+                _logger.log(Level.WARNING, "Ignoring invalid offheap.replica.storage.size: " + offHeapSizeObj);
+            }
+        }
+
+        Object compressorObj = vendorSpecificMap.get("frame.compression");
+        if (compressorObj instanceof FrameCompressor) {
+            setFrameCompressor((FrameCompressor) compressorObj);
+        } else if (DeflateFrameCompressor.NAME.equals(compressorObj)) {
+            setFrameCompressor(new DeflateFrameCompressor());
+        }
+
+        Object compressionThresholdObj = vendorSpecificMap.get("frame.compression.threshold");
+        if (compressionThresholdObj instanceof Number) {
+            setFrameCompressionThreshold(((Number) compressionThresholdObj).intValue());
+        } else if (compressionThresholdObj instanceof String) {
+            try {
+                setFrameCompressionThreshold(Integer.valueOf((String) compressionThresholdObj));
+            } catch (NumberFormatException nfEx) {
+                _logger.log(Level.WARNING, "Ignoring invalid frame.compression.threshold: " + compressionThresholdObj);
+            }
+        }
+
+        Object submitTimeoutObj = vendorSpecificMap.get("replication.submit.timeout.millis");
+        if (submitTimeoutObj instanceof Number) {
+            setReplicationSubmitTimeoutInMillis(Math.max(0, ((Number) submitTimeoutObj).longValue()));
+        } else if (submitTimeoutObj instanceof String) {
+            try {
+                setReplicationSubmitTimeoutInMillis(Math.max(0, Long.valueOf((String) submitTimeoutObj)));
+            } catch (NumberFormatException nfEx) {
+                _logger.log(Level.WARNING, "Ignoring invalid replication.submit.timeout.millis: " + submitTimeoutObj);
+            }
+        }
+
+        Object deltaReplicationObj = vendorSpecificMap.get("delta.replication");
+        if (deltaReplicationObj instanceof Boolean) {
+            setDeltaReplication((Boolean) deltaReplicationObj);
+        } else if (deltaReplicationObj instanceof String) {
+            setDeltaReplication(Boolean.valueOf((String) deltaReplicationObj));
+        }
+
+        Object replicationFactorObj = vendorSpecificMap.get("replication.factor");
+        if (replicationFactorObj instanceof Number) {
+            setReplicationFactor(Math.max(1, ((Number) replicationFactorObj).intValue()));
+        } else if (replicationFactorObj instanceof String) {
+            try {
+                setReplicationFactor(Math.max(1, Integer.valueOf((String) replicationFactorObj)));
+            } catch (NumberFormatException nfEx) {
+                _logger.log(Level.WARNING, "Ignoring invalid replication.factor: " + replicationFactorObj);
+            }
+        }
+
+        Object replicationAckObj = vendorSpecificMap.get("replication.ack");
+        if ("all".equals(replicationAckObj)) {
+            setAckFromAllReplicas(true);
+        } else if ("any".equals(replicationAckObj)) {
+            setAckFromAllReplicas(false);
+        } else if (replicationAckObj != null) {
+            _logger.log(Level.WARNING, "Ignoring invalid replication.ack: " + replicationAckObj);
+        }
+
+        Object criteriaPageSizeObj = vendorSpecificMap.get("criteria.page.size");
+        if (criteriaPageSizeObj instanceof Number) {
+            setCriteriaPageSize(Math.max(1, ((Number) criteriaPageSizeObj).intValue()));
+        } else if (criteriaPageSizeObj instanceof String) {
+            try {
+                setCriteriaPageSize(Math.max(1, Integer.valueOf((String) criteriaPageSizeObj)));
+            } catch (NumberFormatException nfEx) {
+                _logger.log(Level.WARNING, "Ignoring invalid criteria.page.size: " + criteriaPageSizeObj);
+            }
+        }
+
+        Object criteriaTimeoutObj = vendorSpecificMap.get("criteria.timeout.millis");
+        if (criteriaTimeoutObj instanceof Number) {
+            setCriteriaTimeoutInMillis(Math.max(1, ((Number) criteriaTimeoutObj).longValue()));
+        } else if (criteriaTimeoutObj instanceof String) {
+            try {
+                setCriteriaTimeoutInMillis(Math.max(1, Long.valueOf((String) criteriaTimeoutObj)));
+            } catch (NumberFormatException nfEx) {
+                _logger.log(Level.WARNING, "Ignoring invalid criteria.timeout.millis: " + criteriaTimeoutObj);
+            }
+        }
+
+        Object executeTimeoutObj = vendorSpecificMap.get("execute.timeout.millis");
+        if (executeTimeoutObj instanceof Number) {
+            setExecuteTimeoutInMillis(Math.max(1, ((Number) executeTimeoutObj).longValue()));
+        } else if (executeTimeoutObj instanceof String) {
+            try {
+                setExecuteTimeoutInMillis(Math.max(1, Long.valueOf((String) executeTimeoutObj)));
+            } catch (NumberFormatException nfEx) {
+                _logger.log(Level.WARNING, "Ignoring invalid execute.timeout.millis: " + executeTimeoutObj);
+            }
+        }
+
+        Object indexedAttributesObj = vendorSpecificMap.get("criteria.indexed.attributes");
+        if (indexedAttributesObj instanceof String) {
+            List<String> names = new ArrayList<String>();
+            for (String name : ((String) indexedAttributesObj).split(",")) {
+                if (name.trim().length() > 0) {
+                    names.add(name.trim());
+                }
+            }
+            setIndexedAttributes(names);
+        } else if (indexedAttributesObj instanceof Collection) {
+            List<String> names = new ArrayList<String>();
+            for (Object name : (Collection<?>) indexedAttributesObj) {
+                names.add(String.valueOf(name));
+            }
+            setIndexedAttributes(names);
+        } else if (indexedAttributesObj != null) {
+            _logger.log(Level.WARNING, "Ignoring invalid criteria.indexed.attributes: " + indexedAttributesObj);
+        }
+
+        Object valueCacheSizeObj = vendorSpecificMap.get("deserialized.value.cache.size");
+        if (valueCacheSizeObj instanceof Number) {
+            setDeserializedValueCacheSize(((Number) valueCacheSizeObj).longValue());
+        } else if (valueCacheSizeObj instanceof String) {
+            try {
+                setDeserializedValueCacheSize(Long.valueOf((String) valueCacheSizeObj));
+            } catch (NumberFormatException nfEx) {
+                _logger.log(Level.WARNING, "Ignoring invalid deserialized.value.cache.size: " + valueCacheSizeObj);
+            }
+        }
+
+        Object immutableValuesObj = vendorSpecificMap.get("immutable.values");
+        if (immutableValuesObj instanceof Boolean) {
+            setImmutableValues((Boolean) immutableValuesObj);
+        } else if (immutableValuesObj instanceof String) {
+            setImmutableValues(Boolean.valueOf((String) immutableValuesObj));
+        }
     }
 
     public void setDataStoreMBean(ReplicatedDataStoreStatsHolder<K, V> dscMBean) {
@@ -42,6 +42,8 @@ public interface DataStoreMBean {
     public int getSentRemoveCount();
 
     public int getExecutedRemoveCount();
+
+    public int getUnacknowledgedReplicationCount();
     
     public int getFlushThreadFlushedCount();
 
@@ -54,4 +56,42 @@ public interface DataStoreMBean {
     public int getGmsSendCount();
 
     public long getGmsSendBytesCount();
+
+    public String getFrameCompressorName();
+
+    public int getCompressedFrameCount();
+
+    public long getCompressionInputBytesCount();
+
+    public long getCompressionOutputBytesCount();
+
+    public double getCompressionRatio();
+
+    public long getCompressionTimeInMillis();
+
+    public String getBatchingPolicyName();
+
+    public int getBatchingMaxBatchSize();
+
+    public int getBatchingMaxBatchBytes();
+
+    public long getBatchingLingerTimeInMillis();
+
+    public String getBatchingPolicyState();
+
+    public long getOffHeapAllocatedBytes();
+
+    public long getOffHeapUsedBytes();
+
+    public int getOffHeapStoredCount();
+
+    public long getOffHeapFallbackCount();
+
+    public long getValueCacheHitCount();
+
+    public long getValueCacheMissCount();
+
+    public long getValueCacheEvictionCount();
+
+    public int getValueCacheSize();
 }
@@ -1,5 +1,8 @@
 package org.shoal.ha.cache.api;
 
+import org.shoal.ha.cache.impl.store.DeserializedValueCache;
+import org.shoal.ha.cache.impl.store.OffHeapReplicaStorage;
+
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -41,6 +44,8 @@ public class ReplicatedDataStoreStatsHolder<K, V> implements DataStoreMBean {
 
     private AtomicInteger executedRemoveCount = new AtomicInteger(0);
 
+    private AtomicInteger unacknowledgedReplicationCount = new AtomicInteger(0);
+
     private AtomicInteger batchSentCount = new AtomicInteger(0);
 
     private AtomicInteger batchReceivedCount = new AtomicInteger(0);
@@ -57,6 +62,14 @@ public class ReplicatedDataStoreStatsHolder<K, V> implements DataStoreMBean {
 
     private AtomicLong gmsSendBytesCount = new AtomicLong(0);
 
+    private AtomicInteger compressedFrameCount = new AtomicInteger(0);
+
+    private AtomicLong compressionInputBytesCount = new AtomicLong(0);
+
+    private AtomicLong compressionOutputBytesCount = new AtomicLong(0);
+
+    private AtomicLong compressionTimeInNanos = new AtomicLong(0);
+
 
     public ReplicatedDataStoreStatsHolder(DataStoreContext<K, V> dsc) {
         this.dsc = dsc;
@@ -157,6 +170,11 @@ public class ReplicatedDataStoreStatsHolder<K, V> implements DataStoreMBean {
         return executedRemoveCount.get();
     }
 
+    //@Override
+    public int getUnacknowledgedReplicationCount() {
+        return unacknowledgedReplicationCount.get();
+    }
+
     public int getFlushThreadFlushedCount() {
         return flushThreadFlushedCount.get();
     }
@@ -185,6 +203,109 @@ public class ReplicatedDataStoreStatsHolder<K, V> implements DataStoreMBean {
         return gmsSendBytesCount.get();
     }
 
+    public String getFrameCompressorName() {
+        FrameCompressor compressor = dsc.getFrameCompressor();
+        return compressor == null ? "none" : compressor.getName();
+    }
+
+    public int getCompressedFrameCount() {
+        return compressedFrameCount.get();
+    }
+
+    public long getCompressionInputBytesCount() {
+        return compressionInputBytesCount.get();
+    }
+
+    public long getCompressionOutputBytesCount() {
+        return compressionOutputBytesCount.get();
+    }
+
+    /**
+     * @return compressed bytes / uncompressed bytes of all the frames that
+     *  were considered for compression
+     */
+    public double getCompressionRatio() {
+        long input = compressionInputBytesCount.get();
+        return input == 0 ? 1.0 : ((double) compressionOutputBytesCount.get()) / input;
+    }
+
+    public long getCompressionTimeInMillis() {
+        return compressionTimeInNanos.get() / 1000000;
+    }
+
+    public String getBatchingPolicyName() {
+        BatchingPolicy policy = dsc.getBatchingPolicy();
+        return policy == null ? "?" : policy.getName();
+    }
+
+    public int getBatchingMaxBatchSize() {
+        BatchingPolicy policy = dsc.getBatchingPolicy();
+        return policy == null ? -1 : policy.getMaxBatchSize();
+    }
+
+    public int getBatchingMaxBatchBytes() {
+        BatchingPolicy policy = dsc.getBatchingPolicy();
+        return policy == null ? -1 : policy.getMaxBatchBytes();
+    }
+
+    public long getBatchingLingerTimeInMillis() {
+        BatchingPolicy policy = dsc.getBatchingPolicy();
+        return policy == null ? -1 : policy.getLingerTimeInMillis();
+    }
+
+    public String getBatchingPolicyState() {
+        BatchingPolicy policy = dsc.getBatchingPolicy();
+        return policy == null ? "?" : policy.toString();
+    }
+
+    public long getOffHeapAllocatedBytes() {
+        OffHeapReplicaStorage storage = getOffHeapStorage();
+        return storage == null ? 0 : storage.getAllocatedBytes();
+    }
+
+    public long getOffHeapUsedBytes() {
+        OffHeapReplicaStorage storage = getOffHeapStorage();
+        return storage == null ? 0 : storage.getUsedBytes();
+    }
+
+    public int getOffHeapStoredCount() {
+        OffHeapReplicaStorage storage = getOffHeapStorage();
+        return storage == null ? 0 : storage.getStoredCount();
+    }
+
+    public long getOffHeapFallbackCount() {
+        OffHeapReplicaStorage storage = getOffHeapStorage();
+        return storage == null ? 0 : storage.getHeapFallbackCount();
+    }
+
+    public long getValueCacheHitCount() {
+        DeserializedValueCache<K, V> valueCache = getValueCache();
+        return valueCache == null ? 0 : valueCache.getHitCount();
+    }
+
+    public long getValueCacheMissCount() {
+        DeserializedValueCache<K, V> valueCache = getValueCache();
+        return valueCache == null ? 0 : valueCache.getMissCount();
+    }
+
+    public long getValueCacheEvictionCount() {
+        DeserializedValueCache<K, V> valueCache = getValueCache();
+        return valueCache == null ? 0 : valueCache.getEvictionCount();
+    }
+
+    public int getValueCacheSize() {
+        DeserializedValueCache<K, V> valueCache = getValueCache();
+        return valueCache == null ? 0 : valueCache.size();
+    }
+
+    private DeserializedValueCache<K, V> getValueCache() {
+        return dsc.getReplicaStore() == null ? null : dsc.getReplicaStore().getValueCache();
+    }
+
+    private OffHeapReplicaStorage getOffHeapStorage() {
+        return dsc.getReplicaStore() == null ? null : dsc.getReplicaStore().getOffHeapStorage();
+    }
+
 
     //Mutators
 
@@ -232,6 +353,10 @@ public class ReplicatedDataStoreStatsHolder<K, V> implements DataStoreMBean {
         return executedRemoveCount.incrementAndGet();
     }
 
+    public int incrementUnacknowledgedReplicationCount() {
+        return unacknowledgedReplicationCount.incrementAndGet();
+    }
+
     public int incrementBatchReceivedCount() {
         return batchReceivedCount.incrementAndGet();
     }
@@ -267,6 +392,19 @@ public class ReplicatedDataStoreStatsHolder<K, V> implements DataStoreMBean {
         return gmsSendBytesCount.addAndGet(delta);
     }
 
+    /**
+     * @param outputBytes the number of bytes sent, which is inputBytes if the
+     *  frame did not get smaller
+     */
+    public void recordFrameCompression(int inputBytes, int outputBytes, long timeInNanos) {
+        if (outputBytes < inputBytes) {
+            compressedFrameCount.incrementAndGet();
+        }
+        compressionInputBytesCount.addAndGet(inputBytes);
+        compressionOutputBytesCount.addAndGet(outputBytes);
+        compressionTimeInNanos.addAndGet(timeInNanos);
+    }
+
 
     public int updateExecutedRemoveCount(int delta) {
         return executedRemoveCount.addAndGet(delta);
@@ -289,6 +427,7 @@ public class ReplicatedDataStoreStatsHolder<K, V> implements DataStoreMBean {
                 ", loadFailureCount=" + getLoadFailureCount() +
                 ", sentRemoveCount=" + getSentRemoveCount() +
                 ", executedRemoveCount=" + getExecutedRemoveCount() +
+                ", unacknowledgedReplicationCount=" + getUnacknowledgedReplicationCount() +
                 ", batchSentCount=" + getBatchSentCount() +
                 ", batchReceivedCount=" + getBatchReceivedCount() +
                 ", flushThreadWakeupCount=" + getFlushThreadWakeupCount() +
@@ -297,6 +436,14 @@ public class ReplicatedDataStoreStatsHolder<K, V> implements DataStoreMBean {
                 ", expiredEntriesCount=" + getExpiredEntriesCount() +
                 ", gmsSendCount=" + getGmsSendCount() +
                 ", gmsSendBytesCount=" + getGmsSendBytesCount() +
+                ", compressedFrameCount=" + getCompressedFrameCount() +
+                ", compressionRatio=" + getCompressionRatio() +
+                ", batchingPolicy=" + getBatchingPolicyState() +
+                ", offHeapUsedBytes=" + getOffHeapUsedBytes() +
+                ", offHeapFallbackCount=" + getOffHeapFallbackCount() +
+                ", valueCacheHitCount=" + getValueCacheHitCount() +
+                ", valueCacheMissCount=" + getValueCacheMissCount() +
+                ", valueCacheEvictionCount=" + getValueCacheEvictionCount() +
                 '}';
     }
 }
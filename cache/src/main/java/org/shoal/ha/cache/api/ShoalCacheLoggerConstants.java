@@ -82,5 +82,9 @@ public class ShoalCacheLoggerConstants {
     public static final String CACHE_SIZE_RESPONSE_COMMAND = "org.shoal.ha.cache.command.size";
 
     public static final String CACHE_REMOVE_EXPIRED_COMMAND = "org.shoal.ha.cache.command.remove_expired";
+
+    public static final String CACHE_CRITERIA_COMMAND = "org.shoal.ha.cache.command.criteria";
+
+    public static final String CACHE_EXECUTE_COMMAND = "org.shoal.ha.cache.command.execute";
     
 }
@@ -222,6 +222,68 @@ public abstract class Command<K, V>
         return false;
     }
 
+    /**
+     * Commands that can be written using the compact wire format (see
+     * {@link CommandCodec}) must return a fresh, uninitialized instance
+     * of themselves. The returned instance is populated through
+     * readCommandState(). Commands that return null are sent using
+     * java serialization.
+     *
+     * @return a new instance of this command or null
+     */
+    protected Command<K, V> createCommandForDecoding() {
+        return null;
+    }
+
+    /**
+     * Writes the command specific fields (the opcode and the key are
+     * written by the CommandCodec). Subclasses must call super first.
+     */
+    protected void writeCommandState(ReplicationOutputStream ros)
+            throws IOException {
+    }
+
+    /**
+     * Reads the fields written by writeCommandState(). Subclasses must
+     * call super first.
+     */
+    protected void readCommandState(ReplicationInputStream ris)
+            throws IOException {
+    }
+
+    final void writeKey(ReplicationOutputStream ros)
+            throws IOException {
+        if (isArtificialKey()) {
+            ros.write(CommandCodec.NO_KEY);
+        } else {
+            KeyTransformer<K> kt = dsc.getKeyTransformer();
+            if (kt != null) {
+                ros.write(CommandCodec.TRANSFORMED_KEY);
+                ros.writeLengthPrefixedBytes(kt.keyToByteArray(key));
+            }  else {
+                ros.write(CommandCodec.SERIALIZED_KEY);
+                ros.writeLengthPrefixedObject(key);
+            }
+        }
+    }
+
+    final void readKey(ReplicationInputStream ris, ClassLoader loader)
+            throws IOException {
+        int keyType = ris.read();
+        switch (keyType) {
+            case CommandCodec.NO_KEY:
+                break;
+            case CommandCodec.TRANSFORMED_KEY:
+                rawKey = ris.readLengthPrefixedBytes();
+                break;
+            case CommandCodec.SERIALIZED_KEY:
+                key = (K) CommandCodec.deserialize(ris.readLengthPrefixedBytes(), loader);
+                break;
+            default:
+                throw new IOException("Unknown key type: " + keyType + " for opcode: " + opcode);
+        }
+    }
+
     protected abstract boolean beforeTransmit()
             throws IOException;
 
@@ -0,0 +1,315 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2012 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.shoal.ha.cache.impl.command;
+
+import org.shoal.ha.cache.api.DataStoreContext;
+import org.shoal.ha.cache.api.FrameCompressor;
+import org.shoal.ha.cache.api.ObjectInputStreamWithLoader;
+import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
+import org.shoal.ha.cache.impl.util.DeflateFrameCompressor;
+import org.shoal.ha.cache.impl.util.ReplicationInputStream;
+import org.shoal.ha.cache.impl.util.ReplicationOutputStream;
+import org.shoal.ha.cache.impl.util.ReplicationOutputStreamPool;
+import org.shoal.ha.cache.impl.util.Utility;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Array;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Encodes and decodes commands for transmission.
+ *
+ * Commands that are registered with a CommandManager and that return a non null
+ * value from createCommandForDecoding() are written in a compact, opcode driven
+ * binary format:
+ *
+ *  [CODEC_MAGIC][CODEC_VERSION][opcode][key type][key bytes][command state]
+ *
+ * All other commands are written using java serialization. Since a serialized
+ * stream always starts with STREAM_MAGIC (0xACED), the first byte is enough
+ * to tell the two formats apart while decoding.
+ *
+ * If the DataStore has a FrameCompressor, a top level message that is at least
+ * getFrameCompressionThreshold() bytes long may be compressed in place by compress():
+ *
+ *  [COMPRESSED_MAGIC][compressor id][uncompressed length][compressed bytes]
+ */
+public class CommandCodec<K, V> {
+
+    private static final Logger _logger = Logger.getLogger(ShoalCacheLoggerConstants.CACHE_COMMAND);
+
+    public static final byte CODEC_MAGIC = (byte) 0x5C;
+
+    public static final byte CODEC_VERSION = 1;
+
+    public static final byte COMPRESSED_MAGIC = (byte) 0x5D;
+
+    private static final FrameCompressor DEFAULT_COMPRESSOR = new DeflateFrameCompressor();
+
+    static final int NO_KEY = 0;
+
+    static final int TRANSFORMED_KEY = 1;
+
+    static final int SERIALIZED_KEY = 2;
+
+    private static final boolean COMPACT_CODEC_ENABLED;
+
+    static {
+        boolean enabled = true;
+        try {
+            enabled = Boolean.valueOf(
+                    System.getProperty("org.shoal.cache.command.compact.codec", "true"));
+        } catch (Exception ex) {
+            //Ignore
+        }
+
+        COMPACT_CODEC_ENABLED = enabled;
+    }
+
+    private DataStoreContext<K, V> dsc;
+
+    private Command<K, V>[] templates = (Command<K, V>[]) Array.newInstance(Command.class, 256);
+
+    public CommandCodec(DataStoreContext<K, V> dsc) {
+        this.dsc = dsc;
+    }
+
+    void registerCommand(Command<K, V> command) {
+        Command<K, V> decodable = command.createCommandForDecoding();
+        if (decodable != null && decodable.getClass() == command.getClass()) {
+            templates[command.getOpcode() & 0xFF] = command;
+        } else {
+            templates[command.getOpcode() & 0xFF] = null;
+        }
+    }
+
+    /**
+     * @return true if the command can be written using the compact format
+     */
+    public boolean isCompactCodecSupported(Command<K, V> cmd) {
+        return COMPACT_CODEC_ENABLED && templates[cmd.getOpcode() & 0xFF] != null;
+    }
+
+    /**
+     * Encodes the command into a pooled buffer and returns a copy of the encoded
+     *  bytes. The pooled buffer is recycled before returning. The transmit path
+     *  uses encode(cmd, ros) and sends the pooled buffer itself.
+     */
+    public byte[] encode(Command<K, V> cmd)
+            throws IOException {
+        ReplicationOutputStreamPool pool = ReplicationOutputStreamPool._getInstance();
+        ReplicationOutputStream ros = pool.borrow();
+        try {
+            encode(cmd, ros);
+            return ros.toByteArray();
+        } finally {
+            pool.recycle(ros);
+        }
+    }
+
+    public void encode(Command<K, V> cmd, ReplicationOutputStream ros)
+            throws IOException {
+        if (isCompactCodecSupported(cmd)) {
+            ros.write(CODEC_MAGIC);
+            ros.write(CODEC_VERSION);
+            writeCommand(ros, cmd);
+        } else {
+            ObjectOutputStream oos = new ObjectOutputStream(ros);
+            oos.writeObject(cmd);
+            oos.flush();
+        }
+    }
+
+    /**
+     * Compresses the message that was encoded into ros if a FrameCompressor is
+     *  configured and the message is large enough. The compressed message
+     *  replaces the encoded one in ros, so the pooled buffer is reused.
+     *
+     * @return true if the message was compressed
+     */
+    public boolean compress(ReplicationOutputStream ros)
+            throws IOException {
+        FrameCompressor compressor = dsc.getFrameCompressor();
+        int length = ros.size();
+        if (compressor == null || length < dsc.getFrameCompressionThreshold()) {
+            return false;
+        }
+
+        long startTime = System.nanoTime();
+        byte[] compressed = compressor.compress(ros.getBuffer(), 0, length);
+        long compressionTime = System.nanoTime() - startTime;
+        if (compressed.length + 6 >= length) {
+            if (dsc.getDataStoreMBean() != null) {
+                dsc.getDataStoreMBean().recordFrameCompression(length, length, compressionTime);
+            }
+            return false;
+        }
+
+        ros.reset();
+        ros.write(COMPRESSED_MAGIC);
+        ros.write(compressor.getId());
+        ros.writeInt(length);
+        ros.write(compressed);
+        if (dsc.getDataStoreMBean() != null) {
+            dsc.getDataStoreMBean().recordFrameCompression(length, ros.size(), compressionTime);
+        }
+        return true;
+    }
+
+    private byte[] decompress(byte[] data)
+            throws IOException {
+        if (data.length < 6) {
+            throw new IOException("Truncated compressed frame");
+        }
+        FrameCompressor compressor = dsc.getFrameCompressor();
+        if (compressor == null || compressor.getId() != data[1]) {
+            if (data[1] != DEFAULT_COMPRESSOR.getId()) {
+                throw new IOException("No FrameCompressor with id: " + data[1]);
+            }
+            compressor = DEFAULT_COMPRESSOR;
+        }
+        int uncompressedLength = Utility.bytesToInt(data, 2);
+        return compressor.decompress(data, 6, data.length - 6, uncompressedLength);
+    }
+
+    public Command<K, V> decode(byte[] data)
+            throws IOException, ClassNotFoundException {
+        if (data.length > 0 && data[0] == COMPRESSED_MAGIC) {
+            data = decompress(data);
+        }
+        if (data.length > 0 && data[0] == CODEC_MAGIC) {
+            ReplicationInputStream ris = new ReplicationInputStream(data);
+            ris.read();
+            int version = ris.read();
+            if (version != CODEC_VERSION) {
+                throw new IOException("Unsupported codec version: " + version
+                        + ". Expected version: " + CODEC_VERSION);
+            }
+            return readCommand(ris);
+        } else {
+            ObjectInputStream ois = null;
+            ByteArrayInputStream bis = null;
+            try {
+                bis = new ByteArrayInputStream(data);
+                ois = (dsc.getKeyTransformer() == null)
+                    ? new ObjectInputStreamWithLoader(bis, dsc.getClassLoader())
+                    : new ObjectInputStream(bis);
+                return (Command<K, V>) ois.readObject();
+            } finally {
+                try {bis.close();} catch (Exception ex) {_logger.log(Level.FINEST, "Ignorable error while closing ByteArrayInputStream");}
+                try {ois.close();} catch (Exception ex) {_logger.log(Level.FINEST, "Ignorable error while closing ObjectInputStream");}
+            }
+        }
+    }
+
+    /**
+     * Writes a command that is nested inside another command (for example
+     * inside a ReplicationFramePayloadCommand). Commands that do not support
+     * the compact format are written as length prefixed serialized bytes.
+     */
+    public void writeNestedCommand(ReplicationOutputStream ros, Command<K, V> cmd)
+            throws IOException {
+        boolean compact = isCompactCodecSupported(cmd);
+        ros.writeBoolean(compact);
+        if (compact) {
+            writeCommand(ros, cmd);
+        } else {
+            ros.writeLengthPrefixedObject(cmd);
+        }
+    }
+
+    public Command<K, V> readNestedCommand(ReplicationInputStream ris)
+            throws IOException, ClassNotFoundException {
+        boolean compact = ris.readBoolean();
+        if (compact) {
+            return readCommand(ris);
+        } else {
+            return (Command<K, V>) deserialize(ris.readLengthPrefixedBytes(), dsc.getClassLoader());
+        }
+    }
+
+    private void writeCommand(ReplicationOutputStream ros, Command<K, V> cmd)
+            throws IOException {
+        ros.write(cmd.getOpcode());
+        cmd.writeKey(ros);
+        cmd.writeCommandState(ros);
+    }
+
+    private Command<K, V> readCommand(ReplicationInputStream ris)
+            throws IOException {
+        int opcode = ris.read();
+        Command<K, V> template = templates[opcode];
+        if (template == null) {
+            throw new IOException("No command registered for opcode: " + opcode);
+        }
+        Command<K, V> cmd = template.createCommandForDecoding();
+        cmd.initialize(dsc);
+        cmd.readKey(ris, dsc.getClassLoader());
+        cmd.readCommandState(ris);
+        return cmd;
+    }
+
+    public static Object deserialize(byte[] data, ClassLoader loader)
+            throws IOException {
+        if (data == null) {
+            return null;
+        }
+        ObjectInputStreamWithLoader ois = null;
+        ByteArrayInputStream bis = new ByteArrayInputStream(data);
+        try {
+            ois = new ObjectInputStreamWithLoader(bis, loader);
+            return ois.readObject();
+        } catch (ClassNotFoundException cnfEx) {
+            IOException ioEx = new IOException("Error while deserializing");
+            ioEx.initCause(cnfEx);
+            throw ioEx;
+        } finally {
+            try {bis.close();} catch (Exception ex) {_logger.log(Level.FINEST, "Ignorable error while closing ByteArrayInputStream");}
+            try {ois.close();} catch (Exception ex) {_logger.log(Level.FINEST, "Ignorable error while closing ObjectInputStream");}
+        }
+    }
+
+}
@@ -48,9 +48,7 @@ import org.shoal.ha.cache.impl.interceptor.TransmitInterceptor;
 import org.shoal.ha.cache.impl.util.MessageReceiver;
 import org.shoal.ha.cache.impl.util.ReplicationInputStream;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.lang.reflect.Array;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
@@ -69,6 +67,8 @@ public class CommandManager<K, V>
 
     private Command<K, V>[] commands = (Command<K, V>[]) Array.newInstance(Command.class, 256);
 
+    private CommandCodec<K, V> codec;
+
     private volatile AbstractCommandInterceptor<K, V> head;
 
     private volatile AbstractCommandInterceptor<K, V> tail;
@@ -82,7 +82,7 @@ public class CommandManager<K, V>
     public void initialize(DataStoreContext<K, V> dsc) {
         this.dsc = dsc;
         this.myName = dsc.getInstanceName();
-
+        this.codec = new CommandCodec<K, V>(dsc);
 
         head = new CommandHandlerInterceptor<K, V>();
         head.initialize(dsc);
@@ -97,6 +97,11 @@ public class CommandManager<K, V>
     public void registerCommand(Command command) {
         commands[command.getOpcode()] = command;
         command.initialize(dsc);
+        codec.registerCommand(command);
+    }
+
+    public CommandCodec<K, V> getCommandCodec() {
+        return codec;
     }
 
     public synchronized void registerExecutionInterceptor(AbstractCommandInterceptor<K, V> interceptor) {
@@ -132,14 +137,8 @@ public class CommandManager<K, V>
     @Override
     protected void handleMessage(String sourceMemberName, String token, byte[] messageData) {
 
-        ObjectInputStream ois = null;
-        ByteArrayInputStream bis = null;
         try {
-            bis = new ByteArrayInputStream(messageData);
-            ois = (dsc.getKeyTransformer() == null)
-                ? new ObjectInputStreamWithLoader(bis, dsc.getClassLoader())
-                : new ObjectInputStream(bis);
-            Command<K, V> cmd = (Command<K, V>) ois.readObject();
+            Command<K, V> cmd = codec.decode(messageData);
             if (_logger.isLoggable(Level.FINER)) {
                 _logger.log(Level.FINER, dsc.getServiceName() + " RECEIVED " + cmd);
             }
@@ -157,9 +156,6 @@ public class CommandManager<K, V>
             _logger.log(Level.WARNING, "Error during parsing command: opcode: " + messageData[0], dse);
         } catch (Throwable th) {
             _logger.log(Level.WARNING, "Error[2] during parsing command: opcode: " + messageData[0], th);
-        } finally {
-           try {bis.close();} catch (Exception ex) {_logger.log(Level.FINEST, "Ignorable error while closing ByteArrayInputStream");}
-           try {ois.close();} catch (Exception ex) {_logger.log(Level.FINEST, "Ignorable error while closing ObjectInputStream");}
         }
     }
 
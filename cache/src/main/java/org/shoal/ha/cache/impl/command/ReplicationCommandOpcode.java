@@ -64,12 +64,24 @@ public class ReplicationCommandOpcode {
 
     public static final byte REMOVE_EXPIRED_RESULT = 44;
 
+    public static final byte LOAD_ALL_REQUEST = 45;
+
+    public static final byte LOAD_ALL_RESPONSE = 46;
+
     public static final byte STALE_REMOVE = 40;
 
     public static final byte SIZE_REQUEST = 51;
 
     public static final byte SIZE_RESPONSE = 52;
 
+    public static final byte FIND_BY_CRITERIA = 53;
+
+    public static final byte FIND_BY_CRITERIA_RESULT = 54;
+
+    public static final byte EXECUTE_ON_KEY = 55;
+
+    public static final byte EXECUTE_ON_KEY_RESULT = 56;
+
 
     public static final byte STOREABLE_SAVE = 68;
 
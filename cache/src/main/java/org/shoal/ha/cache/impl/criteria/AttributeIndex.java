@@ -0,0 +1,312 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.shoal.ha.cache.impl.criteria;
+
+import org.glassfish.ha.store.annotations.Attribute;
+import org.glassfish.ha.store.criteria.spi.Opcode;
+import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A secondary index over the value of one @Attribute getter. The index maps
+ *  each attribute value to the keys of the entries that have it, so that
+ *  equality and range constraints of a criteria can be answered without
+ *  scanning every entry (see CriteriaPredicate.findCandidates).
+ *
+ * Integral values are indexed as Long and floating point values as Double, the
+ *  same way CriteriaCompiler compares them. Entries whose attribute is null (or
+ *  that have no value) are not indexed.
+ *
+ * The index only narrows the entries to look at. The caller must still test the
+ *  candidates against the full predicate.
+ */
+public class AttributeIndex<K> {
+
+    private static final Logger _logger = Logger.getLogger(ShoalCacheLoggerConstants.CACHE_CRITERIA_COMMAND);
+
+    private final String attributeName;
+
+    private final Method getter;
+
+    private final Class<?> indexedType;
+
+    private final TreeMap<Object, Set<K>> index = new TreeMap<Object, Set<K>>();
+
+    private final Map<K, Indexed> indexedKeys = new HashMap<K, Indexed>();
+
+    private AttributeIndex(String attributeName, Method getter, Class<?> indexedType) {
+        this.attributeName = attributeName;
+        this.getter = getter;
+        this.indexedType = indexedType;
+    }
+
+    /**
+     * @param valueClazz the class of the values of the store
+     * @param attributeName the value() of the @Attribute annotation of the getter
+     *  or, if that is empty, the property name of the getter
+     * @throws IllegalArgumentException if valueClazz has no such @Attribute getter
+     *  or if the type of the attribute is not Comparable
+     */
+    public static <K> AttributeIndex<K> create(Class<?> valueClazz, String attributeName) {
+        for (Method method : valueClazz.getMethods()) {
+            Attribute attr = method.getAnnotation(Attribute.class);
+            if (attr == null || method.getParameterTypes().length != 0
+                    || !attributeName.equals(getAttributeName(method, attr))) {
+                continue;
+            }
+
+            Class<?> indexedType = toIndexedType(method.getReturnType());
+            if (indexedType == null) {
+                throw new IllegalArgumentException("Attribute " + attributeName + " of "
+                        + valueClazz.getName() + " is not Comparable: " + method.getReturnType().getName());
+            }
+            return new AttributeIndex<K>(attributeName, method, indexedType);
+        }
+
+        throw new IllegalArgumentException("No @Attribute getter " + attributeName + " in " + valueClazz.getName());
+    }
+
+    private static String getAttributeName(Method method, Attribute attr) {
+        if (attr.value().length() > 0) {
+            return attr.value();
+        }
+
+        String name = method.getName();
+        if (name.startsWith("get") && name.length() > 3) {
+            name = name.substring(3);
+        } else if (name.startsWith("is") && name.length() > 2) {
+            name = name.substring(2);
+        }
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static Class<?> toIndexedType(Class<?> type) {
+        if (type == int.class || type == long.class || type == short.class || type == byte.class
+                || type == Integer.class || type == Long.class || type == Short.class || type == Byte.class) {
+            return Long.class;
+        } else if (type == float.class || type == double.class || type == Float.class || type == Double.class) {
+            return Double.class;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        } else if (type == char.class) {
+            return Character.class;
+        }
+        return Comparable.class.isAssignableFrom(type) ? type : null;
+    }
+
+    public String getAttributeName() {
+        return attributeName;
+    }
+
+    /**
+     * @return the name of the getter method, as used by CriteriaPredicate
+     */
+    public String getGetterName() {
+        return getter.getName();
+    }
+
+    /**
+     * Re-indexes the entry of key after its value changed.
+     *
+     * @param owner the entry that holds v. remove() only removes the key if it
+     *  was indexed for the same entry
+     * @param v the new value or null if the entry has no value
+     */
+    public synchronized void update(K key, Object owner, Object v) {
+        Object value = v == null ? null : toIndexKey(read(v));
+        Indexed old = indexedKeys.get(key);
+        if (old != null) {
+            if (value != null && value.equals(old.value)) {
+                old.owner = owner;
+                return;
+            }
+            removeFromIndex(key, old.value);
+        }
+
+        if (value == null) {
+            indexedKeys.remove(key);
+        } else {
+            indexedKeys.put(key, new Indexed(owner, value));
+            Set<K> keys = index.get(value);
+            if (keys == null) {
+                keys = new HashSet<K>();
+                index.put(value, keys);
+            }
+            keys.add(key);
+        }
+    }
+
+    /**
+     * Removes key, if it is still indexed for the entry owner.
+     */
+    public synchronized void remove(K key, Object owner) {
+        Indexed old = indexedKeys.get(key);
+        if (old != null && old.owner == owner) {
+            indexedKeys.remove(key);
+            removeFromIndex(key, old.value);
+        }
+    }
+
+    /**
+     * @param opcode one of EQ, LT, LTE, GT or GTE
+     * @return the keys whose attribute value compares with literal as opcode
+     *  says or null if this index cannot answer that (e.g. if literal is of an
+     *  other type than the attribute)
+     */
+    public synchronized Set<K> find(Opcode opcode, Object literal) {
+        Object value = toIndexKey(literal);
+        if (value == null) {
+            return null;
+        }
+
+        Map<Object, Set<K>> range;
+        switch (opcode) {
+            case EQ:
+                Set<K> keys = index.get(value);
+                return keys == null ? new HashSet<K>() : new HashSet<K>(keys);
+            case LT:
+                range = index.headMap(value, false);
+                break;
+            case LTE:
+                range = index.headMap(value, true);
+                break;
+            case GT:
+                range = index.tailMap(value, false);
+                break;
+            case GTE:
+                range = index.tailMap(value, true);
+                break;
+            default:
+                return null;
+        }
+
+        Set<K> result = new HashSet<K>();
+        for (Set<K> keys : range.values()) {
+            result.addAll(keys);
+        }
+        return result;
+    }
+
+    /**
+     * @return the keys whose attribute value equals one of literals or null if
+     *  this index cannot answer that
+     */
+    public synchronized Set<K> findIn(Collection<?> literals) {
+        Set<K> result = new HashSet<K>();
+        for (Object literal : literals) {
+            Set<K> keys = find(Opcode.EQ, literal);
+            if (keys == null) {
+                return null;
+            }
+            result.addAll(keys);
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return indexedKeys.size();
+    }
+
+    private void removeFromIndex(K key, Object value) {
+        Set<K> keys = index.get(value);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            index.remove(value);
+        }
+    }
+
+    private Object read(Object v) {
+        if (!getter.getDeclaringClass().isInstance(v)) {
+            return null;
+        }
+        try {
+            return getter.invoke(v);
+        } catch (Exception ex) {
+            if (_logger.isLoggable(Level.FINE)) {
+                _logger.log(Level.FINE, "AttributeIndex[" + attributeName + "] cannot read attribute", ex);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return value as it is kept in the index or null if it cannot be compared
+     *  with the indexed values
+     */
+    private Object toIndexKey(Object value) {
+        if (value == null) {
+            return null;
+        } else if (indexedType == Long.class) {
+            return (value instanceof Long || value instanceof Integer
+                    || value instanceof Short || value instanceof Byte) ? ((Number) value).longValue() : null;
+        } else if (indexedType == Double.class) {
+            return (value instanceof Double || value instanceof Float || value instanceof Long
+                    || value instanceof Integer || value instanceof Short || value instanceof Byte)
+                    ? ((Number) value).doubleValue() : null;
+        }
+        return value.getClass() == indexedType ? value : null;
+    }
+
+    private static final class Indexed {
+
+        private Object owner;
+
+        private final Object value;
+
+        Indexed(Object owner, Object value) {
+            this.owner = owner;
+            this.value = value;
+        }
+    }
+
+    public String toString() {
+        return "AttributeIndex{" + attributeName + ", size=" + size() + "}";
+    }
+}
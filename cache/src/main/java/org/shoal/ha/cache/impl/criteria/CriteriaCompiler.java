@@ -0,0 +1,752 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.cache.impl.criteria;
+
+import org.glassfish.ha.store.criteria.spi.Opcode;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compiles the expression tree of a CriteriaPredicate, for a given value class,
+ *  into a tree of Terms that are specialised for their operands:
+ *
+ *  - the getters are looked up once, when the criteria is compiled
+ *  - comparing an attribute with a numeric literal is done on a long (or a
+ *    double) and the literal is converted once
+ *  - an IN over literals is a lookup in a HashSet
+ *  - nested ANDs (and ORs) are flattened and their terms are ordered by their
+ *    estimated cost and selectivity, so that the cheap terms that are most
+ *    likely to decide the result are evaluated first
+ *
+ * Anything else (e.g. comparing two attributes) falls back to a generic term
+ *  that compares the operands at evaluation time.
+ */
+class CriteriaCompiler {
+
+    //The possible outcomes of comparing an attribute with a literal. A comparison
+    //  is compiled into the set of outcomes for which it is true
+    private static final int LESS = 1;
+
+    private static final int EQUAL = 2;
+
+    private static final int GREATER = 4;
+
+    //Rough guesses of the fraction of the values that satisfy a term
+    private static final double EQ_SELECTIVITY = 0.1;
+
+    private static final double RANGE_SELECTIVITY = 0.33;
+
+    private static final double UNKNOWN_SELECTIVITY = 0.5;
+
+    private static final double MAX_IN_SELECTIVITY = 0.9;
+
+    private CriteriaCompiler() {
+    }
+
+    static Term compile(CriteriaPredicate.Node root, Class<?> clazz) {
+        return new CriteriaCompiler.Context(clazz).toTerm(root);
+    }
+
+    /**
+     * A compiled boolean expression.
+     */
+    abstract static class Term {
+
+        abstract boolean test(Object v);
+
+        /**
+         * @return the estimated fraction of the values for which test() is true
+         */
+        abstract double selectivity();
+
+        /**
+         * @return the estimated cost of test(), in getter calls
+         */
+        abstract int cost();
+    }
+
+    /**
+     * A compiled operand of a generic comparison.
+     */
+    private abstract static class Value {
+
+        abstract Object get(Object v);
+
+        int cost() {
+            return 0;
+        }
+    }
+
+    private static class Context {
+
+        private Class<?> clazz;
+
+        Context(Class<?> clazz) {
+            this.clazz = clazz;
+        }
+
+        Term toTerm(CriteriaPredicate.Node node) {
+            switch (node.opcode) {
+                case AND:
+                case OR:
+                    List<Term> terms = new ArrayList<Term>();
+                    flatten(node, node.opcode, terms);
+                    return node.opcode == Opcode.AND ? new And(terms) : new Or(terms);
+                case EQ:
+                case NEQ:
+                case LT:
+                case GT:
+                case LTE:
+                case GTE:
+                    return toComparison(node);
+                case IN:
+                    return toIn(node);
+                case ATTR:
+                    return new EqualsLiteral(getter(node), Boolean.TRUE, false);
+                case LITERAL:
+                    return new Constant(Boolean.TRUE.equals(node.value));
+                default:
+                    throw new IllegalArgumentException("Unknown opcode: " + node.opcode);
+            }
+        }
+
+        private void flatten(CriteriaPredicate.Node node, Opcode opcode, List<Term> terms) {
+            if (node.opcode == opcode) {
+                flatten(node.left, opcode, terms);
+                flatten(node.right, opcode, terms);
+            } else {
+                terms.add(toTerm(node));
+            }
+        }
+
+        private Term toComparison(CriteriaPredicate.Node node) {
+            int outcomes = outcomesOf(node.opcode);
+            CriteriaPredicate.Node attr = node.left;
+            CriteriaPredicate.Node literal = node.right;
+            if (attr.opcode == Opcode.LITERAL && literal.opcode == Opcode.ATTR) {
+                attr = node.right;
+                literal = node.left;
+                outcomes = (outcomes & EQUAL) | ((outcomes & LESS) != 0 ? GREATER : 0)
+                        | ((outcomes & GREATER) != 0 ? LESS : 0);
+            }
+            if (attr.opcode != Opcode.ATTR || literal.opcode != Opcode.LITERAL) {
+                return new GenericComparison(toValue(node.left), toValue(node.right), outcomesOf(node.opcode));
+            }
+
+            Getter getter = getter(attr);
+            Class<?> type = getter.getType();
+            Object value = literal.value;
+            boolean equality = outcomes == EQUAL || outcomes == (LESS | GREATER);
+            if (value == null) {
+                return equality ? new EqualsLiteral(getter, null, outcomes != EQUAL) : new Constant(false);
+            } else if (isIntegral(value.getClass()) && isIntegral(type)) {
+                return new LongComparison(getter, ((Number) value).longValue(), outcomes);
+            } else if (isNumber(value.getClass()) && isNumber(type)) {
+                return new DoubleComparison(getter, ((Number) value).doubleValue(), outcomes);
+            } else if (equality && !(value instanceof Number)) {
+                return new EqualsLiteral(getter, value, outcomes != EQUAL);
+            } else if (value instanceof Comparable && !(value instanceof Number)) {
+                return new ComparableComparison(getter, (Comparable<Object>) value, outcomes);
+            }
+            return new GenericComparison(getter, new Literal(value), outcomes);
+        }
+
+        private Term toIn(CriteriaPredicate.Node node) {
+            if (node.left.opcode != Opcode.ATTR) {
+                return new GenericIn(toValue(node.left), node.entries);
+            }
+
+            Getter getter = getter(node.left);
+            boolean allIntegral = true;
+            boolean anyNumber = false;
+            for (Object entry : node.entries) {
+                allIntegral &= entry != null && isIntegral(entry.getClass());
+                anyNumber |= entry instanceof Number;
+            }
+
+            if (allIntegral && isIntegral(getter.getType())) {
+                Set<Long> longs = new HashSet<Long>();
+                for (Object entry : node.entries) {
+                    longs.add(((Number) entry).longValue());
+                }
+                return new LongIn(getter, longs);
+            } else if (!anyNumber && !Number.class.isAssignableFrom(getter.getType())) {
+                return new HashIn(getter, new HashSet<Object>(node.entries));
+            }
+            return new GenericIn(getter, node.entries);
+        }
+
+        private Value toValue(CriteriaPredicate.Node node) {
+            switch (node.opcode) {
+                case ATTR:
+                    return getter(node);
+                case LITERAL:
+                    return new Literal(node.value);
+                default:
+                    return new TermValue(toTerm(node));
+            }
+        }
+
+        private Getter getter(CriteriaPredicate.Node node) {
+            try {
+                Method method = clazz.getMethod(node.getterName);
+                //The value class (or the class declaring the getter) need not be public
+                method.setAccessible(true);
+                return new Getter(method);
+            } catch (NoSuchMethodException nsmEx) {
+                throw new IllegalArgumentException("No method " + node.getterName + "() in " + clazz.getName());
+            }
+        }
+    }
+
+    private static int outcomesOf(Opcode opcode) {
+        switch (opcode) {
+            case EQ:
+                return EQUAL;
+            case NEQ:
+                return LESS | GREATER;
+            case LT:
+                return LESS;
+            case LTE:
+                return LESS | EQUAL;
+            case GT:
+                return GREATER;
+            case GTE:
+                return GREATER | EQUAL;
+            default:
+                throw new IllegalArgumentException("Not a comparison: " + opcode);
+        }
+    }
+
+    private static double selectivityOf(int outcomes) {
+        switch (outcomes) {
+            case EQUAL:
+                return EQ_SELECTIVITY;
+            case LESS | GREATER:
+                return 1 - EQ_SELECTIVITY;
+            default:
+                return RANGE_SELECTIVITY;
+        }
+    }
+
+    private static boolean isIntegral(Class<?> type) {
+        return type == Integer.class || type == Long.class || type == Short.class || type == Byte.class
+                || type == int.class || type == long.class || type == short.class || type == byte.class;
+    }
+
+    private static boolean isNumber(Class<?> type) {
+        return isIntegral(type) || type == Double.class || type == Float.class
+                || type == double.class || type == float.class;
+    }
+
+    private static boolean valueEquals(Object l, Object r) {
+        if (l == r) {
+            return true;
+        } else if (l == null || r == null) {
+            return false;
+        } else if (l instanceof Number && r instanceof Number && l.getClass() != r.getClass()) {
+            return compareNumbers((Number) l, (Number) r) == 0;
+        }
+        return l.equals(r);
+    }
+
+    /**
+     * @return the result of comparing l to r or null if they cannot be compared
+     */
+    private static Integer compare(Object l, Object r) {
+        if (l == null || r == null) {
+            return null;
+        } else if (l instanceof Number && r instanceof Number && l.getClass() != r.getClass()) {
+            return compareNumbers((Number) l, (Number) r);
+        } else if (l instanceof Comparable && l.getClass() == r.getClass()) {
+            return ((Comparable<Object>) l).compareTo(r);
+        }
+        return null;
+    }
+
+    private static int compareNumbers(Number l, Number r) {
+        if (isIntegral(l.getClass()) && isIntegral(r.getClass())) {
+            long lv = l.longValue();
+            long rv = r.longValue();
+            return lv < rv ? -1 : (lv == rv ? 0 : 1);
+        }
+        return Double.compare(l.doubleValue(), r.doubleValue());
+    }
+
+    private static int outcomeOf(int cmp) {
+        return cmp < 0 ? LESS : (cmp == 0 ? EQUAL : GREATER);
+    }
+
+    private static final class Getter
+            extends Value {
+
+        private final Method method;
+
+        Getter(Method method) {
+            this.method = method;
+        }
+
+        Class<?> getType() {
+            return method.getReturnType();
+        }
+
+        Object get(Object v) {
+            try {
+                return method.invoke(v);
+            } catch (IllegalAccessException iaEx) {
+                throw new IllegalArgumentException("Cannot access " + method, iaEx);
+            } catch (InvocationTargetException itEx) {
+                throw new IllegalArgumentException("Exception in " + method, itEx.getCause());
+            }
+        }
+
+        int cost() {
+            return 1;
+        }
+    }
+
+    private static final class Literal
+            extends Value {
+
+        private final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        Object get(Object v) {
+            return value;
+        }
+    }
+
+    private static final class TermValue
+            extends Value {
+
+        private final Term term;
+
+        TermValue(Term term) {
+            this.term = term;
+        }
+
+        Object get(Object v) {
+            return term.test(v);
+        }
+
+        int cost() {
+            return term.cost();
+        }
+    }
+
+    private static final class And
+            extends Term {
+
+        private final Term[] terms;
+
+        private final double selectivity;
+
+        private final int cost;
+
+        And(List<Term> list) {
+            //The term that is cheap and likely to be false goes first
+            terms = list.toArray(new Term[list.size()]);
+            Arrays.sort(terms, new Comparator<Term>() {
+                public int compare(Term t1, Term t2) {
+                    return Double.compare(rank(t1), rank(t2));
+                }
+
+                private double rank(Term t) {
+                    return t.cost() / Math.max(1 - t.selectivity(), 1e-6);
+                }
+            });
+
+            double s = 1;
+            int c = 0;
+            for (Term t : terms) {
+                s *= t.selectivity();
+                c += t.cost();
+            }
+            selectivity = s;
+            cost = c;
+        }
+
+        boolean test(Object v) {
+            for (Term t : terms) {
+                if (!t.test(v)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        double selectivity() {
+            return selectivity;
+        }
+
+        int cost() {
+            return cost;
+        }
+    }
+
+    private static final class Or
+            extends Term {
+
+        private final Term[] terms;
+
+        private final double selectivity;
+
+        private final int cost;
+
+        Or(List<Term> list) {
+            //The term that is cheap and likely to be true goes first
+            terms = list.toArray(new Term[list.size()]);
+            Arrays.sort(terms, new Comparator<Term>() {
+                public int compare(Term t1, Term t2) {
+                    return Double.compare(rank(t1), rank(t2));
+                }
+
+                private double rank(Term t) {
+                    return t.cost() / Math.max(t.selectivity(), 1e-6);
+                }
+            });
+
+            double none = 1;
+            int c = 0;
+            for (Term t : terms) {
+                none *= 1 - t.selectivity();
+                c += t.cost();
+            }
+            selectivity = 1 - none;
+            cost = c;
+        }
+
+        boolean test(Object v) {
+            for (Term t : terms) {
+                if (t.test(v)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        double selectivity() {
+            return selectivity;
+        }
+
+        int cost() {
+            return cost;
+        }
+    }
+
+    private static final class Constant
+            extends Term {
+
+        private final boolean value;
+
+        Constant(boolean value) {
+            this.value = value;
+        }
+
+        boolean test(Object v) {
+            return value;
+        }
+
+        double selectivity() {
+            return value ? 1 : 0;
+        }
+
+        int cost() {
+            return 0;
+        }
+    }
+
+    private static final class LongComparison
+            extends Term {
+
+        private final Getter getter;
+
+        private final long literal;
+
+        private final int outcomes;
+
+        LongComparison(Getter getter, long literal, int outcomes) {
+            this.getter = getter;
+            this.literal = literal;
+            this.outcomes = outcomes;
+        }
+
+        boolean test(Object v) {
+            Object attr = getter.get(v);
+            if (attr == null) {
+                return outcomes == (LESS | GREATER);
+            }
+            long value = ((Number) attr).longValue();
+            return (outcomes & (value < literal ? LESS : (value == literal ? EQUAL : GREATER))) != 0;
+        }
+
+        double selectivity() {
+            return selectivityOf(outcomes);
+        }
+
+        int cost() {
+            return 1;
+        }
+    }
+
+    private static final class DoubleComparison
+            extends Term {
+
+        private final Getter getter;
+
+        private final double literal;
+
+        private final int outcomes;
+
+        DoubleComparison(Getter getter, double literal, int outcomes) {
+            this.getter = getter;
+            this.literal = literal;
+            this.outcomes = outcomes;
+        }
+
+        boolean test(Object v) {
+            Object attr = getter.get(v);
+            if (attr == null) {
+                return outcomes == (LESS | GREATER);
+            }
+            return (outcomes & outcomeOf(Double.compare(((Number) attr).doubleValue(), literal))) != 0;
+        }
+
+        double selectivity() {
+            return selectivityOf(outcomes);
+        }
+
+        int cost() {
+            return 1;
+        }
+    }
+
+    private static final class ComparableComparison
+            extends Term {
+
+        private final Getter getter;
+
+        private final Comparable<Object> literal;
+
+        private final int outcomes;
+
+        ComparableComparison(Getter getter, Comparable<Object> literal, int outcomes) {
+            this.getter = getter;
+            this.literal = literal;
+            this.outcomes = outcomes;
+        }
+
+        boolean test(Object v) {
+            Object attr = getter.get(v);
+            if (attr == null || attr.getClass() != literal.getClass()) {
+                return false;
+            }
+            return (outcomes & outcomeOf(-literal.compareTo(attr))) != 0;
+        }
+
+        double selectivity() {
+            return selectivityOf(outcomes);
+        }
+
+        int cost() {
+            return 1;
+        }
+    }
+
+    private static final class EqualsLiteral
+            extends Term {
+
+        private final Getter getter;
+
+        private final Object literal;
+
+        private final boolean negate;
+
+        EqualsLiteral(Getter getter, Object literal, boolean negate) {
+            this.getter = getter;
+            this.literal = literal;
+            this.negate = negate;
+        }
+
+        boolean test(Object v) {
+            Object attr = getter.get(v);
+            boolean equal = literal == null ? attr == null : literal.equals(attr);
+            return equal != negate;
+        }
+
+        double selectivity() {
+            double s = literal instanceof Boolean ? UNKNOWN_SELECTIVITY : EQ_SELECTIVITY;
+            return negate ? 1 - s : s;
+        }
+
+        int cost() {
+            return 1;
+        }
+    }
+
+    private static final class LongIn
+            extends Term {
+
+        private final Getter getter;
+
+        private final Set<Long> literals;
+
+        LongIn(Getter getter, Set<Long> literals) {
+            this.getter = getter;
+            this.literals = literals;
+        }
+
+        boolean test(Object v) {
+            Object attr = getter.get(v);
+            return attr != null && literals.contains(((Number) attr).longValue());
+        }
+
+        double selectivity() {
+            return Math.min(MAX_IN_SELECTIVITY, EQ_SELECTIVITY * literals.size());
+        }
+
+        int cost() {
+            return 1;
+        }
+    }
+
+    private static final class HashIn
+            extends Term {
+
+        private final Getter getter;
+
+        private final Set<Object> literals;
+
+        HashIn(Getter getter, Set<Object> literals) {
+            this.getter = getter;
+            this.literals = literals;
+        }
+
+        boolean test(Object v) {
+            return literals.contains(getter.get(v));
+        }
+
+        double selectivity() {
+            return Math.min(MAX_IN_SELECTIVITY, EQ_SELECTIVITY * literals.size());
+        }
+
+        int cost() {
+            return 1;
+        }
+    }
+
+    private static final class GenericIn
+            extends Term {
+
+        private final Value value;
+
+        private final List<Object> literals;
+
+        GenericIn(Value value, List<Object> literals) {
+            this.value = value;
+            this.literals = literals;
+        }
+
+        boolean test(Object v) {
+            Object attr = value.get(v);
+            for (Object literal : literals) {
+                if (valueEquals(attr, literal)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        double selectivity() {
+            return Math.min(MAX_IN_SELECTIVITY, EQ_SELECTIVITY * literals.size());
+        }
+
+        int cost() {
+            return value.cost();
+        }
+    }
+
+    private static final class GenericComparison
+            extends Term {
+
+        private final Value left;
+
+        private final Value right;
+
+        private final int outcomes;
+
+        GenericComparison(Value left, Value right, int outcomes) {
+            this.left = left;
+            this.right = right;
+            this.outcomes = outcomes;
+        }
+
+        boolean test(Object v) {
+            Object l = left.get(v);
+            Object r = right.get(v);
+            if (outcomes == EQUAL) {
+                return valueEquals(l, r);
+            } else if (outcomes == (LESS | GREATER)) {
+                return !valueEquals(l, r);
+            }
+            Integer cmp = compare(l, r);
+            return cmp != null && (outcomes & outcomeOf(cmp.intValue())) != 0;
+        }
+
+        double selectivity() {
+            return outcomes == EQUAL || outcomes == (LESS | GREATER) ? selectivityOf(outcomes) : UNKNOWN_SELECTIVITY;
+        }
+
+        int cost() {
+            return left.cost() + right.cost();
+        }
+    }
+}
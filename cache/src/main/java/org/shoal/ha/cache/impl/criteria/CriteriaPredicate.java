@@ -0,0 +1,283 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.cache.impl.criteria;
+
+import org.glassfish.ha.store.criteria.Criteria;
+import org.glassfish.ha.store.criteria.spi.AttributeAccessNode;
+import org.glassfish.ha.store.criteria.spi.BinaryExpressionNode;
+import org.glassfish.ha.store.criteria.spi.ExpressionNode;
+import org.glassfish.ha.store.criteria.spi.InExpressionNode;
+import org.glassfish.ha.store.criteria.spi.LiteralNode;
+import org.glassfish.ha.store.criteria.spi.Opcode;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The serializable form of a Criteria. The expression nodes of a Criteria refer
+ *  to AttributeMetadata (and so to java.lang.reflect.Method) and cannot be sent
+ *  to the other instances. A CriteriaPredicate keeps only the opcodes, the
+ *  literals and the names of the attribute getters.
+ *
+ * The first call to matches() compiles the expression, for the class of the
+ *  value, into a CriteriaCompiler.Term (see CriteriaCompiler). The same
+ *  compiled form is used by the local and the remote scans. Where the replica
+ *  store has secondary indexes, findCandidates() narrows the entries to scan.
+ */
+public class CriteriaPredicate
+        implements Serializable {
+
+    private static final long serialVersionUID = 4956427743902417625L;
+
+    private Node root;
+
+    private transient volatile Compiled compiled;
+
+    private CriteriaPredicate(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @param criteria the criteria to compile. A null criteria (or one without an
+     *  expression) matches every value
+     * @throws IllegalArgumentException if the criteria uses a literal that is not
+     *  Serializable or an attribute without a getter
+     */
+    public static CriteriaPredicate compile(Criteria<?> criteria) {
+        ExpressionNode<?> expr = criteria == null ? null : (ExpressionNode<?>) criteria.getExpression();
+        return new CriteriaPredicate(expr == null ? null : toNode(expr));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the class of v does not have one of the
+     *  getters used by the criteria or if a getter fails
+     */
+    public boolean matches(Object v) {
+        if (v == null) {
+            return false;
+        } else if (root == null) {
+            return true;
+        }
+
+        Compiled c = compiled;
+        if (c == null || c.clazz != v.getClass()) {
+            c = new Compiled(v.getClass(), CriteriaCompiler.compile(root, v.getClass()));
+            compiled = c;
+        }
+        return c.term.test(v);
+    }
+
+    /**
+     * Narrows, using the secondary indexes, the keys of the entries that may
+     *  satisfy this predicate. Comparisons of an indexed attribute with a literal
+     *  (EQ, LT, LTE, GT, GTE and IN) are answered by the index, AND intersects
+     *  and OR unites the candidates of its operands.
+     *
+     * @param indexes the indexes by the name of the getter of their attribute
+     * @return the candidate keys (a superset of the matching ones) or null if
+     *  the indexes do not help and every entry has to be scanned
+     */
+    public <K> Set<K> findCandidates(Map<String, AttributeIndex<K>> indexes) {
+        return (root == null || indexes.isEmpty()) ? null : findCandidates(root, indexes);
+    }
+
+    private static <K> Set<K> findCandidates(Node node, Map<String, AttributeIndex<K>> indexes) {
+        switch (node.opcode) {
+            case AND: {
+                Set<K> left = findCandidates(node.left, indexes);
+                Set<K> right = findCandidates(node.right, indexes);
+                if (left == null || right == null) {
+                    return left == null ? right : left;
+                }
+                Set<K> smaller = left.size() <= right.size() ? left : right;
+                smaller.retainAll(smaller == left ? right : left);
+                return smaller;
+            }
+            case OR: {
+                Set<K> left = findCandidates(node.left, indexes);
+                Set<K> right = left == null ? null : findCandidates(node.right, indexes);
+                if (right == null) {
+                    return null;
+                }
+                left.addAll(right);
+                return left;
+            }
+            case IN: {
+                AttributeIndex<K> index = node.left.opcode == Opcode.ATTR ? indexes.get(node.left.getterName) : null;
+                return index == null ? null : index.findIn(node.entries);
+            }
+            case EQ:
+            case LT:
+            case LTE:
+            case GT:
+            case GTE: {
+                Node attr = node.left;
+                Node literal = node.right;
+                Opcode opcode = node.opcode;
+                if (attr.opcode == Opcode.LITERAL && literal.opcode == Opcode.ATTR) {
+                    attr = node.right;
+                    literal = node.left;
+                    opcode = flip(opcode);
+                }
+                if (attr.opcode != Opcode.ATTR || literal.opcode != Opcode.LITERAL) {
+                    return null;
+                }
+                AttributeIndex<K> index = indexes.get(attr.getterName);
+                return index == null ? null : index.find(opcode, literal.value);
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static Opcode flip(Opcode opcode) {
+        switch (opcode) {
+            case LT:
+                return Opcode.GT;
+            case LTE:
+                return Opcode.GTE;
+            case GT:
+                return Opcode.LT;
+            case GTE:
+                return Opcode.LTE;
+            default:
+                return opcode;
+        }
+    }
+
+    private static Node toNode(ExpressionNode<?> expr) {
+        Node node = new Node(expr.getOpcode());
+        if (expr instanceof InExpressionNode) {
+            InExpressionNode<?> inExpr = (InExpressionNode<?>) expr;
+            node.left = toNode(inExpr.getLeft());
+            node.entries = new ArrayList<Object>(inExpr.getEntries().size());
+            for (Object entry : inExpr.getEntries()) {
+                node.entries.add(checkSerializable(entry));
+            }
+            return node;
+        }
+
+        switch (expr.getOpcode()) {
+            case ATTR:
+                Method getter = ((AttributeAccessNode<?, ?>) expr).getAttributeMetadata().getGetterMethod();
+                if (getter == null) {
+                    throw new IllegalArgumentException("No getter for attribute: "
+                            + ((AttributeAccessNode<?, ?>) expr).getAttributeMetadata().getName());
+                }
+                node.getterName = getter.getName();
+                break;
+            case LITERAL:
+                node.value = checkSerializable(((LiteralNode<?>) expr).getValue());
+                break;
+            default:
+                BinaryExpressionNode<?> binExpr = (BinaryExpressionNode<?>) expr;
+                node.left = toNode(binExpr.getLeft());
+                node.right = toNode(binExpr.getRight());
+        }
+
+        return node;
+    }
+
+    private static Object checkSerializable(Object value) {
+        if (value != null && !(value instanceof Serializable)) {
+            throw new IllegalArgumentException("Criteria literal is not Serializable: " + value.getClass().getName());
+        }
+        return value;
+    }
+
+    /**
+     * A node of the (uncompiled) expression tree
+     */
+    static final class Node
+            implements Serializable {
+
+        private static final long serialVersionUID = 747291140599316572L;
+
+        Opcode opcode;
+
+        Node left;
+
+        Node right;
+
+        String getterName;
+
+        Object value;
+
+        List<Object> entries;
+
+        Node(Opcode opcode) {
+            this.opcode = opcode;
+        }
+
+        public String toString() {
+            switch (opcode) {
+                case ATTR:
+                    return getterName + "()";
+                case LITERAL:
+                    return String.valueOf(value);
+                case IN:
+                    return left + " IN " + entries;
+                default:
+                    return "(" + left + " " + opcode + " " + right + ")";
+            }
+        }
+    }
+
+    private static final class Compiled {
+
+        private final Class<?> clazz;
+
+        private final CriteriaCompiler.Term term;
+
+        Compiled(Class<?> clazz, CriteriaCompiler.Term term) {
+            this.clazz = clazz;
+            this.term = term;
+        }
+    }
+
+    public String toString() {
+        return "CriteriaPredicate{" + (root == null ? "*" : root.toString()) + "}";
+    }
+}
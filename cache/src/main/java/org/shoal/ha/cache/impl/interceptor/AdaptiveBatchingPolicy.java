@@ -0,0 +1,192 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2012 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.cache.impl.interceptor;
+
+import org.shoal.ha.cache.api.BatchingPolicy;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A BatchingPolicy that sizes frames from the observed traffic. After every
+ *  frame it updates (exponentially weighted) averages of the command arrival
+ *  rate, the encoded bytes per command and the frame send time, and then:
+ *
+ *  - allows as many commands in a frame as arrive during two send times, but
+ *    never more than maxBatchBytes worth of (estimated) encoded data
+ *  - lingers just long enough to fill such a frame. When the traffic is too
+ *    light to add even one more command within maxLingerTimeInMillis, frames
+ *    are sent after minLingerTimeInMillis instead.
+ */
+public class AdaptiveBatchingPolicy
+    implements BatchingPolicy {
+
+    public static final String NAME = "adaptive";
+
+    private static final double ALPHA = 0.25;
+
+    private final int minBatchSize;
+
+    private final int maxBatchSize;
+
+    private final int maxBatchBytes;
+
+    private final long minLingerTimeInMillis;
+
+    private final long maxLingerTimeInMillis;
+
+    private AtomicInteger arrivalCount = new AtomicInteger(0);
+
+    private long lastAdaptTime = System.nanoTime();
+
+    //Averages. Guarded by this
+    private double arrivalRatePerMilli;
+
+    private double bytesPerCommand;
+
+    private double sendTimeInMillis;
+
+    //Current decisions
+    private volatile int currentMaxBatchSize;
+
+    private volatile long currentLingerTimeInMillis;
+
+    public AdaptiveBatchingPolicy() {
+        this(1, 200, 64 * 1024, 5, 100);
+    }
+
+    public AdaptiveBatchingPolicy(int minBatchSize, int maxBatchSize, int maxBatchBytes,
+                                  long minLingerTimeInMillis, long maxLingerTimeInMillis) {
+        this.minBatchSize = Math.max(1, minBatchSize);
+        this.maxBatchSize = Math.max(this.minBatchSize, maxBatchSize);
+        this.maxBatchBytes = maxBatchBytes;
+        this.minLingerTimeInMillis = Math.max(1, minLingerTimeInMillis);
+        this.maxLingerTimeInMillis = Math.max(this.minLingerTimeInMillis, maxLingerTimeInMillis);
+
+        this.currentMaxBatchSize = this.maxBatchSize;
+        this.currentLingerTimeInMillis = this.minLingerTimeInMillis;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return currentMaxBatchSize;
+    }
+
+    @Override
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    @Override
+    public long getLingerTimeInMillis() {
+        return currentLingerTimeInMillis;
+    }
+
+    @Override
+    public long getFlushCheckIntervalInMillis() {
+        return minLingerTimeInMillis;
+    }
+
+    @Override
+    public void commandAdded() {
+        arrivalCount.incrementAndGet();
+    }
+
+    @Override
+    public synchronized void batchSent(int commandCount, int frameBytes, long sendTimeInNanos) {
+        long now = System.nanoTime();
+        double elapsedInMillis = Math.max(0.001, (now - lastAdaptTime) / 1000000.0);
+        lastAdaptTime = now;
+
+        arrivalRatePerMilli = average(arrivalRatePerMilli, arrivalCount.getAndSet(0) / elapsedInMillis);
+        sendTimeInMillis = average(sendTimeInMillis, sendTimeInNanos / 1000000.0);
+        if (frameBytes > 0 && commandCount > 0) {
+            bytesPerCommand = average(bytesPerCommand, ((double) frameBytes) / commandCount);
+        }
+
+        double window = Math.max(sendTimeInMillis, minLingerTimeInMillis) * 2;
+        int batchSize = clamp((long) Math.ceil(arrivalRatePerMilli * window), minBatchSize, maxBatchSize);
+        if (bytesPerCommand > 0) {
+            batchSize = Math.max(1, Math.min(batchSize, (int) (maxBatchBytes / bytesPerCommand)));
+        }
+
+        long linger = minLingerTimeInMillis;
+        if (arrivalRatePerMilli * maxLingerTimeInMillis >= 1) {
+            linger = clamp((long) (batchSize / arrivalRatePerMilli),
+                    (int) minLingerTimeInMillis, (int) maxLingerTimeInMillis);
+        }
+
+        currentMaxBatchSize = batchSize;
+        currentLingerTimeInMillis = linger;
+    }
+
+    public synchronized double getArrivalRatePerSecond() {
+        return arrivalRatePerMilli * 1000;
+    }
+
+    public synchronized double getAverageBytesPerCommand() {
+        return bytesPerCommand;
+    }
+
+    public synchronized double getAverageSendTimeInMillis() {
+        return sendTimeInMillis;
+    }
+
+    private static double average(double current, double sample) {
+        return current == 0 ? sample : current + ALPHA * (sample - current);
+    }
+
+    private static int clamp(long value, int min, int max) {
+        return (int) Math.max(min, Math.min(max, value));
+    }
+
+    public String toString() {
+        return "AdaptiveBatchingPolicy{maxBatchSize=" + currentMaxBatchSize
+                + ", lingerTimeInMillis=" + currentLingerTimeInMillis
+                + ", arrivalRatePerSecond=" + (long) getArrivalRatePerSecond()
+                + ", bytesPerCommand=" + (long) getAverageBytesPerCommand()
+                + ", sendTimeInMillis=" + getAverageSendTimeInMillis() + "}";
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2012 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.cache.impl.interceptor;
+
+import org.shoal.ha.cache.api.BatchingPolicy;
+import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The default BatchingPolicy. Frames are sent once they hold a fixed number of
+ *  commands or after a fixed period. Both can be overridden through the
+ *  org.shoal.cache.transmitter.max.batch.size and
+ *  org.shoal.cache.transmitter.frequency.in.millis system properties.
+ */
+public class FixedBatchingPolicy
+    implements BatchingPolicy {
+
+    private static final Logger _statsLogger =
+            Logger.getLogger(ShoalCacheLoggerConstants.CACHE_STATS);
+
+    public static final String NAME = "fixed";
+
+    static final String TRANSMITTER_FREQUECNCY_PROP_NAME = "org.shoal.cache.transmitter.frequency.in.millis";
+
+    static final String MAX_BATCH_SIZE_PROP_NAME = "org.shoal.cache.transmitter.max.batch.size";
+
+    private static final int DEFAULT_TRANSMITTER_FREQUECNCY_IN_MILLIS = 100;
+
+    private int maxBatchSize;
+
+    private long frequencyInMillis;
+
+    public FixedBatchingPolicy(int defaultMaxBatchSize) {
+        this.maxBatchSize = Integer.getInteger(MAX_BATCH_SIZE_PROP_NAME, defaultMaxBatchSize);
+        this.frequencyInMillis = Integer.getInteger(TRANSMITTER_FREQUECNCY_PROP_NAME,
+                DEFAULT_TRANSMITTER_FREQUECNCY_IN_MILLIS);
+
+        if (_statsLogger.isLoggable(Level.CONFIG)) {
+            _statsLogger.log(Level.CONFIG, "USING " + MAX_BATCH_SIZE_PROP_NAME + " = " + maxBatchSize
+                    + "; " + TRANSMITTER_FREQUECNCY_PROP_NAME + " = " + frequencyInMillis);
+        }
+    }
+
+    public FixedBatchingPolicy(int maxBatchSize, long frequencyInMillis) {
+        this.maxBatchSize = maxBatchSize;
+        this.frequencyInMillis = frequencyInMillis;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    @Override
+    public int getMaxBatchBytes() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public long getLingerTimeInMillis() {
+        return frequencyInMillis;
+    }
+
+    @Override
+    public long getFlushCheckIntervalInMillis() {
+        return frequencyInMillis;
+    }
+
+    @Override
+    public void commandAdded() {
+    }
+
+    @Override
+    public void batchSent(int commandCount, int frameBytes, long sendTimeInNanos) {
+    }
+
+    public String toString() {
+        return "FixedBatchingPolicy{maxBatchSize=" + maxBatchSize
+                + ", frequencyInMillis=" + frequencyInMillis + "}";
+    }
+}
@@ -72,11 +72,15 @@ public class ReplicationCommandTransmitterManager<K, V>
     @Override
     public void initialize(DataStoreContext<K, V> dsc) {
         super.initialize(dsc);
+        if (dsc.getBatchingPolicy() == null) {
+            dsc.setBatchingPolicy(new FixedBatchingPolicy(dsc.isUseMapToCacheCommands() ? 30 : 20));
+        }
+
         broadcastTransmitter = new ReplicationCommandTransmitterWithList<K, V>();
         broadcastTransmitter.initialize(null, dsc);
 
         _logger.log(Level.FINE, "ReplicationCommandTransmitterManager(" + dsc.getServiceName() + ") instantiated with: "
-            + dsc.isUseMapToCacheCommands() + " : " + dsc.isSafeToDelayCaptureState());
+            + dsc.isUseMapToCacheCommands() + " : " + dsc.isSafeToDelayCaptureState() + " : " + dsc.getBatchingPolicy());
     }
 
     @Override
@@ -84,6 +88,9 @@ public class ReplicationCommandTransmitterManager<K, V>
         throws DataStoreException {
         switch (cmd.getOpcode()) {
             case ReplicationCommandOpcode.REPLICATION_FRAME_PAYLOAD:
+            case ReplicationCommandOpcode.SIMPLE_ACK_COMMAND:
+                //Acks are already coalesced per frame, so there is no need to
+                //  hold them back until the next flush
                 super.onTransmit(cmd, initiator);
                 break;
 
@@ -41,6 +41,7 @@
 package org.shoal.ha.cache.impl.interceptor;
 
 import org.shoal.adapter.store.commands.NoOpCommand;
+import org.shoal.ha.cache.api.BatchingPolicy;
 import org.shoal.ha.cache.api.DataStoreAlreadyClosedException;
 import org.shoal.ha.cache.api.DataStoreContext;
 import org.shoal.ha.cache.api.DataStoreException;
@@ -73,20 +74,12 @@ public class ReplicationCommandTransmitterWithList<K, V>
 
     private ScheduledFuture future;
 
-    private static final String TRANSMITTER_FREQUECNCY_PROP_NAME = "org.shoal.cache.transmitter.frequency.in.millis";
-
-    private static final String MAX_BATCH_SIZE_PROP_NAME = "org.shoal.cache.transmitter.max.batch.size";
-
-    private static int TRANSMITTER_FREQUECNCY_IN_MILLIS = 100;
-
-    private int MAX_BATCH_SIZE = 20;
+    private BatchingPolicy policy;
 
     private AtomicReference<BatchedCommandListDataFrame> mapRef;
 
     ASyncReplicationManager asyncReplicationManager = ASyncReplicationManager._getInstance();
 
-    private volatile long timeStamp = System.currentTimeMillis();
-
     ThreadPoolExecutor executor;
 
     private AtomicBoolean openStatus = new AtomicBoolean(true);
@@ -101,29 +94,15 @@ public class ReplicationCommandTransmitterWithList<K, V>
         this.executor = ASyncReplicationManager._getInstance().getExecutorService();
         this.targetName = targetName;
         this.dsc = rsInfo;
-
-        try {
-            TRANSMITTER_FREQUECNCY_IN_MILLIS =
-                    Integer.getInteger(System.getProperty(TRANSMITTER_FREQUECNCY_PROP_NAME,
-                            ""+TRANSMITTER_FREQUECNCY_IN_MILLIS));
-        } catch (Exception ex) {
-            //Ignore
-        }
-
-        try {
-            MAX_BATCH_SIZE =
-                    Integer.getInteger(System.getProperty(MAX_BATCH_SIZE_PROP_NAME,
-                            ""+MAX_BATCH_SIZE));
-        } catch (Exception ex) {
-            //Ignore
-        }
+        this.policy = rsInfo.getBatchingPolicy();
 
         BatchedCommandListDataFrame batch = new BatchedCommandListDataFrame(openStatus.get());
         mapRef = new AtomicReference<BatchedCommandListDataFrame>(batch);
 
 
-        future = asyncReplicationManager.getScheduledThreadPoolExecutor().scheduleAtFixedRate(this, TRANSMITTER_FREQUECNCY_IN_MILLIS,
-                TRANSMITTER_FREQUECNCY_IN_MILLIS, TimeUnit.MILLISECONDS);
+        long flushCheckInterval = policy.getFlushCheckIntervalInMillis();
+        future = asyncReplicationManager.getScheduledThreadPoolExecutor().scheduleAtFixedRate(this, flushCheckInterval,
+                flushCheckInterval, TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -148,7 +127,7 @@ public class ReplicationCommandTransmitterWithList<K, V>
                         = new BatchedCommandListDataFrame(false);
                 BatchedCommandListDataFrame batch = mapRef.getAndSet(closedBatch);
                 //Note that the above batch is a valid batch
-                asyncReplicationManager.getExecutorService().submit(batch);
+                asyncReplicationManager.getExecutorService().submitOrWait(batch, dsc.getReplicationSubmitTimeoutInMillis());
                 dsc.getDataStoreMBean().incrementBatchSentCount();
 
                 for (int loopCount = 0; loopCount < 5; loopCount++) {
@@ -173,6 +152,7 @@ public class ReplicationCommandTransmitterWithList<K, V>
     public void addCommand(Command<K, V> cmd)
         throws DataStoreException {
 
+        policy.commandAdded();
         for (boolean done = false; !done;) {
             BatchedCommandListDataFrame batch = mapRef.get();
             done = batch.addCommand(cmd);
@@ -199,13 +179,12 @@ public class ReplicationCommandTransmitterWithList<K, V>
             BatchedCommandListDataFrame batch = mapRef.get();
             //Since this called by a async thread
             //   OR upon close, it is OK to not rethrow the exceptions
-            if (batch.isTimeToFlush(timeStamp) || (! openStatus.get())) {
+            if (batch.isTimeToFlush(policy.getLingerTimeInMillis()) || (! openStatus.get())) {
                 NoOpCommand noop = new NoOpCommand();
                 while (batch.addCommand(noop)) {
                     ;
                 }
             }
-            timeStamp = batch.getBatchCreationTime();
         } catch (DataStoreAlreadyClosedException dsEx) {
             //Ignore....
         } catch (DataStoreException dsEx) {
@@ -224,6 +203,9 @@ public class ReplicationCommandTransmitterWithList<K, V>
 
         private long batchCreationTime = System.currentTimeMillis();
 
+        //Read once so that a policy change does not affect a partially filled batch
+        private final int maxBatchSize = policy.getMaxBatchSize();
+
         private boolean validBatch;
 
         BatchedCommandListDataFrame(boolean valid) {
@@ -241,23 +223,20 @@ public class ReplicationCommandTransmitterWithList<K, V>
             }
 
             int value = current.incrementAndGet();
-            if (value < MAX_BATCH_SIZE) {
+            if (value < maxBatchSize) {
                 list.add(cmd);
-                if (list.size() == MAX_BATCH_SIZE) {
-                  asyncReplicationManager.getExecutorService().submit(this);
+                if (list.size() == maxBatchSize) {
+                  asyncReplicationManager.getExecutorService().submitOrWait(this, dsc.getReplicationSubmitTimeoutInMillis());
                 }
             }
 
-            return value < MAX_BATCH_SIZE;
+            return value < maxBatchSize;
         }
 
         //Called by periodic task
-        boolean isTimeToFlush(long timeStamp) {
-            return batchCreationTime == timeStamp && list.size() > 0;
-        }
-
-        long getBatchCreationTime() {
-            return batchCreationTime;
+        boolean isTimeToFlush(long lingerTimeInMillis) {
+            return list.size() > 0
+                    && System.currentTimeMillis() - batchCreationTime >= lingerTimeInMillis;
         }
 
         public void run() {
@@ -266,14 +245,18 @@ public class ReplicationCommandTransmitterWithList<K, V>
             rfCmd.setTargetInstance(targetName);
             try {
                 int size = list.size();
+                int commandCount = 0;
                 for (int i = 0; i < size; i++) {
                     Command cmd = list.poll();
                     if (cmd.getOpcode() != ReplicationCommandOpcode.NOOP_COMMAND) {
                         rfCmd.addComamnd(cmd);
+                        commandCount++;
                     }
                 }
 
+                long startTime = System.nanoTime();
                 dsc.getCommandManager().execute(rfCmd);
+                policy.batchSent(commandCount, rfCmd.getEncodedSize(), System.nanoTime() - startTime);
             } catch (IOException ioEx) {
                 _logger.log(Level.WARNING, "Batch operation (ASyncCommandList failed...", ioEx);
             } finally {
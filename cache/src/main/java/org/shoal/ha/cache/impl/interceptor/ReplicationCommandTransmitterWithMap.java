@@ -40,8 +40,10 @@
 
 package org.shoal.ha.cache.impl.interceptor;
 
+import org.shoal.adapter.store.commands.AcknowledgedCommand;
 import org.shoal.adapter.store.commands.NoOpCommand;
 import org.shoal.adapter.store.commands.SaveCommand;
+import org.shoal.ha.cache.api.BatchingPolicy;
 import org.shoal.ha.cache.api.DataStoreAlreadyClosedException;
 import org.shoal.ha.cache.api.DataStoreContext;
 import org.shoal.ha.cache.api.DataStoreException;
@@ -49,6 +51,7 @@ import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
 import org.shoal.ha.cache.impl.command.Command;
 import org.shoal.ha.cache.impl.command.ReplicationCommandOpcode;
 import org.shoal.ha.cache.impl.util.ASyncReplicationManager;
+import org.shoal.ha.cache.impl.util.CommandResponse;
 
 import java.io.IOException;
 import java.util.concurrent.*;
@@ -77,20 +80,12 @@ public class ReplicationCommandTransmitterWithMap<K, V>
 
     private ScheduledFuture future;
 
-    private static final String TRANSMITTER_FREQUECNCY_PROP_NAME = "org.shoal.cache.transmitter.frequency.in.millis";
-
-    private static final String MAX_BATCH_SIZE_PROP_NAME = "org.shoal.cache.transmitter.max.batch.size";
-
-    private static int TRANSMITTER_FREQUECNCY_IN_MILLIS = 100;
-
-    private static int MAX_BATCH_SIZE = 30;
+    private BatchingPolicy policy;
 
     private AtomicReference<BatchedCommandMapDataFrame> mapRef;
 
     ASyncReplicationManager asyncReplicationManager = ASyncReplicationManager._getInstance();
 
-    private long timeStamp = System.currentTimeMillis();
-
     ThreadPoolExecutor executor;
     
     private AtomicBoolean openStatus = new AtomicBoolean(true);
@@ -100,24 +95,6 @@ public class ReplicationCommandTransmitterWithMap<K, V>
     private CountDownLatch latch = new CountDownLatch(1);
 
     static {
-        try {
-            TRANSMITTER_FREQUECNCY_IN_MILLIS =
-                    Integer.valueOf(System.getProperty(TRANSMITTER_FREQUECNCY_PROP_NAME,
-                            "" + TRANSMITTER_FREQUECNCY_IN_MILLIS));
-            _statsLogger.log(Level.CONFIG, "USING " + TRANSMITTER_FREQUECNCY_PROP_NAME + " = " + TRANSMITTER_FREQUECNCY_IN_MILLIS);
-        } catch (Exception ex) {
-            _statsLogger.log(Level.CONFIG, "USING " + TRANSMITTER_FREQUECNCY_PROP_NAME + " = " + TRANSMITTER_FREQUECNCY_IN_MILLIS);
-        }
-
-        try {
-            MAX_BATCH_SIZE =
-                    Integer.valueOf(System.getProperty(MAX_BATCH_SIZE_PROP_NAME,
-                            "" + MAX_BATCH_SIZE));
-            _statsLogger.log(Level.CONFIG, "USING " + MAX_BATCH_SIZE_PROP_NAME + " = " + MAX_BATCH_SIZE);
-        } catch (Exception ex) {
-            _statsLogger.log(Level.CONFIG, "USING " + MAX_BATCH_SIZE_PROP_NAME + " = " + MAX_BATCH_SIZE);
-        }
-
         _logger.log(Level.FINE, "USING ReplicationCommandTransmitterWithMap");
     }
 
@@ -127,12 +104,14 @@ public class ReplicationCommandTransmitterWithMap<K, V>
         this.executor = ASyncReplicationManager._getInstance().getExecutorService();
         this.targetName = targetName;
         this.dsc = rsInfo;
+        this.policy = rsInfo.getBatchingPolicy();
 
         BatchedCommandMapDataFrame batch = new BatchedCommandMapDataFrame(openStatus.get());
         mapRef = new AtomicReference<BatchedCommandMapDataFrame>(batch);
 
-        future = asyncReplicationManager.getScheduledThreadPoolExecutor().scheduleAtFixedRate(this, TRANSMITTER_FREQUECNCY_IN_MILLIS,
-                TRANSMITTER_FREQUECNCY_IN_MILLIS, TimeUnit.MILLISECONDS);
+        long flushCheckInterval = policy.getFlushCheckIntervalInMillis();
+        future = asyncReplicationManager.getScheduledThreadPoolExecutor().scheduleAtFixedRate(this, flushCheckInterval,
+                flushCheckInterval, TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -157,7 +136,7 @@ public class ReplicationCommandTransmitterWithMap<K, V>
                         = new BatchedCommandMapDataFrame(false);
                 BatchedCommandMapDataFrame batch = mapRef.getAndSet(closedBatch);
                 //Note that the above batch is a valid batch
-                asyncReplicationManager.getExecutorService().submit(batch);
+                asyncReplicationManager.getExecutorService().submitOrWait(batch, dsc.getReplicationSubmitTimeoutInMillis());
                 dsc.getDataStoreMBean().incrementBatchSentCount();
 
                 for (int loopCount = 0; loopCount < 5; loopCount++) {
@@ -193,6 +172,7 @@ public class ReplicationCommandTransmitterWithMap<K, V>
 
     private void addCommandToBatch(Command<K, V> cmd, boolean isAdd)
         throws DataStoreException {
+        policy.commandAdded();
         for (boolean done = false; !done;) {
             BatchedCommandMapDataFrame batch = mapRef.get();
             done = batch.doAddOrRemove(cmd, isAdd);
@@ -248,8 +228,14 @@ public class ReplicationCommandTransmitterWithMap<K, V>
 
         private volatile ConcurrentLinkedQueue removedKeys = new ConcurrentLinkedQueue();
 
+        //The acks that the receiver sends once it has applied removedKeys
+        private ConcurrentLinkedQueue<Long> removeAckTokenIds = new ConcurrentLinkedQueue<Long>();
+
         private volatile long lastTS = System.currentTimeMillis();
 
+        //Read once so that a policy change does not affect a partially filled batch
+        private final int maxBatchSize = policy.getMaxBatchSize();
+
         private boolean validBatch;
         
         BatchedCommandMapDataFrame(boolean validBatch) {
@@ -285,15 +271,23 @@ public class ReplicationCommandTransmitterWithMap<K, V>
 
                             cmdList.add(cmd);
                             result = true;
-                            if (map.size() >= MAX_BATCH_SIZE) {
+                            if (map.size() >= maxBatchSize) {
                                 batchThresholdReached.compareAndSet(false, true);
                             }
                         } else {
-                            map.remove(cmd.getKey());
+                            //The remove supersedes the commands of the same key in this batch. Since they
+                            //  will not be sent, they are acknowledged along with the remove
+                            ConcurrentLinkedQueue<Command> supersededCmds = map.remove(cmd.getKey());
+                            if (supersededCmds != null) {
+                                for (Command supersededCmd : supersededCmds) {
+                                    addRemoveAcknowledgement(supersededCmd);
+                                }
+                            }
+                            addRemoveAcknowledgement(cmd);
                             removedKeys.add(cmd.getKey());
                             int removedSz = removedKeysSize.incrementAndGet();
                             result = true;
-                            if (removedSz >= (2 * MAX_BATCH_SIZE)) {
+                            if (removedSz >= (2 * maxBatchSize)) {
                                 batchThresholdReached.compareAndSet(false, true);
                             }
                         }
@@ -312,7 +306,7 @@ public class ReplicationCommandTransmitterWithMap<K, V>
                                 + " to " + targetName + "; wasActive for ("
                                 + (System.currentTimeMillis() - lastTS) + " millis");
                     }
-                    asyncReplicationManager.getExecutorService().submit(this);
+                    asyncReplicationManager.getExecutorService().submitOrWait(this, dsc.getReplicationSubmitTimeoutInMillis());
                     dsc.getDataStoreMBean().incrementBatchSentCount();
                 }
             }
@@ -320,15 +314,25 @@ public class ReplicationCommandTransmitterWithMap<K, V>
             return result;
         }
 
+        private void addRemoveAcknowledgement(Command cmd) {
+            if (cmd instanceof AcknowledgedCommand) {
+                CommandResponse resp = ((AcknowledgedCommand) cmd).getCommandResponse();
+                if (resp != null) {
+                    removeAckTokenIds.add(resp.getTokenId());
+                }
+            }
+        }
+
         //Called by periodic task
         void flushAndTransmit()
             throws DataStoreException {
             dsc.getDataStoreMBean().incrementFlushThreadWakeupCount();
             if ((!alreadySent.get()) && ((map.size() > 0) || (removedKeysSize.get() > 0))) {
-                if (lastTS == timeStamp) {
+                long lingerTime = policy.getLingerTimeInMillis();
+                if (System.currentTimeMillis() - lastTS >= lingerTime) {
                     if (_statsLogger.isLoggable(Level.FINE)) {
                         _statsLogger.log(Level.FINE, "flushAndTransmit will flush data because lastTS = " + lastTS
-                                + "; timeStamp = " + timeStamp + "; lastTS = " + lastTS
+                                + "; lingerTime = " + lingerTime
                                 + "; map.size() = " + map.size()
                                 + "; removedKeys.size() = " +removedKeysSize.get());
                     }
@@ -341,11 +345,10 @@ public class ReplicationCommandTransmitterWithMap<K, V>
                 } else {
                     if (_statsLogger.isLoggable(Level.FINER)) {
                         _statsLogger.log(Level.FINER, "flushAndTransmit will NOT flush data because lastTS = " + lastTS
-                                + "; timeStamp = " + timeStamp + "; lastTS = " + lastTS
+                                + "; lingerTime = " + lingerTime
                                 + "; map.size() = " + map.size()
                                 + "; removedKeys.size() = " +removedKeysSize.get());
                     }
-                    timeStamp = lastTS;
                 }
             } else {
 //                if (_statsLogger.isLoggable(Level.FINEST)) {
@@ -381,7 +384,11 @@ public class ReplicationCommandTransmitterWithMap<K, V>
                 }
 
                     rfCmd.setRemovedKeys(removedKeys);
+                    rfCmd.setRemoveAcknowledgements(removeAckTokenIds);
+                    long startTime = System.nanoTime();
                     dsc.getCommandManager().execute(rfCmd);
+                    policy.batchSent(rfCmd.getCommandCount() + removedKeysSize.get(),
+                            rfCmd.getEncodedSize(), System.nanoTime() - startTime);
     
                 } catch (IOException ioEx) {
                     _logger.log(Level.WARNING, "Batch operation (ASyncCommandList failed...", ioEx);
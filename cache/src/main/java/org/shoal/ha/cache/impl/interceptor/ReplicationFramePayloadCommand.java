@@ -41,10 +41,14 @@
 package org.shoal.ha.cache.impl.interceptor;
 
 import org.glassfish.ha.store.util.KeyTransformer;
+import org.shoal.adapter.store.commands.AcknowledgedCommand;
 import org.shoal.ha.cache.api.DataStoreException;
 import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
 import org.shoal.ha.cache.impl.command.Command;
+import org.shoal.ha.cache.impl.command.CommandCodec;
 import org.shoal.ha.cache.impl.command.ReplicationCommandOpcode;
+import org.shoal.ha.cache.impl.util.ReplicationInputStream;
+import org.shoal.ha.cache.impl.util.ReplicationOutputStream;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -72,6 +76,11 @@ public class ReplicationFramePayloadCommand<K, V>
 
     private List<byte[]> rawRemovedKeys = new ArrayList<byte[]>();
 
+    //Tokens of the acknowledged commands that were folded into removedKeys
+    private Collection<Long> removeAckTokenIds = new ArrayList<Long>();
+
+    private transient int encodedSize;
+
     public ReplicationFramePayloadCommand() {
         super(ReplicationCommandOpcode.REPLICATION_FRAME_PAYLOAD);
         setKey("RepFP:" + System.identityHashCode(this));
@@ -89,6 +98,31 @@ public class ReplicationFramePayloadCommand<K, V>
         this.removedKeys = removedKeys;
     }
 
+    /**
+     * @param removeAckTokenIds the tokens that the receiver acknowledges once
+     *  the removedKeys have been removed
+     */
+    void setRemoveAcknowledgements(Collection<Long> removeAckTokenIds) {
+        this.removeAckTokenIds = removeAckTokenIds;
+    }
+
+    int getCommandCount() {
+        return commands.size();
+    }
+
+    /**
+     * @return the number of bytes written by the last writeCommandState() or
+     *  0 if this command was java serialized. Once the frame is transmitted
+     *  this is the size that was actually sent (after compression)
+     */
+    int getEncodedSize() {
+        return encodedSize;
+    }
+
+    void setEncodedSize(int encodedSize) {
+        this.encodedSize = encodedSize;
+    }
+
     protected boolean beforeTransmit()
         throws DataStoreException {
         setTargetName(targetInstanceName);
@@ -112,6 +146,7 @@ public class ReplicationFramePayloadCommand<K, V>
 
                 ros.writeObject(rawRemovedKeys);
             }
+            ros.writeObject(new ArrayList<Long>(removeAckTokenIds));
         } catch (IOException ioEx) {
             _logger.log(Level.INFO, "Error during ReplicationFramePayloadCommand.writeObject ", ioEx);
             throw ioEx;
@@ -128,6 +163,7 @@ public class ReplicationFramePayloadCommand<K, V>
             } else {
                 rawRemovedKeys = (List<byte[]>) ris.readObject();
             }
+            removeAckTokenIds = (List<Long>) ris.readObject();
         } catch (IOException ioEx) {
             _logger.log(Level.INFO, "Error during ReplicationFramePayloadCommand.readObject ", ioEx);
             throw ioEx;
@@ -135,6 +171,79 @@ public class ReplicationFramePayloadCommand<K, V>
 
     }
 
+    @Override
+    protected Command createCommandForDecoding() {
+        return new ReplicationFramePayloadCommand<K, V>();
+    }
+
+    @Override
+    protected void writeCommandState(ReplicationOutputStream ros)
+            throws IOException {
+        int start = ros.mark();
+        super.writeCommandState(ros);
+        CommandCodec<K, V> codec = getCommandManager().getCommandCodec();
+        ros.writeInt(commands.size());
+        for (Command<K, V> cmd : commands) {
+            codec.writeNestedCommand(ros, cmd);
+        }
+
+        KeyTransformer<K> kt = dsc.getKeyTransformer();
+        ros.writeBoolean(kt == null);
+        ros.writeInt(removedKeys.size());
+        for (K k : removedKeys) {
+            if (kt == null) {
+                ros.writeLengthPrefixedObject(k);
+            } else {
+                ros.writeLengthPrefixedBytes(kt.keyToByteArray(k));
+            }
+        }
+
+        ros.writeInt(removeAckTokenIds.size());
+        for (Long tokenId : removeAckTokenIds) {
+            ros.writeLong(tokenId);
+        }
+        encodedSize = ros.mark() - start;
+    }
+
+    @Override
+    protected void readCommandState(ReplicationInputStream ris)
+            throws IOException {
+        super.readCommandState(ris);
+        CommandCodec<K, V> codec = getCommandManager().getCommandCodec();
+        int sz = ris.readInt();
+        commands = new ArrayList<Command<K, V>>(sz);
+        for (int i = 0; i < sz; i++) {
+            try {
+                commands.add(codec.readNestedCommand(ris));
+            } catch (ClassNotFoundException cnfEx) {
+                IOException ioEx = new IOException("Error during ReplicationFramePayloadCommand.readCommandState");
+                ioEx.initCause(cnfEx);
+                throw ioEx;
+            }
+        }
+
+        boolean ktAbsent = ris.readBoolean();
+        int removedSz = ris.readInt();
+        if (ktAbsent) {
+            rawRemovedKeys = null;
+            removedKeys = new ArrayList<K>(removedSz);
+            for (int i = 0; i < removedSz; i++) {
+                removedKeys.add((K) CommandCodec.deserialize(ris.readLengthPrefixedBytes(), dsc.getClassLoader()));
+            }
+        } else {
+            rawRemovedKeys = new ArrayList<byte[]>(removedSz);
+            for (int i = 0; i < removedSz; i++) {
+                rawRemovedKeys.add(ris.readLengthPrefixedBytes());
+            }
+        }
+
+        int ackSz = ris.readInt();
+        removeAckTokenIds = new ArrayList<Long>(ackSz);
+        for (int i = 0; i < ackSz; i++) {
+            removeAckTokenIds.add(ris.readLong());
+        }
+    }
+
     @Override
     public void execute(String initiator)
             throws DataStoreException {
@@ -169,20 +278,37 @@ public class ReplicationFramePayloadCommand<K, V>
             }
         }
         
-        for (Command<K, V> cmd : commands) {
-            cmd.initialize(dsc);
-            getCommandManager().executeCommand(cmd, false, initiator);
-        }
+        //Acks of the commands in this frame are sent together once the whole frame is executed
+        boolean ackBatchStarted = AcknowledgedCommand.beginAcknowledgementBatch();
+        try {
+            for (Command<K, V> cmd : commands) {
+                cmd.initialize(dsc);
+                getCommandManager().executeCommand(cmd, false, initiator);
+            }
 
-        int executedRemoveCount = 0;
-        if (removedKeys != null) {
-            for (K k : removedKeys) {
-                dsc.getReplicaStore().remove(k);
-                executedRemoveCount++;
+            int executedRemoveCount = 0;
+            if (removedKeys != null) {
+                for (K k : removedKeys) {
+                    dsc.getReplicaStore().remove(k);
+                    executedRemoveCount++;
+                }
+
+                if (dsc.getDataStoreMBean() != null) {
+                    dsc.getDataStoreMBean().updateExecutedRemoveCount(executedRemoveCount);
+                }
             }
 
-            if (dsc.getDataStoreMBean() != null) {
-                dsc.getDataStoreMBean().updateExecutedRemoveCount(executedRemoveCount);
+            if (removeAckTokenIds != null && removeAckTokenIds.size() > 0) {
+                long[] tokenIds = new long[removeAckTokenIds.size()];
+                int index = 0;
+                for (Long tokenId : removeAckTokenIds) {
+                    tokenIds[index++] = tokenId;
+                }
+                AcknowledgedCommand.sendAcknowledgements(dsc, initiator, tokenIds);
+            }
+        } finally {
+            if (ackBatchStarted) {
+                AcknowledgedCommand.flushAcknowledgements(dsc);
             }
         }
     }
@@ -45,12 +45,12 @@ import org.shoal.ha.cache.api.DataStoreContext;
 import org.shoal.ha.cache.api.DataStoreException;
 import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
 import org.shoal.ha.cache.impl.command.Command;
+import org.shoal.ha.cache.impl.command.CommandCodec;
 import org.shoal.ha.cache.impl.util.ReplicationOutputStream;
+import org.shoal.ha.cache.impl.util.ReplicationOutputStreamPool;
 import org.shoal.ha.group.GroupService;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -69,37 +69,40 @@ public final class TransmitInterceptor<K, V>
     public void onTransmit(Command<K, V> cmd, String initiator)
         throws DataStoreException {
         DataStoreContext<K, V> ctx = getDataStoreContext();
-        ByteArrayOutputStream bos = null;
-        ObjectOutputStream oos = null;
         boolean transmitted = false;
+        ReplicationOutputStreamPool pool = ReplicationOutputStreamPool._getInstance();
+        ReplicationOutputStream ros = pool.borrow();
         try {
-            bos = new ByteArrayOutputStream();
-            oos = new ObjectOutputStream(bos);
-            oos.writeObject(cmd);
-            oos.close();
-            byte[] data = bos.toByteArray();
+            //The message is encoded (and compressed) in the pooled buffer, which is sent as is
+            CommandCodec<K, V> codec = ctx.getCommandManager().getCommandCodec();
+            codec.encode(cmd, ros);
+            codec.compress(ros);
+            int size = ros.size();
+            if (cmd instanceof ReplicationFramePayloadCommand) {
+                //So that the batching policy limits the bytes that are actually sent
+                ((ReplicationFramePayloadCommand<K, V>) cmd).setEncodedSize(size);
+            }
 
             GroupService gs = ctx.getGroupService();
             gs.sendMessage(cmd.getTargetName(),
-                    ctx.getServiceName(), data);
+                    ctx.getServiceName(), ros.getBuffer(), 0, size);
             dsc.getDataStoreMBean().incrementGmsSendCount();
-            dsc.getDataStoreMBean().incrementGmsSendBytesCount(data.length);
+            dsc.getDataStoreMBean().incrementGmsSendBytesCount(size);
             if (_logger.isLoggable(Level.FINE)) {
                 _logger.log(Level.FINE, storeName + ": TransmitInterceptor." + ctx.getServiceName()
                         + ":onTransmit() Sent " + cmd + " to "
                         + (cmd.getTargetName() == null ? " ALL MEMBERS " : cmd.getTargetName())
-                        + "; size: " + data.length);
+                        + "; size: " + size);
             }
             cmd.onSuccess();
             transmitted = true;
         } catch (IOException ioEx) {
             throw new DataStoreException("Error DURING transmit...", ioEx);
         } finally {
+            pool.recycle(ros);
             if (! transmitted) {
                 cmd.onFailure();   
             }
-            try {oos.close();} catch (Exception ex) {_logger.log(Level.FINEST, "Ignorable error while closing ObjectOutputStream");}
-            try {bos.close();} catch (Exception ex) {_logger.log(Level.FINEST, "Ignorable error while closing ByteArrayOutputStream");}
         }
     }
 
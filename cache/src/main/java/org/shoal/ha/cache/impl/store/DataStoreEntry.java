@@ -47,10 +47,13 @@ import org.shoal.ha.cache.api.ObjectInputStreamWithLoader;
 import org.shoal.ha.cache.impl.command.Command;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.logging.Level;
 
 
@@ -79,6 +82,23 @@ public class DataStoreEntry<K, V> {
 
     private byte[] rawV;
 
+    private OffHeapReplicaStorage offHeapStorage;
+
+    private long rawVHandle = -1;
+
+    private int rawVLength;
+
+    private ExpiryIndex<K> expiryIndex;
+
+    private long expiryBucket;
+
+    private volatile DeltaBase deltaBase;
+
+    //newUpdater() only takes the raw class
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<DataStoreEntry, DeltaBase> deltaBaseUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(DataStoreEntry.class, DeltaBase.class, "deltaBase");
+
     private boolean isReplicaNode = true;
 
     public DataStoreEntry() {
@@ -105,13 +125,52 @@ public class DataStoreEntry<K, V> {
         this.v = state;
     }
 
-    public byte[] getRawV() {
-        return rawV;
+    public synchronized byte[] getRawV() {
+        return rawVHandle >= 0 ? offHeapStorage.read(rawVHandle, rawVLength) : rawV;
     }
 
-    public void setRawV(byte[] rawV) {
+    public synchronized void setRawV(byte[] rawV) {
+        releaseOffHeapRawV();
         this.rawV = rawV;
         this.v = null;
+        if (offHeapStorage != null && rawV != null) {
+            rawVHandle = offHeapStorage.store(rawV);
+            if (rawVHandle >= 0) {
+                rawVLength = rawV.length;
+                this.rawV = null;
+            }
+        }
+    }
+
+    /**
+     * @return an InputStream over the raw state or null if there is no raw state.
+     *  The caller must hold the lock on this entry until the stream is consumed
+     */
+    public synchronized InputStream getRawVInputStream() {
+        if (rawVHandle >= 0) {
+            return offHeapStorage.openStream(rawVHandle, rawVLength);
+        }
+        return rawV == null ? null : new ByteArrayInputStream(rawV);
+    }
+
+    public synchronized boolean hasRawV() {
+        return rawVHandle >= 0 || rawV != null;
+    }
+
+    public synchronized int getRawVLength() {
+        return rawVHandle >= 0 ? rawVLength : (rawV == null ? 0 : rawV.length);
+    }
+
+    /*package*/ void setOffHeapStorage(OffHeapReplicaStorage offHeapStorage) {
+        this.offHeapStorage = offHeapStorage;
+    }
+
+    private void releaseOffHeapRawV() {
+        if (rawVHandle >= 0) {
+            offHeapStorage.free(rawVHandle);
+            rawVHandle = -1;
+            rawVLength = 0;
+        }
     }
 
     public String getReplicaInstanceName() {
@@ -122,6 +181,7 @@ public class DataStoreEntry<K, V> {
         String oldValue = this.replicaInstanceName;
         this.replicaInstanceName = replicaInstanceName;
         this.removed = false; // Because we just saved the data in a replica
+        updateExpiryIndex();
         return oldValue == null ? null : oldValue.equals(replicaInstanceName) ? null : oldValue;
     }
 
@@ -154,10 +214,15 @@ public class DataStoreEntry<K, V> {
         return removed;
     }
 
-    public void markAsRemoved(String reason) {
+    public synchronized void markAsRemoved(String reason) {
         this.removed = true;
         v = null;
         pendingUpdates = null;
+        releaseOffHeapRawV();
+        deltaBase = null;
+        if (expiryIndex != null) {
+            expiryIndex.remove(this);
+        }
     }
 
     public long getLastAccessedAt() {
@@ -166,6 +231,13 @@ public class DataStoreEntry<K, V> {
 
     public void setLastAccessedAt(long lastAccessedAt) {
         this.lastAccessedAt = lastAccessedAt;
+        updateExpiryIndex();
+    }
+
+    public void setAccessTimeInfo(long lastAccessedAt, long maxIdleTime) {
+        this.lastAccessedAt = lastAccessedAt;
+        this.maxIdleTime = maxIdleTime;
+        updateExpiryIndex();
     }
 
     public long getVersion() {
@@ -182,6 +254,42 @@ public class DataStoreEntry<K, V> {
 
     public void setMaxIdleTime(long maxIdleTime) {
         this.maxIdleTime = maxIdleTime;
+        updateExpiryIndex();
+    }
+
+    /**
+     * @return the state that was last sent to the replica (only used by delta replication)
+     */
+    public DeltaBase getDeltaBase() {
+        return deltaBase;
+    }
+
+    /**
+     * Not guarded by the entry lock, since the state is captured when the
+     *  command is transmitted and not when it is executed.
+     */
+    public boolean compareAndSetDeltaBase(DeltaBase expected, DeltaBase newBase) {
+        return deltaBaseUpdater.compareAndSet(this, expected, newBase);
+    }
+
+    /*package*/ void setExpiryIndex(ExpiryIndex<K> expiryIndex) {
+        this.expiryIndex = expiryIndex;
+    }
+
+    /*package*/ long getExpiryBucket() {
+        return expiryBucket;
+    }
+
+    /*package*/ void setExpiryBucket(long expiryBucket) {
+        this.expiryBucket = expiryBucket;
+    }
+
+    private void updateExpiryIndex() {
+        if (expiryIndex != null && !removed) {
+            synchronized (this) {
+                expiryIndex.reindex(this);
+            }
+        }
     }
 
     public boolean isReplicaNode() {
@@ -191,4 +299,76 @@ public class DataStoreEntry<K, V> {
     public void setIsReplicaNode(boolean replicaNode) {
         isReplicaNode = replicaNode;
     }
+
+    /**
+     * The state (and its version) that was last sent to a replica. A delta may
+     *  only be computed against a state that the replica has acknowledged.
+     */
+    public static class DeltaBase {
+
+        private final long version;
+
+        private final String targetName;
+
+        private final byte[] state;
+
+        private final int deltaCount;
+
+        private final Future<?> acknowledgement;
+
+        public DeltaBase(long version, String targetName, byte[] state, int deltaCount) {
+            this(version, targetName, state, deltaCount, null);
+        }
+
+        /**
+         * @param acknowledgement completes once the replica has applied the state
+         *  or null if the replica does not send acks
+         */
+        public DeltaBase(long version, String targetName, byte[] state, int deltaCount,
+                         Future<?> acknowledgement) {
+            this.version = version;
+            this.targetName = targetName;
+            this.state = state;
+            this.deltaCount = deltaCount;
+            this.acknowledgement = acknowledgement;
+        }
+
+        /**
+         * @return true if the replica has acknowledged this state. A state that
+         *  was sent without an ack counts as acknowledged. A state whose ack
+         *  failed or has not arrived (yet) does not
+         */
+        public boolean isAcknowledged() {
+            if (acknowledgement == null) {
+                return true;
+            }
+            if (!acknowledgement.isDone() || acknowledgement.isCancelled()) {
+                return false;
+            }
+            try {
+                return !(acknowledgement.get() instanceof Exception);
+            } catch (Exception ex) {
+                return false;
+            }
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public String getTargetName() {
+            return targetName;
+        }
+
+        public byte[] getState() {
+            return state;
+        }
+
+        /**
+         * @return the number of deltas sent since the last full save
+         */
+        public int getDeltaCount() {
+            return deltaCount;
+        }
+    }
 }
@@ -5,9 +5,12 @@ import org.shoal.adapter.store.commands.LoadResponseCommand;
 import org.shoal.adapter.store.commands.SaveCommand;
 import org.shoal.adapter.store.commands.TouchCommand;
 import org.shoal.ha.cache.api.*;
+import org.shoal.ha.cache.impl.util.ReplicationOutputStream;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectOutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -50,9 +53,13 @@ public abstract class DataStoreEntryUpdater<K, V> {
 
     protected V deserializeV(byte[] rawV)
             throws DataStoreException {
+        return deserializeV(new ByteArrayInputStream(rawV));
+    }
+
+    protected V deserializeV(InputStream bis)
+            throws DataStoreException {
         ClassLoader loader = ctx.getClassLoader();
         V v = null;
-        ByteArrayInputStream bis = new ByteArrayInputStream(rawV);
         ObjectInputStreamWithLoader ois = null;
         try {
             ois = new ObjectInputStreamWithLoader(bis, loader);
@@ -75,8 +82,7 @@ public abstract class DataStoreEntryUpdater<K, V> {
 
     protected void updateMetaInfoInDataStoreEntry(DataStoreEntry<K, V> entry, AbstractSaveCommand<K, V> cmd) {
         entry.setVersion(cmd.getVersion());
-        entry.setLastAccessedAt(cmd.getLastAccessedAt());
-        entry.setMaxIdleTime(cmd.getMaxIdleTime());
+        entry.setAccessTimeInfo(cmd.getLastAccessedAt(), cmd.getMaxIdleTime());
     }
 
     protected void printEntryInfo(String msg, DataStoreEntry<K, V> entry, K key) {
@@ -107,4 +113,14 @@ public abstract class DataStoreEntryUpdater<K, V> {
     public abstract byte[] getState(V v)
             throws DataStoreException;
 
+    /**
+     * Writes the (length prefixed) state of v into the outgoing frame. By default
+     *  this writes the bytes returned by getState(). Updaters that can stream the
+     *  state directly into ros may override this to avoid the intermediate byte[]
+     */
+    public void writeState(V v, ReplicationOutputStream ros)
+            throws IOException {
+        ros.writeLengthPrefixedBytes(getState(v));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,194 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.cache.impl.store;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * A bounded LRU cache of values that were deserialized from the raw state of
+ *  replicas. The size of each value is estimated by the length of its raw state
+ *  and the cache evicts the least recently used values once the total exceeds
+ *  maxWeight. A cached value is only returned for the version it was created from.
+ *
+ * Every caller gets the same cached instance, so only values that cannot be
+ *  modified are cached: values of well known immutable types or, if the store
+ *  declares its values immutable, all values.
+ */
+public class DeserializedValueCache<K, V> {
+
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class,
+            Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class));
+
+    private final long maxWeight;
+
+    private final boolean immutableValues;
+
+    private final LinkedHashMap<K, CachedValue<V>> map =
+            new LinkedHashMap<K, CachedValue<V>>(16, 0.75f, true);
+
+    private long weight;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long evictionCount;
+
+    public DeserializedValueCache(long maxWeight) {
+        this(maxWeight, false);
+    }
+
+    /**
+     * @param immutableValues true if all the values of the store are immutable
+     */
+    public DeserializedValueCache(long maxWeight, boolean immutableValues) {
+        this.maxWeight = maxWeight;
+        this.immutableValues = immutableValues;
+    }
+
+    /**
+     * @return true if value can be shared by all the callers
+     */
+    public boolean isCacheable(Object value) {
+        return value != null && (immutableValues
+                || IMMUTABLE_TYPES.contains(value.getClass()) || value instanceof Enum);
+    }
+
+    /**
+     * @return the cached value for this version of the key or null
+     */
+    public synchronized V get(K key, long version) {
+        CachedValue<V> cv = map.get(key);
+        if (cv != null && cv.version == version) {
+            hitCount++;
+            return cv.value;
+        }
+
+        missCount++;
+        return null;
+    }
+
+    public synchronized void put(K key, long version, V value, int estimatedSize) {
+        if (estimatedSize > maxWeight || !isCacheable(value)) {
+            invalidate(key);
+            return;
+        }
+
+        CachedValue<V> old = map.put(key, new CachedValue<V>(version, value, estimatedSize));
+        if (old != null) {
+            weight -= old.weight;
+        }
+        weight += estimatedSize;
+
+        Iterator<CachedValue<V>> iter = map.values().iterator();
+        while (weight > maxWeight && iter.hasNext()) {
+            CachedValue<V> eldest = iter.next();
+            iter.remove();
+            weight -= eldest.weight;
+            evictionCount++;
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        CachedValue<V> old = map.remove(key);
+        if (old != null) {
+            weight -= old.weight;
+        }
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DeserializedValueCache{" +
+                "size=" + map.size() +
+                ", weight=" + weight +
+                ", maxWeight=" + maxWeight +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                '}';
+    }
+
+    private static class CachedValue<V> {
+
+        private long version;
+
+        private V value;
+
+        private int weight;
+
+        CachedValue(long version, V value, int weight) {
+            this.version = version;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.cache.impl.store;
+
+import org.shoal.ha.cache.api.IdleEntryDetector;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Index of entries by the time at which they become idle. Entries are kept in
+ *  buckets of bucketWidthInMillis so that an idle sweep only has to look at
+ *  the buckets that are already due, instead of visiting every entry.
+ *
+ * An entry is in at most one bucket. The bucket is recorded in the entry and
+ *  is updated (under the entry's lock) whenever lastAccessedAt or maxIdleTime
+ *  changes.
+ */
+public class ExpiryIndex<K> {
+
+    public static final long DEFAULT_BUCKET_WIDTH_IN_MILLIS = 1000;
+
+    private final long bucketWidthInMillis;
+
+    private final long defaultMaxIdleTimeInMillis;
+
+    private final ConcurrentSkipListMap<Long, Bucket<K>> buckets =
+            new ConcurrentSkipListMap<Long, Bucket<K>>();
+
+    private volatile IdleEntryDetector<K, ?> idleEntryDetector;
+
+    public ExpiryIndex(long defaultMaxIdleTimeInMillis) {
+        this(defaultMaxIdleTimeInMillis, DEFAULT_BUCKET_WIDTH_IN_MILLIS);
+    }
+
+    public ExpiryIndex(long defaultMaxIdleTimeInMillis, long bucketWidthInMillis) {
+        this.defaultMaxIdleTimeInMillis = defaultMaxIdleTimeInMillis;
+        this.bucketWidthInMillis = bucketWidthInMillis;
+    }
+
+    /**
+     * Sets the detector that decides when entries are idle. Until a detector is
+     *  set, nothing is swept, so nothing is indexed.
+     */
+    /*package*/ void setIdleEntryDetector(IdleEntryDetector<K, ?> idleEntryDetector) {
+        this.idleEntryDetector = idleEntryDetector;
+    }
+
+    /**
+     * Moves the entry to the bucket that matches the time at which it becomes
+     *  idle. An entry that can never become idle is not indexed.
+     *  Must be called while holding the entry's lock.
+     */
+    /*package*/ void reindex(DataStoreEntry<K, ?> entry) {
+        long deadline = getIdleDeadline(entry);
+        moveTo(entry, deadline > 0 ? bucketOf(deadline) : 0);
+    }
+
+    /**
+     * @return the time at which the entry becomes idle or 0 if it never does. A
+     *  MaxIdleTimeEntryDetector knows that time. For any other detector, the
+     *  entry's max idle time (or the default) is a best guess and the entries
+     *  that are not idle yet are postponed.
+     */
+    private long getIdleDeadline(DataStoreEntry<K, ?> entry) {
+        IdleEntryDetector<K, ?> detector = idleEntryDetector;
+        if (detector == null) {
+            return 0;
+        } else if (detector instanceof MaxIdleTimeEntryDetector) {
+            return ((MaxIdleTimeEntryDetector<K, ?>) detector).getIdleDeadline(entry);
+        }
+
+        long maxIdle = entry.getMaxIdleTime() > 0 ? entry.getMaxIdleTime() : defaultMaxIdleTimeInMillis;
+        return maxIdle > 0 ? entry.getLastAccessedAt() + maxIdle : 0;
+    }
+
+    /*package*/ void remove(DataStoreEntry<K, ?> entry) {
+        moveTo(entry, 0);
+    }
+
+    /**
+     * Reschedules an entry that was found in a due bucket but is not idle yet.
+     */
+    /*package*/ void postpone(DataStoreEntry<K, ?> entry, long nowInMillis) {
+        reindex(entry);
+        if (entry.getExpiryBucket() != 0 && entry.getExpiryBucket() <= bucketOf(nowInMillis)) {
+            moveTo(entry, bucketOf(nowInMillis) + 1);
+        }
+    }
+
+    /**
+     * @return the keys of the first bucket whose deadline is before nowInMillis
+     *  or null if there is no such bucket
+     */
+    /*package*/ Map.Entry<Long, List<K>> firstDueBucket(long nowInMillis) {
+        while (true) {
+            Map.Entry<Long, Bucket<K>> first = buckets.firstEntry();
+            if (first == null || first.getKey() * bucketWidthInMillis >= nowInMillis) {
+                return null;
+            }
+
+            Bucket<K> bucket = first.getValue();
+            List<K> keys = null;
+            synchronized (bucket) {
+                if (bucket.keys.isEmpty()) {
+                    bucket.dead = true;
+                    buckets.remove(first.getKey(), bucket);
+                } else {
+                    keys = new ArrayList<K>(bucket.keys);
+                }
+            }
+
+            if (keys != null) {
+                return new AbstractMap.SimpleImmutableEntry<Long, List<K>>(first.getKey(), keys);
+            }
+        }
+    }
+
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+    public long getBucketWidthInMillis() {
+        return bucketWidthInMillis;
+    }
+
+    private long bucketOf(long deadline) {
+        //An entry in bucket b is idle at or before b * bucketWidthInMillis
+        return (deadline + bucketWidthInMillis - 1) / bucketWidthInMillis;
+    }
+
+    private void moveTo(DataStoreEntry<K, ?> entry, long newBucket) {
+        long oldBucket = entry.getExpiryBucket();
+        if (oldBucket == newBucket) {
+            return;
+        }
+
+        if (oldBucket != 0) {
+            Bucket<K> bucket = buckets.get(oldBucket);
+            if (bucket != null) {
+                synchronized (bucket) {
+                    bucket.keys.remove(entry.getKey());
+                }
+            }
+        }
+
+        if (newBucket != 0) {
+            while (true) {
+                Bucket<K> bucket = buckets.get(newBucket);
+                if (bucket == null) {
+                    bucket = new Bucket<K>();
+                    Bucket<K> existing = buckets.putIfAbsent(newBucket, bucket);
+                    if (existing != null) {
+                        bucket = existing;
+                    }
+                }
+                synchronized (bucket) {
+                    if (!bucket.dead) {
+                        bucket.keys.add(entry.getKey());
+                        break;
+                    }
+                }
+            }
+        }
+
+        entry.setExpiryBucket(newBucket);
+    }
+
+    private static class Bucket<K> {
+
+        private Set<K> keys = new HashSet<K>();
+
+        private boolean dead;
+
+    }
+
+}
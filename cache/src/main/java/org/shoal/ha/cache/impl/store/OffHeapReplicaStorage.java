@@ -0,0 +1,336 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.cache.impl.store;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A slab allocator that keeps the serialized state of replicas in direct
+ *  ByteBuffers, outside of the java heap. Each segment is carved into slots of
+ *  a single size (a power of two). A value is stored in the smallest slot that
+ *  can hold it. A segment whose slots are all free is handed over to another
+ *  size class once that class runs out of slots and maxBytes does not allow
+ *  a new segment. A value that is larger than a segment or that does not fit
+ *  within maxBytes is not stored and the caller is expected to keep it on heap.
+ *
+ * A stored value is identified by a handle (segment index and offset). Callers
+ *  must make sure that a handle is not read after it has been freed.
+ */
+public class OffHeapReplicaStorage {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    private static final int MIN_SLOT_SIZE_SHIFT = 6;
+
+    private final int segmentSize;
+
+    private final long maxBytes;
+
+    private final int sizeClasses;
+
+    private volatile ByteBuffer[] segments = new ByteBuffer[0];
+
+    private int[] segmentSlotShift = new int[0];
+
+    //The number of slots of each segment that are in use
+    private int[] segmentUsedSlots = new int[0];
+
+    //The segments whose slots are all free
+    private final BitSet emptySegments = new BitSet();
+
+    private final List<List<Long>> freeSlots;
+
+    private long allocatedBytes;
+
+    private long usedBytes;
+
+    private int storedCount;
+
+    private long heapFallbackCount;
+
+    private int reassignedSegmentCount;
+
+    public OffHeapReplicaStorage(long maxBytes) {
+        this(maxBytes, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public OffHeapReplicaStorage(long maxBytes, int segmentSize) {
+        if (segmentSize < (1 << MIN_SLOT_SIZE_SHIFT) || Integer.bitCount(segmentSize) != 1) {
+            throw new IllegalArgumentException("segmentSize must be a power of two and >= "
+                    + (1 << MIN_SLOT_SIZE_SHIFT) + ". Got: " + segmentSize);
+        }
+        this.maxBytes = maxBytes;
+        this.segmentSize = segmentSize;
+        this.sizeClasses = Integer.numberOfTrailingZeros(segmentSize) - MIN_SLOT_SIZE_SHIFT + 1;
+        this.freeSlots = new ArrayList<List<Long>>(sizeClasses);
+        for (int i = 0; i < sizeClasses; i++) {
+            freeSlots.add(new ArrayList<Long>());
+        }
+    }
+
+    /**
+     * Copies the data into a free slot.
+     *
+     * @return the handle of the slot or -1 if the data could not be stored
+     */
+    public long store(byte[] data) {
+        if (data.length > segmentSize) {
+            countHeapFallback();
+            return -1;
+        }
+
+        int shift = slotShift(data.length);
+        long handle = allocate(shift);
+        if (handle < 0) {
+            countHeapFallback();
+        } else {
+            ByteBuffer buf = segments[segmentIndex(handle)].duplicate();
+            buf.position(offset(handle));
+            buf.put(data);
+        }
+
+        return handle;
+    }
+
+    public byte[] read(long handle, int length) {
+        byte[] data = new byte[length];
+        slice(handle, length).get(data);
+        return data;
+    }
+
+    /**
+     * @return an InputStream that reads the data directly out of the segment
+     */
+    public InputStream openStream(long handle, int length) {
+        return new SegmentInputStream(slice(handle, length));
+    }
+
+    public synchronized void free(long handle) {
+        int segIndex = segmentIndex(handle);
+        int shift = segmentSlotShift[segIndex];
+        freeSlots.get(shift - MIN_SLOT_SIZE_SHIFT).add(handle);
+        usedBytes -= (1 << shift);
+        storedCount--;
+        if (--segmentUsedSlots[segIndex] == 0) {
+            emptySegments.set(segIndex);
+        }
+    }
+
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getStoredCount() {
+        return storedCount;
+    }
+
+    /**
+     * @return the number of values that store() did not take, so that they
+     *  had to be kept on heap
+     */
+    public synchronized long getHeapFallbackCount() {
+        return heapFallbackCount;
+    }
+
+    /**
+     * @return the number of times that an empty segment was handed over to
+     *  another size class
+     */
+    public synchronized int getReassignedSegmentCount() {
+        return reassignedSegmentCount;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private synchronized long allocate(int shift) {
+        List<Long> free = freeSlots.get(shift - MIN_SLOT_SIZE_SHIFT);
+        if (free.isEmpty()) {
+            int emptySegment = emptySegments.nextSetBit(0);
+            if (emptySegment >= 0) {
+                reassignSegment(emptySegment, shift, free);
+            } else if (allocatedBytes + segmentSize <= maxBytes) {
+                addSegment(shift, free);
+            } else {
+                return -1;
+            }
+        }
+
+        usedBytes += (1 << shift);
+        storedCount++;
+        long handle = free.remove(free.size() - 1);
+        int segIndex = segmentIndex(handle);
+        if (segmentUsedSlots[segIndex]++ == 0) {
+            emptySegments.clear(segIndex);
+        }
+        return handle;
+    }
+
+    private synchronized void countHeapFallback() {
+        heapFallbackCount++;
+    }
+
+    /**
+     * Moves the slots of an empty segment from the free list of its size class
+     *  to free, which is the free list of the size class given by shift.
+     */
+    private void reassignSegment(int segIndex, int shift, List<Long> free) {
+        int oldClass = segmentSlotShift[segIndex] - MIN_SLOT_SIZE_SHIFT;
+        List<Long> oldFree = freeSlots.get(oldClass);
+        List<Long> remaining = new ArrayList<Long>(oldFree.size());
+        for (Long handle : oldFree) {
+            if (segmentIndex(handle) != segIndex) {
+                remaining.add(handle);
+            }
+        }
+        freeSlots.set(oldClass, remaining);
+
+        segmentSlotShift[segIndex] = shift;
+        addSlots(segIndex, shift, free);
+        reassignedSegmentCount++;
+    }
+
+    private void addSegment(int shift, List<Long> free) {
+        int segIndex = segments.length;
+
+        ByteBuffer[] newSegments = new ByteBuffer[segIndex + 1];
+        System.arraycopy(segments, 0, newSegments, 0, segIndex);
+        newSegments[segIndex] = ByteBuffer.allocateDirect(segmentSize);
+
+        int[] newSlotShift = new int[segIndex + 1];
+        System.arraycopy(segmentSlotShift, 0, newSlotShift, 0, segIndex);
+        newSlotShift[segIndex] = shift;
+
+        int[] newUsedSlots = new int[segIndex + 1];
+        System.arraycopy(segmentUsedSlots, 0, newUsedSlots, 0, segIndex);
+
+        segmentSlotShift = newSlotShift;
+        segmentUsedSlots = newUsedSlots;
+        segments = newSegments;
+        allocatedBytes += segmentSize;
+
+        addSlots(segIndex, shift, free);
+    }
+
+    private void addSlots(int segIndex, int shift, List<Long> free) {
+        //Add in reverse so that slots are handed out in address order
+        for (int offset = segmentSize - (1 << shift); offset >= 0; offset -= (1 << shift)) {
+            free.add((((long) segIndex) << 32) | offset);
+        }
+    }
+
+    private ByteBuffer slice(long handle, int length) {
+        ByteBuffer buf = segments[segmentIndex(handle)].duplicate();
+        int offset = offset(handle);
+        buf.limit(offset + length);
+        buf.position(offset);
+        return buf;
+    }
+
+    private static int slotShift(int length) {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(length - 1, 0));
+        return Math.max(shift, MIN_SLOT_SIZE_SHIFT);
+    }
+
+    private static int segmentIndex(long handle) {
+        return (int) (handle >>> 32);
+    }
+
+    private static int offset(long handle) {
+        return (int) handle;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "OffHeapReplicaStorage{" +
+                "segments=" + segments.length +
+                ", segmentSize=" + segmentSize +
+                ", maxBytes=" + maxBytes +
+                ", allocatedBytes=" + allocatedBytes +
+                ", usedBytes=" + usedBytes +
+                ", storedCount=" + storedCount +
+                ", heapFallbackCount=" + heapFallbackCount +
+                ", reassignedSegmentCount=" + reassignedSegmentCount +
+                '}';
+    }
+
+    private static class SegmentInputStream
+        extends InputStream {
+
+        private ByteBuffer buf;
+
+        SegmentInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? (buf.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buf.remaining());
+            buf.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+}
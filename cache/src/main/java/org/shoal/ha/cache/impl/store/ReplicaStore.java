@@ -40,11 +40,19 @@
 
 package org.shoal.ha.cache.impl.store;
 
+import org.glassfish.ha.store.spi.StoreEntryEvaluator;
 import org.shoal.ha.cache.api.*;
+import org.shoal.ha.cache.impl.criteria.AttributeIndex;
+import org.shoal.ha.cache.impl.criteria.CriteriaPredicate;
 
 import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -69,12 +77,54 @@ public class ReplicaStore<K, V> {
 
     private AtomicBoolean expiredEntryRemovalInProgress = new AtomicBoolean(false);
 
+    private OffHeapReplicaStorage offHeapStorage;
+
+    private ExpiryIndex<K> expiryIndex;
+
+    private DeserializedValueCache<K, V> valueCache;
+
+    //The secondary indexes by the name of the getter of their attribute
+    private Map<String, AttributeIndex<K>> indexes = Collections.emptyMap();
+
+    private static final long MAX_REMOVE_EXPIRED_TIME_IN_MILLIS = 100;
+
     public ReplicaStore(DataStoreContext<K, V> ctx) {
         this.ctx = ctx;
+        this.expiryIndex = new ExpiryIndex<K>(ctx.getDefaultMaxIdleTimeInMillis());
+        if (ctx.getDeserializedValueCacheSize() > 0) {
+            valueCache = new DeserializedValueCache<K, V>(ctx.getDeserializedValueCacheSize(), ctx.isImmutableValues());
+        }
+        if (ctx.getOffHeapReplicaStorageSize() > 0) {
+            offHeapStorage = new OffHeapReplicaStorage(ctx.getOffHeapReplicaStorageSize());
+            if (_logger.isLoggable(Level.FINE)) {
+                _logger.log(Level.FINE, "ReplicaStore[" + ctx.getStoreName() + "] using " + offHeapStorage);
+            }
+        }
+        if (!ctx.getIndexedAttributes().isEmpty() && ctx.getValueClazz() != null) {
+            Map<String, AttributeIndex<K>> tIndexes = new HashMap<String, AttributeIndex<K>>();
+            for (String attributeName : ctx.getIndexedAttributes()) {
+                try {
+                    AttributeIndex<K> index = AttributeIndex.create(ctx.getValueClazz(), attributeName);
+                    tIndexes.put(index.getGetterName(), index);
+                } catch (IllegalArgumentException iaEx) {
+                    _logger.log(Level.WARNING, "ReplicaStore[" + ctx.getStoreName()
+                            + "] Ignoring index on attribute " + attributeName + ": " + iaEx.getMessage());
+                }
+            }
+            indexes = tIndexes;
+        }
+    }
+
+    /**
+     * @return the storage used for the raw state of replicas or null if replicas are kept on heap
+     */
+    public OffHeapReplicaStorage getOffHeapStorage() {
+        return offHeapStorage;
     }
 
     public void setIdleEntryDetector(IdleEntryDetector<K, V> idleEntryDetector) {
         this.idleEntryDetector = idleEntryDetector;
+        expiryIndex.setIdleEntryDetector(idleEntryDetector);
     }
 
     //This is called during loadRequest. We do not want LoadRequests
@@ -89,11 +139,17 @@ public class ReplicaStore<K, V> {
         if (entry == null) {
             entry = new DataStoreEntry<K, V>();
             entry.setKey(k);
+            entry.setOffHeapStorage(offHeapStorage);
+            entry.setExpiryIndex(expiryIndex);
             DataStoreEntry<K, V> tEntry = map.putIfAbsent(k, entry);
             if (tEntry != null) {
                 entry = tEntry;
             } else {
                 replicaEntries.incrementAndGet();
+                synchronized (entry) {
+                    //So that an entry that is never saved (e.g. only touched) still expires
+                    expiryIndex.reindex(entry);
+                }
             }
         }
 
@@ -118,6 +174,10 @@ public class ReplicaStore<K, V> {
         if (dse != null) {
             synchronized (dse) {
                 dse.markAsRemoved("Removed");
+                removeFromIndexes(dse);
+            }
+            if (valueCache != null) {
+                valueCache.invalidate(k);
             }
 
             replicaEntries.decrementAndGet();
@@ -134,19 +194,7 @@ public class ReplicaStore<K, V> {
         if (expiredEntryRemovalInProgress.compareAndSet(false, true)) {
             try {
                 if (idleEntryDetector != null) {
-                    long now = System.currentTimeMillis();
-                    Iterator<DataStoreEntry<K, V>> iterator = map.values().iterator();
-                    while (iterator.hasNext()) {
-                        DataStoreEntry<K, V> entry = iterator.next();
-                        synchronized (entry) {
-                            if (idleEntryDetector.isIdle(entry, now)) {
-                                entry.markAsRemoved("Idle");
-                                _logger.log(Level.FINE, "ReplicaStore removing (idle) key: " + entry.getKey());
-                                iterator.remove();
-                                result++;
-                            }
-                        }
-                    }
+                    result = removeExpiredFromIndex();
                 } else {
                     //System.out.println("ReplicaStore.removeExpired idleEntryDetector is EMPTY");
                 }
@@ -162,6 +210,149 @@ public class ReplicaStore<K, V> {
         return result;
     }
 
+    /**
+     * Removes the idle entries from the buckets of the expiry index that are due.
+     *  Only the due buckets are visited, so the cost is proportional to the number
+     *  of expired entries. To bound the pause, a single call stops after
+     *  MAX_REMOVE_EXPIRED_TIME_IN_MILLIS and leaves the rest to the next call.
+     */
+    private int removeExpiredFromIndex() {
+        int result = 0;
+        long now = System.currentTimeMillis();
+        long stopAt = now + MAX_REMOVE_EXPIRED_TIME_IN_MILLIS;
+        Map.Entry<Long, List<K>> dueBucket;
+        while ((dueBucket = expiryIndex.firstDueBucket(now)) != null) {
+            long bucket = dueBucket.getKey();
+            for (K key : dueBucket.getValue()) {
+                DataStoreEntry<K, V> entry = map.get(key);
+                if (entry == null) {
+                    continue;
+                }
+                synchronized (entry) {
+                    if (entry.getExpiryBucket() != bucket) {
+                        continue; //Was accessed after we got the bucket
+                    }
+                    if (idleEntryDetector.isIdle(entry, now)) {
+                        entry.markAsRemoved("Idle");
+                        removeFromIndexes(entry);
+                        if (_logger.isLoggable(Level.FINE)) {
+                            _logger.log(Level.FINE, "ReplicaStore removing (idle) key: " + key);
+                        }
+                        if (map.remove(key, entry)) {
+                            replicaEntries.decrementAndGet();
+                        }
+                        if (valueCache != null) {
+                            valueCache.invalidate(key);
+                        }
+                        result++;
+                    } else {
+                        expiryIndex.postpone(entry, now);
+                    }
+                }
+            }
+
+            if (System.currentTimeMillis() > stopAt) {
+                if (_logger.isLoggable(Level.FINE)) {
+                    _logger.log(Level.FINE, "ReplicaStore.removeExpired() removed " + result
+                            + " entries. Will continue in the next call");
+                }
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the cache of deserialized replica values or null if it is disabled
+     */
+    public DeserializedValueCache<K, V> getValueCache() {
+        return valueCache;
+    }
+
+    public ExpiryIndex<K> getExpiryIndex() {
+        return expiryIndex;
+    }
+
+    /**
+     * @return the secondary indexes by the name of the getter of their attribute
+     */
+    public Map<String, AttributeIndex<K>> getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * Re-indexes entry after its value has changed. Must be called while
+     *  holding the lock of entry.
+     */
+    public void updateIndexes(DataStoreEntry<K, V> entry) {
+        if (indexes.isEmpty()) {
+            return;
+        }
+
+        V v = null;
+        if (!entry.isRemoved()) {
+            try {
+                v = ctx.getDataStoreEntryUpdater().getV(entry);
+            } catch (DataStoreException dsEx) {
+                if (_logger.isLoggable(Level.FINE)) {
+                    _logger.log(Level.FINE, "ReplicaStore cannot index key: " + entry.getKey(), dsEx);
+                }
+            }
+        }
+        for (AttributeIndex<K> index : indexes.values()) {
+            index.update(entry.getKey(), entry, v);
+        }
+    }
+
+    private void removeFromIndexes(DataStoreEntry<K, V> entry) {
+        for (AttributeIndex<K> index : indexes.values()) {
+            index.remove(entry.getKey(), entry);
+        }
+    }
+
+    /**
+     * Finds the entries of this store whose value satisfies the predicate and,
+     *  if eval is not null, for which eval returns Boolean.TRUE. If the
+     *  predicate constrains an indexed attribute only the candidates from the
+     *  index are looked at, otherwise every entry is scanned. Entries without
+     *  a value (e.g. those owned by this instance that are not cached locally)
+     *  never match.
+     */
+    public List<DataStoreEntry<K, V>> findByCriteria(CriteriaPredicate predicate, StoreEntryEvaluator<K, V> eval)
+        throws DataStoreException {
+        Collection<DataStoreEntry<K, V>> entries = map.values();
+        Set<K> candidates = predicate.findCandidates(indexes);
+        if (candidates != null) {
+            if (_logger.isLoggable(Level.FINE)) {
+                _logger.log(Level.FINE, "ReplicaStore[" + ctx.getStoreName() + "] " + predicate
+                        + " has " + candidates.size() + " indexed candidates out of " + map.size());
+            }
+            entries = new ArrayList<DataStoreEntry<K, V>>(candidates.size());
+            for (K key : candidates) {
+                DataStoreEntry<K, V> entry = map.get(key);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+        }
+
+        List<DataStoreEntry<K, V>> result = new ArrayList<DataStoreEntry<K, V>>();
+        DataStoreEntryUpdater<K, V> updater = ctx.getDataStoreEntryUpdater();
+        for (DataStoreEntry<K, V> entry : entries) {
+            if (entry.isRemoved()) {
+                continue;
+            }
+            V v = updater.getV(entry);
+            if (predicate.matches(v)
+                    && (eval == null || Boolean.TRUE.equals(eval.eval(entry.getKey(), v)))) {
+                result.add(entry);
+            }
+        }
+
+        return result;
+    }
+
     public Collection<K> keys() {
         return map.keySet();
     }
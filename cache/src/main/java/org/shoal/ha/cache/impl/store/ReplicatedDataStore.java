@@ -40,13 +40,18 @@
 
 package org.shoal.ha.cache.impl.store;
 
+import org.glassfish.ha.store.api.StoreEntryProcessor;
 import org.glassfish.ha.store.api.Storeable;
+import org.glassfish.ha.store.criteria.Criteria;
+import org.glassfish.ha.store.spi.StoreEntryEvaluator;
 import org.glassfish.ha.store.util.KeyTransformer;
 import org.glassfish.ha.store.util.SimpleMetadata;
 import org.shoal.adapter.store.commands.*;
+import org.shoal.ha.cache.impl.criteria.CriteriaPredicate;
 import org.shoal.ha.cache.impl.interceptor.ReplicationCommandTransmitterManager;
 import org.shoal.ha.cache.impl.interceptor.ReplicationFramePayloadCommand;
 import org.shoal.ha.cache.impl.util.CommandResponse;
+import org.shoal.ha.cache.impl.util.ReplicaAcknowledgementFuture;
 import org.shoal.ha.cache.impl.util.ResponseMediator;
 import org.shoal.ha.cache.impl.util.StringKeyTransformer;
 import org.shoal.ha.group.GroupMemberEventListener;
@@ -60,8 +65,21 @@ import org.shoal.ha.cache.impl.command.CommandManager;
 import javax.management.*;
 import java.io.Serializable;
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -72,7 +90,9 @@ import java.util.logging.Logger;
 public class ReplicatedDataStore<K, V extends Serializable>
         implements DataStore<K, V> {
 
-    private static final int MAX_REPLICA_TRIES = 1;
+    private static final long BULK_OPERATION_TIMEOUT_IN_MILLIS = 3000;
+
+    private static final long BROADCAST_LOAD_TIMEOUT_IN_MILLIS = 3000;
 
     private static final Logger _logger = Logger.getLogger(ShoalCacheLoggerConstants.CACHE_DATA_STORE);
 
@@ -187,7 +207,20 @@ public class ReplicatedDataStore<K, V extends Serializable>
         }
 
         cm.registerExecutionInterceptor(new ReplicationCommandTransmitterManager<K, V>());
+
+        //Only registered commands are written in the compact format, the rest are java serialized
+        cm.registerCommand(new SaveCommand<K, V>());
+        cm.registerCommand(new TouchCommand<K, V>());
+        cm.registerCommand(new RemoveCommand<K, V>(null));
+        cm.registerCommand(new LoadRequestCommand<K, V>());
+        cm.registerCommand(new LoadAllRequestCommand<K, V>());
+        cm.registerCommand(new LoadAllResponseCommand<K, V>());
+        cm.registerCommand(new SimpleAckCommand<K, V>());
         cm.registerCommand(new ReplicationFramePayloadCommand<K, V>());
+        cm.registerCommand(new FindByCriteriaCommand<K, V>());
+        cm.registerCommand(new FindByCriteriaResultCommand<K, V>());
+        cm.registerCommand(new ExecuteOnKeyCommand<K, V>());
+        cm.registerCommand(new ExecuteOnKeyResultCommand<K, V>());
 
 
         KeyMapper keyMapper = dsc.getKeyMapper();
@@ -236,15 +269,23 @@ public class ReplicatedDataStore<K, V extends Serializable>
 
     private void initIdleEntryProcessor() {
                 try {
+            //The ExpiryIndex files the entries under the same deadline that these detectors use
             if (Storeable.class.isAssignableFrom(dsc.getValueClazz())) {
                 dsc.setIdleEntryDetector(
-                        new IdleEntryDetector<K, V>() {
+                        new MaxIdleTimeEntryDetector<K, V>() {
+                            @Override
+                            public long getIdleDeadline(DataStoreEntry<K, ?> entry) {
+                                return entry.getMaxIdleTime() > 0 ? entry.getLastAccessedAt() + entry.getMaxIdleTime() : 0;
+                            }
+
                             @Override
                             public boolean isIdle(DataStoreEntry<K, V> entry, long nowInMillis) {
-                                _logger.log(Level.FINE, "AccessTimeInfo: getLastAccessedAt=" + entry.getLastAccessedAt()
-                                        + "; maxIdleTimeInMillis=" + entry.getMaxIdleTime()
-                                        + " < now=" +nowInMillis);
-                                return (entry.getMaxIdleTime() > 0) && entry.getLastAccessedAt() + entry.getMaxIdleTime() < nowInMillis;
+                                if (_logger.isLoggable(Level.FINE)) {
+                                    _logger.log(Level.FINE, "AccessTimeInfo: getLastAccessedAt=" + entry.getLastAccessedAt()
+                                            + "; maxIdleTimeInMillis=" + entry.getMaxIdleTime()
+                                            + " < now=" +nowInMillis);
+                                }
+                                return super.isIdle(entry, nowInMillis);
                             }
                         }
                     );
@@ -252,13 +293,20 @@ public class ReplicatedDataStore<K, V extends Serializable>
                 if (dsc.getDefaultMaxIdleTimeInMillis() > 0) {
                     final long defaultMaxIdleTimeInMillis = dsc.getDefaultMaxIdleTimeInMillis();
                     dsc.setIdleEntryDetector(
-                        new IdleEntryDetector<K, V>() {
+                        new MaxIdleTimeEntryDetector<K, V>() {
+                            @Override
+                            public long getIdleDeadline(DataStoreEntry<K, ?> entry) {
+                                return entry.getLastAccessedAt() + defaultMaxIdleTimeInMillis;
+                            }
+
                             @Override
                             public boolean isIdle(DataStoreEntry<K, V> entry, long nowInMillis) {
-                                _logger.log(Level.FINE, "AccessTimeInfo: getLastAccessedAt=" + entry.getLastAccessedAt()
-                                        + "; defaultMaxIdleTimeInMillis=" + defaultMaxIdleTimeInMillis
-                                        + " < now=" +nowInMillis);
-                                return (defaultMaxIdleTimeInMillis > 0) && entry.getLastAccessedAt() + defaultMaxIdleTimeInMillis < nowInMillis;
+                                if (_logger.isLoggable(Level.FINE)) {
+                                    _logger.log(Level.FINE, "AccessTimeInfo: getLastAccessedAt=" + entry.getLastAccessedAt()
+                                            + "; defaultMaxIdleTimeInMillis=" + defaultMaxIdleTimeInMillis
+                                            + " < now=" +nowInMillis);
+                                }
+                                return super.isIdle(entry, nowInMillis);
                             }
                         }
                     );
@@ -272,7 +320,25 @@ public class ReplicatedDataStore<K, V extends Serializable>
     @Override
     public String put(K k, V v)
         throws DataStoreException {
-        String result = "";
+        return doPut(k, v, false).getValue();
+    }
+
+    @Override
+    public Future<String> putAsync(K k, V v)
+        throws DataStoreException {
+        return doPut(k, v, true);
+    }
+
+    /**
+     * Saves the entry to the first replicationFactor replica choices of k.
+     *
+     * @return a Future that completes once the replicas have acknowledged the save.
+     *  Its value is the colon separated list of the replicas or "" if the entry
+     *  was not replicated
+     */
+    private ReplicaAcknowledgementFuture<String> doPut(K k, V v, boolean asyncAck)
+        throws DataStoreException {
+        ReplicaAcknowledgementFuture<String> future = null;
 
         try {
             dsc.acquireReadLock();
@@ -285,42 +351,105 @@ public class ReplicatedDataStore<K, V extends Serializable>
                 if (!entry.isRemoved()) {
                     if (dsc.isCacheLocally()) {
                         entry.setV(v);
+                        replicaStore.updateIndexes(entry);
                     }
                     KeyMapper keyMapper = dsc.getKeyMapper();
 
                     // fix for GLASSFISH-18085
-                    String[] members = keyMapper.getCurrentMembers();
-                    if (members.length == 0) {
+                    String[] choices = keyMapper.getReplicaChoices(dsc.getGroupName(), k);
+                    if (choices.length == 0) {
                         _saveLogger.log(Level.FINE, "Skipped replication of " + k + " since there is only one instance running in the cluster.");
-                        return result;
-                    }
-
-                    SaveCommand<K, V> cmd = dsc.getDataStoreEntryUpdater().createSaveCommand(entry, k, v);
-                    cm.execute(cmd);
-                    dscMBean.incrementSaveCount();
-
-                    String staleLocation = entry.setReplicaInstanceName(cmd.getTargetName());
-
-                    result = cmd.getKeyMappingInfo();
+                    } else {
+                        SaveCommand<K, V> cmd = dsc.getDataStoreEntryUpdater().createSaveCommand(entry, k, v);
+                        cmd.setTarget(choices[0]);
+                        List<AbstractSaveCommand<K, V>> cmds = new ArrayList<AbstractSaveCommand<K, V>>();
+                        cmds.add(cmd);
+                        int replicaCount = Math.min(dsc.getReplicationFactor(), choices.length);
+                        for (int i = 1; i < replicaCount; i++) {
+                            cmds.add(cmd.createReplicaCopy(choices[i]));
+                        }
 
-                    if ((staleLocation != null) && (! staleLocation.equals(cmd.getTargetName()))) {
-                        StaleCopyRemoveCommand<K, V> staleCmd = new StaleCopyRemoveCommand<K, V>(k);
-                        staleCmd.setStaleTargetName(staleLocation);
-                        cm.execute(staleCmd);
+                        future = executeOnReplicas(k, cmds, asyncAck);
+                        dscMBean.incrementSaveCount();
+
+                        String location = future.getValue();
+                        String staleLocation = entry.setReplicaInstanceName(location.length() == 0 ? null : location);
+                        if (staleLocation != null) {
+                            List<String> replicas = Arrays.asList(location.split(":"));
+                            for (String staleTarget : staleLocation.split(":")) {
+                                if (! replicas.contains(staleTarget)) {
+                                    StaleCopyRemoveCommand<K, V> staleCmd = new StaleCopyRemoveCommand<K, V>(k);
+                                    staleCmd.setStaleTargetName(staleTarget);
+                                    cm.execute(staleCmd);
+                                }
+                            }
+                        }
                     }
                 } else {
                     _logger.log(Level.WARNING, "ReplicatedDataStore.put(" + k + ") AFTER remove?");
-                    return result;
                 }
             }
 
+            if (future == null) {
+                return new ReplicaAcknowledgementFuture<String>(dsc.getResponseMediator(), null,
+                        Collections.<CommandResponse>emptyList(), 0, "", 0);
+            }
+
             if (_saveLogger.isLoggable(Level.FINE)) {
-                _saveLogger.log(Level.FINE, debugName + " done save(" + k + ") to " + result);
+                _saveLogger.log(Level.FINE, debugName + " done save(" + k + ") to " + future.getValue());
             }
         } finally {
             dsc.releaseReadLock();
         }
-        return result;
+        return future;
+    }
+
+    /**
+     * Executes cmds, one per replica. A single command waits for its own ack
+     *  (unless asyncAck is set). The acks of many commands are awaited together
+     *  after all of them have been sent, either from all or from any of the
+     *  replicas.
+     *
+     * @return a Future whose value is the colon separated list of the replicas
+     */
+    private ReplicaAcknowledgementFuture<String> executeOnReplicas(K k, List<? extends AcknowledgedCommand<K, V>> cmds,
+                                                                   boolean asyncAck)
+        throws DataStoreException {
+        BlockingQueue<CommandResponse> completedResponses = new LinkedBlockingQueue<CommandResponse>();
+        List<CommandResponse> responses = new ArrayList<CommandResponse>(cmds.size());
+        StringBuilder location = new StringBuilder();
+        String delim = "";
+        for (AcknowledgedCommand<K, V> cmd : cmds) {
+            cmd.setAsyncAcknowledgement(asyncAck || cmds.size() > 1);
+            cmd.setCompletionQueue(completedResponses);
+            cm.execute(cmd);
+            if (cmd.getCommandResponse() != null) {
+                responses.add(cmd.getCommandResponse());
+            }
+            if (cmd.getTargetName() != null) {
+                location.append(delim).append(cmd.getTargetName());
+                delim = ":";
+            }
+        }
+
+        ReplicaAcknowledgementFuture<String> future = new ReplicaAcknowledgementFuture<String>(
+                dsc.getResponseMediator(), completedResponses, responses,
+                dsc.isAckFromAllReplicas() ? responses.size() : 1,
+                location.toString(), AcknowledgedCommand.ACK_TIMEOUT_IN_MILLIS);
+
+        if (! asyncAck && cmds.size() > 1) {
+            try {
+                future.get();
+            } catch (ExecutionException exEx) {
+                dscMBean.incrementUnacknowledgedReplicationCount();
+                _saveLogger.log(Level.WARNING, debugName + "Not enough replicas of " + future.getValue()
+                        + " acknowledged the save of " + k + ": " + exEx.getMessage());
+            } catch (InterruptedException inEx) {
+                throw new DataStoreException(inEx);
+            }
+        }
+
+        return future;
     }
 
     @Override
@@ -356,11 +485,10 @@ public class ReplicatedDataStore<K, V extends Serializable>
 
             if (v == null) {
                 KeyMapper keyMapper = dsc.getKeyMapper();
-                String replicachoices = keyMapper.getReplicaChoices(dsc.getGroupName(), key);
-                String[] replicaHint = replicachoices.split(":");
+                String[] replicaHint = keyMapper.getReplicaChoices(dsc.getGroupName(), key);
                 if (_loadLogger.isLoggable(Level.FINE)) {
                     _loadLogger.log(Level.FINE, debugName + "load(" + key
-                        + "); ReplicaChoices: " + replicachoices);
+                        + "); ReplicaChoices: " + Arrays.toString(replicaHint));
                 }
 
                 // fix for GLASSFISH-18085
@@ -370,82 +498,15 @@ public class ReplicatedDataStore<K, V extends Serializable>
                     return null;
                 }
                 String respondingInstance = null;
-                for (int replicaIndex = 0; (replicaIndex < replicaHint.length) && (replicaIndex < MAX_REPLICA_TRIES); replicaIndex++) {
-                    String target = replicaHint[replicaIndex];
-                    if (target == null || target.trim().length() == 0 || target.equals(dsc.getInstanceName())) {
-                        continue;
-                    }
-                    LoadRequestCommand<K, V> command= new LoadRequestCommand<K, V>(key,
-                        entry == null ? DataStoreEntry.MIN_VERSION : entry.getVersion(), target);
-                    if (_loadLogger.isLoggable(Level.FINE)) {
-                        _loadLogger.log(Level.FINE, debugName + "load(" + key
-                            + ") Trying to load from Replica[" + replicaIndex + "]: " + replicaHint[replicaIndex]);
-                    }
-
-                    cm.execute(command);
-                    v = command.getResult(3, TimeUnit.SECONDS);
-                    if (v != null) {
-                        respondingInstance = command.getRespondingInstanceName();
-                        dscMBean.incrementSimpleLoadSuccessCount();
-                        break;
-                    }
-                }
-
-                if (v == null) {
-                    if (_loadLogger.isLoggable(Level.FINE)) {
-                        _loadLogger.log(Level.FINE, debugName + "*load(" + key
-                            + ") Performing broadcast load");
-                    }
-                    String[] targetInstances = dsc.getKeyMapper().getCurrentMembers();
-                    for (String targetInstance : targetInstances) {
-                        if (targetInstance.equals(dsc.getInstanceName())) {
-                            continue;
-                        }
-                        LoadRequestCommand<K, V> lrCmd = new LoadRequestCommand<K, V>(key,
-                            entry == null ? DataStoreEntry.MIN_VERSION : entry.getVersion(), targetInstance);
-                        if (_loadLogger.isLoggable(Level.FINE)) {
-                            _loadLogger.log(Level.FINE, debugName + "*load(" + key
-                                + ") Trying to load from " + targetInstance);
-                        }
-
-                        cm.execute(lrCmd);
-                        v = lrCmd.getResult(3, TimeUnit.SECONDS);
-                        if (v != null) {
-                            respondingInstance = targetInstance;
-                            dscMBean.incrementBroadcastLoadSuccessCount();
-                            break;
-                        }
-                    }
+                LoadRequestCommand<K, V> winner = load(key,
+                        entry == null ? DataStoreEntry.MIN_VERSION : entry.getVersion(), replicaHint);
+                if (winner != null) {
+                    v = winner.getLoadedValue();
+                    respondingInstance = winner.getRespondingInstanceName();
                 }
 
                 if (v != null) {
-                    entry = replicaStore.getEntry(key);
-                    if (entry != null) {
-                        synchronized (entry) {
-                            if (!entry.isRemoved()) {
-                                if (dsc.isCacheLocally()) {
-                                    entry.setV(v);
-                                }
-
-                                entry.setLastAccessedAt(System.currentTimeMillis());
-                                entry.setReplicaInstanceName(respondingInstance);
-                                //Note: Do not remove the stale replica now. We will
-                                //  do that in save
-                                if (_loadLogger.isLoggable(Level.FINE)) {
-                                    _loadLogger.log(Level.FINE, debugName + "load(" + key
-                                        + "; Successfully loaded data from " + respondingInstance);
-                                }
-
-                                dscMBean.incrementLoadSuccessCount();
-                            } else {
-                                if (_loadLogger.isLoggable(Level.FINE)) {
-                                    _loadLogger.log(Level.FINE, debugName + "load(" + key
-                                        + "; Got data from " + respondingInstance + ", but another concurrent thread removed the entry");
-                                }
-                                dscMBean.incrementLoadFailureCount();
-                            }
-                        }
-                    }
+                    updateEntryAfterLoad(key, v, respondingInstance);
                 } else {
                     dscMBean.incrementLoadFailureCount();
                 }
@@ -475,6 +536,409 @@ public class ReplicatedDataStore<K, V extends Serializable>
         }
     }
 
+    /**
+     * Loads the key from the first replicationFactor replica choices, in order
+     *  of preference, and then from all the other members at once. The whole
+     *  call waits for at most BROADCAST_LOAD_TIMEOUT_IN_MILLIS. Each replica
+     *  choice is awaited for half of the remaining time, so that a choice that
+     *  does not answer leaves time for the broadcast. A late answer from a
+     *  replica choice is still accepted while the broadcast is in progress.
+     *  The requests that are still pending at the end are cancelled.
+     *
+     * @return the request that loaded the value or null
+     */
+    private LoadRequestCommand<K, V> load(K key, long minVersion, String[] replicaHint)
+        throws DataStoreException {
+        long deadline = System.currentTimeMillis() + BROADCAST_LOAD_TIMEOUT_IN_MILLIS;
+        BlockingQueue<CommandResponse> completedResponses = new LinkedBlockingQueue<CommandResponse>();
+        Map<Long, LoadRequestCommand<K, V>> pending = new HashMap<Long, LoadRequestCommand<K, V>>();
+        List<LoadRequestCommand<K, V>> probes = new ArrayList<LoadRequestCommand<K, V>>();
+        List<String> probedTargets = new ArrayList<String>();
+        LoadRequestCommand<K, V> winner = null;
+        try {
+            //Only the first replicationFactor choices were saved to. Try them in order of preference
+            int maxReplicaTries = dsc.getReplicationFactor();
+            for (int replicaIndex = 0; (replicaIndex < replicaHint.length) && (replicaIndex < maxReplicaTries); replicaIndex++) {
+                String target = replicaHint[replicaIndex];
+                if (target == null || target.trim().length() == 0 || target.equals(dsc.getInstanceName())) {
+                    continue;
+                }
+                if (_loadLogger.isLoggable(Level.FINE)) {
+                    _loadLogger.log(Level.FINE, debugName + "load(" + key
+                        + ") Trying to load from Replica[" + replicaIndex + "]: " + target);
+                }
+
+                LoadRequestCommand<K, V> probe = sendLoadRequest(key, minVersion, target, completedResponses, pending);
+                probes.add(probe);
+                probedTargets.add(target);
+                long now = System.currentTimeMillis();
+                winner = awaitLoad(key, completedResponses, pending, now + (deadline - now) / 2);
+                if (winner != null) {
+                    break;
+                }
+            }
+
+            if (winner == null) {
+                if (_loadLogger.isLoggable(Level.FINE)) {
+                    _loadLogger.log(Level.FINE, debugName + "*load(" + key
+                        + ") Performing broadcast load");
+                }
+                for (String target : dsc.getKeyMapper().getCurrentMembers()) {
+                    if (! target.equals(dsc.getInstanceName()) && ! probedTargets.contains(target)) {
+                        if (_loadLogger.isLoggable(Level.FINE)) {
+                            _loadLogger.log(Level.FINE, debugName + "*load(" + key
+                                + ") Trying to load from " + target);
+                        }
+                        sendLoadRequest(key, minVersion, target, completedResponses, pending);
+                    }
+                }
+
+                winner = awaitLoad(key, completedResponses, pending, deadline);
+            }
+        } catch (InterruptedException inEx) {
+            throw new DataStoreException(inEx);
+        } finally {
+            for (LoadRequestCommand<K, V> lrCmd : pending.values()) {
+                lrCmd.cancel();
+            }
+        }
+
+        if (winner != null) {
+            if (probes.contains(winner)) {
+                dscMBean.incrementSimpleLoadSuccessCount();
+            } else {
+                dscMBean.incrementBroadcastLoadSuccessCount();
+            }
+        }
+        return winner;
+    }
+
+    private LoadRequestCommand<K, V> sendLoadRequest(K key, long minVersion, String target,
+                                                     BlockingQueue<CommandResponse> completedResponses,
+                                                     Map<Long, LoadRequestCommand<K, V>> pending)
+        throws DataStoreException {
+        LoadRequestCommand<K, V> lrCmd = new LoadRequestCommand<K, V>(key, minVersion, target);
+        lrCmd.setCompletionQueue(completedResponses);
+        cm.execute(lrCmd);
+        pending.put(lrCmd.getTokenId(), lrCmd);
+        return lrCmd;
+    }
+
+    /**
+     * Waits, until deadline, for the first pending request that gets a (version
+     *  valid) value. Requests that complete without a value are removed from pending.
+     *
+     * @return the request that loaded the value or null
+     */
+    private LoadRequestCommand<K, V> awaitLoad(K key, BlockingQueue<CommandResponse> completedResponses,
+                                               Map<Long, LoadRequestCommand<K, V>> pending, long deadline)
+        throws InterruptedException {
+        while (pending.size() > 0) {
+            long waitFor = deadline - System.currentTimeMillis();
+            CommandResponse resp = waitFor > 0
+                    ? completedResponses.poll(waitFor, TimeUnit.MILLISECONDS) : null;
+            if (resp == null) {
+                if (_loadLogger.isLoggable(Level.FINE)) {
+                    _loadLogger.log(Level.FINE, debugName + "*load(" + key
+                        + ") Timed out. " + pending.size() + " responses pending");
+                }
+                return null;
+            }
+
+            LoadRequestCommand<K, V> lrCmd = pending.remove(resp.getTokenId());
+            try {
+                if (lrCmd != null && lrCmd.getResult(0, TimeUnit.MILLISECONDS) != null) {
+                    return lrCmd;
+                }
+            } catch (DataStoreException dsEx) {
+                _loadLogger.log(Level.FINE, debugName + "*load(" + key + ") failed on "
+                        + resp.getRespondingInstanceName(), dsEx);
+            }
+        }
+
+        return null;
+    }
+
+    private void updateEntryAfterLoad(K key, V v, String respondingInstance) {
+        DataStoreEntry<K, V> entry = replicaStore.getEntry(key);
+        if (entry != null) {
+            synchronized (entry) {
+                if (!entry.isRemoved()) {
+                    if (dsc.isCacheLocally()) {
+                        entry.setV(v);
+                        replicaStore.updateIndexes(entry);
+                    }
+
+                    entry.setLastAccessedAt(System.currentTimeMillis());
+                    entry.setReplicaInstanceName(respondingInstance);
+                    //Note: Do not remove the stale replica now. We will
+                    //  do that in save
+                    if (_loadLogger.isLoggable(Level.FINE)) {
+                        _loadLogger.log(Level.FINE, debugName + "load(" + key
+                            + "; Successfully loaded data from " + respondingInstance);
+                    }
+
+                    dscMBean.incrementLoadSuccessCount();
+                } else {
+                    if (_loadLogger.isLoggable(Level.FINE)) {
+                        _loadLogger.log(Level.FINE, debugName + "load(" + key
+                            + "; Got data from " + respondingInstance + ", but another concurrent thread removed the entry");
+                    }
+                    dscMBean.incrementLoadFailureCount();
+                }
+            }
+        }
+    }
+
+    @Override
+    public Map<K, V> getAll(Collection<K> keys)
+        throws DataStoreException {
+        Map<K, V> result = new HashMap<K, V>();
+        Map<K, V> localHits = new HashMap<K, V>();
+        //The keys that are still missing along with the replica that was already asked for them
+        Map<K, String> misses = new HashMap<K, String>();
+        Set<String> unresponsiveTargets = new HashSet<String>();
+
+        try {
+            dsc.acquireReadLock();
+            if (closed.get()) {
+                throw new DataStoreAlreadyClosedException("getAll() failed. Store " + dsc.getStoreName() + " already closed");
+            }
+
+            //Group the keys that are not available locally by their (first) replica
+            Map<String, List<K>> keysByTarget = new HashMap<String, List<K>>();
+            KeyMapper keyMapper = dsc.getKeyMapper();
+            boolean hasOtherMembers = keyMapper.getCurrentMembers().length > 0;
+            for (K key : keys) {
+                dscMBean.incrementLoadCount();
+                DataStoreEntry<K, V> entry = replicaStore.getEntry(key);
+                if (entry != null) {
+                    if (entry.isRemoved()) {
+                        continue;
+                    }
+                    V v = dsc.getDataStoreEntryUpdater().getV(entry);
+                    if (v != null) {
+                        dscMBean.incrementLocalLoadSuccessCount();
+                        result.put(key, v);
+                        localHits.put(key, v);
+                        continue;
+                    }
+                }
+
+                if (! hasOtherMembers) {
+                    continue;
+                }
+                String[] choices = keyMapper.getReplicaChoices(dsc.getGroupName(), key);
+                String target = choices.length == 0 ? null : choices[0];
+                if (target == null || target.trim().length() == 0 || target.equals(dsc.getInstanceName())) {
+                    misses.put(key, null);
+                } else {
+                    addKey(keysByTarget, target, key);
+                }
+            }
+
+            for (LoadAllRequestCommand<K, V> request : loadAll(keysByTarget, BULK_OPERATION_TIMEOUT_IN_MILLIS)) {
+                Map<K, V> loaded = request.getLoadedValues();
+                for (Map.Entry<K, V> e : loaded.entrySet()) {
+                    updateEntryAfterLoad(e.getKey(), e.getValue(), request.getRespondingInstanceName());
+                    dscMBean.incrementSimpleLoadSuccessCount();
+                    result.put(e.getKey(), e.getValue());
+                }
+                for (K key : request.getKeys()) {
+                    if (! loaded.containsKey(key)) {
+                        misses.put(key, request.getTarget());
+                    }
+                }
+                if (! request.isAnswered()) {
+                    unresponsiveTargets.add(request.getTarget());
+                }
+            }
+
+            //The replica did not have (or did not return) these keys. Ask all the other
+            //  members at once, except for the replica that was already asked for a key
+            //  and the replicas that did not answer at all
+            if (! misses.isEmpty()) {
+                if (_loadLogger.isLoggable(Level.FINE)) {
+                    _loadLogger.log(Level.FINE, debugName + "getAll() Performing broadcast load of "
+                        + misses.size() + " keys");
+                }
+                Map<String, List<K>> broadcastKeys = new HashMap<String, List<K>>();
+                for (String member : keyMapper.getCurrentMembers()) {
+                    if (member.equals(dsc.getInstanceName()) || unresponsiveTargets.contains(member)) {
+                        continue;
+                    }
+                    for (Map.Entry<K, String> miss : misses.entrySet()) {
+                        if (! member.equals(miss.getValue())) {
+                            addKey(broadcastKeys, member, miss.getKey());
+                        }
+                    }
+                }
+
+                for (LoadAllRequestCommand<K, V> request : loadAll(broadcastKeys, BROADCAST_LOAD_TIMEOUT_IN_MILLIS)) {
+                    for (Map.Entry<K, V> e : request.getLoadedValues().entrySet()) {
+                        if (! result.containsKey(e.getKey())) {
+                            updateEntryAfterLoad(e.getKey(), e.getValue(), request.getRespondingInstanceName());
+                            dscMBean.incrementBroadcastLoadSuccessCount();
+                            result.put(e.getKey(), e.getValue());
+                        }
+                    }
+                }
+
+                for (K key : misses.keySet()) {
+                    if (! result.containsKey(key)) {
+                        dscMBean.incrementLoadFailureCount();
+                    }
+                }
+            }
+        } finally {
+            dsc.releaseReadLock();
+        }
+
+        //Just like get(), make sure that the data found locally also lives in another instance
+        if (! localHits.isEmpty()) {
+            try {
+                putAll(localHits);
+            } catch (DataStoreException dsEx) {
+                _saveLogger.log(Level.WARNING, "(SaveOnLoad) Failed to save data after a getAll", dsEx);
+            }
+        }
+
+        return result;
+    }
+
+    private static <K> void addKey(Map<String, List<K>> keysByTarget, String target, K key) {
+        List<K> targetKeys = keysByTarget.get(target);
+        if (targetKeys == null) {
+            targetKeys = new ArrayList<K>();
+            keysByTarget.put(target, targetKeys);
+        }
+        targetKeys.add(key);
+    }
+
+    /**
+     * Sends one LoadAllRequestCommand per target before waiting for any of the
+     *  responses. The responses are awaited in parallel, for at most timeoutInMillis
+     *  in total. A target that does not answer in time simply loads nothing.
+     *
+     * @return the requests, whose getLoadedValues() holds what each target returned
+     */
+    private List<LoadAllRequestCommand<K, V>> loadAll(Map<String, List<K>> keysByTarget, long timeoutInMillis)
+        throws DataStoreException {
+        List<LoadAllRequestCommand<K, V>> requests = new ArrayList<LoadAllRequestCommand<K, V>>();
+        for (Map.Entry<String, List<K>> targetKeys : keysByTarget.entrySet()) {
+            List<K> kList = targetKeys.getValue();
+            long[] minVersions = new long[kList.size()];
+            for (int i = 0; i < minVersions.length; i++) {
+                DataStoreEntry<K, V> entry = replicaStore.getEntry(kList.get(i));
+                minVersions[i] = entry == null ? DataStoreEntry.MIN_VERSION : entry.getVersion();
+            }
+            LoadAllRequestCommand<K, V> request = new LoadAllRequestCommand<K, V>(
+                    kList, minVersions, targetKeys.getKey());
+            cm.execute(request);
+            requests.add(request);
+        }
+
+        long deadline = System.currentTimeMillis() + timeoutInMillis;
+        for (LoadAllRequestCommand<K, V> request : requests) {
+            try {
+                request.getResult(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (DataStoreException dsEx) {
+                _loadLogger.log(Level.WARNING, debugName + "Failed to load " + request.getKeys().size()
+                    + " keys from " + request.getTarget(), dsEx);
+            }
+        }
+
+        return requests;
+    }
+
+    @Override
+    public Map<K, String> putAll(Map<K, V> entries)
+        throws DataStoreException {
+        List<K> keys = new ArrayList<K>(entries.size());
+        List<Future<String>> futures = new ArrayList<Future<String>>(entries.size());
+        for (Map.Entry<K, V> e : entries.entrySet()) {
+            keys.add(e.getKey());
+            futures.add(doPut(e.getKey(), e.getValue(), true));
+        }
+
+        return waitForAcknowledgements(keys, futures);
+    }
+
+    @Override
+    public void removeAll(Collection<K> keys)
+        throws DataStoreException {
+        List<K> ackKeys = new ArrayList<K>();
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        try {
+            dsc.acquireReadLock();
+            if (closed.get()) {
+                throw new DataStoreAlreadyClosedException("removeAll() failed. Store " + dsc.getStoreName() + " already closed");
+            }
+
+            for (K k : keys) {
+                ReplicaAcknowledgementFuture<String> future = doRemove(k);
+                if (future != null) {
+                    ackKeys.add(k);
+                    futures.add(future);
+                }
+            }
+        } finally {
+            dsc.releaseReadLock();
+        }
+
+        waitForAcknowledgements(ackKeys, futures);
+    }
+
+    /**
+     * Waits (up to BULK_OPERATION_TIMEOUT_IN_MILLIS in total) for the acks of a
+     *  bulk operation. Since all the commands are already in flight, the acks
+     *  from the different targets are awaited in parallel. The acks of all the
+     *  keys are awaited even if some of them fail.
+     *
+     * @throws DataStoreException naming the keys that were not acknowledged
+     */
+    private Map<K, String> waitForAcknowledgements(List<K> keys, List<Future<String>> futures)
+        throws DataStoreException {
+        Map<K, String> result = new HashMap<K, String>();
+        List<K> timedOutKeys = new ArrayList<K>();
+        List<K> failedKeys = new ArrayList<K>();
+        Throwable failure = null;
+        long deadline = System.currentTimeMillis() + BULK_OPERATION_TIMEOUT_IN_MILLIS;
+        for (int i = 0; i < futures.size(); i++) {
+            Future<String> future = futures.get(i);
+            try {
+                result.put(keys.get(i), future.get(Math.max(0, deadline - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS));
+            } catch (TimeoutException tEx) {
+                future.cancel(false);
+                timedOutKeys.add(keys.get(i));
+            } catch (ExecutionException exEx) {
+                failedKeys.add(keys.get(i));
+                if (failure == null) {
+                    failure = exEx.getCause();
+                }
+            } catch (InterruptedException inEx) {
+                throw new DataStoreException(inEx);
+            }
+        }
+
+        if (timedOutKeys.isEmpty() && failedKeys.isEmpty()) {
+            return result;
+        }
+
+        StringBuilder sb = new StringBuilder(debugName).append("Only ").append(result.size())
+                .append(" of ").append(keys.size()).append(" keys were acknowledged.");
+        if (! timedOutKeys.isEmpty()) {
+            sb.append(" No ack within ").append(BULK_OPERATION_TIMEOUT_IN_MILLIS)
+                    .append(" millis for: ").append(timedOutKeys).append('.');
+        }
+        if (! failedKeys.isEmpty()) {
+            sb.append(" Failed to replicate: ").append(failedKeys).append('.');
+        }
+        _saveLogger.log(Level.WARNING, sb.toString());
+        throw new DataStoreException(sb.toString(), failure);
+    }
+
     @Override
     public void remove(K k)
         throws DataStoreException {
@@ -489,16 +953,16 @@ public class ReplicatedDataStore<K, V extends Serializable>
                 _logger.log(Level.FINE, "DataStore.remove(" + k + ") CALLED ****");
             }
 
-            replicaStore.remove(k);
-            dscMBean.incrementRemoveCount();
-
-            String[] targets = dsc.getKeyMapper().getCurrentMembers();
-
-            if (targets != null) {
-                for (String target : targets) {
-                    RemoveCommand<K, V> cmd = new RemoveCommand<K, V>(k);
-                    cmd.setTarget(target);
-                    cm.execute(cmd);
+            ReplicaAcknowledgementFuture<String> future = doRemove(k);
+            if (future != null && dsc.isDoSynchronousReplication()) {
+                try {
+                    future.get();
+                } catch (ExecutionException exEx) {
+                    dscMBean.incrementUnacknowledgedReplicationCount();
+                    _logger.log(Level.WARNING, debugName + "Not enough replicas of " + future.getValue()
+                            + " acknowledged the remove of " + k + ": " + exEx.getMessage());
+                } catch (InterruptedException inEx) {
+                    throw new DataStoreException(inEx);
                 }
             }
         } finally {
@@ -506,6 +970,61 @@ public class ReplicatedDataStore<K, V extends Serializable>
         }
     }
 
+    /**
+     * Removes k locally and from the instances that may hold a copy of it: the
+     *  replicas it was last saved to (or loaded from) and the ones it maps to
+     *  now. If the location of k is not known, every member is sent a tombstone.
+     *  The tombstones are coalesced into the removedKeys of each member's next
+     *  frame and nobody waits for them.
+     *
+     * @return a Future for the acks of the targeted removes or null if the remove was broadcast
+     */
+    private ReplicaAcknowledgementFuture<String> doRemove(K k)
+        throws DataStoreException {
+        DataStoreEntry<K, V> entry = replicaStore.getEntry(k);
+        String location = entry == null ? null : entry.getReplicaInstanceName();
+        replicaStore.remove(k);
+        dscMBean.incrementRemoveCount();
+
+        List<String> members = Arrays.asList(dsc.getKeyMapper().getCurrentMembers());
+        List<String> targets = new ArrayList<String>();
+        if (location != null) {
+            for (String replica : location.split(":")) {
+                if (members.contains(replica)) {
+                    targets.add(replica);
+                }
+            }
+            String[] choices = dsc.getKeyMapper().getReplicaChoices(dsc.getGroupName(), k);
+            for (int i = 0; i < Math.min(dsc.getReplicationFactor(), choices.length); i++) {
+                if (! targets.contains(choices[i])) {
+                    targets.add(choices[i]);
+                }
+            }
+        } else {
+            targets.addAll(members);
+        }
+
+        List<RemoveCommand<K, V>> cmds = new ArrayList<RemoveCommand<K, V>>(targets.size());
+        for (String target : targets) {
+            RemoveCommand<K, V> cmd = new RemoveCommand<K, V>(k);
+            cmd.setTarget(target);
+            cmds.add(cmd);
+        }
+        ReplicaAcknowledgementFuture<String> future = executeOnReplicas(k, cmds, true);
+
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, debugName + "remove(" + k + ") sent to " + future.getValue()
+                    + (location == null ? " (location unknown)" : ""));
+        }
+
+        if (location == null) {
+            //Release the responses, the acks of the tombstones are not awaited
+            future.cancel(false);
+            return null;
+        }
+        return future;
+    }
+
     @Override
     public String touch(K k, long version, long ts, long ttl)
         throws DataStoreException {
@@ -522,10 +1041,15 @@ public class ReplicatedDataStore<K, V extends Serializable>
                     long now = System.currentTimeMillis();
                     entry.setLastAccessedAt(now);
                     String target = entry.getReplicaInstanceName();
-                    TouchCommand<K, V> cmd = new TouchCommand<K, V>(k, version, now, defaultIdleTimeoutInMillis);
-                    cm.execute(cmd);
+                    String[] choices = dsc.getKeyMapper().getReplicaChoices(dsc.getGroupName(), k);
+                    List<AbstractSaveCommand<K, V>> cmds = new ArrayList<AbstractSaveCommand<K, V>>();
+                    for (int i = 0; i < Math.min(dsc.getReplicationFactor(), choices.length); i++) {
+                        TouchCommand<K, V> cmd = new TouchCommand<K, V>(k, version, now, defaultIdleTimeoutInMillis);
+                        cmd.setTarget(choices[i]);
+                        cmds.add(cmd);
+                    }
 
-                    location = cmd.getKeyMappingInfo();
+                    location = executeOnReplicas(k, cmds, false).getValue();
                 }
             }
         } finally {
@@ -535,6 +1059,331 @@ public class ReplicatedDataStore<K, V extends Serializable>
     }
 
 
+    @Override
+    public Map<K, V> findByCriteria(Criteria<V> criteria, StoreEntryEvaluator<K, V> eval, boolean fetchValues)
+        throws DataStoreException {
+        Map<K, V> result = null;
+        try {
+            result = executeCriteria(criteria, eval,
+                    fetchValues ? FindByCriteriaCommand.FIND_VALUES : FindByCriteriaCommand.FIND_KEYS);
+        } catch (PartialResultException prEx) {
+            if (fetchValues) {
+                loadMissingValues((Map<K, V>) prEx.getPartialResult());
+            }
+            throw prEx;
+        }
+        if (fetchValues) {
+            loadMissingValues(result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Loads, from their replicas, the values of the keys that were reported only
+     *  by their owner (which does not ship the values of the entries that it owns).
+     */
+    private void loadMissingValues(Map<K, V> result)
+        throws DataStoreException {
+        List<K> missing = new ArrayList<K>();
+        for (Map.Entry<K, V> e : result.entrySet()) {
+            if (e.getValue() == null) {
+                missing.add(e.getKey());
+            }
+        }
+        if (! missing.isEmpty()) {
+            Map<K, V> loaded = getAll(missing);
+            for (K k : missing) {
+                V v = loaded.get(k);
+                if (v != null) {
+                    result.put(k, v);
+                } else {
+                    result.remove(k);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int removeByCriteria(Criteria<V> criteria, StoreEntryEvaluator<K, V> eval)
+        throws DataStoreException {
+        return executeCriteria(criteria, eval, FindByCriteriaCommand.REMOVE).size();
+    }
+
+    @Override
+    public Serializable executeOnKey(K k, StoreEntryProcessor<K, ?> processor)
+        throws DataStoreException {
+        return executeOnKeys(Collections.singletonList(k), processor).get(k);
+    }
+
+    /**
+     * Only the owner of an entry (the instance that saved it last) knows its
+     *  replicas and hands out its versions. If this instance owns and caches the
+     *  entry, the processor is executed and the value saved here. If it owns the
+     *  entry without caching it, the processor is sent to the first replica, which
+     *  copies the changed value to the others. In every other case (this instance
+     *  does not own the entry, the replica no longer has it or the values of this
+     *  store are Storeable) the value is loaded, processed here and saved.
+     *
+     * The store's read lock is held only while the processors are run here and
+     *  sent. The results of the sent processors are then awaited until a single
+     *  deadline for the whole batch.
+     */
+    @Override
+    public Map<K, Serializable> executeOnKeys(Collection<K> keys, StoreEntryProcessor<K, ?> processor)
+        throws DataStoreException {
+        Map<K, Serializable> result = new HashMap<K, Serializable>();
+        Map<K, String> failures = new HashMap<K, String>();
+        Set<K> undetermined = new HashSet<K>();
+        List<ExecuteOnKeyCommand<K, V>> sent = new ArrayList<ExecuteOnKeyCommand<K, V>>();
+        List<K> loadAndSave = new ArrayList<K>();
+        try {
+            dsc.acquireReadLock();
+            if (closed.get()) {
+                throw new DataStoreAlreadyClosedException("executeOnKeys() failed. Store " + dsc.getStoreName() + " already closed");
+            }
+
+            boolean canShip = dsc.getDataStoreEntryUpdater() instanceof SimpleDataStoreEntryUpdater;
+            for (K k : keys) {
+                ExecuteOnKeyCommand<K, V> cmd = null;
+                DataStoreEntry<K, V> entry = replicaStore.getEntry(k);
+                if (entry != null) {
+                    synchronized (entry) {
+                        if (entry.isRemoved()) {
+                            continue;
+                        } else if (!entry.isReplicaNode() && entry.getV() != null) {
+                            V v = entry.getV();
+                            try {
+                                result.put(k, process(processor, k, v));
+                            } catch (DataStoreException dsEx) {
+                                failures.put(k, String.valueOf(dsEx.getCause()));
+                                continue;
+                            }
+                            doPut(k, v, false);
+                            continue;
+                        } else if (canShip && !entry.isReplicaNode() && entry.getReplicaInstanceName() != null) {
+                            cmd = createExecuteOnKeyCommand(k, processor, entry);
+                        }
+                    }
+                }
+
+                if (cmd == null) {
+                    loadAndSave.add(k);
+                } else {
+                    try {
+                        cm.execute(cmd);
+                        sent.add(cmd);
+                    } catch (DataStoreException dsEx) {
+                        //Nothing was sent, so the processor was not executed
+                        _logger.log(Level.INFO, "Exception while sending processor for " + k + " to " + cmd.getTarget(), dsEx);
+                        cmd.cancel();
+                        rollbackVersion(cmd);
+                        loadAndSave.add(k);
+                    }
+                }
+            }
+        } finally {
+            dsc.releaseReadLock();
+        }
+
+        //Every command is drained, so that none of the responses is left behind
+        long deadline = System.currentTimeMillis() + dsc.getExecuteTimeoutInMillis();
+        for (ExecuteOnKeyCommand<K, V> cmd : sent) {
+            ExecuteOnKeyResultCommand<K, V> rsp = null;
+            try {
+                rsp = cmd.getResult(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (DataStoreException dsEx) {
+                //The target may or may not have executed the processor and saved
+                //  the reserved version, so that version must not be handed out again.
+                //  Skipping it is harmless, the next save is a full one
+                _logger.log(Level.WARNING, debugName + "No result of processor for " + cmd.getKey()
+                        + " from " + cmd.getTarget() + ": " + dsEx.getMessage());
+                undetermined.add(cmd.getKey());
+                continue;
+            }
+
+            if (rsp.isFound()) {
+                result.put(cmd.getKey(), rsp.getResult());
+                dscMBean.incrementSaveCount();
+                continue;
+            }
+
+            //Nothing was saved with the version that we handed out
+            rollbackVersion(cmd);
+            if (rsp.getFailure() == null) {
+                loadAndSave.add(cmd.getKey());
+            } else {
+                failures.put(cmd.getKey(), "at " + cmd.getTarget() + ": " + rsp.getFailure());
+            }
+        }
+
+        for (K k : loadAndSave) {
+            V v = null;
+            try {
+                v = get(k);
+                if (v == null) {
+                    continue;
+                }
+                result.put(k, process(processor, k, v));
+            } catch (DataStoreException dsEx) {
+                failures.put(k, String.valueOf(dsEx.getCause() != null ? dsEx.getCause() : dsEx));
+                continue;
+            }
+
+            try {
+                put(k, v);
+            } catch (DataStoreException dsEx) {
+                //The changed value may or may not have reached the replicas
+                _logger.log(Level.WARNING, debugName + "Error while saving the processed value of " + k, dsEx);
+                result.remove(k);
+                undetermined.add(k);
+            }
+        }
+
+        if (!failures.isEmpty() || !undetermined.isEmpty()) {
+            throw new PartialExecutionException("StoreEntryProcessor failed for " + failures
+                    + (undetermined.isEmpty() ? "" : "; may or may not have been executed on " + undetermined),
+                    result, failures.keySet(), undetermined);
+        }
+
+        return result;
+    }
+
+    /**
+     * Gives back the version that cmd reserved, unless the entry was saved again since.
+     *  Must only be called when it is known that nothing was saved with that version.
+     */
+    private void rollbackVersion(ExecuteOnKeyCommand<K, V> cmd) {
+        DataStoreEntry<K, V> entry = replicaStore.getEntry(cmd.getKey());
+        if (entry != null) {
+            synchronized (entry) {
+                if (entry.getVersion() == cmd.getVersion()) {
+                    entry.setVersion(cmd.getVersion() - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Must be called while holding the lock of entry, which this instance owns.
+     *
+     * @return a command that executes the processor at the first replica of
+     *  entry (and copies the result to the rest) or null if entry has no replica
+     */
+    private ExecuteOnKeyCommand<K, V> createExecuteOnKeyCommand(K k, StoreEntryProcessor<K, ?> processor,
+                                                                DataStoreEntry<K, V> entry) {
+        String location = entry.getReplicaInstanceName();
+        int index = location.indexOf(':');
+        String target = index < 0 ? location : location.substring(0, index);
+        String copyTargets = index < 0 ? null : location.substring(index + 1);
+        if (target.length() == 0 || target.equals(dsc.getInstanceName())) {
+            return null;
+        }
+
+        //The replicas no longer have the state that a delta would be based on
+        entry.compareAndSetDeltaBase(entry.getDeltaBase(), null);
+        long version = entry.incrementAndGetVersion();
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, debugName + "executeOnKey(" + k + ") at " + target + "; copies: "
+                    + copyTargets + "; version = " + version);
+        }
+        return new ExecuteOnKeyCommand<K, V>(k, processor, version, target, copyTargets);
+    }
+
+    private Serializable process(StoreEntryProcessor<K, ?> processor, K k, V v)
+        throws DataStoreException {
+        try {
+            return ((StoreEntryProcessor<K, V>) processor).process(k, v);
+        } catch (RuntimeException rtEx) {
+            throw new DataStoreException("StoreEntryProcessor failed for " + k, rtEx);
+        }
+    }
+
+    /**
+     * Sends the criteria to every member and evaluates it against the local
+     *  ReplicaStore while the members do the same. The members send their
+     *  matches back in pages, which are merged (by key) into the result.
+     *  The read lock is only held while the criteria is sent, so that close()
+     *  does not wait for slow members. If some member does not answer within
+     *  the criteria timeout of the DataStoreContext, a PartialResultException
+     *  that holds the matches received so far is thrown.
+     */
+    private Map<K, V> executeCriteria(Criteria<V> criteria, StoreEntryEvaluator<K, V> eval, byte mode)
+        throws DataStoreException {
+        CriteriaPredicate predicate = null;
+        try {
+            predicate = CriteriaPredicate.compile(criteria);
+        } catch (IllegalArgumentException illArgEx) {
+            throw new DataStoreException("Invalid criteria", illArgEx);
+        }
+
+        ResponseMediator respMed = dsc.getResponseMediator();
+        CommandResponse resp = respMed.createCommandResponse();
+        long tokenId = resp.getTokenId();
+        Future<FindByCriteriaResultCommand.ResultCollector<K, V>> future = resp.getFuture();
+        FindByCriteriaResultCommand.ResultCollector<K, V> collector = null;
+
+        try {
+            dsc.acquireReadLock();
+            try {
+                if (closed.get()) {
+                    throw new DataStoreAlreadyClosedException("findByCriteria() failed. Store " + dsc.getStoreName() + " already closed");
+                }
+
+                String[] targets = dsc.getKeyMapper().getCurrentMembers();
+                List<String> members = new ArrayList<String>(Arrays.asList(targets));
+                members.add(instanceName);
+                collector = new FindByCriteriaResultCommand.ResultCollector<K, V>(members);
+                resp.setTransientResult(collector);
+                for (String target : targets) {
+                    try {
+                        cm.execute(new FindByCriteriaCommand<K, V>(predicate, eval, mode, tokenId, target));
+                    } catch (DataStoreException dse) {
+                        _logger.log(Level.INFO, "Exception while sending criteria to " + target, dse);
+                        FindByCriteriaResultCommand.addPage(resp, target, Collections.<K, V>emptyMap(),
+                                Collections.<K, Long>emptyMap(), 0, true);
+                    }
+                }
+
+                Map<K, V> localMatches = new HashMap<K, V>();
+                Map<K, Long> localVersions = new HashMap<K, Long>();
+                try {
+                    for (DataStoreEntry<K, V> entry : replicaStore.findByCriteria(predicate, eval)) {
+                        K k = entry.getKey();
+                        V v = null;
+                        if (mode == FindByCriteriaCommand.FIND_VALUES) {
+                            v = dsc.getDataStoreEntryUpdater().getV(entry);
+                        } else if (mode == FindByCriteriaCommand.REMOVE) {
+                            replicaStore.remove(k);
+                            dscMBean.incrementRemoveCount();
+                        }
+                        localMatches.put(k, v);
+                        localVersions.put(k, entry.getVersion());
+                    }
+                } finally {
+                    FindByCriteriaResultCommand.addPage(resp, instanceName, localMatches, localVersions, 0, true);
+                }
+            } finally {
+                dsc.releaseReadLock();
+            }
+
+            return future.get(dsc.getCriteriaTimeoutInMillis(), TimeUnit.MILLISECONDS).getResult();
+        } catch (TimeoutException tEx) {
+            Map<K, V> partialResult = collector.getResult();
+            Set<String> unresponsiveMembers = collector.getPendingMembers();
+            _logger.log(Level.WARNING, debugName + "Timed out while waiting for the result of " + predicate
+                    + " from " + unresponsiveMembers + ". Got " + partialResult.size() + " matches from the others");
+            throw new PartialResultException("Timed out while waiting for the result of " + predicate
+                    + " from " + unresponsiveMembers, partialResult, unresponsiveMembers);
+        } catch (ExecutionException exEx) {
+            throw new DataStoreException("Error while evaluating " + predicate, exEx);
+        } catch (InterruptedException inEx) {
+            throw new DataStoreException(inEx);
+        } finally {
+            respMed.removeCommandResponse(tokenId);
+        }
+    }
+
     @Override
     public int removeIdleEntries(long idleFor) {
 
@@ -593,6 +1442,7 @@ public class ReplicatedDataStore<K, V extends Serializable>
             dsc.acquireWriteLock();
             closed.set(true);
             dsc.getCommandManager().close();
+            dsc.getResponseMediator().close();
             if (mbs != null && mbeanObjectName != null) {
                 mbs.unregisterMBean(mbeanObjectName);
             }
@@ -5,7 +5,10 @@ import org.shoal.adapter.store.commands.LoadResponseCommand;
 import org.shoal.adapter.store.commands.SaveCommand;
 import org.shoal.adapter.store.commands.TouchCommand;
 import org.shoal.ha.cache.api.*;
+import org.shoal.ha.cache.impl.util.ReplicationOutputStream;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Iterator;
 import java.util.TreeSet;
 import java.util.logging.Level;
@@ -26,6 +29,9 @@ public class SimpleDataStoreEntryUpdater<K, V>
         //Update this entry's meta info
         super.updateMetaInfoInDataStoreEntry(entry, cmd);
         entry.setIsReplicaNode(false);
+        if (ctx.isDeltaReplication()) {
+            cmd.setDeltaSourceEntry(entry);
+        }
         
         return cmd;
     }
@@ -37,7 +43,7 @@ public class SimpleDataStoreEntryUpdater<K, V>
             if (_logger.isLoggable(Level.FINE)) {
                 _logger.log(Level.FINE, "SimpleDataStoreEntryUpdater.createLoadResp "
                     + " entry.version " + entry.getVersion() + ">= " + minVersion
-                    + "; rawV.length = " + entry.getRawV());
+                    + "; rawV.length = " + entry.getRawVLength());
             }
             cmd = new LoadResponseCommand<K, V>(k, entry.getVersion(), entry.getRawV());
         } else {
@@ -45,7 +51,7 @@ public class SimpleDataStoreEntryUpdater<K, V>
                 String entryMsg = (entry == null) ? "NULL ENTRY"
                         : (entry.getVersion() + " < " + minVersion);
                 _logger.log(Level.FINE, "SimpleDataStoreEntryUpdater.createLoadResp " + entryMsg
-                   + "; rawV.length = " + (entry == null ? " null " : "" + entry.getRawV()));
+                   + "; rawV.length = " + (entry == null ? " null " : "" + entry.getRawVLength()));
             }
             cmd = new LoadResponseCommand<K, V>(k, Long.MIN_VALUE, null);
         }
@@ -54,7 +60,16 @@ public class SimpleDataStoreEntryUpdater<K, V>
 
     @Override
     public void executeSave(DataStoreEntry<K, V> entry, SaveCommand<K, V> cmd) {
-        if (entry != null && entry.getVersion() < cmd.getVersion()) {
+        if (entry != null && entry.isRemoved()) {
+            //The entry was removed after the save looked it up. Storing the state
+            //  now would leak it, since nobody will ever release it
+            if (_logger.isLoggable(Level.FINE)) {
+                _logger.log(Level.FINE, "SimpleDataStoreEntryUpdater.executeSave. IGNORING save of removed entry "
+                    + cmd.getKey() + "; cmd.version = " + cmd.getVersion());
+            }
+        } else if (cmd.isDelta()) {
+            executeDeltaSave(entry, cmd);
+        } else if (entry != null && entry.getVersion() < cmd.getVersion()) {
             if (_logger.isLoggable(Level.FINE)) {
                 _logger.log(Level.FINE, "SimpleDataStoreEntryUpdater.executeSave. SAVING ... "
                     + "entry = " + entry + "; entry.version = " + entry.getVersion()
@@ -63,6 +78,7 @@ public class SimpleDataStoreEntryUpdater<K, V>
             entry.setIsReplicaNode(true);
             super.updateMetaInfoInDataStoreEntry(entry, cmd);
             entry.setRawV(cmd.getRawV());
+            invalidateCachedValue(entry);
             updateFromPendingUpdates(entry);
 //            super.printEntryInfo("Updated", entry, cmd.getKey());
         } else {
@@ -74,6 +90,41 @@ public class SimpleDataStoreEntryUpdater<K, V>
         }
     }
 
+    private void executeDeltaSave(DataStoreEntry<K, V> entry, SaveCommand<K, V> cmd) {
+        if (entry.getVersion() >= cmd.getVersion()) {
+            if (_logger.isLoggable(Level.FINE)) {
+                _logger.log(Level.FINE, "SimpleDataStoreEntryUpdater.executeDeltaSave. IGNORING ... "
+                    + "entry.version = " + entry.getVersion() + "; cmd.version = " + cmd.getVersion());
+            }
+        } else if (!applyDelta(entry, cmd)) {
+            //We missed the save that this delta is based on. Keep it until that save
+            //  arrives. The next full save will replace it anyway
+            if (_logger.isLoggable(Level.FINE)) {
+                _logger.log(Level.FINE, "SimpleDataStoreEntryUpdater.executeDeltaSave. PENDING ... "
+                    + "entry.version = " + entry.getVersion() + "; cmd.baseVersion = " + cmd.getBaseVersion()
+                    + "; cmd.version = " + cmd.getVersion());
+            }
+            entry.addPendingUpdate(cmd);
+        }
+    }
+
+    private boolean applyDelta(DataStoreEntry<K, V> entry, SaveCommand<K, V> cmd) {
+        if (entry.getVersion() != cmd.getBaseVersion()) {
+            return false;
+        }
+        byte[] patched = cmd.getDelta().apply(entry.getRawV());
+        if (patched == null) {
+            return false;
+        }
+
+        entry.setIsReplicaNode(true);
+        super.updateMetaInfoInDataStoreEntry(entry, cmd);
+        entry.setRawV(patched);
+        invalidateCachedValue(entry);
+        updateFromPendingUpdates(entry);
+        return true;
+    }
+
     @Override
     public void executeTouch(DataStoreEntry<K, V> entry, TouchCommand<K, V> touchCmd)
             throws DataStoreException {
@@ -82,6 +133,7 @@ public class SimpleDataStoreEntryUpdater<K, V>
         //TODO: For 'full save' mode there is no need to keep multiple touch commands
         updateFromPendingUpdates(entry);
         entry.setIsReplicaNode(true);
+        invalidateCachedValue(entry);
     }
 
     private void updateFromPendingUpdates(DataStoreEntry<K, V> entry) {
@@ -91,7 +143,18 @@ public class SimpleDataStoreEntryUpdater<K, V>
 
             while (iter.hasNext()) {
                 AbstractSaveCommand<K, V> pendingCmd = iter.next();
-                if (entry.getVersion() > pendingCmd.getVersion()) {
+                if (pendingCmd instanceof SaveCommand && ((SaveCommand<K, V>) pendingCmd).isDelta()) {
+                    if (entry.getVersion() >= pendingCmd.getVersion()) {
+                        iter.remove();
+                    } else if (entry.getVersion() == ((SaveCommand<K, V>) pendingCmd).getBaseVersion()) {
+                        iter.remove();
+                        //applyDelta processes the rest of the pending updates
+                        applyDelta(entry, (SaveCommand<K, V>) pendingCmd);
+                        return;
+                    } else {
+                        break;
+                    }
+                } else if (entry.getVersion() > pendingCmd.getVersion()) {
                     iter.remove();
                     if (_logger.isLoggable(Level.FINE)) {
                         _logger.log(Level.FINE, "**Ignoring Pending touch because "
@@ -119,23 +182,59 @@ public class SimpleDataStoreEntryUpdater<K, V>
     public V getV(DataStoreEntry<K, V> entry)
             throws DataStoreException {
         V v = entry.getV();
-        if (entry != null && v == null && entry.getRawV() != null) {
-            if (_logger.isLoggable(Level.FINE)) {
-                _logger.log(Level.FINE, "SimpleDataStoreEntryUpdater.getV(): Reading from raw data: " + entry.getRawV().length);
-            }
+        if (entry != null && v == null) {
+            //Hold the lock so that the (possibly off heap) raw state is not
+            //  released while it is being deserialized
+            synchronized (entry) {
+                DeserializedValueCache<K, V> valueCache = getValueCache();
+                if (valueCache != null) {
+                    v = valueCache.get(entry.getKey(), entry.getVersion());
+                    if (v != null) {
+                        return v;
+                    }
+                }
 
-            v = super.deserializeV(entry.getRawV());
+                InputStream rawVStream = entry.getRawVInputStream();
+                if (rawVStream != null) {
+                    if (_logger.isLoggable(Level.FINE)) {
+                        _logger.log(Level.FINE, "SimpleDataStoreEntryUpdater.getV(): Reading from raw data: " + entry.getRawVLength());
+                    }
+
+                    v = super.deserializeV(rawVStream);
+                    if (valueCache != null && v != null) {
+                        valueCache.put(entry.getKey(), entry.getVersion(), v, entry.getRawVLength());
+                    }
+                }
+            }
         }
 
         return v;
     }
 
+    private DeserializedValueCache<K, V> getValueCache() {
+        ReplicaStore<K, V> replicaStore = ctx.getReplicaStore();
+        return replicaStore == null ? null : replicaStore.getValueCache();
+    }
+
+    private void invalidateCachedValue(DataStoreEntry<K, V> entry) {
+        DeserializedValueCache<K, V> valueCache = getValueCache();
+        if (valueCache != null) {
+            valueCache.invalidate(entry.getKey());
+        }
+    }
+
     @Override
     public byte[] getState(V v)
             throws DataStoreException {
         return captureState(v);
     }
 
+    @Override
+    public void writeState(V v, ReplicationOutputStream ros)
+            throws IOException {
+        ros.writeLengthPrefixedObject(v);
+    }
+
     @Override
     public V extractVFrom(LoadResponseCommand<K, V> cmd)
         throws DataStoreException {
@@ -60,7 +60,14 @@ public class SimpleStoreableDataStoreEntryUpdater<K, V extends SimpleMetadata>
 
     @Override
     public void executeSave(DataStoreEntry<K, V> entry, SaveCommand<K, V> cmd) {
-        if (entry != null && entry.getVersion() < cmd.getVersion()) {
+        if (entry != null && entry.isRemoved()) {
+            //The entry was removed after the save looked it up. Storing the state
+            //  now would leak it, since nobody will ever release it
+            if (_logger.isLoggable(Level.FINE)) {
+                _logger.log(Level.FINE, "SimpleStoreableDataStoreEntryUpdater.executeSave. IGNORING save of removed entry "
+                    + cmd.getKey() + "; cmd.version = " + cmd.getVersion());
+            }
+        } else if (entry != null && entry.getVersion() < cmd.getVersion()) {
             if (_logger.isLoggable(Level.FINE)) {
                 _logger.log(Level.FINE, "SimpleStoreableDataStoreEntryUpdater.executeSave. SAVING ... "
                     + "entry = " + entry + "; entry.version = " + entry.getVersion()
@@ -87,7 +87,7 @@ public class ASyncReplicationManager {
         return value;
     }
 
-    public ThreadPoolExecutor getExecutorService() {
+    public ASyncThreadPool getExecutorService() {
         return _asyncPool;
     }
 
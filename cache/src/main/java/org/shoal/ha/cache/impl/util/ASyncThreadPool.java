@@ -56,8 +56,61 @@ public class ASyncThreadPool
 
     private static ScheduledThreadPoolExecutor _scheduledExecutor;
 
+    //Set on the pool's own threads so that they never wait for their own queue
+    private final ThreadLocal<Boolean> poolThread = new ThreadLocal<Boolean>();
+
     public ASyncThreadPool(int corePoolSize, int maximumPoolSize, long keepAliveTime, BlockingQueue<Runnable> workQueue) {
         super(corePoolSize, maximumPoolSize, keepAliveTime, TimeUnit.SECONDS, workQueue);
     }
 
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        poolThread.set(Boolean.TRUE);
+        super.beforeExecute(t, r);
+    }
+
+    /**
+     * Like submit(), but applies backpressure when the queue is full: the caller
+     *  waits up to submitTimeoutInMillis for room in the queue and, if the queue
+     *  is still full after that (the pool is stalled), runs the task itself. A
+     *  task that is submitted by one of the pool's own threads is run by that
+     *  thread at once, since the pool may be waiting for that very thread to
+     *  drain the queue.
+     *
+     * @param submitTimeoutInMillis 0 to throw the RejectedExecutionException
+     *  at once, like submit()
+     */
+    public Future<?> submitOrWait(Runnable task, long submitTimeoutInMillis) {
+        RunnableFuture<Object> ftask = newTaskFor(task, null);
+        try {
+            execute(ftask);
+            return ftask;
+        } catch (RejectedExecutionException rejEx) {
+            if (submitTimeoutInMillis <= 0 || isShutdown()) {
+                throw rejEx;
+            }
+        }
+
+        if (poolThread.get() != null) {
+            ftask.run();
+            return ftask;
+        }
+
+        boolean queued;
+        try {
+            queued = getQueue().offer(ftask, submitTimeoutInMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException inEx) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting to queue a replication task");
+        }
+
+        if (!queued) {
+            ftask.run();
+        } else if (isShutdown() && getQueue().remove(ftask)) {
+            //Raced with shutdown(). The pool's threads may be gone already, so it would never run
+            throw new RejectedExecutionException("ASyncThreadPool has been shutdown");
+        }
+        return ftask;
+    }
+
 }
@@ -0,0 +1,121 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.cache.impl.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A Future that completes when the replica acknowledges an AcknowledgedCommand.
+ *  get() waits at most for the ack timeout, just like a synchronous put. The
+ *  CommandResponse of a lost ack expires in the ResponseMediator, so it is
+ *  released even if get() is never called.
+ */
+public class AcknowledgementFuture<T>
+    implements Future<T> {
+
+    private ResponseMediator mediator;
+
+    private CommandResponse resp;
+
+    private T value;
+
+    private long ackTimeoutInMillis;
+
+    /**
+     * @param mediator the ResponseMediator that holds resp
+     * @param resp the CommandResponse to wait for or null if no ack is expected
+     * @param value the value returned by get() once the ack has been received
+     * @param ackTimeoutInMillis the maximum time get() waits for the ack
+     */
+    public AcknowledgementFuture(ResponseMediator mediator, CommandResponse resp,
+                                 T value, long ackTimeoutInMillis) {
+        this.mediator = mediator;
+        this.resp = resp;
+        this.value = value;
+        this.ackTimeoutInMillis = ackTimeoutInMillis;
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (resp == null) {
+            return false;
+        }
+        mediator.removeCommandResponse(resp.getTokenId());
+        return resp.getFuture().cancel(mayInterruptIfRunning);
+    }
+
+    public boolean isCancelled() {
+        return resp != null && resp.getFuture().isCancelled();
+    }
+
+    public boolean isDone() {
+        return resp == null || resp.getFuture().isDone();
+    }
+
+    public T get()
+        throws InterruptedException, ExecutionException {
+        try {
+            return get(ackTimeoutInMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException tEx) {
+            mediator.removeCommandResponse(resp.getTokenId());
+            throw new ExecutionException("No acknowledgement received within "
+                    + ackTimeoutInMillis + " millis", tEx);
+        }
+    }
+
+    public T get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+        if (resp != null) {
+            Object result = resp.getFuture().get(timeout, unit);
+            if (result instanceof Exception) {
+                throw new ExecutionException((Exception) result);
+            }
+        }
+
+        return value;
+    }
+
+    public String getRespondingInstanceName() {
+        return resp == null ? null : resp.getRespondingInstanceName();
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.cache.impl.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A binary diff between two byte arrays. The new array is built by copying the
+ *  bytes before splitPoint from the same positions in the base, copying the rest
+ *  from the end of the base (shifted by the difference in length) and then
+ *  overwriting the changed ranges. This keeps the diff small even when an insert
+ *  or a length prefix near the start shifts the rest of the bytes.
+ */
+public class ByteDelta {
+
+    //Equal runs shorter than this do not split a changed range
+    private static final int MIN_GAP = 16;
+
+    private int baseLength;
+
+    private int newLength;
+
+    private int splitPoint;
+
+    private int[] offsets;
+
+    private byte[][] ranges;
+
+    private ByteDelta() {
+    }
+
+    /**
+     * @return the delta that turns base into target or null if the delta would
+     *  not be smaller than maxSize bytes
+     */
+    public static ByteDelta compute(byte[] base, byte[] target, int maxSize) {
+        int shift = target.length - base.length;
+
+        //The split point must leave both copies within the base
+        int minSplit = Math.max(0, shift);
+        int maxSplit = Math.min(base.length, base.length + shift);
+
+        if (minSplit > maxSplit) {
+            return null;
+        }
+
+        //The cost of splitting at k is the number of left aligned mismatches
+        //  in [0, k) plus the number of right aligned mismatches in [k, target.length)
+        int bestSplit = minSplit;
+        int bestCost = Integer.MAX_VALUE;
+        int leftMismatches = 0;
+        int rightMismatches = 0;
+        int totalRight = 0;
+        for (int i = 0; i < target.length; i++) {
+            if (i - shift < 0 || base[i - shift] != target[i]) {
+                totalRight++;
+            }
+        }
+        for (int k = 0; k <= target.length; k++) {
+            if (k >= minSplit && k <= maxSplit) {
+                int cost = leftMismatches + (totalRight - rightMismatches);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestSplit = k;
+                }
+            }
+            if (k < target.length) {
+                if (k >= base.length || base[k] != target[k]) {
+                    leftMismatches++;
+                }
+                if (k - shift < 0 || base[k - shift] != target[k]) {
+                    rightMismatches++;
+                }
+            }
+        }
+
+        ByteDelta delta = new ByteDelta();
+        delta.baseLength = base.length;
+        delta.newLength = target.length;
+        delta.splitPoint = bestSplit;
+
+        List<int[]> changed = new ArrayList<int[]>();
+        int i = 0;
+        while (i < target.length) {
+            if (delta.matches(base, target, i)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            int lastDiff = i;
+            while (i < target.length && i - lastDiff < MIN_GAP) {
+                if (!delta.matches(base, target, i)) {
+                    lastDiff = i;
+                }
+                i++;
+            }
+            changed.add(new int[] {start, lastDiff + 1});
+        }
+
+        int size = 16;
+        delta.offsets = new int[changed.size()];
+        delta.ranges = new byte[changed.size()][];
+        for (int r = 0; r < delta.offsets.length; r++) {
+            int[] range = changed.get(r);
+            size += 8 + range[1] - range[0];
+            if (size >= maxSize) {
+                return null;
+            }
+            delta.offsets[r] = range[0];
+            delta.ranges[r] = new byte[range[1] - range[0]];
+            System.arraycopy(target, range[0], delta.ranges[r], 0, delta.ranges[r].length);
+        }
+
+        return delta;
+    }
+
+    private boolean matches(byte[] base, byte[] target, int i) {
+        int baseIndex = i < splitPoint ? i : i - (newLength - baseLength);
+        return base[baseIndex] == target[i];
+    }
+
+    /**
+     * @return the patched bytes or null if base is not the array that the delta was computed against
+     */
+    public byte[] apply(byte[] base) {
+        if (base == null || base.length != baseLength) {
+            return null;
+        }
+
+        byte[] result = new byte[newLength];
+        int shift = newLength - baseLength;
+        System.arraycopy(base, 0, result, 0, splitPoint);
+        System.arraycopy(base, splitPoint - shift, result, splitPoint, newLength - splitPoint);
+        for (int r = 0; r < offsets.length; r++) {
+            System.arraycopy(ranges[r], 0, result, offsets[r], ranges[r].length);
+        }
+
+        return result;
+    }
+
+    public int getChangedByteCount() {
+        int count = 0;
+        for (byte[] range : ranges) {
+            count += range.length;
+        }
+        return count;
+    }
+
+    public int getNewLength() {
+        return newLength;
+    }
+
+    public void writeTo(ReplicationOutputStream ros)
+            throws IOException {
+        ros.writeInt(baseLength);
+        ros.writeInt(newLength);
+        ros.writeInt(splitPoint);
+        ros.writeInt(offsets.length);
+        for (int r = 0; r < offsets.length; r++) {
+            ros.writeInt(offsets[r]);
+            ros.writeLengthPrefixedBytes(ranges[r]);
+        }
+    }
+
+    public static ByteDelta readFrom(ReplicationInputStream ris) {
+        ByteDelta delta = new ByteDelta();
+        delta.baseLength = ris.readInt();
+        delta.newLength = ris.readInt();
+        delta.splitPoint = ris.readInt();
+        int count = ris.readInt();
+        delta.offsets = new int[count];
+        delta.ranges = new byte[count][];
+        for (int r = 0; r < count; r++) {
+            delta.offsets[r] = ris.readInt();
+            delta.ranges[r] = ris.readLengthPrefixedBytes();
+        }
+        return delta;
+    }
+
+    public void writeTo(ObjectOutputStream out)
+            throws IOException {
+        out.writeInt(baseLength);
+        out.writeInt(newLength);
+        out.writeInt(splitPoint);
+        out.writeInt(offsets.length);
+        for (int r = 0; r < offsets.length; r++) {
+            out.writeInt(offsets[r]);
+            out.writeInt(ranges[r].length);
+            out.write(ranges[r]);
+        }
+    }
+
+    public static ByteDelta readFrom(ObjectInputStream in)
+            throws IOException {
+        ByteDelta delta = new ByteDelta();
+        delta.baseLength = in.readInt();
+        delta.newLength = in.readInt();
+        delta.splitPoint = in.readInt();
+        int count = in.readInt();
+        delta.offsets = new int[count];
+        delta.ranges = new byte[count][];
+        for (int r = 0; r < count; r++) {
+            delta.offsets[r] = in.readInt();
+            delta.ranges[r] = new byte[in.readInt()];
+            in.readFully(delta.ranges[r]);
+        }
+        return delta;
+    }
+}
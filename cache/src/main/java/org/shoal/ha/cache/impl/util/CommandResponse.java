@@ -42,6 +42,7 @@ package org.shoal.ha.cache.impl.util;
 
 import org.shoal.ha.cache.impl.util.ResponseMediator;
 
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicLong;
@@ -68,6 +69,10 @@ public class CommandResponse
 
     private ResponseMediator mediator;
 
+    private BlockingQueue<CommandResponse> completionQueue;
+
+    private long expirationTime = Long.MAX_VALUE;
+
     public CommandResponse(ResponseMediator mediator) {
         this.mediator = mediator;
         this.tokenId = tokenCounter.incrementAndGet();
@@ -98,6 +103,29 @@ public class CommandResponse
         this.result = v;
         mediator.removeCommandResponse(tokenId);
         future.run(); //Which calls our call()
+        if (completionQueue != null) {
+            completionQueue.offer(this);
+        }
+    }
+
+    /**
+     * Optional queue to which this response is added once the result is set.
+     *  Allows a caller to wait on many responses at once.
+     */
+    public void setCompletionQueue(BlockingQueue<CommandResponse> completionQueue) {
+        this.completionQueue = completionQueue;
+    }
+
+    /**
+     * @return the time after which the ResponseMediator completes this
+     *  response with a TimeoutException. Long.MAX_VALUE if it never expires
+     */
+    public long getExpirationTime() {
+        return expirationTime;
+    }
+
+    public void setExpirationTime(long expirationTime) {
+        this.expirationTime = expirationTime;
     }
 
     public Object getTransientResult() {
@@ -0,0 +1,142 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.cache.impl.util;
+
+import org.shoal.ha.cache.api.FrameCompressor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A FrameCompressor that uses java.util.zip. A Deflater and an Inflater are
+ *  kept per thread since they are expensive to create.
+ */
+public class DeflateFrameCompressor
+    implements FrameCompressor {
+
+    public static final byte ID = 1;
+
+    public static final String NAME = "deflate";
+
+    private final int level;
+
+    private final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(level, true);
+        }
+    };
+
+    private final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
+    public DeflateFrameCompressor() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    public DeflateFrameCompressor(int level) {
+        this.level = level;
+    }
+
+    public byte getId() {
+        return ID;
+    }
+
+    public String getName() {
+        return NAME;
+    }
+
+    public byte[] compress(byte[] data, int offset, int length)
+            throws IOException {
+        Deflater deflater = deflaters.get();
+        try {
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(64, length / 2));
+            byte[] buf = new byte[Math.min(8192, length + 64)];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buf);
+                bos.write(buf, 0, count);
+            }
+            return bos.toByteArray();
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    public byte[] decompress(byte[] data, int offset, int length, int uncompressedLength)
+            throws IOException {
+        Inflater inflater = inflaters.get();
+        try {
+            inflater.setInput(data, offset, length);
+            byte[] result = new byte[uncompressedLength];
+            int count = 0;
+            while (count < uncompressedLength) {
+                int n = inflater.inflate(result, count, uncompressedLength - count);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                count += n;
+            }
+            if (count != uncompressedLength) {
+                throw new IOException("Corrupt compressed frame. Expected " + uncompressedLength
+                        + " bytes but got " + count);
+            }
+            return result;
+        } catch (DataFormatException dfEx) {
+            throw (IOException) new IOException("Corrupt compressed frame").initCause(dfEx);
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DeflateFrameCompressor{level=" + level + '}';
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.cache.impl.util;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A Future that completes when enough of the replicas of a save have
+ *  acknowledged it. The responses must have been created with
+ *  completionQueue as their completion queue, so that the waiter wakes up
+ *  on every ack. Once the required number of acks is in, the responses
+ *  that are still pending are released. Responses that never get an ack
+ *  expire in the ResponseMediator, whether or not get() is called.
+ */
+public class ReplicaAcknowledgementFuture<T>
+    implements Future<T> {
+
+    private ResponseMediator mediator;
+
+    private BlockingQueue<CommandResponse> completionQueue;
+
+    private List<CommandResponse> responses;
+
+    private int requiredAcks;
+
+    private T value;
+
+    private long ackTimeoutInMillis;
+
+    private volatile boolean cancelled;
+
+    /**
+     * @param mediator the ResponseMediator that holds the responses
+     * @param completionQueue the queue to which the responses are added once they complete
+     * @param responses the CommandResponses of the replicas. May be empty if no ack is expected
+     * @param requiredAcks the number of acks after which this Future is done
+     * @param value the value returned by get() once the acks have been received
+     * @param ackTimeoutInMillis the maximum time get() waits for the acks
+     */
+    public ReplicaAcknowledgementFuture(ResponseMediator mediator, BlockingQueue<CommandResponse> completionQueue,
+                                        List<CommandResponse> responses, int requiredAcks,
+                                        T value, long ackTimeoutInMillis) {
+        this.mediator = mediator;
+        this.completionQueue = completionQueue;
+        this.responses = responses;
+        this.requiredAcks = Math.min(requiredAcks, responses.size());
+        this.value = value;
+        this.ackTimeoutInMillis = ackTimeoutInMillis;
+    }
+
+    /**
+     * @return the value that get() returns, without waiting for the acks
+     */
+    public T getValue() {
+        return value;
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (isDone()) {
+            return false;
+        }
+        cancelled = true;
+        releasePendingResponses();
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return cancelled || getAckCount() >= requiredAcks || isUnreachable();
+    }
+
+    public T get()
+        throws InterruptedException, ExecutionException {
+        try {
+            return get(ackTimeoutInMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException tEx) {
+            releasePendingResponses();
+            throw new ExecutionException("Only " + getAckCount() + " of " + requiredAcks
+                    + " acknowledgements received within " + ackTimeoutInMillis + " millis", tEx);
+        }
+    }
+
+    public T get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        while (getAckCount() < requiredAcks) {
+            if (cancelled) {
+                throw new ExecutionException(new IllegalStateException("Cancelled"));
+            }
+            if (isUnreachable()) {
+                throw new ExecutionException(getFirstFailure());
+            }
+
+            //The queue only wakes us up, the responses themselves tell how many acks are in
+            long waitFor = deadline - System.currentTimeMillis();
+            if (waitFor <= 0 || completionQueue.poll(waitFor, TimeUnit.MILLISECONDS) == null) {
+                if (getAckCount() < requiredAcks) {
+                    throw new TimeoutException();
+                }
+            }
+        }
+
+        releasePendingResponses();
+        return value;
+    }
+
+    private int getAckCount() {
+        int count = 0;
+        for (CommandResponse resp : responses) {
+            if (resp.getFuture().isDone() && !(resp.getTransientResult() instanceof Exception)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    //True if so many replicas failed that the required acks can no longer be received
+    private boolean isUnreachable() {
+        int failures = 0;
+        for (CommandResponse resp : responses) {
+            if (resp.getFuture().isDone() && resp.getTransientResult() instanceof Exception) {
+                failures++;
+            }
+        }
+        return responses.size() - failures < requiredAcks;
+    }
+
+    private Exception getFirstFailure() {
+        for (CommandResponse resp : responses) {
+            if (resp.getFuture().isDone() && resp.getTransientResult() instanceof Exception) {
+                return (Exception) resp.getTransientResult();
+            }
+        }
+        return null;
+    }
+
+    private void releasePendingResponses() {
+        for (CommandResponse resp : responses) {
+            if (!resp.getFuture().isDone()) {
+                mediator.removeCommandResponse(resp.getTokenId());
+            }
+        }
+    }
+}
@@ -42,6 +42,7 @@ package org.shoal.ha.cache.impl.util;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.nio.charset.Charset;
 
 /**
@@ -54,8 +55,29 @@ public class ReplicationOutputStream
         super();
     }
 
+    public ReplicationOutputStream(int initialSize) {
+        super(initialSize);
+    }
+
     private int maxCount;
 
+    /**
+     * @return the current size of the underlying buffer
+     */
+    public int capacity() {
+        return buf.length;
+    }
+
+    /**
+     * Discards the written data, but retains the underlying buffer
+     *  so that this stream can be reused
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        maxCount = 0;
+    }
+
     public int mark() {
         return size();
     }
@@ -95,6 +117,20 @@ public class ReplicationOutputStream
         }
     }
 
+    /**
+     * Java serializes obj directly into this stream and prefixes it with
+     *  its length. The result can be read back using readLengthPrefixedBytes()
+     */
+    public void writeLengthPrefixedObject(Object obj)
+        throws IOException {
+        int lengthPos = mark();
+        writeInt(0);
+        ObjectOutputStream oos = new ObjectOutputStream(this);
+        oos.writeObject(obj);
+        oos.flush();
+        reWrite(lengthPos, Utility.intToBytes(size() - lengthPos - 4));
+    }
+
     public void writeBoolean(boolean b)
         throws IOException {
         write(b ? 1 : 0); //Writes one byte
@@ -122,6 +158,15 @@ public class ReplicationOutputStream
         }
     }
 
+    /**
+     * @return the underlying buffer, without copying it. Only the first size()
+     *  bytes are valid and only until this stream is written to again or reset
+     */
+    public byte[] getBuffer() {
+        backToAppendMode();
+        return buf;
+    }
+
     public byte[] toByteArray() {
         backToAppendMode();
         return super.toByteArray();
@@ -0,0 +1,109 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2012 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.shoal.ha.cache.impl.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of ReplicationOutputStreams. The transmit path borrows a
+ *  stream, encodes a command (or a whole frame) into it, hands the bytes to
+ *  the GroupService and recycles the stream once the send returns. This
+ *  avoids growing a fresh buffer (and the copies that come with it) for
+ *  every batch.
+ *
+ * Streams whose buffer grew beyond the max retained size are not pooled
+ *  so that an occasional large message doesn't pin memory.
+ */
+public class ReplicationOutputStreamPool {
+
+    private static final ReplicationOutputStreamPool _me = new ReplicationOutputStreamPool();
+
+    private final int initialBufferSize;
+
+    private final int maxRetainedSize;
+
+    private final BlockingQueue<ReplicationOutputStream> pool;
+
+    public static ReplicationOutputStreamPool _getInstance() {
+        return _me;
+    }
+
+    private ReplicationOutputStreamPool() {
+        this(getSystemProp("org.shoal.ha.buffer.pool.size", 32),
+             getSystemProp("org.shoal.ha.buffer.pool.initial.buffer.size", 8 * 1024),
+             getSystemProp("org.shoal.ha.buffer.pool.max.retained.size", 256 * 1024));
+    }
+
+    public ReplicationOutputStreamPool(int poolSize, int initialBufferSize, int maxRetainedSize) {
+        this.pool = new ArrayBlockingQueue<ReplicationOutputStream>(Math.max(1, poolSize));
+        this.initialBufferSize = initialBufferSize;
+        this.maxRetainedSize = maxRetainedSize;
+    }
+
+    private static final int getSystemProp(String propName, int defaultValue) {
+        int value = defaultValue;
+        try {
+            value = Integer.parseInt(System.getProperty(propName, "" + defaultValue));
+        } catch (Exception ex) {
+            //Ignore
+        }
+
+        return value;
+    }
+
+    public ReplicationOutputStream borrow() {
+        ReplicationOutputStream ros = pool.poll();
+        return ros != null ? ros : new ReplicationOutputStream(initialBufferSize);
+    }
+
+    public void recycle(ReplicationOutputStream ros) {
+        if (ros != null && ros.capacity() <= maxRetainedSize) {
+            ros.reset();
+            pool.offer(ros);
+        }
+    }
+
+    public int getPooledCount() {
+        return pool.size();
+    }
+}
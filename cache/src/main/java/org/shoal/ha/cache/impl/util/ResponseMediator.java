@@ -42,7 +42,11 @@ package org.shoal.ha.cache.impl.util;
 
 import org.shoal.ha.cache.impl.util.CommandResponse;
 
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Created by IntelliJ IDEA.
@@ -53,15 +57,34 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class ResponseMediator {
 
+    private static final long REAPER_INTERVAL_IN_MILLIS = 1000;
+
     private ConcurrentHashMap<Long, CommandResponse> responses =
             new ConcurrentHashMap<Long, CommandResponse>();
 
+    private ScheduledFuture<?> reaper;
+
+    private boolean closed;
+
     public CommandResponse createCommandResponse() {
         CommandResponse resp = new CommandResponse(this);
         responses.put(resp.getTokenId(), resp);
 
         return resp;
     }
+
+    /**
+     * Creates a response that is completed with a TimeoutException if no
+     *  result is set within timeoutInMillis, whether or not anyone waits for it.
+     */
+    public CommandResponse createCommandResponse(long timeoutInMillis) {
+        CommandResponse resp = new CommandResponse(this);
+        resp.setExpirationTime(System.currentTimeMillis() + timeoutInMillis);
+        responses.put(resp.getTokenId(), resp);
+        startReaper();
+
+        return resp;
+    }
     public CumulativeCommandResponse createCumulativeCommandResponse(int maxResponse, Object initialValue) {
         CumulativeCommandResponse resp = new CumulativeCommandResponse(this, maxResponse, initialValue);
         responses.put(resp.getTokenId(), resp);
@@ -76,4 +99,48 @@ public class ResponseMediator {
     public void removeCommandResponse(long id) {
         responses.remove(id);
     }
+
+    /**
+     * @return the number of responses that are still awaited
+     */
+    public int getPendingResponseCount() {
+        return responses.size();
+    }
+
+    /**
+     * Completes, with a TimeoutException, the responses whose expiration time
+     *  is before now. Called periodically once a response with an expiration
+     *  time has been created.
+     */
+    public void removeExpiredResponses(long now) {
+        for (Map.Entry<Long, CommandResponse> entry : responses.entrySet()) {
+            CommandResponse resp = entry.getValue();
+            if (resp.getExpirationTime() < now && responses.remove(entry.getKey(), resp)) {
+                resp.setException(new TimeoutException("No response received for " + resp.getTokenId()
+                        + " before it expired"));
+            }
+        }
+    }
+
+    /**
+     * Stops removing the expired responses
+     */
+    public synchronized void close() {
+        closed = true;
+        if (reaper != null) {
+            reaper.cancel(false);
+            reaper = null;
+        }
+    }
+
+    private synchronized void startReaper() {
+        if (reaper == null && !closed) {
+            reaper = ASyncReplicationManager._getInstance().getScheduledThreadPoolExecutor().scheduleWithFixedDelay(
+                    new Runnable() {
+                        public void run() {
+                            removeExpiredResponses(System.currentTimeMillis());
+                        }
+                    }, REAPER_INTERVAL_IN_MILLIS, REAPER_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
 }
@@ -0,0 +1,161 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.cache.impl.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A read/write gate for the case where readers are very frequent and the
+ *  writer is very rare (typically only once, when a store is closed).
+ *
+ * Readers increment a counter in a stripe chosen by their thread, so
+ *  concurrent readers do not contend on a shared cache line. A writer first
+ *  raises a flag, which makes new (outermost) readers wait, and then waits until
+ *  all the stripes are back to zero. Read acquisitions are reentrant. A thread that
+ *  holds the read side must not acquire the write side.
+ */
+public class StripedReadWriteGate {
+
+    //Keep each counter on its own cache line
+    private static final int PADDING = 16;
+
+    private static final int STRIPES;
+
+    static {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() * 2) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+
+    private final AtomicLongArray readers = new AtomicLongArray(STRIPES * PADDING);
+
+    private final ThreadLocal<int[]> readHoldCount = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    private final Object writerMonitor = new Object();
+
+    private volatile boolean writerActive;
+
+    public void acquireRead() {
+        int[] holdCount = readHoldCount.get();
+        int index = stripeIndex();
+        readers.incrementAndGet(index);
+        if (holdCount[0]++ > 0) {
+            return; //Reentrant acquisition. Must not wait for a writer
+        }
+
+        boolean interrupted = false;
+        while (writerActive) {
+            //Back off so that the writer can drain the readers
+            readers.decrementAndGet(index);
+            synchronized (writerMonitor) {
+                while (writerActive) {
+                    try {
+                        writerMonitor.wait();
+                    } catch (InterruptedException inEx) {
+                        //Keep waiting, the interrupt is restored once the gate is acquired
+                        interrupted = true;
+                    }
+                }
+            }
+            readers.incrementAndGet(index);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void releaseRead() {
+        readHoldCount.get()[0]--;
+        readers.decrementAndGet(stripeIndex());
+    }
+
+    public void acquireWrite() {
+        boolean interrupted = false;
+        synchronized (writerMonitor) {
+            while (writerActive) {
+                try {
+                    writerMonitor.wait();
+                } catch (InterruptedException inEx) {
+                    interrupted = true;
+                }
+            }
+            writerActive = true;
+        }
+
+        while (activeReaders() > 0) {
+            LockSupport.parkNanos(100000);
+            //parkNanos returns at once while the interrupt flag is set
+            interrupted |= Thread.interrupted();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void releaseWrite() {
+        synchronized (writerMonitor) {
+            writerActive = false;
+            writerMonitor.notifyAll();
+        }
+    }
+
+    private long activeReaders() {
+        long count = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            count += readers.get(i * PADDING);
+        }
+        return count;
+    }
+
+    private static int stripeIndex() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((h >>> 16) & (STRIPES - 1)) * PADDING;
+    }
+}
@@ -68,4 +68,11 @@ public interface GroupService {
 
     public boolean sendMessage(String targetMemberName, String messageToken, byte[] data);
 
+    /**
+     * Sends the length bytes of data that start at offset. The caller may reuse
+     *  data as soon as this returns, so an implementation that needs the bytes
+     *  later must copy them.
+     */
+    public boolean sendMessage(String targetMemberName, String messageToken, byte[] data, int offset, int length);
+
 }
@@ -277,6 +277,13 @@ public class GroupServiceProvider
         return false;
     }
 
+    @Override
+    public boolean sendMessage(String targetMemberName, String token, byte[] data, int offset, int length) {
+        //GroupHandle takes the whole array and GMS may still hold on to it once
+        //  sendMessage returns, so it always gets its own copy
+        return sendMessage(targetMemberName, token, Arrays.copyOfRange(data, offset, offset + length));
+    }
+
     // ensure that log is not spammed with these messages.
     // package private so can call from junit test
     void logSendMsgFailure(GMSException t, String targetMemberName, String message) {
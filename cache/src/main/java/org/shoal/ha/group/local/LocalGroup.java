@@ -0,0 +1,308 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.group.local;
+
+import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A group whose members all live in this JVM. It stands in for GMS when a
+ *  test or a load generator wants many replicating members on one machine.
+ *
+ * Members are created with join() and leave with LocalGroupService.close()
+ *  or, to simulate a crash, with fail(). Both fire onViewChange on the
+ *  listeners of every member, just like GroupServiceProvider does.
+ *
+ * Messages are delivered on a per member dispatcher thread. The network
+ *  between the members can be degraded with:
+ *  - setLatency(): one way delay plus a random jitter. Messages between
+ *    two members are never reordered.
+ *  - setBandwidth(): each member sends at most that many bytes per second.
+ *    Messages queue up behind each other on the sending member's link.
+ *  - setDropRate(): the fraction of messages that silently vanish.
+ */
+public class LocalGroup {
+
+    private static final Logger _logger = Logger.getLogger(ShoalCacheLoggerConstants.CACHE);
+
+    private static final ConcurrentHashMap<String, LocalGroup> groups
+            = new ConcurrentHashMap<String, LocalGroup>();
+
+    private String groupName;
+
+    //Updated with the lock held, read without it
+    private ConcurrentHashMap<String, LocalGroupService> members
+            = new ConcurrentHashMap<String, LocalGroupService>();
+
+    private volatile List<String> view = Collections.emptyList();
+
+    private volatile long latencyInNanos;
+
+    private volatile long jitterInNanos;
+
+    private volatile long bandwidthInBytesPerSecond;
+
+    private volatile double dropRate;
+
+    private Random random = new Random();
+
+    private AtomicLong sentCount = new AtomicLong();
+
+    private AtomicLong sentBytes = new AtomicLong();
+
+    private AtomicLong droppedCount = new AtomicLong();
+
+    private AtomicLong deliveredCount = new AtomicLong();
+
+    private LocalGroup(String groupName) {
+        this.groupName = groupName;
+    }
+
+    /**
+     * @return the group with this name, creating it if necessary
+     */
+    public static LocalGroup getGroup(String groupName) {
+        LocalGroup group = groups.get(groupName);
+        if (group == null) {
+            LocalGroup newGroup = new LocalGroup(groupName);
+            group = groups.putIfAbsent(groupName, newGroup);
+            if (group == null) {
+                group = newGroup;
+            }
+        }
+
+        return group;
+    }
+
+    /**
+     * Fails all the members of the group and forgets about it
+     */
+    public static void removeGroup(String groupName) {
+        LocalGroup group = groups.remove(groupName);
+        if (group != null) {
+            for (String member : group.getMembers()) {
+                group.fail(member);
+            }
+        }
+    }
+
+    public String getGroupName() {
+        return groupName;
+    }
+
+    /**
+     * Adds a new member to the group. The current members see a join event.
+     */
+    public synchronized LocalGroupService join(String memberName) {
+        if (members.containsKey(memberName)) {
+            throw new IllegalStateException(memberName + " is already a member of " + groupName);
+        }
+
+        LocalGroupService member = new LocalGroupService(this, memberName);
+        List<String> previousView = view;
+        members.put(memberName, member);
+        view = sortedMemberNames();
+        member.start();
+
+        fireViewChange(memberName, previousView, true);
+        return member;
+    }
+
+    /**
+     * Removes the member as if its process had died. Messages that are still
+     *  on their way to it are lost.
+     *
+     * @return false if there is no such member
+     */
+    public boolean fail(String memberName) {
+        return removeMember(memberName, "failed");
+    }
+
+    void leave(LocalGroupService member) {
+        removeMember(member.getMemberName(), "left");
+    }
+
+    private synchronized boolean removeMember(String memberName, String reason) {
+        LocalGroupService member = members.remove(memberName);
+        if (member == null) {
+            return false;
+        }
+
+        List<String> previousView = view;
+        view = sortedMemberNames();
+        member.stop();
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, "LocalGroup[" + groupName + "]: " + memberName + " " + reason
+                    + "; current view: " + view);
+        }
+
+        fireViewChange(memberName, previousView, false);
+        return true;
+    }
+
+    private List<String> sortedMemberNames() {
+        return Collections.unmodifiableList(new ArrayList<String>(new TreeSet<String>(members.keySet())));
+    }
+
+    //Called with the lock held, so all members see the views in the same order
+    private void fireViewChange(String memberName, List<String> previousView, boolean isJoinEvent) {
+        List<String> currentView = view;
+        for (LocalGroupService member : members.values()) {
+            member.fireViewChange(memberName, currentView, previousView, isJoinEvent);
+        }
+    }
+
+    /**
+     * @return the (sorted) names of the current members
+     */
+    public List<String> getMembers() {
+        return view;
+    }
+
+    public LocalGroupService getMember(String memberName) {
+        return members.get(memberName);
+    }
+
+    public LocalGroup setLatency(long latencyInMillis, long jitterInMillis) {
+        this.latencyInNanos = TimeUnit.MILLISECONDS.toNanos(latencyInMillis);
+        this.jitterInNanos = TimeUnit.MILLISECONDS.toNanos(jitterInMillis);
+        return this;
+    }
+
+    /**
+     * @param bandwidthInBytesPerSecond the outgoing bandwidth of each member or
+     *  0 for no limit
+     */
+    public LocalGroup setBandwidth(long bandwidthInBytesPerSecond) {
+        this.bandwidthInBytesPerSecond = bandwidthInBytesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param dropRate the probability (0.0 to 1.0) that a message is lost
+     */
+    public LocalGroup setDropRate(double dropRate) {
+        if (dropRate < 0 || dropRate > 1) {
+            throw new IllegalArgumentException("dropRate must be between 0 and 1: " + dropRate);
+        }
+        this.dropRate = dropRate;
+        return this;
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getSentBytes() {
+        return sentBytes.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    boolean send(LocalGroupService sender, String targetMemberName, String token, byte[] data) {
+        if (targetMemberName == null) {
+            for (LocalGroupService target : members.values()) {
+                if (target != sender) {
+                    transmit(sender, target, token, data);
+                }
+            }
+            return true;
+        }
+
+        LocalGroupService target = members.get(targetMemberName);
+        if (target == null) {
+            if (_logger.isLoggable(Level.FINE)) {
+                _logger.log(Level.FINE, "LocalGroup[" + groupName + "]: " + sender.getMemberName()
+                        + " cannot send to " + targetMemberName + " since it is not a member");
+            }
+            return false;
+        }
+
+        transmit(sender, target, token, data);
+        return true;
+    }
+
+    private void transmit(LocalGroupService sender, LocalGroupService target, String token, byte[] data) {
+        sentCount.incrementAndGet();
+        sentBytes.addAndGet(data.length);
+
+        double drop = dropRate;
+        if (drop > 0 && random.nextDouble() < drop) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        long sentAt = sender.reserveLink(System.nanoTime(), data.length, bandwidthInBytesPerSecond);
+        long delay = latencyInNanos;
+        long jitter = jitterInNanos;
+        if (jitter > 0) {
+            delay += (long) (random.nextDouble() * jitter);
+        }
+        target.enqueue(sender.getMemberName(), token, data, sentAt + delay);
+    }
+
+    void messageDelivered() {
+        deliveredCount.incrementAndGet();
+    }
+
+    public String toString() {
+        return "LocalGroup{" + groupName + ", members=" + view
+                + ", latencyInNanos=" + latencyInNanos + ", jitterInNanos=" + jitterInNanos
+                + ", bandwidthInBytesPerSecond=" + bandwidthInBytesPerSecond + ", dropRate=" + dropRate + "}";
+    }
+
+}
@@ -0,0 +1,301 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.group.local;
+
+import com.sun.enterprise.ee.cms.impl.common.MessageSignalImpl;
+import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
+import org.shoal.ha.cache.impl.util.MessageReceiver;
+import org.shoal.ha.group.GroupMemberEventListener;
+import org.shoal.ha.group.GroupService;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A member of a LocalGroup. Instances are created by LocalGroup.join().
+ *
+ * Incoming messages are handed to the registered MessageReceiver on this
+ *  member's dispatcher thread, one at a time and in the order they arrive.
+ */
+public class LocalGroupService
+    implements GroupService {
+
+    private static final Logger _logger = Logger.getLogger(ShoalCacheLoggerConstants.CACHE);
+
+    private static final AtomicLong sequencer = new AtomicLong();
+
+    private LocalGroup group;
+
+    private String memberName;
+
+    private ConcurrentHashMap<String, MessageReceiver> receivers
+            = new ConcurrentHashMap<String, MessageReceiver>();
+
+    private CopyOnWriteArrayList<GroupMemberEventListener> listeners
+            = new CopyOnWriteArrayList<GroupMemberEventListener>();
+
+    private DelayQueue<Delivery> deliveries = new DelayQueue<Delivery>();
+
+    //Delivery time of the last message from each sender. Guarded by itself
+    private Map<String, Long> lastDeliveryTimes = new HashMap<String, Long>();
+
+    //When this member's outgoing link is free again. Guarded by linkLock
+    private long linkFreeAt;
+
+    private final Object linkLock = new Object();
+
+    private volatile boolean active;
+
+    private Thread dispatcher;
+
+    LocalGroupService(LocalGroup group, String memberName) {
+        this.group = group;
+        this.memberName = memberName;
+    }
+
+    @Override
+    public String getGroupName() {
+        return group.getGroupName();
+    }
+
+    @Override
+    public String getMemberName() {
+        return memberName;
+    }
+
+    public LocalGroup getGroup() {
+        return group;
+    }
+
+    @Override
+    public List<String> getCurrentCoreMembers() {
+        return group.getMembers();
+    }
+
+    @Override
+    public void registerGroupMemberEventListener(GroupMemberEventListener listener) {
+        //Same as GroupServiceProvider, the new listener is told about the current view.
+        //  Holding the group lock keeps it from missing (or reordering) a concurrent change
+        synchronized (group) {
+            listeners.add(listener);
+            List<String> currentView = group.getMembers();
+            listener.onViewChange(memberName, currentView, currentView, true);
+        }
+    }
+
+    @Override
+    public void removeGroupMemberEventListener(GroupMemberEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Leaves the group. The other members see a failure (non join) event.
+     */
+    @Override
+    public void close() {
+        group.leave(this);
+    }
+
+    @Override
+    public void registerGroupMessageReceiver(String messageToken, MessageReceiver receiver) {
+        receivers.put(messageToken, receiver);
+    }
+
+    /**
+     * @return false if this member or the target is no longer part of the
+     *  group. Messages lost by drop injection still return true
+     */
+    @Override
+    public boolean sendMessage(String targetMemberName, String token, byte[] data) {
+        return active && group.send(this, targetMemberName, token, data);
+    }
+
+    /**
+     * The bytes are copied since they are delivered after this returns.
+     */
+    @Override
+    public boolean sendMessage(String targetMemberName, String token, byte[] data, int offset, int length) {
+        return sendMessage(targetMemberName, token, Arrays.copyOfRange(data, offset, offset + length));
+    }
+
+    void fireViewChange(String changedMember, Collection<String> currentView,
+                        Collection<String> previousView, boolean isJoinEvent) {
+        for (GroupMemberEventListener listener : listeners) {
+            try {
+                listener.onViewChange(changedMember, currentView, previousView, isJoinEvent);
+            } catch (Throwable th) {
+                _logger.log(Level.WARNING, "LocalGroupService[" + memberName + "]: onViewChange failed", th);
+            }
+        }
+    }
+
+    /**
+     * @return the time (System.nanoTime()) at which a message of this size,
+     *  sent now, has completely left this member
+     */
+    long reserveLink(long now, int size, long bandwidthInBytesPerSecond) {
+        if (bandwidthInBytesPerSecond <= 0) {
+            return now;
+        }
+
+        long transmitTime = (long) (size * 1000000000.0 / bandwidthInBytesPerSecond);
+        synchronized (linkLock) {
+            long startAt = Math.max(now, linkFreeAt);
+            linkFreeAt = startAt + transmitTime;
+            return linkFreeAt;
+        }
+    }
+
+    void enqueue(String sender, String token, byte[] data, long deliverAt) {
+        synchronized (lastDeliveryTimes) {
+            //Jitter must not reorder the messages of one sender
+            Long last = lastDeliveryTimes.get(sender);
+            if (last != null && last > deliverAt) {
+                deliverAt = last;
+            }
+            lastDeliveryTimes.put(sender, deliverAt);
+            deliveries.add(new Delivery(sender, token, data, deliverAt, sequencer.incrementAndGet()));
+        }
+    }
+
+    void start() {
+        active = true;
+        dispatcher = new Thread("LocalGroup[" + group.getGroupName() + "]-" + memberName) {
+            public void run() {
+                dispatch();
+            }
+        };
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    void stop() {
+        active = false;
+        deliveries.clear();
+        dispatcher.interrupt();
+    }
+
+    private void dispatch() {
+        while (active) {
+            Delivery delivery;
+            try {
+                delivery = deliveries.take();
+            } catch (InterruptedException inEx) {
+                continue;
+            }
+
+            if (!active) {
+                break;
+            }
+
+            MessageReceiver receiver = receivers.get(delivery.token);
+            if (receiver == null) {
+                if (_logger.isLoggable(Level.FINE)) {
+                    _logger.log(Level.FINE, "LocalGroupService[" + memberName + "]: no receiver for "
+                            + delivery.token + "; message from " + delivery.sender + " discarded");
+                }
+                continue;
+            }
+
+            // Counted before the receiver runs so that it is visible to whoever the receiver wakes up
+            group.messageDelivered();
+            try {
+                receiver.processNotification(new MessageSignalImpl(delivery.data, delivery.token,
+                        delivery.sender, group.getGroupName(), System.currentTimeMillis()));
+            } catch (Throwable th) {
+                _logger.log(Level.WARNING, "LocalGroupService[" + memberName + "]: error while delivering message from "
+                        + delivery.sender + " to " + delivery.token, th);
+            }
+        }
+    }
+
+    public String toString() {
+        return "LocalGroupService{" + memberName + "@" + group.getGroupName() + ", active=" + active + "}";
+    }
+
+    private static final class Delivery
+        implements Delayed {
+
+        private final String sender;
+
+        private final String token;
+
+        private final byte[] data;
+
+        private final long deliverAt;
+
+        private final long seq;
+
+        Delivery(String sender, String token, byte[] data, long deliverAt, long seq) {
+            this.sender = sender;
+            this.token = token;
+            this.data = data;
+            this.deliverAt = deliverAt;
+            this.seq = seq;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deliverAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Delivery that = (Delivery) other;
+            if (deliverAt != that.deliverAt) {
+                return deliverAt - that.deliverAt < 0 ? -1 : 1;
+            }
+            return seq < that.seq ? -1 : (seq == that.seq ? 0 : 1);
+        }
+    }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.mapper;
+
+import org.glassfish.ha.store.api.HashableKey;
+import org.shoal.ha.cache.api.ShoalCacheLoggerConstants;
+import org.shoal.ha.group.GroupMemberEventListener;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A KeyMapper that places the members on a consistent hash ring. Every member
+ *  owns virtualNodes points on the ring and a key is mapped to the owner of
+ *  the first point at or after the key's hash. Unlike DefaultKeyMapper, which
+ *  maps hash % members.length, a join or a failure only moves the keys of
+ *  the arcs that change hands, which is about 1/N of them.
+ *
+ * The replica choices of a key are the distinct owners met while walking the
+ *  ring clockwise from the key, so the backups of a failed member's keys are
+ *  spread over the survivors instead of all landing on its neighbour.
+ *
+ * As in DefaultKeyMapper this instance is never on its own ring. A view change
+ *  builds new immutable rings, so lookups take no lock.
+ */
+public class ConsistentHashKeyMapper
+        implements KeyMapper, GroupMemberEventListener {
+
+    public static final String NAME = "consistent-hash";
+
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private static final Logger _logger = Logger.getLogger(ShoalCacheLoggerConstants.CACHE_KEY_MAPPER);
+
+    private static final String _EMPTY_REPLICAS = "";
+
+    private static final String[] _EMPTY_CHOICES = new String[0];
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private String myName;
+
+    private String groupName;
+
+    private int virtualNodes;
+
+    private volatile Ring ring;
+
+    private volatile Ring previousRing;
+
+    public ConsistentHashKeyMapper(String myName, String groupName) {
+        this(myName, groupName, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashKeyMapper(String myName, String groupName, int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes must be positive: " + virtualNodes);
+        }
+        this.myName = myName;
+        this.groupName = groupName;
+        this.virtualNodes = virtualNodes;
+        this.ring = new Ring(new String[0], virtualNodes);
+        this.previousRing = ring;
+
+        _logger.log(Level.FINE, "ConsistentHashKeyMapper created for: myName: " + myName + "; groupName: "
+                + groupName + "; virtualNodes: " + virtualNodes);
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    @Override
+    public String getMappedInstance(String groupName, Object key) {
+        return ring.getOwner(getHashCodeForKey(key));
+    }
+
+    @Override
+    public String[] getReplicaChoices(String groupName, Object key) {
+        return ring.getChoices(getHashCodeForKey(key));
+    }
+
+    @Override
+    public String[] findReplicaInstance(String groupName, Object key, String keyMappingInfo) {
+        if (keyMappingInfo != null) {
+            return keyMappingInfo.split(":");
+        }
+
+        String owner = previousRing.getOwner(getHashCodeForKey(key));
+        return new String[] {owner == null ? _EMPTY_REPLICAS : owner};
+    }
+
+    @Override
+    public String[] getCurrentMembers() {
+        return ring.members;
+    }
+
+    @Override
+    public synchronized void onViewChange(String memberName,
+                                          Collection<String> readOnlyCurrentAliveAndReadyMembers,
+                                          Collection<String> readOnlyPreviousAliveAndReadyMembers,
+                                          boolean isJoinEvent) {
+        TreeSet<String> currentMembers = new TreeSet<String>(readOnlyCurrentAliveAndReadyMembers);
+        currentMembers.remove(myName);
+
+        TreeSet<String> previousMembers = new TreeSet<String>(readOnlyPreviousAliveAndReadyMembers);
+        previousMembers.remove(myName);
+        if (!isJoinEvent) {
+            previousMembers.remove(memberName);
+        }
+
+        //Rebuilding is by far the expensive part, so reuse what did not change
+        String[] current = currentMembers.toArray(new String[0]);
+        String[] previous = previousMembers.toArray(new String[0]);
+        Ring newRing = Arrays.equals(current, ring.members) ? ring : new Ring(current, virtualNodes);
+        Ring newPreviousRing = Arrays.equals(previous, newRing.members) ? newRing
+                : (Arrays.equals(previous, previousRing.members) ? previousRing : new Ring(previous, virtualNodes));
+
+        previousRing = newPreviousRing;
+        ring = newRing;
+
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, "ConsistentHashKeyMapper[" + myName + "].onViewChange (isJoin: " + isJoinEvent
+                    + ") currentView: " + currentMembers + "; previousView: " + previousMembers);
+        }
+    }
+
+    private static int getHashCodeForKey(Object key) {
+        int hc = key.hashCode();
+        if (key instanceof HashableKey) {
+            HashableKey k = (HashableKey) key;
+            hc = k.getHashKey() == null ? hc : k.getHashKey().hashCode();
+        }
+
+        //hashCode()s of similar keys are close to each other, spread them over the ring
+        hc ^= hc >>> 16;
+        hc *= 0x85ebca6b;
+        hc ^= hc >>> 13;
+        hc *= 0xc2b2ae35;
+        hc ^= hc >>> 16;
+        return hc;
+    }
+
+    /**
+     * An immutable snapshot of the ring. points is sorted and members[owners[i]]
+     *  owns the arc that ends at points[i].
+     */
+    private static final class Ring {
+
+        private final String[] members;
+
+        private final int[] points;
+
+        private final int[] owners;
+
+        Ring(String[] members, int virtualNodes) {
+            this.members = members;
+
+            //(point << 32 | memberIndex) sorts by point and breaks ties by member name
+            long[] entries = new long[members.length * virtualNodes];
+            int count = 0;
+            MessageDigest md5 = newMD5();
+            for (int m = 0; m < members.length; m++) {
+                byte[] digest = null;
+                for (int v = 0; v < virtualNodes; v++) {
+                    //Each digest gives four points
+                    int slot = v & 3;
+                    if (slot == 0) {
+                        digest = md5.digest((members[m] + "#" + (v >> 2)).getBytes(UTF8));
+                    }
+                    int point = (digest[slot * 4] & 0xFF) << 24 | (digest[slot * 4 + 1] & 0xFF) << 16
+                            | (digest[slot * 4 + 2] & 0xFF) << 8 | (digest[slot * 4 + 3] & 0xFF);
+                    entries[count++] = ((long) point << 32) | m;
+                }
+            }
+            Arrays.sort(entries);
+
+            int[] tmpPoints = new int[count];
+            int[] tmpOwners = new int[count];
+            int size = 0;
+            for (int i = 0; i < count; i++) {
+                int point = (int) (entries[i] >> 32);
+                if (size > 0 && tmpPoints[size - 1] == point) {
+                    continue;
+                }
+                tmpPoints[size] = point;
+                tmpOwners[size] = (int) entries[i];
+                size++;
+            }
+
+            this.points = size == count ? tmpPoints : Arrays.copyOf(tmpPoints, size);
+            this.owners = size == count ? tmpOwners : Arrays.copyOf(tmpOwners, size);
+        }
+
+        String getOwner(int hash) {
+            return points.length == 0 ? null : members[owners[indexOf(hash)]];
+        }
+
+        String[] getChoices(int hash) {
+            if (points.length == 0) {
+                return _EMPTY_CHOICES;
+            }
+
+            String[] choices = new String[members.length];
+            boolean[] chosen = new boolean[members.length];
+            int count = 0;
+            int index = indexOf(hash);
+            for (int i = 0; i < points.length && count < choices.length; i++) {
+                int owner = owners[index];
+                if (!chosen[owner]) {
+                    chosen[owner] = true;
+                    choices[count++] = members[owner];
+                }
+                index = (index + 1) % points.length;
+            }
+            //Only if all the points of a member collided with those of the others
+            return count == choices.length ? choices : Arrays.copyOf(choices, count);
+        }
+
+        private int indexOf(int hash) {
+            int index = Arrays.binarySearch(points, hash);
+            if (index < 0) {
+                index = -index - 1;
+                if (index == points.length) {
+                    index = 0;
+                }
+            }
+            return index;
+        }
+
+        private static MessageDigest newMD5() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException nsaEx) {
+                //Every JRE must support MD5
+                throw new IllegalStateException(nsaEx);
+            }
+        }
+    }
+
+}
@@ -73,10 +73,12 @@ public class DefaultKeyMapper
 
     private volatile String[] previuousAliveAndReadyMembers = new String[0];
 
-    private volatile String[] replicaChoices = new String[0];
+    private volatile String[][] replicaChoices = new String[0][];
 
     private static final String _EMPTY_REPLICAS = "";
 
+    private static final String[] _EMPTY_CHOICES = new String[0];
+
 
     public DefaultKeyMapper(String myName, String groupName) {
         this.myName = myName;
@@ -128,12 +130,12 @@ public class DefaultKeyMapper
     }
 
     @Override
-    public String getReplicaChoices(String groupName, Object key) {
+    public String[] getReplicaChoices(String groupName, Object key) {
         int hc = getHashCodeForKey(key);
         try {
             rLock.lock();
             return members.length == 0
-                    ? _EMPTY_REPLICAS
+                    ? _EMPTY_CHOICES
                     : replicaChoices[Math.abs(hc % members.length)];
         } finally {
             rLock.unlock();
@@ -211,25 +213,16 @@ public class DefaultKeyMapper
             currentMemberSet.remove(myName);
             members = currentMemberSet.toArray(new String[0]);
 
+            //The choices for the keys mapped to members[i] are all the members, starting from members[i]
             int memSz = members.length;
-            this.replicaChoices = new String[memSz];
-            
-            if (memSz == 0) {
-                this.replicaChoices = new String[] {_EMPTY_REPLICAS};
-            } else {
-                for (int i=0; i<memSz; i++) {
-                    StringBuilder sb = new StringBuilder();
-                    int index = i;
-                    String delim = "";
-                    int choiceLimit = 1;
-                    for (int j=0; j<memSz && choiceLimit-- > 0; j++) {
-                        sb.append(delim).append(members[index++ % memSz]);
-                        delim = ":";
-                    }
-                    
-                    replicaChoices[i] = sb.toString();
+            String[][] choices = new String[memSz][];
+            for (int i=0; i<memSz; i++) {
+                choices[i] = new String[memSz];
+                for (int j=0; j<memSz; j++) {
+                    choices[i][j] = members[(i + j) % memSz];
                 }
             }
+            this.replicaChoices = choices;
 
             TreeSet<String> previousView = new TreeSet<String>();
             previousView.addAll(readOnlyPreviousAliveAndReadyMembers);
@@ -292,7 +285,7 @@ public class DefaultKeyMapper
         sb.append("\n");
         int memSz = members.length;
         for (int i=0; i<memSz; i++) {
-            sb.append("\tReplicaChoices[").append(members[i]).append("]: ").append(replicaChoices[i]);
+            sb.append("\tReplicaChoices[").append(members[i]).append("]: ").append(Arrays.toString(replicaChoices[i]));
             sb.append("\n");
         }
         _logger.log(Level.FINE, sb.toString());
@@ -50,7 +50,12 @@ public interface KeyMapper {
 
     public String[] findReplicaInstance(String groupName, Object key, String keyMappingInfo);
 
-    public String getReplicaChoices(String groupName, Object key);
+    /**
+     * @return the current members that may hold a copy of key, in order of
+     *  preference. The first one is the getMappedInstance() of key. The
+     *  array must not be modified. It is empty if there are no other members
+     */
+    public String[] getReplicaChoices(String groupName, Object key);
 
     public String[] getCurrentMembers();
     
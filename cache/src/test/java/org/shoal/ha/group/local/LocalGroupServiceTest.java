@@ -0,0 +1,225 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.ha.group.local;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.shoal.ha.cache.api.DataStoreContext;
+import org.shoal.ha.cache.impl.store.ReplicatedDataStore;
+import org.shoal.ha.cache.impl.util.MessageReceiver;
+import org.shoal.ha.group.GroupMemberEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class LocalGroupServiceTest
+        extends TestCase {
+
+    private static final String TOKEN = "test";
+
+    private String groupName;
+
+    public LocalGroupServiceTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(LocalGroupServiceTest.class);
+    }
+
+    @Override
+    protected void setUp() {
+        groupName = getName() + "-" + System.nanoTime();
+    }
+
+    @Override
+    protected void tearDown() {
+        LocalGroup.removeGroup(groupName);
+    }
+
+    public void testViewChanges() {
+        LocalGroup group = LocalGroup.getGroup(groupName);
+        LocalGroupService a = group.join("a");
+        group.join("b");
+
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        a.registerGroupMemberEventListener(new GroupMemberEventListener() {
+            public void onViewChange(String memberName, Collection<String> current,
+                                     Collection<String> previous, boolean isJoinEvent) {
+                events.add(memberName + (isJoinEvent ? "+" : "-") + current);
+            }
+        });
+
+        group.join("c");
+        assertTrue(group.fail("b"));
+        assertFalse(group.fail("b"));
+        group.getMember("c").close();
+
+        assertEquals(Arrays.asList("a+[a, b]", "c+[a, b, c]", "b-[a, c]", "c-[a]"), events);
+        assertEquals(Arrays.asList("a"), a.getCurrentCoreMembers());
+        assertFalse(a.sendMessage("b", TOKEN, new byte[1]));
+    }
+
+    public void testOrderedDeliveryWithLatency()
+            throws Exception {
+        LocalGroup group = LocalGroup.getGroup(groupName).setLatency(5, 20);
+        LocalGroupService a = group.join("a");
+        LocalGroupService b = group.join("b");
+        RecordingReceiver receiver = new RecordingReceiver(100);
+        b.registerGroupMessageReceiver(TOKEN, receiver);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(a.sendMessage("b", TOKEN, new byte[] {(byte) i}));
+        }
+        assertTrue(receiver.await());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(5));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("a", receiver.senders.get(i));
+            assertEquals((byte) i, receiver.messages.get(i)[0]);
+        }
+        assertEquals(100, group.getDeliveredCount());
+    }
+
+    public void testDropRate()
+            throws Exception {
+        LocalGroup group = LocalGroup.getGroup(groupName).setDropRate(1.0);
+        LocalGroupService a = group.join("a");
+        LocalGroupService b = group.join("b");
+        RecordingReceiver receiver = new RecordingReceiver(1);
+        b.registerGroupMessageReceiver(TOKEN, receiver);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(a.sendMessage("b", TOKEN, new byte[] {(byte) i}));
+        }
+        assertEquals(10, group.getDroppedCount());
+
+        group.setDropRate(0);
+        a.sendMessage(null, TOKEN, new byte[] {42});
+        assertTrue(receiver.await());
+        assertEquals(1, receiver.messages.size());
+        assertEquals(42, receiver.messages.get(0)[0]);
+    }
+
+    public void testBandwidth()
+            throws Exception {
+        LocalGroup group = LocalGroup.getGroup(groupName).setBandwidth(100 * 1000);
+        LocalGroupService a = group.join("a");
+        LocalGroupService b = group.join("b");
+        RecordingReceiver receiver = new RecordingReceiver(10);
+        b.registerGroupMessageReceiver(TOKEN, receiver);
+
+        //10 * 2000 bytes at 100KB/s take 200ms to leave a
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            a.sendMessage("b", TOKEN, new byte[2000]);
+        }
+        assertTrue(receiver.await());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(190));
+        assertEquals(20000, group.getSentBytes());
+    }
+
+    public void testReplicatedDataStore()
+            throws Exception {
+        LocalGroup group = LocalGroup.getGroup(groupName).setLatency(1, 1);
+        ReplicatedDataStore<String, String> a = createStore(group.join("a"));
+        ReplicatedDataStore<String, String> b = createStore(group.join("b"));
+        try {
+            assertEquals("b", a.put("key1", "value1"));
+            long giveUpAt = System.currentTimeMillis() + 10000;
+            while (b.getDataStoreContext().getReplicaStore().size() == 0 && System.currentTimeMillis() < giveUpAt) {
+                Thread.sleep(10);
+            }
+            assertEquals("value1", b.get("key1"));
+
+            group.fail("b");
+            assertEquals(0, a.getDataStoreContext().getKeyMapper().getCurrentMembers().length);
+        } finally {
+            a.close();
+            b.close();
+        }
+    }
+
+    private ReplicatedDataStore<String, String> createStore(LocalGroupService gs) {
+        DataStoreContext<String, String> conf = new DataStoreContext<String, String>();
+        conf.setStoreName("store")
+                .setInstanceName(gs.getMemberName())
+                .setGroupName(gs.getGroupName())
+                .setKeyClazz(String.class)
+                .setValueClazz(String.class)
+                .setClassLoader(getClass().getClassLoader());
+        return new ReplicatedDataStore<String, String>(conf, gs);
+    }
+
+    private static class RecordingReceiver
+            extends MessageReceiver {
+
+        private List<String> senders = Collections.synchronizedList(new ArrayList<String>());
+
+        private List<byte[]> messages = Collections.synchronizedList(new ArrayList<byte[]>());
+
+        private CountDownLatch latch;
+
+        RecordingReceiver(int expected) {
+            latch = new CountDownLatch(expected);
+        }
+
+        @Override
+        protected void handleMessage(String senderName, String messageToken, byte[] data) {
+            senders.add(senderName);
+            messages.add(data);
+            latch.countDown();
+        }
+
+        boolean await()
+                throws InterruptedException {
+            return latch.await(10, TimeUnit.SECONDS);
+        }
+    }
+
+}
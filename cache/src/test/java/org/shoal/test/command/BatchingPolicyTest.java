@@ -0,0 +1,96 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.test.command;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.shoal.ha.cache.impl.interceptor.AdaptiveBatchingPolicy;
+import org.shoal.ha.cache.impl.interceptor.FixedBatchingPolicy;
+
+public class BatchingPolicyTest
+        extends TestCase {
+
+    public BatchingPolicyTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(BatchingPolicyTest.class);
+    }
+
+    public void testFixedPolicy() {
+        FixedBatchingPolicy policy = new FixedBatchingPolicy(20, 100);
+        policy.batchSent(20, 1000, 1000000);
+        assertEquals(20, policy.getMaxBatchSize());
+        assertEquals(100, policy.getLingerTimeInMillis());
+        assertEquals(100, policy.getFlushCheckIntervalInMillis());
+    }
+
+    public void testAdaptiveIdleTraffic()
+            throws Exception {
+        AdaptiveBatchingPolicy policy = new AdaptiveBatchingPolicy(1, 200, 64 * 1024, 5, 100);
+        for (int i = 0; i < 3; i++) {
+            Thread.sleep(200);
+            policy.commandAdded();
+            policy.batchSent(1, 100, 100000);
+        }
+
+        //Less than one command per linger period: do not wait for more commands
+        assertEquals(5, policy.getLingerTimeInMillis());
+        assertTrue(policy.getMaxBatchSize() >= 1);
+    }
+
+    public void testAdaptiveByteLimit() {
+        AdaptiveBatchingPolicy policy = new AdaptiveBatchingPolicy(1, 200, 64 * 1024, 5, 100);
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 100000; j++) {
+                policy.commandAdded();
+            }
+            policy.batchSent(10, 10 * 8192, 2000000);
+        }
+
+        //8K per command, so at most 8 commands fit in 64K
+        assertEquals(8, policy.getMaxBatchSize());
+        assertTrue(policy.getLingerTimeInMillis() >= 5);
+        assertTrue(policy.getLingerTimeInMillis() <= 100);
+    }
+}
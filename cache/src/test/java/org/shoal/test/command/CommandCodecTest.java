@@ -0,0 +1,384 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.shoal.test.command;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.shoal.adapter.store.commands.LoadAllResponseCommand;
+import org.shoal.adapter.store.commands.RemoveCommand;
+import org.shoal.adapter.store.commands.SaveCommand;
+import org.shoal.adapter.store.commands.SimpleAckCommand;
+import org.shoal.ha.cache.api.DataStoreContext;
+import org.shoal.ha.cache.api.DataStoreException;
+import org.shoal.ha.cache.api.ReplicatedDataStoreStatsHolder;
+import org.shoal.ha.cache.impl.command.Command;
+import org.shoal.ha.cache.impl.command.CommandCodec;
+import org.shoal.ha.cache.impl.command.CommandManager;
+import org.shoal.ha.cache.impl.interceptor.ReplicationFramePayloadCommand;
+import org.shoal.ha.cache.impl.store.DataStoreEntry;
+import org.shoal.ha.cache.impl.store.SimpleDataStoreEntryUpdater;
+import org.shoal.ha.cache.impl.util.AcknowledgementFuture;
+import org.shoal.ha.cache.impl.util.CommandResponse;
+import org.shoal.ha.cache.impl.util.DeflateFrameCompressor;
+import org.shoal.ha.cache.impl.util.ReplicationOutputStream;
+import org.shoal.ha.cache.impl.util.ResponseMediator;
+import org.shoal.ha.cache.impl.util.StringKeyTransformer;
+import org.shoal.test.common.DummyGroupService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+public class CommandCodecTest
+        extends TestCase {
+
+    public CommandCodecTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(CommandCodecTest.class);
+    }
+
+    private DataStoreContext<String, String> createContext(boolean useKeyTransformer) {
+        DataStoreContext<String, String> dsc = new DataStoreContext<String, String>("test",
+                new DummyGroupService("inst1", "grp1"), this.getClass().getClassLoader());
+        if (useKeyTransformer) {
+            dsc.setKeyTransformer(new StringKeyTransformer());
+        }
+        SimpleDataStoreEntryUpdater<String, String> updater = new SimpleDataStoreEntryUpdater<String, String>();
+        updater.initialize(dsc);
+        dsc.setDataStoreEntryUpdater(updater);
+
+        CommandManager<String, String> cm = new CommandManager<String, String>();
+        dsc.setCommandManager(cm);
+        cm.initialize(dsc);
+        dsc.setDataStoreMBean(new ReplicatedDataStoreStatsHolder<String, String>(dsc));
+
+        cm.registerCommand(new SaveCommand<String, String>());
+        cm.registerCommand(new RemoveCommand<String, String>(null));
+        cm.registerCommand(new ReplicationFramePayloadCommand<String, String>());
+        cm.registerCommand(new SimpleAckCommand<String, String>());
+        cm.registerCommand(new LoadAllResponseCommand<String, String>());
+        return dsc;
+    }
+
+    public void testSaveCommandRoundTrip()
+            throws Exception {
+        for (boolean useKeyTransformer : new boolean[] {false, true}) {
+            DataStoreContext<String, String> dsc = createContext(useKeyTransformer);
+            CommandCodec<String, String> codec = dsc.getCommandManager().getCommandCodec();
+
+            SaveCommand<String, String> cmd = new SaveCommand<String, String>("key1", "value1", 7, 1234, 5678);
+            cmd.initialize(dsc);
+            byte[] data = codec.encode(cmd);
+            assertEquals(CommandCodec.CODEC_MAGIC, data[0]);
+
+            SaveCommand<String, String> result = (SaveCommand<String, String>) codec.decode(data);
+            result.initialize(dsc);
+            assertEquals("key1", result.getKey());
+            assertEquals(7, result.getVersion());
+            assertEquals(1234, result.getLastAccessedAt());
+            assertEquals(5678, result.getMaxIdleTime());
+            assertEquals("value1", CommandCodec.deserialize(result.getRawV(), getClass().getClassLoader()));
+        }
+    }
+
+    public void testFramePayloadRoundTrip()
+            throws Exception {
+        DataStoreContext<String, String> dsc = createContext(true);
+        CommandCodec<String, String> codec = dsc.getCommandManager().getCommandCodec();
+
+        ReplicationFramePayloadCommand<String, String> frame = new ReplicationFramePayloadCommand<String, String>();
+        frame.initialize(dsc);
+        Command<String, String> save = new SaveCommand<String, String>("key1", "value1", 1, 1, 1);
+        save.initialize(dsc);
+        Command<String, String> remove = new RemoveCommand<String, String>("key2");
+        remove.initialize(dsc);
+        Command<String, String> noop = new NoopCommand();
+        noop.initialize(dsc);
+        frame.addComamnd(save);
+        frame.addComamnd(remove);
+        frame.addComamnd(noop);
+
+        byte[] data = codec.encode(frame);
+        assertEquals(CommandCodec.CODEC_MAGIC, data[0]);
+        Command<String, String> result = codec.decode(data);
+        assertTrue(result instanceof ReplicationFramePayloadCommand);
+        assertEquals(frame.toString(), result.toString());
+    }
+
+    public void testCumulativeAckRoundTrip()
+            throws Exception {
+        DataStoreContext<String, String> dsc = createContext(true);
+        dsc.setResponseMediator(new ResponseMediator());
+        CommandCodec<String, String> codec = dsc.getCommandManager().getCommandCodec();
+
+        CommandResponse[] responses = new CommandResponse[3];
+        long[] tokenIds = new long[responses.length];
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = dsc.getResponseMediator().createCommandResponse();
+            tokenIds[i] = responses[i].getTokenId();
+        }
+        AcknowledgementFuture<String> future = new AcknowledgementFuture<String>(
+                dsc.getResponseMediator(), responses[1], "inst2", 3000);
+        assertFalse(future.isDone());
+
+        SimpleAckCommand<String, String> ack = new SimpleAckCommand<String, String>("inst2", tokenIds);
+        ack.initialize(dsc);
+        byte[] data = codec.encode(ack);
+        assertEquals(CommandCodec.CODEC_MAGIC, data[0]);
+
+        SimpleAckCommand<String, String> result = (SimpleAckCommand<String, String>) codec.decode(data);
+        result.initialize(dsc);
+        assertEquals(tokenIds.length, result.getTokenIds().length);
+        result.execute("inst2");
+
+        for (CommandResponse resp : responses) {
+            assertTrue(resp.getFuture().isDone());
+            assertNull(dsc.getResponseMediator().getCommandResponse(resp.getTokenId()));
+        }
+        assertTrue(future.isDone());
+        assertEquals("inst2", future.get());
+        assertEquals("inst1", future.getRespondingInstanceName());
+    }
+
+    public void testLoadAllResponseRoundTrip()
+            throws Exception {
+        DataStoreContext<String, String> dsc = createContext(true);
+        CommandCodec<String, String> codec = dsc.getCommandManager().getCommandCodec();
+
+        byte[][] rawVs = new byte[][] {new byte[] {1, 2, 3}, null, new byte[] {4}};
+        LoadAllResponseCommand<String, String> cmd = new LoadAllResponseCommand<String, String>(
+                "inst2", 42, new long[] {1, Long.MIN_VALUE, 3}, rawVs);
+        cmd.initialize(dsc);
+
+        //Both the compact format and java serialization (used when the command is not registered)
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bos);
+        oos.writeObject(cmd);
+        oos.close();
+        byte[][] encoded = new byte[][] {codec.encode(cmd), bos.toByteArray()};
+        for (byte[] data : encoded) {
+            LoadAllResponseCommand<String, String> result = (LoadAllResponseCommand<String, String>) codec.decode(data);
+            assertEquals(3, result.getVersions().length);
+            assertEquals(Long.MIN_VALUE, result.getVersions()[1]);
+            assertNull(result.getRawVs()[1]);
+            assertEquals(4, result.getRawVs()[2][0]);
+        }
+    }
+
+    public void testDeltaSaveRoundTrip()
+            throws Exception {
+        DataStoreContext<String, String> dsc = createContext(false);
+        CommandCodec<String, String> codec = dsc.getCommandManager().getCommandCodec();
+        DataStoreEntry<String, String> primaryEntry = new DataStoreEntry<String, String>();
+        primaryEntry.setKey("key1");
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("attribute").append(i).append(';');
+        }
+        String value1 = sb.toString();
+        String value2 = value1.replace("attribute100", "changed0100");
+        String value3 = value2 + "more";
+
+        byte[][] encoded = new byte[3][];
+        String[] values = new String[] {value1, value2, value3};
+        for (int i = 0; i < 3; i++) {
+            SaveCommand<String, String> cmd = new SaveCommand<String, String>("key1", values[i], i + 1, 1, 1) {
+                {
+                    setTargetName("inst2");
+                }
+            };
+            cmd.initialize(dsc);
+            cmd.setDeltaSourceEntry(primaryEntry);
+            encoded[i] = codec.encode(cmd);
+        }
+        assertTrue(encoded[1].length < encoded[0].length / 4);
+
+        //Deliver the first delta before the full save it is based on
+        DataStoreEntry<String, String> replicaEntry = new DataStoreEntry<String, String>();
+        replicaEntry.setKey("key1");
+        for (int i : new int[] {1, 0, 2}) {
+            SaveCommand<String, String> result = (SaveCommand<String, String>) codec.decode(encoded[i]);
+            result.initialize(dsc);
+            assertEquals(i > 0, result.isDelta());
+            dsc.getDataStoreEntryUpdater().executeSave(replicaEntry, result);
+        }
+
+        assertEquals(3, replicaEntry.getVersion());
+        assertEquals(value3, dsc.getDataStoreEntryUpdater().getV(replicaEntry));
+    }
+
+    public void testDeltaIsOnlyBasedOnAcknowledgedState()
+            throws Exception {
+        DataStoreContext<String, String> dsc = createContext(false);
+        DataStoreEntry<String, String> primaryEntry = new DataStoreEntry<String, String>();
+        primaryEntry.setKey("key1");
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("attribute").append(i).append(';');
+        }
+        String value = sb.toString();
+        byte[] state = dsc.getDataStoreEntryUpdater().getState(value);
+
+        //The ack of version 1 has not arrived yet
+        FutureTask<Object> ack = new FutureTask<Object>(new Callable<Object>() {
+            public Object call() {
+                return true;
+            }
+        });
+        primaryEntry.compareAndSetDeltaBase(null, new DataStoreEntry.DeltaBase(1, "inst2", state, 0, ack));
+        assertFalse(encodeAndDecode(dsc, primaryEntry, value + "2", 2).isDelta());
+
+        //Version 2 was acknowledged
+        DataStoreEntry.DeltaBase base = primaryEntry.getDeltaBase();
+        primaryEntry.compareAndSetDeltaBase(base, new DataStoreEntry.DeltaBase(base.getVersion(), "inst2",
+                base.getState(), 0, ack));
+        ack.run();
+        assertTrue(encodeAndDecode(dsc, primaryEntry, value + "3", 3).isDelta());
+
+        //The ack of version 3 failed
+        FutureTask<Object> failedAck = new FutureTask<Object>(new Callable<Object>() {
+            public Object call() {
+                return new DataStoreException("Transmission failed");
+            }
+        });
+        failedAck.run();
+        base = primaryEntry.getDeltaBase();
+        primaryEntry.compareAndSetDeltaBase(base, new DataStoreEntry.DeltaBase(base.getVersion(), "inst2",
+                base.getState(), base.getDeltaCount(), failedAck));
+        assertFalse(encodeAndDecode(dsc, primaryEntry, value + "4", 4).isDelta());
+    }
+
+    public void testTransmitFailureResetsDeltaBase()
+            throws Exception {
+        DataStoreContext<String, String> dsc = createContext(false);
+        CommandCodec<String, String> codec = dsc.getCommandManager().getCommandCodec();
+        DataStoreEntry<String, String> primaryEntry = new DataStoreEntry<String, String>();
+        primaryEntry.setKey("key1");
+
+        SaveCommand<String, String> cmd = new SaveCommand<String, String>("key1", "value1", 1, 1, 1) {
+            {
+                setTargetName("inst2");
+            }
+        };
+        cmd.initialize(dsc);
+        cmd.setDeltaSourceEntry(primaryEntry);
+        codec.encode(cmd);
+        assertEquals(1, primaryEntry.getDeltaBase().getVersion());
+
+        cmd.onFailure();
+        assertNull(primaryEntry.getDeltaBase());
+    }
+
+    private SaveCommand<String, String> encodeAndDecode(DataStoreContext<String, String> dsc,
+                                                        DataStoreEntry<String, String> primaryEntry,
+                                                        String value, long version)
+            throws Exception {
+        SaveCommand<String, String> cmd = new SaveCommand<String, String>("key1", value, version, 1, 1) {
+            {
+                setTargetName("inst2");
+            }
+        };
+        cmd.initialize(dsc);
+        cmd.setDeltaSourceEntry(primaryEntry);
+        CommandCodec<String, String> codec = dsc.getCommandManager().getCommandCodec();
+        SaveCommand<String, String> result = (SaveCommand<String, String>) codec.decode(codec.encode(cmd));
+        result.initialize(dsc);
+        return result;
+    }
+
+    public void testCompressedFrameRoundTrip()
+            throws Exception {
+        DataStoreContext<String, String> dsc = createContext(true);
+        dsc.setFrameCompressor(new DeflateFrameCompressor());
+        CommandCodec<String, String> codec = dsc.getCommandManager().getCommandCodec();
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            sb.append("session-attribute-").append(i % 10);
+        }
+        SaveCommand<String, String> cmd = new SaveCommand<String, String>("key1", sb.toString(), 7, 1234, 5678);
+        cmd.initialize(dsc);
+        ReplicationOutputStream ros = new ReplicationOutputStream();
+        codec.encode(cmd, ros);
+        int encodedSize = ros.size();
+        assertTrue(codec.compress(ros));
+        byte[] data = ros.toByteArray();
+        assertEquals(CommandCodec.COMPRESSED_MAGIC, data[0]);
+        assertTrue(data.length < encodedSize / 4);
+        assertEquals(1, dsc.getDataStoreMBean().getCompressedFrameCount());
+
+        SaveCommand<String, String> result = (SaveCommand<String, String>) codec.decode(data);
+        assertEquals(7, result.getVersion());
+        assertEquals(sb.toString(), CommandCodec.deserialize(result.getRawV(), getClass().getClassLoader()));
+
+        //Below the threshold frames are sent as is
+        SaveCommand<String, String> small = new SaveCommand<String, String>("key1", "value1", 8, 1234, 5678);
+        small.initialize(dsc);
+        byte[] smallData = codec.encode(small);
+        ros.reset();
+        codec.encode(small, ros);
+        assertFalse(codec.compress(ros));
+        assertTrue(Arrays.equals(smallData, ros.toByteArray()));
+    }
+
+    public void testSerializationFallback()
+            throws Exception {
+        DataStoreContext<String, String> dsc = createContext(false);
+        CommandCodec<String, String> codec = dsc.getCommandManager().getCommandCodec();
+
+        Command<String, String> noop = new NoopCommand();
+        noop.initialize(dsc);
+        assertFalse(codec.isCompactCodecSupported(noop));
+
+        byte[] data = codec.encode(noop);
+        assertFalse(CommandCodec.CODEC_MAGIC == data[0]);
+        assertTrue(codec.decode(data) instanceof NoopCommand);
+    }
+}
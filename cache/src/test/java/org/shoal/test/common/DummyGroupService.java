@@ -97,6 +97,11 @@ public class DummyGroupService
         return false;  //To change body of implemented methods use File | Settings | File Templates.
     }
 
+    @Override
+    public boolean sendMessage(String targetMemberName, String token, byte[] data, int offset, int length) {
+        return false;
+    }
+
     @Override
     public List<String> getCurrentCoreMembers() {
         return Collections.EMPTY_LIST;
@@ -0,0 +1,128 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.test.common;
+
+import org.shoal.ha.cache.api.DataStoreContext;
+import org.shoal.ha.cache.impl.store.ReplicatedDataStore;
+import org.shoal.ha.group.local.LocalGroup;
+import org.shoal.ha.mapper.ConsistentHashKeyMapper;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A group of ReplicatedDataStores, one per member of a LocalGroup, that
+ *  replicate synchronously to each other. Every instance uses a group of its own.
+ */
+public class LocalDataStoreGroup<V extends Serializable> {
+
+    private String groupName;
+
+    private LocalGroup group;
+
+    private Class<V> vClazz;
+
+    private Map<String, ReplicatedDataStore<String, V>> stores
+            = new LinkedHashMap<String, ReplicatedDataStore<String, V>>();
+
+    public LocalDataStoreGroup(String testName, Class<V> vClazz) {
+        this.groupName = testName + "-" + System.nanoTime();
+        this.group = LocalGroup.getGroup(groupName).setLatency(1, 1);
+        this.vClazz = vClazz;
+    }
+
+    /**
+     * @return the configuration of member's store, which can be changed before
+     *  it is passed to addStore()
+     */
+    public DataStoreContext<String, V> createContext(String member) {
+        DataStoreContext<String, V> conf = new DataStoreContext<String, V>();
+        conf.setStoreName("store")
+                .setInstanceName(member)
+                .setGroupName(groupName)
+                .setKeyClazz(String.class)
+                .setValueClazz(vClazz)
+                .setClassLoader(vClazz.getClassLoader())
+                .setKeyMapper(new ConsistentHashKeyMapper(member, groupName))
+                .setDoSynchronousReplication(true);
+        return conf;
+    }
+
+    public ReplicatedDataStore<String, V> addStore(DataStoreContext<String, V> conf) {
+        ReplicatedDataStore<String, V> store = new ReplicatedDataStore<String, V>(conf,
+                group.join(conf.getInstanceName()));
+        stores.put(conf.getInstanceName(), store);
+        return store;
+    }
+
+    public void addStores(String... members) {
+        for (String member : members) {
+            addStore(createContext(member));
+        }
+    }
+
+    public ReplicatedDataStore<String, V> getStore(String member) {
+        return stores.get(member);
+    }
+
+    public Map<String, ReplicatedDataStore<String, V>> getStores() {
+        return stores;
+    }
+
+    public LocalGroup getGroup() {
+        return group;
+    }
+
+    public String getGroupName() {
+        return groupName;
+    }
+
+    /**
+     * Closes all the stores and removes the group
+     */
+    public void close() {
+        for (ReplicatedDataStore<String, V> store : stores.values()) {
+            store.close();
+        }
+        LocalGroup.removeGroup(groupName);
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.test.criteria;
+
+import junit.framework.TestCase;
+import org.glassfish.ha.store.annotations.Attribute;
+import org.glassfish.ha.store.criteria.Criteria;
+import org.glassfish.ha.store.criteria.ExpressionBuilder;
+import org.glassfish.ha.store.criteria.spi.ExpressionNode;
+import org.glassfish.ha.store.criteria.spi.LogicalExpressionNode;
+import org.glassfish.ha.store.criteria.spi.Opcode;
+import org.glassfish.ha.store.spi.AttributeMetadata;
+import org.shoal.ha.cache.impl.criteria.AttributeIndex;
+import org.shoal.ha.cache.impl.criteria.CriteriaPredicate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class CriteriaPredicateTest
+        extends TestCase {
+
+    private static final AttributeMetadata<Item, String> NAME = new GetterMetadata<String>("name", String.class);
+
+    private static final AttributeMetadata<Item, Long> SIZE = new GetterMetadata<Long>("size", Long.class);
+
+    private static final AttributeMetadata<Item, Double> PRICE = new GetterMetadata<Double>("price", Double.class);
+
+    private static final AttributeMetadata<Item, Boolean> ACTIVE = new GetterMetadata<Boolean>("active", Boolean.class);
+
+    private ExpressionBuilder<Item> eb = new ExpressionBuilder<Item>(Item.class);
+
+    public CriteriaPredicateTest(String testName) {
+        super(testName);
+    }
+
+    public void testComparisons() {
+        Item item = new Item("b", 10, 2.5, true);
+
+        assertTrue(matches(compare(Opcode.EQ, eb.attr(SIZE), eb.literal(Integer.class, 10)), item));
+        assertTrue(matches(compare(Opcode.GTE, eb.attr(SIZE), eb.literal(Long.class, 10L)), item));
+        assertFalse(matches(compare(Opcode.GT, eb.attr(SIZE), eb.literal(Long.class, 10L)), item));
+        //The literal on the left
+        assertTrue(matches(compare(Opcode.GT, eb.literal(Integer.class, 11), eb.attr(SIZE)), item));
+        assertTrue(matches(compare(Opcode.LT, eb.attr(PRICE), eb.literal(Integer.class, 3)), item));
+        assertTrue(matches(compare(Opcode.LTE, eb.attr(NAME), eb.literal(String.class, "b")), item));
+        assertFalse(matches(compare(Opcode.LT, eb.attr(NAME), eb.literal(String.class, "a")), item));
+        assertTrue(matches(compare(Opcode.NEQ, eb.attr(NAME), eb.literal(String.class, "a")), item));
+        assertTrue(matches(eb.setCriteria(eb.attr(ACTIVE)), item));
+        assertFalse(matches(eb.eq(ACTIVE, Boolean.TRUE).neq(true), item));
+        //Two attributes
+        assertFalse(matches(compare(Opcode.LT, eb.attr(SIZE), eb.attr(PRICE)), item));
+    }
+
+    public void testNullAttribute() {
+        Item item = new Item(null, 1, 1, false);
+
+        assertFalse(matches(eb.eq(NAME, "a"), item));
+        assertTrue(matches(compare(Opcode.NEQ, eb.attr(NAME), eb.literal(String.class, "a")), item));
+        assertFalse(matches(compare(Opcode.GT, eb.attr(NAME), eb.literal(String.class, "a")), item));
+        assertTrue(matches(compare(Opcode.EQ, eb.attr(NAME), eb.literal(String.class, null)), item));
+        assertTrue(matches(eb.attr(NAME).in(Arrays.asList("a", null)), item));
+    }
+
+    public void testInAndShortCircuit() {
+        Item item = new Item("b", 3, 1, true);
+
+        assertTrue(matches(eb.attr(NAME).in(Arrays.asList("a", "b")), item));
+        assertTrue(matches(eb.attr(SIZE).in((Collection) Arrays.asList(1, 2, 3)), item));
+        assertFalse(matches(eb.attr(SIZE).in((Collection) Arrays.asList(1.5, 2.5)), item));
+
+        //The attribute of the failing terms throws, but the term that decides the
+        //  result (the more selective EQ for AND, the NEQ for OR) is evaluated first
+        ExpressionBuilder<Failing> feb = new ExpressionBuilder<Failing>(Failing.class);
+        LogicalExpressionNode failingNeq = compare(Opcode.NEQ, feb.attr(new FailingMetadata()), eb.literal(String.class, "x"));
+        LogicalExpressionNode failingEq = compare(Opcode.EQ, feb.attr(new FailingMetadata()), eb.literal(String.class, "x"));
+        assertFalse(matches(failingNeq.and(eb.eq(NAME, "z")), new Failing()));
+        assertTrue(matches(failingEq.or(compare(Opcode.NEQ, eb.attr(NAME), eb.literal(String.class, "z"))), new Failing()));
+    }
+
+    public void testSerialization()
+            throws Exception {
+        CriteriaPredicate predicate = CriteriaPredicate.compile(
+                eb.setCriteria(eb.eq(NAME, "b").and(compare(Opcode.GT, eb.attr(SIZE), eb.literal(Integer.class, 5)))));
+        assertTrue(predicate.matches(new Item("b", 6, 1, true)));
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bos);
+        oos.writeObject(predicate);
+        oos.close();
+        CriteriaPredicate copy = (CriteriaPredicate) new ObjectInputStream(
+                new ByteArrayInputStream(bos.toByteArray())).readObject();
+
+        assertTrue(copy.matches(new Item("b", 6, 1, true)));
+        assertFalse(copy.matches(new Item("b", 5, 1, true)));
+        assertTrue(CriteriaPredicate.compile(null).matches(new Item("b", 5, 1, true)));
+    }
+
+    public void testIndexedCandidates() {
+        AttributeIndex<String> sizes = AttributeIndex.create(Item.class, "size");
+        AttributeIndex<String> names = AttributeIndex.create(Item.class, "itemName");
+        Map<String, AttributeIndex<String>> indexes = new HashMap<String, AttributeIndex<String>>();
+        indexes.put(sizes.getGetterName(), sizes);
+        indexes.put(names.getGetterName(), names);
+        Object owner = new Object();
+        for (int i = 0; i < 10; i++) {
+            Item item = new Item("n" + (i % 3), i, i, true);
+            sizes.update("k" + i, owner, item);
+            names.update("k" + i, owner, item);
+        }
+
+        assertEquals(keys(3, 4, 5), CriteriaPredicate.compile(eb.setCriteria(
+                compare(Opcode.GTE, eb.attr(SIZE), eb.literal(Integer.class, 3))
+                        .and(compare(Opcode.GT, eb.literal(Long.class, 6L), eb.attr(SIZE))))).findCandidates(indexes));
+        assertEquals(keys(0, 3, 6, 9, 1), CriteriaPredicate.compile(eb.setCriteria(
+                eb.eq(NAME, "n0").or(eb.attr(SIZE).in((Collection) Arrays.asList(1)))))
+                .findCandidates(indexes));
+        //A double literal against a long attribute and an unindexed attribute are not answered
+        assertNull(CriteriaPredicate.compile(eb.setCriteria(
+                compare(Opcode.LT, eb.attr(SIZE), eb.literal(Double.class, 2.5)))).findCandidates(indexes));
+        assertNull(CriteriaPredicate.compile(eb.setCriteria(
+                eb.eq(NAME, "n0").or(eb.eq(ACTIVE, Boolean.TRUE)))).findCandidates(indexes));
+
+        //Only the entry the key was indexed for can remove it
+        sizes.update("k1", owner, new Item("n1", 7, 1, true));
+        sizes.remove("k2", new Object());
+        sizes.remove("k3", owner);
+        assertEquals(keys(1, 7), sizes.find(Opcode.EQ, 7));
+        assertEquals(keys(0, 2), sizes.find(Opcode.LTE, 3));
+        assertEquals(9, sizes.size());
+    }
+
+    private static Set<String> keys(int... ids) {
+        Set<String> keys = new HashSet<String>();
+        for (int id : ids) {
+            keys.add("k" + id);
+        }
+        return keys;
+    }
+
+    private LogicalExpressionNode compare(Opcode opcode, ExpressionNode left, ExpressionNode right) {
+        return new LogicalExpressionNode(opcode, left, right);
+    }
+
+    private boolean matches(LogicalExpressionNode expr, Object v) {
+        return matches(eb.setCriteria(expr), v);
+    }
+
+    private boolean matches(Criteria<Item> criteria, Object v) {
+        return CriteriaPredicate.compile(criteria).matches(v);
+    }
+
+    public static class Item
+            implements Serializable {
+
+        private String name;
+
+        private long size;
+
+        private double price;
+
+        private boolean active;
+
+        public Item(String name, long size, double price, boolean active) {
+            this.name = name;
+            this.size = size;
+            this.price = price;
+            this.active = active;
+        }
+
+        @Attribute("itemName")
+        public String getName() {
+            return name;
+        }
+
+        @Attribute
+        public long getSize() {
+            return size;
+        }
+
+        public double getPrice() {
+            return price;
+        }
+
+        public boolean getActive() {
+            return active;
+        }
+    }
+
+    public static class Failing
+            extends Item {
+
+        public Failing() {
+            super("b", 0, 0, false);
+        }
+
+        public String getBroken() {
+            throw new IllegalStateException("Must not be evaluated");
+        }
+    }
+
+    private static class GetterMetadata<T>
+            implements AttributeMetadata<Item, T> {
+
+        private String name;
+
+        private Class<T> type;
+
+        GetterMetadata(String name, Class<T> type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Class<T> getAttributeType() {
+            return type;
+        }
+
+        public Method getGetterMethod() {
+            try {
+                return Item.class.getMethod("get" + Character.toUpperCase(name.charAt(0)) + name.substring(1));
+            } catch (NoSuchMethodException nsmEx) {
+                throw new IllegalArgumentException(nsmEx);
+            }
+        }
+
+        public Method getSetterMethod() {
+            return null;
+        }
+
+        public boolean isVersionAttribute() {
+            return false;
+        }
+
+        public boolean isHashKeyAttribute() {
+            return false;
+        }
+    }
+
+    private static class FailingMetadata
+            implements AttributeMetadata<Failing, String> {
+
+        public String getName() {
+            return "broken";
+        }
+
+        public Class<String> getAttributeType() {
+            return String.class;
+        }
+
+        public Method getGetterMethod() {
+            try {
+                return Failing.class.getMethod("getBroken");
+            } catch (NoSuchMethodException nsmEx) {
+                throw new IllegalArgumentException(nsmEx);
+            }
+        }
+
+        public Method getSetterMethod() {
+            return null;
+        }
+
+        public boolean isVersionAttribute() {
+            return false;
+        }
+
+        public boolean isHashKeyAttribute() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.test.maptest;
+
+import junit.framework.TestCase;
+import org.glassfish.ha.store.api.HashableKey;
+import org.shoal.ha.mapper.ConsistentHashKeyMapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+public class ConsistentHashKeyMapperTest
+        extends TestCase {
+
+    private static final int KEY_COUNT = 20000;
+
+    public ConsistentHashKeyMapperTest(String testName) {
+        super(testName);
+    }
+
+    public void testEmptyView() {
+        ConsistentHashKeyMapper km = new ConsistentHashKeyMapper("n0", "g1");
+        assertNull(km.getMappedInstance("g1", "Key0"));
+        assertEquals(0, km.getReplicaChoices("g1", "Key0").length);
+        assertEquals(0, km.getCurrentMembers().length);
+        assertTrue(Arrays.equals(new String[] {""}, km.findReplicaInstance("g1", "Key0", null)));
+
+        km.onViewChange("n0", members(0), members(0), true);
+        assertNull("self must never be mapped", km.getMappedInstance("g1", "Key0"));
+    }
+
+    public void testMappingIsSpreadAndExcludesSelf() {
+        ConsistentHashKeyMapper km = new ConsistentHashKeyMapper("n0", "g1");
+        km.onViewChange("n4", members(5), members(4), true);
+        assertTrue(Arrays.equals(new String[] {"n1", "n2", "n3", "n4"}, km.getCurrentMembers()));
+
+        int[] counts = new int[5];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            String owner = km.getMappedInstance("g1", "Key" + i);
+            String[] choices = km.getReplicaChoices("g1", "Key" + i);
+            assertEquals(4, choices.length);
+            assertEquals(owner, choices[0]);
+            assertEquals(4, new HashSet<String>(Arrays.asList(choices)).size());
+            counts[Integer.parseInt(owner.substring(1))]++;
+        }
+        assertEquals(0, counts[0]);
+        for (int i = 1; i < counts.length; i++) {
+            assertTrue("unbalanced: " + Arrays.toString(counts), counts[i] > KEY_COUNT / 4 * 0.75);
+        }
+    }
+
+    public void testJoinMovesOnlyItsShare() {
+        ConsistentHashKeyMapper km = new ConsistentHashKeyMapper("self", "g1");
+        km.onViewChange("n7", members(8), members(7), true);
+        String[] before = owners(km);
+
+        km.onViewChange("n8", members(9), members(8), true);
+        String[] after = owners(km);
+
+        int moved = 0;
+        for (int i = 0; i < KEY_COUNT; i++) {
+            if (!before[i].equals(after[i])) {
+                assertEquals("keys may only move to the new member", "n8", after[i]);
+                moved++;
+            }
+            assertEquals(before[i], km.findReplicaInstance("g1", "Key" + i, null)[0]);
+        }
+        //Ideally 1/9 of the keys; hash % n would move about 8/9 of them
+        assertTrue("moved: " + moved, moved > KEY_COUNT / 9 / 2 && moved < KEY_COUNT / 9 * 2);
+    }
+
+    public void testFailureMovesOnlyTheFailedMembersKeys() {
+        ConsistentHashKeyMapper km = new ConsistentHashKeyMapper("self", "g1", 64);
+        km.onViewChange("n5", members(6), members(5), true);
+        String[] before = owners(km);
+
+        List<String> current = members(6);
+        current.remove("n3");
+        km.onViewChange("n3", current, members(6), false);
+        String[] after = owners(km);
+
+        for (int i = 0; i < KEY_COUNT; i++) {
+            if (!"n3".equals(before[i])) {
+                assertEquals(before[i], after[i]);
+            }
+            assertFalse("n3".equals(after[i]));
+            //The failed member is never offered as a previous owner
+            assertFalse("n3".equals(km.findReplicaInstance("g1", "Key" + i, null)[0]));
+        }
+    }
+
+    public void testBackupTakesOverOnFailure() {
+        ConsistentHashKeyMapper km = new ConsistentHashKeyMapper("self", "g1");
+        km.onViewChange("n4", members(5), members(4), true);
+        String[][] before = new String[KEY_COUNT][];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            before[i] = km.getReplicaChoices("g1", "Key" + i);
+        }
+
+        List<String> current = members(5);
+        current.remove("n2");
+        km.onViewChange("n2", current, members(5), false);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            //The second replica of a key becomes its primary, so it is still found in one hop
+            String expected = "n2".equals(before[i][0]) ? before[i][1] : before[i][0];
+            assertEquals(expected, km.getMappedInstance("g1", "Key" + i));
+        }
+    }
+
+    public void testHashableKey() {
+        ConsistentHashKeyMapper km = new ConsistentHashKeyMapper("n0", "g1");
+        km.onViewChange("n9", members(10), members(9), true);
+        String owner = km.getMappedInstance("g1", "group-a");
+        for (int i = 0; i < 100; i++) {
+            assertEquals(owner, km.getMappedInstance("g1", new GroupedKey("k" + i, "group-a")));
+        }
+    }
+
+    public void testSameViewMapsIdentically() {
+        ConsistentHashKeyMapper km1 = new ConsistentHashKeyMapper("a", "g1");
+        ConsistentHashKeyMapper km2 = new ConsistentHashKeyMapper("b", "g1");
+        List<String> view = members(4);
+        km1.onViewChange("n3", view, view, true);
+        km2.onViewChange("n3", view, view, true);
+        assertTrue(Arrays.equals(owners(km1), owners(km2)));
+    }
+
+    private static List<String> members(int count) {
+        List<String> members = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            members.add("n" + i);
+        }
+        return members;
+    }
+
+    private static String[] owners(ConsistentHashKeyMapper km) {
+        String[] owners = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            owners[i] = km.getMappedInstance("g1", "Key" + i);
+        }
+        return owners;
+    }
+
+    private static class GroupedKey
+            implements HashableKey {
+
+        private String id;
+
+        private String group;
+
+        GroupedKey(String id, String group) {
+            this.id = id;
+            this.group = group;
+        }
+
+        @Override
+        public Object getHashKey() {
+            return group;
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+    }
+
+}
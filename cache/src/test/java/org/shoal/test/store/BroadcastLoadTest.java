@@ -0,0 +1,150 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.shoal.test.store;
+
+import junit.framework.TestCase;
+import org.shoal.ha.cache.api.DataStoreContext;
+import org.shoal.ha.cache.impl.store.ReplicatedDataStore;
+import org.shoal.test.common.LocalDataStoreGroup;
+
+public class BroadcastLoadTest
+        extends TestCase {
+
+    private static final String[] MEMBERS = {"a", "b", "c"};
+
+    //A member that is part of the view but has no DataStore, so it never answers
+    private static final String SILENT_MEMBER = "s";
+
+    //BROADCAST_LOAD_TIMEOUT_IN_MILLIS
+    private static final long LOAD_TIMEOUT_IN_MILLIS = 3000;
+
+    private LocalDataStoreGroup<String> stores;
+
+    public BroadcastLoadTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() {
+        stores = new LocalDataStoreGroup<String>(getName(), String.class);
+        stores.addStores(MEMBERS);
+    }
+
+    @Override
+    protected void tearDown() {
+        stores.close();
+    }
+
+    public void testLoadFromReplica()
+            throws Exception {
+        stores.getStore("a").put("key", "value");
+        for (String member : MEMBERS) {
+            assertEquals(member, "value", stores.getStore(member).get("key"));
+        }
+    }
+
+    public void testBroadcastLoadWhenReplicaDoesNotAnswer()
+            throws Exception {
+        String[] keyAndLoader = findKeyWhoseReplicaIsSilent();
+        ReplicatedDataStore<String, String> loader = stores.getStore(keyAndLoader[1]);
+
+        //The replica probe and the broadcast share a single deadline
+        long start = System.currentTimeMillis();
+        assertEquals("value", loader.get(keyAndLoader[0]));
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("get took " + elapsed + " millis", elapsed < LOAD_TIMEOUT_IN_MILLIS);
+        assertEquals(1, loader.getDataStoreContext().getDataStoreMBean().getBroadcastLoadSuccessCount());
+    }
+
+    public void testMissingKeyWaitsForOneDeadline()
+            throws Exception {
+        stores.getGroup().join(SILENT_MEMBER);
+        ReplicatedDataStore<String, String> b = stores.getStore("b");
+
+        long start = System.currentTimeMillis();
+        assertNull(b.get("missing"));
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("get took " + elapsed + " millis", elapsed < LOAD_TIMEOUT_IN_MILLIS + 1000);
+    }
+
+    public void testPendingRequestsAreCancelled()
+            throws Exception {
+        String[] keyAndLoader = findKeyWhoseReplicaIsSilent();
+        ReplicatedDataStore<String, String> loader = stores.getStore(keyAndLoader[1]);
+        int pendingResponses = loader.getDataStoreContext().getResponseMediator().getPendingResponseCount();
+
+        assertEquals("value", loader.get(keyAndLoader[0]));
+        assertNull(loader.get("missing"));
+        //Nobody will ever answer the requests sent to the silent member
+        assertEquals(pendingResponses,
+                loader.getDataStoreContext().getResponseMediator().getPendingResponseCount());
+    }
+
+    /**
+     * Saves a few keys and then adds the silent member to the group.
+     *
+     * @return a key and a member whose first replica choice of that key is the
+     *  silent member, while the member has no copy of the key
+     */
+    private String[] findKeyWhoseReplicaIsSilent()
+            throws Exception {
+        ReplicatedDataStore<String, String> a = stores.getStore("a");
+        for (int i = 0; i < 20; i++) {
+            a.put("key-" + i, "value");
+        }
+
+        stores.getGroup().join(SILENT_MEMBER);
+        for (int i = 0; i < 20; i++) {
+            for (String member : new String[] {"b", "c"}) {
+                DataStoreContext<String, String> dsc = stores.getStore(member).getDataStoreContext();
+                String[] choices = dsc.getKeyMapper().getReplicaChoices(stores.getGroupName(), "key-" + i);
+                if (SILENT_MEMBER.equals(choices[0]) && dsc.getReplicaStore().getEntry("key-" + i) == null) {
+                    return new String[] {"key-" + i, member};
+                }
+            }
+        }
+
+        fail("No key maps to " + SILENT_MEMBER);
+        return null;
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.shoal.test.store;
+
+import junit.framework.TestCase;
+import org.shoal.ha.cache.api.DataStoreException;
+import org.shoal.ha.cache.impl.store.ReplicatedDataStore;
+import org.shoal.test.common.LocalDataStoreGroup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BulkOperationsTest
+        extends TestCase {
+
+    private static final String[] MEMBERS = {"a", "b", "c"};
+
+    //A member that is part of the view but has no DataStore, so it never answers
+    private static final String SILENT_MEMBER = "s";
+
+    private LocalDataStoreGroup<String> stores;
+
+    public BulkOperationsTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() {
+        stores = new LocalDataStoreGroup<String>(getName(), String.class);
+        stores.addStores(MEMBERS);
+    }
+
+    @Override
+    protected void tearDown() {
+        stores.close();
+    }
+
+    public void testPutAllAndGetAll()
+            throws Exception {
+        Map<String, String> entries = createEntries(20);
+        Map<String, String> locations = stores.getStore("a").putAll(entries);
+        assertEquals(entries.keySet(), locations.keySet());
+
+        for (String member : MEMBERS) {
+            assertEquals(member, entries, stores.getStore(member).getAll(entries.keySet()));
+        }
+    }
+
+    public void testGetAllSkipsMissingKeys()
+            throws Exception {
+        Map<String, String> entries = createEntries(5);
+        stores.getStore("a").putAll(entries);
+
+        List<String> keys = new ArrayList<String>(entries.keySet());
+        keys.add("missing");
+        Map<String, String> result = stores.getStore("b").getAll(keys);
+        assertEquals(entries, result);
+    }
+
+    public void testRemoveAll()
+            throws Exception {
+        Map<String, String> entries = createEntries(10);
+        stores.getStore("a").putAll(entries);
+
+        stores.getStore("a").removeAll(entries.keySet());
+        for (String member : MEMBERS) {
+            assertTrue(member, stores.getStore(member).getAll(entries.keySet()).isEmpty());
+        }
+    }
+
+    public void testGetAllWhenReplicaDoesNotAnswer()
+            throws Exception {
+        Map<String, String> entries = createEntries(20);
+        stores.getStore("a").putAll(entries);
+
+        //Some of the keys now map to a member that never answers. getAll must find
+        //  them on the other members in a single broadcast round
+        stores.getGroup().join(SILENT_MEMBER);
+        ReplicatedDataStore<String, String> b = stores.getStore("b");
+        assertTrue(countKeysMappedToSilentMember(b, entries) > 0);
+
+        long start = System.currentTimeMillis();
+        assertEquals(entries, b.getAll(entries.keySet()));
+        //The silent member holds up the round to the replicas and the save of the local
+        //  hits, but neither the broadcast round nor any single key
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("getAll took " + elapsed + " millis", elapsed < 8000);
+    }
+
+    public void testPutAllReportsUnacknowledgedKeys()
+            throws Exception {
+        stores.getGroup().join(SILENT_MEMBER);
+        ReplicatedDataStore<String, String> a = stores.getStore("a");
+        Map<String, String> entries = createEntries(20);
+        assertTrue(countKeysMappedToSilentMember(a, entries) > 0);
+
+        try {
+            a.putAll(entries);
+            fail("putAll must report the keys that were not acknowledged");
+        } catch (DataStoreException dsEx) {
+            for (String key : entries.keySet()) {
+                String[] choices = a.getDataStoreContext().getKeyMapper().getReplicaChoices(stores.getGroupName(), key);
+                assertEquals(key, SILENT_MEMBER.equals(choices[0]), dsEx.getMessage().contains(key + ",") || dsEx.getMessage().contains(key + "]"));
+            }
+        }
+    }
+
+    private Map<String, String> createEntries(int count) {
+        Map<String, String> entries = new HashMap<String, String>();
+        for (int i = 0; i < count; i++) {
+            entries.put("key-" + i, "value-" + i);
+        }
+        return entries;
+    }
+
+    private int countKeysMappedToSilentMember(ReplicatedDataStore<String, String> store, Map<String, String> entries) {
+        int count = 0;
+        for (String key : entries.keySet()) {
+            String[] choices = store.getDataStoreContext().getKeyMapper().getReplicaChoices(stores.getGroupName(), key);
+            if (SILENT_MEMBER.equals(choices[0])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
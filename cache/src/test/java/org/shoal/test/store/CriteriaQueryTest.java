@@ -0,0 +1,360 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.test.store;
+
+import junit.framework.TestCase;
+import org.glassfish.ha.store.annotations.Attribute;
+import org.glassfish.ha.store.criteria.Criteria;
+import org.glassfish.ha.store.criteria.ExpressionBuilder;
+import org.glassfish.ha.store.criteria.spi.LogicalExpressionNode;
+import org.glassfish.ha.store.criteria.spi.Opcode;
+import org.glassfish.ha.store.spi.AttributeMetadata;
+import org.glassfish.ha.store.spi.StoreEntryEvaluator;
+import org.shoal.adapter.store.commands.FindByCriteriaResultCommand;
+import org.shoal.ha.cache.api.DataStoreContext;
+import org.shoal.ha.cache.api.PartialResultException;
+import org.shoal.ha.cache.impl.criteria.CriteriaPredicate;
+import org.shoal.ha.cache.impl.store.ReplicaStore;
+import org.shoal.ha.cache.impl.store.ReplicatedDataStore;
+import org.shoal.ha.cache.impl.util.CommandResponse;
+import org.shoal.ha.cache.impl.util.ResponseMediator;
+import org.shoal.test.common.LocalDataStoreGroup;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CriteriaQueryTest
+        extends TestCase {
+
+    private static final String[] MEMBERS = {"a", "b", "c", "d"};
+
+    private static final long CRITERIA_TIMEOUT_IN_MILLIS = 2000;
+
+    private static final AttributeMetadata<Session, String> PRINCIPAL = new GetterMetadata<String>("principal", String.class);
+
+    private static final AttributeMetadata<Session, String> APP = new GetterMetadata<String>("app", String.class);
+
+    private static final AttributeMetadata<Session, Integer> HITS = new GetterMetadata<Integer>("hits", Integer.class);
+
+    private static final Map<String, Long> NO_VERSIONS = Collections.emptyMap();
+
+    private LocalDataStoreGroup<Session> stores;
+
+    public CriteriaQueryTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp()
+            throws Exception {
+        stores = new LocalDataStoreGroup<Session>(getName(), Session.class);
+        for (String member : MEMBERS) {
+            DataStoreContext<String, Session> conf = stores.createContext(member);
+            conf.setCriteriaPageSize(3)
+                    .setCriteriaTimeoutInMillis(CRITERIA_TIMEOUT_IN_MILLIS);
+            if (member.equals("a") || member.equals("b")) {
+                //The other members scan, so the results combine indexed and scanned lookups
+                conf.setIndexedAttributes(Arrays.asList("principal", "hits", "noSuchAttribute"));
+            }
+            stores.addStore(conf);
+        }
+
+        //Sessions of 4 principals in 2 apps, saved from different instances
+        for (int m = 0; m < MEMBERS.length; m++) {
+            Map<String, Session> sessions = new HashMap<String, Session>();
+            for (int i = m; i < 40; i += MEMBERS.length) {
+                sessions.put("s" + i, new Session("user" + (i % 4), "app" + (i % 2), i));
+            }
+            stores.getStore(MEMBERS[m]).putAll(sessions);
+        }
+    }
+
+    @Override
+    protected void tearDown() {
+        stores.close();
+    }
+
+    public void testFindSessionsOfPrincipal()
+            throws Exception {
+        ExpressionBuilder<Session> eb = new ExpressionBuilder<Session>(Session.class);
+        Criteria<Session> criteria = eb.setCriteria(eb.eq(PRINCIPAL, "user1"));
+
+        Map<String, Session> found = stores.getStore("c").findByCriteria(criteria, null, true);
+        assertEquals(keys(1, 5, 9, 13, 17, 21, 25, 29, 33, 37), found.keySet());
+        for (Session session : found.values()) {
+            assertEquals("user1", session.getPrincipal());
+        }
+
+        assertEquals(found.keySet(), stores.getStore("d").findByCriteria(criteria, null, false).keySet());
+    }
+
+    public void testRangeInAndEvaluator()
+            throws Exception {
+        ExpressionBuilder<Session> eb = new ExpressionBuilder<Session>(Session.class);
+        //A Long literal against an int attribute
+        LogicalExpressionNode hitsAbove = new LogicalExpressionNode(Opcode.GT, eb.attr(HITS), eb.literal(Long.class, 30L));
+        Criteria<Session> criteria = eb.setCriteria(
+                eb.attr(PRINCIPAL).in(Arrays.asList("user0", "user2")).and(hitsAbove));
+
+        assertEquals(keys(32, 34, 36, 38), stores.getStore("a").findByCriteria(criteria, null, false).keySet());
+        assertEquals(keys(34, 38), stores.getStore("b").findByCriteria(criteria, new OfPrincipal("user2"), false).keySet());
+        assertEquals(40, stores.getStore("b").findByCriteria(null, null, false).size());
+    }
+
+    public void testRemoveSessionsOfApp()
+            throws Exception {
+        ExpressionBuilder<Session> eb = new ExpressionBuilder<Session>(Session.class);
+        assertEquals(20, stores.getStore("b").removeByCriteria(eb.setCriteria(eb.eq(APP, "app0")), null));
+
+        Map<String, Session> left = stores.getStore("a").findByCriteria(null, null, true);
+        assertEquals(20, left.size());
+        for (Session session : left.values()) {
+            assertEquals("app1", session.getApp());
+        }
+        assertNull(stores.getStore("d").get("s0"));
+        assertNotNull(stores.getStore("d").get("s1"));
+    }
+
+    public void testIndexIsMaintained()
+            throws Exception {
+        ExpressionBuilder<Session> eb = new ExpressionBuilder<Session>(Session.class);
+        ReplicaStore<String, Session> replicaStore = stores.getStore("a").getDataStoreContext().getReplicaStore();
+        assertEquals(2, replicaStore.getIndexes().size());
+        //Only the entries with a value (not those owned but not cached locally) are indexed
+        CriteriaPredicate all = CriteriaPredicate.compile(null);
+        assertEquals(replicaStore.findByCriteria(all, null).size(), replicaStore.getIndexes().get("getPrincipal").size());
+
+        Criteria<Session> ofUser1 = eb.setCriteria(eb.eq(PRINCIPAL, "user1"));
+        Map<String, Session> changed = new HashMap<String, Session>();
+        changed.put("s1", new Session("user3", "app1", 1));
+        changed.put("s5", new Session("user3", "app1", 5));
+        //s1, s5 and s9 were saved by b
+        stores.getStore("b").putAll(changed);
+        stores.getStore("b").remove("s9");
+        assertEquals(keys(13, 17, 21, 25, 29, 33, 37), stores.getStore("b").findByCriteria(ofUser1, null, false).keySet());
+
+        Criteria<Session> atMost5 = eb.setCriteria(new LogicalExpressionNode(Opcode.LTE, eb.attr(HITS), eb.literal(Integer.class, 5)));
+        assertEquals(keys(0, 1, 2, 3, 4, 5), stores.getStore("a").findByCriteria(atMost5, null, false).keySet());
+        assertEquals(replicaStore.findByCriteria(all, null).size(), replicaStore.getIndexes().get("getHits").size());
+    }
+
+    public void testPagesMayArriveInAnyOrder()
+            throws Exception {
+        CommandResponse resp = new ResponseMediator().createCommandResponse();
+        FindByCriteriaResultCommand.ResultCollector<String, Session> collector
+                = new FindByCriteriaResultCommand.ResultCollector<String, Session>(Arrays.asList("a", "b"));
+        resp.setTransientResult(collector);
+
+        FindByCriteriaResultCommand.addPage(resp, "b", page(5), NO_VERSIONS, 2, true);
+        FindByCriteriaResultCommand.addPage(resp, "a", page(1), NO_VERSIONS, 0, true);
+        FindByCriteriaResultCommand.addPage(resp, "b", page(3), NO_VERSIONS, 0, false);
+        assertFalse(resp.getFuture().isDone());
+        assertEquals(Collections.singleton("b"), collector.getPendingMembers());
+
+        FindByCriteriaResultCommand.addPage(resp, "b", page(4), NO_VERSIONS, 1, false);
+        assertTrue(resp.getFuture().isDone());
+        assertEquals(keys(1, 3, 4, 5), collector.getResult().keySet());
+    }
+
+    public void testHighestVersionWins()
+            throws Exception {
+        CommandResponse resp = new ResponseMediator().createCommandResponse();
+        FindByCriteriaResultCommand.ResultCollector<String, Session> collector
+                = new FindByCriteriaResultCommand.ResultCollector<String, Session>(Arrays.asList("a", "b", "c"));
+        resp.setTransientResult(collector);
+
+        Session current = new Session("user1", "app1", 2);
+        //b missed the last save, c has no raw state
+        FindByCriteriaResultCommand.addPage(resp, "a", Collections.singletonMap("s1", current),
+                Collections.singletonMap("s1", 5L), 0, true);
+        FindByCriteriaResultCommand.addPage(resp, "b", Collections.singletonMap("s1", new Session("user1", "app1", 1)),
+                Collections.singletonMap("s1", 4L), 0, true);
+        FindByCriteriaResultCommand.addPage(resp, "c", Collections.<String, Session>singletonMap("s1", null),
+                Collections.singletonMap("s1", 6L), 0, true);
+        assertSame(current, collector.getResult().get("s1"));
+
+        collector = new FindByCriteriaResultCommand.ResultCollector<String, Session>(Arrays.asList("a", "b"));
+        resp.setTransientResult(collector);
+        FindByCriteriaResultCommand.addPage(resp, "b", Collections.singletonMap("s1", new Session("user1", "app1", 1)),
+                Collections.singletonMap("s1", 4L), 0, true);
+        FindByCriteriaResultCommand.addPage(resp, "a", Collections.singletonMap("s1", current),
+                Collections.singletonMap("s1", 5L), 0, true);
+        assertSame(current, collector.getResult().get("s1"));
+    }
+
+    public void testUnresponsiveMemberGivesPartialResult()
+            throws Exception {
+        //s is in the view but never answers
+        stores.getGroup().join("s");
+        final ReplicatedDataStore<String, Session> store = stores.getStore("a");
+        final AtomicReference<Exception> error = new AtomicReference<Exception>();
+        Thread finder = new Thread() {
+            public void run() {
+                try {
+                    store.findByCriteria(null, null, false);
+                } catch (Exception ex) {
+                    error.set(ex);
+                }
+            }
+        };
+        finder.start();
+        Thread.sleep(500);
+
+        //The criteria is waited for outside of the gate, so close() does not wait for it
+        long start = System.currentTimeMillis();
+        store.close();
+        assertTrue(System.currentTimeMillis() - start < 2000);
+
+        finder.join(CRITERIA_TIMEOUT_IN_MILLIS + 5000);
+        assertTrue(error.get() instanceof PartialResultException);
+        PartialResultException prEx = (PartialResultException) error.get();
+        assertEquals(Collections.singleton("s"), prEx.getUnresponsiveMembers());
+        assertEquals(40, prEx.getPartialResult().size());
+    }
+
+    private static Map<String, Session> page(int id) {
+        return Collections.singletonMap("s" + id, null);
+    }
+
+    private static Set<String> keys(int... ids) {
+        Set<String> keys = new HashSet<String>();
+        for (int id : ids) {
+            keys.add("s" + id);
+        }
+        return keys;
+    }
+
+    public static class Session
+            implements Serializable {
+
+        private String principal;
+
+        private String app;
+
+        private int hits;
+
+        public Session(String principal, String app, int hits) {
+            this.principal = principal;
+            this.app = app;
+            this.hits = hits;
+        }
+
+        @Attribute
+        public String getPrincipal() {
+            return principal;
+        }
+
+        @Attribute("app")
+        public String getApp() {
+            return app;
+        }
+
+        @Attribute
+        public int getHits() {
+            return hits;
+        }
+    }
+
+    private static class OfPrincipal
+            implements StoreEntryEvaluator<String, Session> {
+
+        private String principal;
+
+        OfPrincipal(String principal) {
+            this.principal = principal;
+        }
+
+        public Object eval(String key, Session value) {
+            return principal.equals(value.getPrincipal());
+        }
+    }
+
+    private static class GetterMetadata<T>
+            implements AttributeMetadata<Session, T> {
+
+        private String name;
+
+        private Class<T> type;
+
+        private Method getter;
+
+        GetterMetadata(String name, Class<T> type) {
+            this.name = name;
+            this.type = type;
+            try {
+                this.getter = Session.class.getMethod("get" + Character.toUpperCase(name.charAt(0)) + name.substring(1));
+            } catch (NoSuchMethodException nsmEx) {
+                throw new IllegalArgumentException(nsmEx);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Class<T> getAttributeType() {
+            return type;
+        }
+
+        public Method getGetterMethod() {
+            return getter;
+        }
+
+        public Method getSetterMethod() {
+            return null;
+        }
+
+        public boolean isVersionAttribute() {
+            return false;
+        }
+
+        public boolean isHashKeyAttribute() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.shoal.test.store;
+
+import junit.framework.TestCase;
+import org.glassfish.ha.store.api.StoreEntryProcessor;
+import org.shoal.ha.cache.api.DataStoreContext;
+import org.shoal.ha.cache.api.DataStoreException;
+import org.shoal.ha.cache.api.PartialExecutionException;
+import org.shoal.ha.cache.impl.store.DataStoreEntry;
+import org.shoal.ha.cache.impl.store.ReplicaStore;
+import org.shoal.ha.cache.impl.store.ReplicatedDataStore;
+import org.shoal.test.common.LocalDataStoreGroup;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+public class ExecuteOnKeyTest
+        extends TestCase {
+
+    private static final String[] MEMBERS = {"a", "b", "c", "d"};
+
+    private static final long EXECUTE_TIMEOUT_IN_MILLIS = 2000;
+
+    private LocalDataStoreGroup<Counter> stores;
+
+    public ExecuteOnKeyTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp()
+            throws Exception {
+        stores = new LocalDataStoreGroup<Counter>(getName(), Counter.class);
+        for (String member : MEMBERS) {
+            DataStoreContext<String, Counter> conf = stores.createContext(member);
+            conf.setReplicationFactor(2)
+                    .setExecuteTimeoutInMillis(EXECUTE_TIMEOUT_IN_MILLIS);
+            stores.addStore(conf);
+        }
+
+        Map<String, Counter> counters = new HashMap<String, Counter>();
+        for (int i = 0; i < 10; i++) {
+            counters.put("k" + i, new Counter(i * 100));
+        }
+        stores.getStore("a").putAll(counters);
+    }
+
+    @Override
+    protected void tearDown() {
+        stores.close();
+    }
+
+    public void testExecuteOnOwnedKey()
+            throws Exception {
+        ReplicatedDataStore<String, Counter> owner = stores.getStore("a");
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(100 + i, owner.executeOnKey("k1", new Increment()));
+        }
+        assertEquals(105, owner.get("k1").value);
+
+        //Both replicas have the new value
+        Thread.sleep(200);
+        assertEquals(Arrays.asList(105, 105), replicaValues("k1"));
+
+        //A later save by the owner still wins over the processed versions
+        owner.put("k1", new Counter(7));
+        assertEquals(7, owner.get("k1").value);
+        assertEquals(Arrays.asList(7, 7), replicaValues("k1"));
+    }
+
+    public void testExecuteOnKeysFromOtherMember()
+            throws Exception {
+        //d does not own the entries, so it loads, processes and saves them
+        Map<String, Serializable> results = stores.getStore("d").executeOnKeys(
+                Arrays.asList("k2", "k3", "k4", "missing"), new Increment());
+
+        assertEquals(3, results.size());
+        assertEquals(201, results.get("k2"));
+        assertEquals(301, results.get("k3"));
+        assertEquals(401, results.get("k4"));
+        assertNull(stores.getStore("d").executeOnKey("missing", new Increment()));
+    }
+
+    public void testFailingProcessor()
+            throws Exception {
+        try {
+            stores.getStore("a").executeOnKey("k5", new Failing());
+            fail("DataStoreException expected");
+        } catch (DataStoreException dsEx) {
+            //Expected
+        }
+        assertEquals(500, stores.getStore("a").get("k5").value);
+        assertEquals(Arrays.asList(500, 500), replicaValues("k5"));
+    }
+
+    public void testReplicaThatMissedASaveDoesNotProcess()
+            throws Exception {
+        String target = firstReplica("k6");
+        ReplicaStore<String, Counter> replicaStore = stores.getStore(target).getDataStoreContext().getReplicaStore();
+        DataStoreEntry<String, Counter> replica = replicaStore.getEntry("k6");
+        long oldVersion = replica.getVersion();
+        byte[] oldRawV = replica.getRawV();
+
+        stores.getStore("a").put("k6", new Counter(1000));
+        synchronized (replica) {
+            //As if the replica had missed the last save of the owner
+            replica.setVersion(oldVersion);
+            replica.setRawV(oldRawV);
+            if (replicaStore.getValueCache() != null) {
+                replicaStore.getValueCache().invalidate("k6");
+            }
+        }
+
+        //The replica answers not found, so the owner loads the value from the
+        //  other replica, processes and saves it
+        assertEquals(1001, stores.getStore("a").executeOnKey("k6", new Increment()));
+        assertEquals(Arrays.asList(1001, 1001), replicaValues("k6"));
+    }
+
+    public void testUnansweredExecuteIsReportedAsUndetermined()
+            throws Exception {
+        ReplicatedDataStore<String, Counter> owner = stores.getStore("a");
+        DataStoreEntry<String, Counter> entry = owner.getDataStoreContext().getReplicaStore().getEntry("k7");
+        DataStoreEntry<String, Counter> other = owner.getDataStoreContext().getReplicaStore().getEntry("k9");
+        //s is in the view but never answers
+        stores.getGroup().join("s");
+        synchronized (entry) {
+            entry.setReplicaInstanceName("s");
+        }
+        synchronized (other) {
+            other.setReplicaInstanceName("s");
+        }
+        long version = entry.getVersion();
+        long start = System.currentTimeMillis();
+        try {
+            owner.executeOnKeys(Arrays.asList("k7", "k8", "k9", "missing"), new Increment());
+            fail("PartialExecutionException expected");
+        } catch (PartialExecutionException peEx) {
+            assertEquals(new HashSet<String>(Arrays.asList("k7", "k9")), peEx.getUndeterminedKeys());
+            assertTrue(peEx.getFailedKeys().isEmpty());
+            assertEquals(Collections.singletonMap("k8", 801), peEx.getResults());
+        }
+        //Both unanswered keys share one deadline
+        assertTrue(System.currentTimeMillis() - start < EXECUTE_TIMEOUT_IN_MILLIS + 5000);
+
+        //s may have saved the reserved version, so it is not given back. No response is left behind
+        assertEquals(version + 1, entry.getVersion());
+        assertEquals(0, owner.getDataStoreContext().getResponseMediator().getPendingResponseCount());
+    }
+
+    private String firstReplica(String key) {
+        String location = stores.getStore("a").getDataStoreContext().getReplicaStore().getEntry(key).getReplicaInstanceName();
+        int index = location.indexOf(':');
+        return index < 0 ? location : location.substring(0, index);
+    }
+
+    private List<Integer> replicaValues(String key)
+            throws Exception {
+        List<Integer> values = new ArrayList<Integer>();
+        for (String member : MEMBERS) {
+            DataStoreContext<String, Counter> dsc = stores.getStore(member).getDataStoreContext();
+            DataStoreEntry<String, Counter> entry = dsc.getReplicaStore().getEntry(key);
+            if (entry != null && entry.isReplicaNode() && entry.hasRawV()) {
+                values.add(dsc.getDataStoreEntryUpdater().getV(entry).value);
+            }
+        }
+        return values;
+    }
+
+    public static class Counter
+            implements Serializable {
+
+        private int value;
+
+        public Counter(int value) {
+            this.value = value;
+        }
+    }
+
+    private static class Increment
+            implements StoreEntryProcessor<String, Counter> {
+
+        public Serializable process(String key, Counter counter) {
+            return ++counter.value;
+        }
+    }
+
+    private static class Failing
+            implements StoreEntryProcessor<String, Counter> {
+
+        public Serializable process(String key, Counter counter) {
+            counter.value = -1;
+            throw new IllegalStateException("Cannot process " + key);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.test.store;
+
+import junit.framework.TestCase;
+import org.shoal.ha.cache.api.DataStoreContext;
+import org.shoal.ha.cache.impl.store.DataStoreEntry;
+import org.shoal.ha.cache.impl.store.ReplicatedDataStore;
+import org.shoal.test.common.LocalDataStoreGroup;
+
+import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class ReplicationFactorTest
+        extends TestCase {
+
+    private static final String[] MEMBERS = {"a", "b", "c", "d"};
+
+    private LocalDataStoreGroup<String> stores;
+
+    public ReplicationFactorTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() {
+        stores = new LocalDataStoreGroup<String>(getName(), String.class);
+    }
+
+    @Override
+    protected void tearDown() {
+        stores.close();
+    }
+
+    public void testSaveGoesToAllReplicas()
+            throws Exception {
+        createStores(2, true);
+        ReplicatedDataStore<String, String> a = stores.getStore("a");
+
+        for (int i = 0; i < 5; i++) {
+            String location = a.put("key" + i, "value" + i);
+            String[] replicas = location.split(":");
+            assertEquals(location, 2, replicas.length);
+            assertFalse(replicas[0].equals(replicas[1]));
+            //All replicas acknowledged, so both must already hold the entry
+            for (String replica : replicas) {
+                DataStoreEntry<String, String> entry = stores.getStore(replica).getDataStoreContext()
+                        .getReplicaStore().getEntry("key" + i);
+                assertNotNull(replica + " has no copy of key" + i, entry);
+                assertTrue(entry.isReplicaNode());
+            }
+        }
+    }
+
+    public void testLoadAfterPrimaryFailure()
+            throws Exception {
+        createStores(2, false);
+        ReplicatedDataStore<String, String> a = stores.getStore("a");
+        String[] replicas = a.put("key", "value").split(":");
+
+        stores.getGroup().fail(replicas[0]);
+        stores.getStores().remove(replicas[0]).close();
+
+        //A member that holds no copy loads it from the surviving replica
+        for (String member : MEMBERS) {
+            if (stores.getStores().containsKey(member) && !member.equals("a") && !member.equals(replicas[1])) {
+                assertEquals("value", stores.getStore(member).get("key"));
+            }
+        }
+    }
+
+    public void testAsyncPutCompletesOnAnyAck()
+            throws Exception {
+        createStores(3, false);
+        ReplicatedDataStore<String, String> a = stores.getStore("a");
+
+        Future<String> future = a.putAsync("key", "value");
+        assertEquals(3, future.get(5, TimeUnit.SECONDS).split(":").length);
+        assertTrue(future.isDone());
+    }
+
+    public void testMissingAckIsCounted()
+            throws Exception {
+        createStores(2, true);
+        ReplicatedDataStore<String, String> a = stores.getStore("a");
+        //s is in the view but never answers
+        stores.getGroup().join("s");
+
+        for (int i = 0; i < 20; i++) {
+            String[] choices = a.getDataStoreContext().getKeyMapper().getReplicaChoices(stores.getGroupName(), "key" + i);
+            if (Arrays.asList(choices).subList(0, 2).contains("s")) {
+                //The save is reported as done, but it is counted
+                String location = a.put("key" + i, "value" + i);
+                assertTrue(location, location.contains("s"));
+                assertEquals(1, a.getDataStoreContext().getDataStoreMBean().getUnacknowledgedReplicationCount());
+                return;
+            }
+        }
+        fail("No key maps to s");
+    }
+
+    private void createStores(int replicationFactor, boolean ackFromAllReplicas) {
+        for (String member : MEMBERS) {
+            DataStoreContext<String, String> conf = stores.createContext(member);
+            conf.setReplicationFactor(replicationFactor)
+                    .setAckFromAllReplicas(ackFromAllReplicas);
+            stores.addStore(conf);
+        }
+    }
+
+}
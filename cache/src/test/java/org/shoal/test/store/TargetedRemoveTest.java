@@ -0,0 +1,118 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.shoal.test.store;
+
+import junit.framework.TestCase;
+import org.shoal.ha.cache.impl.store.ReplicaStore;
+import org.shoal.ha.cache.impl.store.ReplicatedDataStore;
+import org.shoal.test.common.LocalDataStoreGroup;
+
+public class TargetedRemoveTest
+        extends TestCase {
+
+    private static final String[] MEMBERS = {"a", "b", "c", "d"};
+
+    private LocalDataStoreGroup<String> stores;
+
+    public TargetedRemoveTest(String testName) {
+        super(testName);
+    }
+
+    @Override
+    protected void setUp() {
+        stores = new LocalDataStoreGroup<String>(getName(), String.class);
+        stores.addStores(MEMBERS);
+    }
+
+    @Override
+    protected void tearDown() {
+        stores.close();
+    }
+
+    public void testRemoveGoesOnlyToTheReplica()
+            throws Exception {
+        ReplicatedDataStore<String, String> a = stores.getStore("a");
+        String replica = a.put("key", "value");
+        assertNotNull(getReplicaStore(replica).getEntry("key"));
+
+        long start = System.currentTimeMillis();
+        a.remove("key");
+        //The remove is folded into the frame's removedKeys, which must still be acknowledged
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("remove took " + elapsed + " millis", elapsed < 2000);
+
+        assertNull(getReplicaStore(replica).getEntry("key"));
+        assertEquals(1, stores.getStore(replica).getDataStoreContext().getDataStoreMBean().getExecutedRemoveCount());
+        for (String member : MEMBERS) {
+            if (!member.equals(replica)) {
+                assertEquals(member, 0, stores.getStore(member).getDataStoreContext().getDataStoreMBean().getExecutedRemoveCount());
+            }
+        }
+    }
+
+    public void testRemoveOfUnknownKeyIsBroadcast()
+            throws Exception {
+        String replica = stores.getStore("a").put("key", "value");
+        String stranger = "b".equals(replica) ? "c" : "b";
+
+        stores.getStore(stranger).remove("key");
+
+        long giveUpAt = System.currentTimeMillis() + 10000;
+        while (getReplicaStore(replica).getEntry("key") != null && System.currentTimeMillis() < giveUpAt) {
+            Thread.sleep(10);
+        }
+        assertNull(getReplicaStore(replica).getEntry("key"));
+        for (String member : MEMBERS) {
+            if (!member.equals(stranger)) {
+                while (stores.getStore(member).getDataStoreContext().getDataStoreMBean().getExecutedRemoveCount() == 0
+                        && System.currentTimeMillis() < giveUpAt) {
+                    Thread.sleep(10);
+                }
+                assertEquals(member, 1, stores.getStore(member).getDataStoreContext().getDataStoreMBean().getExecutedRemoveCount());
+            }
+        }
+    }
+
+    private ReplicaStore<String, String> getReplicaStore(String member) {
+        return stores.getStore(member).getDataStoreContext().getReplicaStore();
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.shoal.test.util;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.shoal.ha.cache.impl.util.ASyncThreadPool;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the backpressure of the replication thread pool.
+ */
+public class ASyncThreadPoolTest
+        extends TestCase {
+
+    public ASyncThreadPoolTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(ASyncThreadPoolTest.class);
+    }
+
+    public void testSubmitWaitsWhenQueueIsFull() throws Exception {
+        final ASyncThreadPool pool = new ASyncThreadPool(1, 1, 60, new LinkedBlockingQueue<Runnable>(1));
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger ran = new AtomicInteger();
+        final AtomicBoolean submitted = new AtomicBoolean(false);
+        try {
+            pool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException inEx) {
+                        //Ignore
+                    }
+                    ran.incrementAndGet();
+                }
+            });
+            pool.execute(new CountingTask(ran));
+
+            Thread submitter = new Thread() {
+                public void run() {
+                    pool.submitOrWait(new CountingTask(ran), 5000);
+                    submitted.set(true);
+                }
+            };
+            submitter.start();
+            Thread.sleep(200);
+            assertFalse(submitted.get());
+
+            release.countDown();
+            submitter.join(5000);
+            assertTrue(submitted.get());
+
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(3, ran.get());
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    public void testPoolThreadRunsTaskWhenQueueIsFull() throws Exception {
+        final ASyncThreadPool pool = new ASyncThreadPool(1, 1, 60, new LinkedBlockingQueue<Runnable>(1));
+        final AtomicInteger ran = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+        try {
+            pool.execute(new Runnable() {
+                public void run() {
+                    //Fills the queue and then submits once more from the pool's only thread
+                    pool.execute(new CountingTask(ran));
+                    pool.submitOrWait(new CountingTask(ran), 5000);
+                    done.countDown();
+                }
+            });
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(2, ran.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public void testSubmitterRunsTaskWhenPoolIsStalled() throws Exception {
+        final ASyncThreadPool pool = new ASyncThreadPool(1, 1, 60, new LinkedBlockingQueue<Runnable>(1));
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger ran = new AtomicInteger();
+        try {
+            pool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException inEx) {
+                        //Ignore
+                    }
+                }
+            });
+            pool.execute(new CountingTask(ran));
+
+            //The pool is stalled, so the task runs here once the submit timeout expires
+            pool.submitOrWait(new CountingTask(ran), 100);
+            assertEquals(1, ran.get());
+
+            release.countDown();
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(2, ran.get());
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    public void testNoSubmitTimeoutRejects() throws Exception {
+        final ASyncThreadPool pool = new ASyncThreadPool(1, 1, 60, new LinkedBlockingQueue<Runnable>(1));
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger ran = new AtomicInteger();
+        try {
+            pool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException inEx) {
+                        //Ignore
+                    }
+                }
+            });
+            pool.execute(new CountingTask(ran));
+
+            try {
+                pool.submitOrWait(new CountingTask(ran), 0);
+                fail("RejectedExecutionException expected");
+            } catch (RejectedExecutionException rejEx) {
+                //Expected
+            }
+            assertEquals(0, ran.get());
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    private static class CountingTask
+        implements Runnable {
+
+        private AtomicInteger counter;
+
+        CountingTask(AtomicInteger counter) {
+            this.counter = counter;
+        }
+
+        public void run() {
+            counter.incrementAndGet();
+        }
+    }
+
+}
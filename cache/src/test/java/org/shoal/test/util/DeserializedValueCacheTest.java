@@ -0,0 +1,119 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.shoal.test.util;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.shoal.ha.cache.impl.store.DeserializedValueCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the cache of deserialized replica values.
+ */
+public class DeserializedValueCacheTest
+        extends TestCase {
+
+    public DeserializedValueCacheTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(DeserializedValueCacheTest.class);
+    }
+
+    public void testLeastRecentlyUsedValuesAreEvicted() {
+        DeserializedValueCache<String, String> cache = new DeserializedValueCache<String, String>(100);
+        for (int i = 0; i < 3; i++) {
+            cache.put("key" + i, 1, "value" + i, 30);
+        }
+        //key0 is now the most recently used
+        assertEquals("value0", cache.get("key0", 1));
+
+        cache.put("key3", 1, "value3", 30);
+        assertEquals(3, cache.size());
+        assertEquals(90, cache.getWeight());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get("key1", 1));
+        assertEquals("value0", cache.get("key0", 1));
+
+        //A value that is larger than the whole cache is not cached
+        cache.put("key4", 1, "value4", 101);
+        assertNull(cache.get("key4", 1));
+        assertTrue(cache.getWeight() <= cache.getMaxWeight());
+    }
+
+    public void testValueIsOnlyReturnedForItsVersion() {
+        DeserializedValueCache<String, String> cache = new DeserializedValueCache<String, String>(100);
+        cache.put("key", 1, "value1", 10);
+        assertEquals("value1", cache.get("key", 1));
+        assertNull(cache.get("key", 2));
+
+        cache.put("key", 2, "value2", 10);
+        assertNull(cache.get("key", 1));
+        assertEquals("value2", cache.get("key", 2));
+        assertEquals(10, cache.getWeight());
+
+        cache.invalidate("key");
+        assertNull(cache.get("key", 2));
+        assertEquals(0, cache.getWeight());
+    }
+
+    public void testMutableValuesAreNotCached() {
+        DeserializedValueCache<String, Object> cache = new DeserializedValueCache<String, Object>(100);
+        List<String> list = new ArrayList<String>();
+        cache.put("list", 1, list, 10);
+        assertNull(cache.get("list", 1));
+        assertEquals(0, cache.size());
+
+        cache.put("number", 1, Long.valueOf(7), 10);
+        assertEquals(Long.valueOf(7), cache.get("number", 1));
+
+        //Unless the store declares its values immutable
+        cache = new DeserializedValueCache<String, Object>(100, true);
+        cache.put("list", 1, list, 10);
+        assertSame(list, cache.get("list", 1));
+    }
+}
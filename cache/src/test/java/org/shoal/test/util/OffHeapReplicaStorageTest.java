@@ -0,0 +1,119 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.shoal.test.util;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.shoal.ha.cache.impl.store.OffHeapReplicaStorage;
+
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Tests for the off heap replica storage.
+ */
+public class OffHeapReplicaStorageTest
+        extends TestCase {
+
+    public OffHeapReplicaStorageTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(OffHeapReplicaStorageTest.class);
+    }
+
+    public void testStoreReadAndFree() throws Exception {
+        OffHeapReplicaStorage storage = new OffHeapReplicaStorage(4096, 1024);
+        byte[] small = new byte[] {1, 2, 3};
+        byte[] large = new byte[700];
+        Arrays.fill(large, (byte) 7);
+
+        long h1 = storage.store(small);
+        long h2 = storage.store(large);
+        assertTrue(h1 >= 0);
+        assertTrue(h2 >= 0);
+        assertEquals(2, storage.getStoredCount());
+        assertEquals(2048, storage.getAllocatedBytes());
+
+        assertTrue(Arrays.equals(small, storage.read(h1, small.length)));
+        assertTrue(Arrays.equals(large, storage.read(h2, large.length)));
+
+        InputStream in = storage.openStream(h1, small.length);
+        assertEquals(1, in.read());
+        byte[] rest = new byte[4];
+        assertEquals(2, in.read(rest, 0, rest.length));
+        assertEquals(-1, in.read());
+
+        storage.free(h1);
+        assertEquals(h1, storage.store(new byte[] {9}));
+        assertEquals(1024 + 64, storage.getUsedBytes());
+    }
+
+    public void testFallsBackWhenFull() {
+        OffHeapReplicaStorage storage = new OffHeapReplicaStorage(1024, 1024);
+        assertEquals(-1, storage.store(new byte[2048]));
+        assertTrue(storage.store(new byte[1024]) >= 0);
+        assertEquals(-1, storage.store(new byte[1024]));
+        assertEquals(-1, storage.store(new byte[10]));
+        assertEquals(3, storage.getHeapFallbackCount());
+    }
+
+    public void testEmptySegmentIsReassigned() {
+        OffHeapReplicaStorage storage = new OffHeapReplicaStorage(1024, 1024);
+        long large = storage.store(new byte[1024]);
+        assertTrue(large >= 0);
+        assertEquals(-1, storage.store(new byte[10]));
+
+        storage.free(large);
+        byte[] small = new byte[] {4, 5, 6};
+        long h = storage.store(small);
+        assertTrue(h >= 0);
+        assertEquals(1, storage.getReassignedSegmentCount());
+        assertEquals(1024, storage.getAllocatedBytes());
+        assertTrue(Arrays.equals(small, storage.read(h, small.length)));
+        assertEquals(-1, storage.store(new byte[1024]));
+        assertEquals(2, storage.getHeapFallbackCount());
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.shoal.test.util;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.shoal.ha.cache.api.DataStoreContext;
+import org.shoal.ha.cache.api.IdleEntryDetector;
+import org.shoal.ha.cache.api.ReplicatedDataStoreStatsHolder;
+import org.shoal.ha.cache.impl.store.DataStoreEntry;
+import org.shoal.ha.cache.impl.store.MaxIdleTimeEntryDetector;
+import org.shoal.ha.cache.impl.store.ReplicaStore;
+
+/**
+ * Tests that ReplicaStore.removeExpired only removes idle entries and
+ *  follows access time updates.
+ */
+public class ReplicaStoreExpiryTest
+        extends TestCase {
+
+    public ReplicaStoreExpiryTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(ReplicaStoreExpiryTest.class);
+    }
+
+    public void testRemoveExpired() {
+        DataStoreContext<String, String> dsc = new DataStoreContext<String, String>();
+        dsc.setStoreName("expiry-test");
+        dsc.setDataStoreMBean(new ReplicatedDataStoreStatsHolder<String, String>(dsc));
+        ReplicaStore<String, String> store = new ReplicaStore<String, String>(dsc);
+        store.setIdleEntryDetector(new IdleEntryDetector<String, String>() {
+            public boolean isIdle(DataStoreEntry<String, String> entry, long nowInMillis) {
+                return (entry.getMaxIdleTime() > 0) && entry.getLastAccessedAt() + entry.getMaxIdleTime() < nowInMillis;
+            }
+        });
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            DataStoreEntry<String, String> entry = store.getOrCreateEntry("key" + i);
+            synchronized (entry) {
+                //Even keys are idle, odd keys are not
+                entry.setAccessTimeInfo(i % 2 == 0 ? now - 60000 : now, 30000);
+            }
+        }
+        store.getOrCreateEntry("noIdleTime");
+
+        assertEquals(5, store.removeExpired());
+        assertEquals(6, store.size());
+        assertNull(store.getEntry("key0"));
+        assertNotNull(store.getEntry("key1"));
+
+        DataStoreEntry<String, String> entry = store.getEntry("key1");
+        synchronized (entry) {
+            entry.setLastAccessedAt(now - 60000);
+        }
+        assertEquals(1, store.removeExpired());
+        assertNull(store.getEntry("key1"));
+        assertEquals(0, store.removeExpired());
+    }
+
+    public void testEntriesThatNeverExpireAreNotIndexed() {
+        ReplicaStore<String, String> store = createStore();
+        store.setIdleEntryDetector(new MaxIdleTimeEntryDetector<String, String>() {
+            public long getIdleDeadline(DataStoreEntry<String, ?> entry) {
+                return entry.getMaxIdleTime() > 0 ? entry.getLastAccessedAt() + entry.getMaxIdleTime() : 0;
+            }
+        });
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            DataStoreEntry<String, String> entry = store.getOrCreateEntry("key" + i);
+            synchronized (entry) {
+                entry.setAccessTimeInfo(now - 60000, 0);
+            }
+        }
+        assertEquals(0, store.getExpiryIndex().getBucketCount());
+        assertEquals(0, store.removeExpired());
+        assertEquals(10, store.size());
+
+        //Once it gets a max idle time, the entry is indexed and expires
+        DataStoreEntry<String, String> entry = store.getEntry("key0");
+        synchronized (entry) {
+            entry.setAccessTimeInfo(now - 60000, 30000);
+        }
+        assertEquals(1, store.getExpiryIndex().getBucketCount());
+        assertEquals(1, store.removeExpired());
+        assertEquals(9, store.size());
+    }
+
+    public void testIndexFollowsTheDetectorsDeadline() {
+        ReplicaStore<String, String> store = createStore();
+        //Like the detector of a store with a default max idle time, which ignores the entry's max idle time
+        store.setIdleEntryDetector(new MaxIdleTimeEntryDetector<String, String>() {
+            public long getIdleDeadline(DataStoreEntry<String, ?> entry) {
+                return entry.getLastAccessedAt() + 10000;
+            }
+        });
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            DataStoreEntry<String, String> entry = store.getOrCreateEntry("key" + i);
+            synchronized (entry) {
+                entry.setAccessTimeInfo(i % 2 == 0 ? now - 30000 : now, 60000);
+            }
+        }
+
+        //A single sweep finds all the idle entries, even though their own max idle time has not passed
+        assertEquals(5, store.removeExpired());
+        assertEquals(5, store.size());
+        assertEquals(0, store.removeExpired());
+    }
+
+    public void testNothingIsIndexedWithoutDetector() {
+        ReplicaStore<String, String> store = createStore();
+        for (int i = 0; i < 10; i++) {
+            DataStoreEntry<String, String> entry = store.getOrCreateEntry("key" + i);
+            synchronized (entry) {
+                entry.setAccessTimeInfo(System.currentTimeMillis(), 30000);
+            }
+        }
+        assertEquals(0, store.getExpiryIndex().getBucketCount());
+    }
+
+    private ReplicaStore<String, String> createStore() {
+        DataStoreContext<String, String> dsc = new DataStoreContext<String, String>();
+        dsc.setStoreName("expiry-test");
+        dsc.setDataStoreMBean(new ReplicatedDataStoreStatsHolder<String, String>(dsc));
+        return new ReplicaStore<String, String>(dsc);
+    }
+}
@@ -46,8 +46,11 @@ import junit.framework.TestSuite;
 
 import org.shoal.ha.cache.impl.util.ReplicationInputStream;
 import org.shoal.ha.cache.impl.util.ReplicationOutputStream;
+import org.shoal.ha.cache.impl.util.ReplicationOutputStreamPool;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.Random;
 
 /**
@@ -74,6 +77,27 @@ public class ReplicationIOStreamTest
     public void testReplicationTestSetup() {
         assert(true);
     }
+
+    public void testLengthPrefixedObjectIO()
+            throws Exception {
+        ReplicationOutputStreamPool pool = new ReplicationOutputStreamPool(1, 16, 1024);
+        ReplicationOutputStream ros = pool.borrow();
+        ros.writeInt(7);
+        ros.writeLengthPrefixedObject("Hello World");
+        ros.writeLong(79);
+
+        ReplicationInputStream ris = new ReplicationInputStream(ros.toByteArray());
+        assertEquals(7, ris.readInt());
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(ris.readLengthPrefixedBytes()));
+        assertEquals("Hello World", ois.readObject());
+        assertEquals(79, ris.readLong());
+
+        pool.recycle(ros);
+        assertEquals(1, pool.getPooledCount());
+        ReplicationOutputStream reused = pool.borrow();
+        assertSame(ros, reused);
+        assertEquals(0, reused.size());
+    }
     /*
     public void testReplicationBooleanIO() {
         boolean result = false;
@@ -0,0 +1,136 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.shoal.test.util;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.shoal.ha.cache.impl.util.AcknowledgementFuture;
+import org.shoal.ha.cache.impl.util.CommandResponse;
+import org.shoal.ha.cache.impl.util.ReplicaAcknowledgementFuture;
+import org.shoal.ha.cache.impl.util.ResponseMediator;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tests that the responses of lost acks are released even if nobody waits for them.
+ */
+public class ResponseMediatorTest
+        extends TestCase {
+
+    private ResponseMediator mediator;
+
+    public ResponseMediatorTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(ResponseMediatorTest.class);
+    }
+
+    @Override
+    protected void setUp() {
+        mediator = new ResponseMediator();
+    }
+
+    @Override
+    protected void tearDown() {
+        mediator.close();
+    }
+
+    public void testLostAckExpiresWithoutGet()
+            throws Exception {
+        CommandResponse resp = mediator.createCommandResponse(100);
+        AcknowledgementFuture<String> future = new AcknowledgementFuture<String>(mediator, resp, "inst1", 3000);
+        assertEquals(1, mediator.getPendingResponseCount());
+
+        //get() is never called, the reaper alone releases the response
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!future.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(future.isDone());
+        assertEquals(0, mediator.getPendingResponseCount());
+        try {
+            future.get();
+            fail("ExecutionException expected");
+        } catch (ExecutionException exEx) {
+            assertTrue(exEx.getCause() instanceof TimeoutException);
+        }
+    }
+
+    public void testOnlyExpiredResponsesAreRemoved()
+            throws Exception {
+        BlockingQueue<CommandResponse> completionQueue = new LinkedBlockingQueue<CommandResponse>();
+        CommandResponse expiring = mediator.createCommandResponse(1000);
+        expiring.setCompletionQueue(completionQueue);
+        CommandResponse acked = mediator.createCommandResponse(1000);
+        acked.setCompletionQueue(completionQueue);
+        CommandResponse unbounded = mediator.createCommandResponse();
+        ReplicaAcknowledgementFuture<String> future = new ReplicaAcknowledgementFuture<String>(mediator,
+                completionQueue, Arrays.asList(expiring, acked), 2, "inst1:inst2", 3000);
+
+        acked.setResult(null);
+        mediator.removeExpiredResponses(System.currentTimeMillis());
+        assertEquals(2, mediator.getPendingResponseCount());
+        assertFalse(future.isDone());
+
+        mediator.removeExpiredResponses(System.currentTimeMillis() + 2000);
+        assertEquals(1, mediator.getPendingResponseCount());
+        assertSame(unbounded, mediator.getCommandResponse(unbounded.getTokenId()));
+
+        //The waiter wakes up on the expired response instead of waiting out its own timeout
+        long start = System.currentTimeMillis();
+        try {
+            future.get();
+            fail("ExecutionException expected");
+        } catch (ExecutionException exEx) {
+            assertTrue(exEx.getCause() instanceof TimeoutException);
+        }
+        assertTrue(System.currentTimeMillis() - start < 3000);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.shoal.test.util;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.shoal.adapter.store.commands.SaveCommand;
+import org.shoal.ha.cache.api.DataStoreContext;
+import org.shoal.ha.cache.api.ReplicatedDataStoreStatsHolder;
+import org.shoal.ha.cache.impl.command.CommandCodec;
+import org.shoal.ha.cache.impl.command.CommandManager;
+import org.shoal.ha.cache.impl.store.DataStoreEntry;
+import org.shoal.ha.cache.impl.store.DataStoreEntryUpdater;
+import org.shoal.ha.cache.impl.store.OffHeapReplicaStorage;
+import org.shoal.ha.cache.impl.store.ReplicaStore;
+import org.shoal.ha.cache.impl.store.SimpleDataStoreEntryUpdater;
+import org.shoal.test.common.DummyGroupService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the way SimpleDataStoreEntryUpdater applies saves to a ReplicaStore.
+ */
+public class SimpleDataStoreEntryUpdaterTest
+        extends TestCase {
+
+    private DataStoreContext<String, String> dsc;
+
+    private ReplicaStore<String, String> store;
+
+    public SimpleDataStoreEntryUpdaterTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(SimpleDataStoreEntryUpdaterTest.class);
+    }
+
+    @Override
+    protected void setUp() {
+        dsc = new DataStoreContext<String, String>("updater-test",
+                new DummyGroupService("inst1", "grp1"), getClass().getClassLoader());
+        dsc.setOffHeapReplicaStorageSize(1024 * 1024);
+        dsc.setDeserializedValueCacheSize(1024 * 1024);
+        SimpleDataStoreEntryUpdater<String, String> updater = new SimpleDataStoreEntryUpdater<String, String>();
+        updater.initialize(dsc);
+        dsc.setDataStoreEntryUpdater(updater);
+
+        CommandManager<String, String> cm = new CommandManager<String, String>();
+        dsc.setCommandManager(cm);
+        cm.initialize(dsc);
+        cm.registerCommand(new SaveCommand<String, String>());
+        dsc.setDataStoreMBean(new ReplicatedDataStoreStatsHolder<String, String>(dsc));
+
+        store = new ReplicaStore<String, String>(dsc);
+        dsc.setReplicaStore(store);
+    }
+
+    public void testSaveStoresStateOffHeap()
+            throws Exception {
+        DataStoreEntry<String, String> entry = store.getOrCreateEntry("key");
+        synchronized (entry) {
+            dsc.getDataStoreEntryUpdater().executeSave(entry, receivedSave("key", "value", 1));
+        }
+
+        OffHeapReplicaStorage offHeapStorage = store.getOffHeapStorage();
+        assertEquals(1, offHeapStorage.getStoredCount());
+        assertEquals("value", dsc.getDataStoreEntryUpdater().getV(entry));
+
+        store.remove("key");
+        assertEquals(0, offHeapStorage.getStoredCount());
+        assertEquals(0, offHeapStorage.getUsedBytes());
+    }
+
+    public void testSaveRacingRemoveDoesNotLeak()
+            throws Exception {
+        //The save looks up the entry, then the remove runs before the save gets the lock
+        DataStoreEntry<String, String> entry = store.getOrCreateEntry("key");
+        store.remove("key");
+        synchronized (entry) {
+            dsc.getDataStoreEntryUpdater().executeSave(entry, receivedSave("key", "value", 1));
+        }
+
+        OffHeapReplicaStorage offHeapStorage = store.getOffHeapStorage();
+        assertEquals(0, offHeapStorage.getStoredCount());
+        assertEquals(0, offHeapStorage.getUsedBytes());
+        assertFalse(entry.hasRawV());
+        assertNull(store.getEntry("key"));
+    }
+
+    public void testConcurrentSavesAndRemovesDoNotLeak()
+            throws Exception {
+        final int count = 2000;
+        Thread remover = new Thread() {
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    store.remove("key" + i);
+                }
+            }
+        };
+
+        SaveCommand<String, String>[] saves = new SaveCommand[count];
+        for (int i = 0; i < count; i++) {
+            saves[i] = receivedSave("key" + i, "value" + i, 1);
+        }
+
+        remover.start();
+        for (int i = 0; i < count; i++) {
+            DataStoreEntry<String, String> entry = store.getOrCreateEntry("key" + i);
+            synchronized (entry) {
+                dsc.getDataStoreEntryUpdater().executeSave(entry, saves[i]);
+            }
+        }
+        remover.join();
+        for (int i = 0; i < count; i++) {
+            store.remove("key" + i);
+        }
+
+        assertEquals(0, store.getOffHeapStorage().getStoredCount());
+        assertEquals(0, store.getOffHeapStorage().getUsedBytes());
+    }
+
+    public void testImmutableValuesAreCached()
+            throws Exception {
+        DataStoreEntry<String, String> entry = store.getOrCreateEntry("key");
+        synchronized (entry) {
+            dsc.getDataStoreEntryUpdater().executeSave(entry, receivedSave("key", "value", 1));
+        }
+
+        String v = dsc.getDataStoreEntryUpdater().getV(entry);
+        assertSame(v, dsc.getDataStoreEntryUpdater().getV(entry));
+        assertEquals(1, store.getValueCache().getHitCount());
+
+        //A newer version is deserialized again
+        synchronized (entry) {
+            dsc.getDataStoreEntryUpdater().executeSave(entry, receivedSave("key", "value2", 2));
+        }
+        assertEquals("value2", dsc.getDataStoreEntryUpdater().getV(entry));
+    }
+
+    public void testMutableValuesAreNotShared()
+            throws Exception {
+        List<String> list = new ArrayList<String>();
+        list.add("a");
+        DataStoreEntry entry = store.getOrCreateEntry("key");
+        synchronized (entry) {
+            dsc.getDataStoreEntryUpdater().executeSave(entry, receivedSave("key", list, 1));
+        }
+
+        DataStoreEntryUpdater updater = dsc.getDataStoreEntryUpdater();
+        List<String> v1 = (List<String>) updater.getV(entry);
+        v1.add("b");
+        List<String> v2 = (List<String>) updater.getV(entry);
+        assertNotSame(v1, v2);
+        assertEquals(list, v2);
+    }
+
+    //A SaveCommand as it looks after it has been received by a replica
+    private SaveCommand<String, String> receivedSave(String key, Object value, long version)
+            throws Exception {
+        SaveCommand<String, String> cmd = new SaveCommand(key, value, version, 0, 0);
+        cmd.initialize(dsc);
+        CommandCodec<String, String> codec = dsc.getCommandManager().getCommandCodec();
+        SaveCommand<String, String> received = (SaveCommand<String, String>) codec.decode(codec.encode(cmd));
+        received.initialize(dsc);
+        return received;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.shoal.test.util;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.shoal.ha.cache.impl.util.StripedReadWriteGate;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests for the gate used to coordinate DataStore.close() with the other operations.
+ */
+public class StripedReadWriteGateTest
+        extends TestCase {
+
+    public StripedReadWriteGateTest(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(StripedReadWriteGateTest.class);
+    }
+
+    public void testWriterWaitsForReaders() throws Exception {
+        final StripedReadWriteGate gate = new StripedReadWriteGate();
+        final AtomicBoolean writerDone = new AtomicBoolean(false);
+        final CountDownLatch writerStarted = new CountDownLatch(1);
+
+        gate.acquireRead();
+        Thread writer = new Thread() {
+            public void run() {
+                writerStarted.countDown();
+                gate.acquireWrite();
+                writerDone.set(true);
+                gate.releaseWrite();
+            }
+        };
+        writer.start();
+        writerStarted.await();
+        Thread.sleep(50);
+        assertFalse(writerDone.get());
+
+        //Reentrant reads must not block on the waiting writer
+        gate.acquireRead();
+        gate.releaseRead();
+
+        gate.releaseRead();
+        writer.join(5000);
+        assertTrue(writerDone.get());
+    }
+
+    public void testReaderWaitsForWriter() throws Exception {
+        final StripedReadWriteGate gate = new StripedReadWriteGate();
+        final CountDownLatch readerDone = new CountDownLatch(1);
+
+        gate.acquireWrite();
+        Thread reader = new Thread() {
+            public void run() {
+                gate.acquireRead();
+                gate.releaseRead();
+                readerDone.countDown();
+            }
+        };
+        reader.start();
+        assertFalse(readerDone.await(50, TimeUnit.MILLISECONDS));
+        gate.releaseWrite();
+        assertTrue(readerDone.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testInterruptedReaderKeepsWaitingForWriter() throws Exception {
+        final StripedReadWriteGate gate = new StripedReadWriteGate();
+        final CountDownLatch readerDone = new CountDownLatch(1);
+        final AtomicBoolean interruptRestored = new AtomicBoolean(false);
+
+        gate.acquireWrite();
+        Thread reader = new Thread() {
+            public void run() {
+                gate.acquireRead();
+                interruptRestored.set(Thread.currentThread().isInterrupted());
+                gate.releaseRead();
+                readerDone.countDown();
+            }
+        };
+        reader.start();
+        Thread.sleep(50);
+        reader.interrupt();
+        assertFalse(readerDone.await(50, TimeUnit.MILLISECONDS));
+        gate.releaseWrite();
+        assertTrue(readerDone.await(5, TimeUnit.SECONDS));
+        assertTrue(interruptRestored.get());
+    }
+}
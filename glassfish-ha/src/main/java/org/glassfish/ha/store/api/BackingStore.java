@@ -46,6 +46,8 @@ import org.glassfish.ha.store.spi.*;
 import java.io.*;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * An object that stores a given value against an id. This class defines the
@@ -161,6 +163,48 @@ public abstract class BackingStore<K extends Serializable, V extends Serializabl
 
     }
 
+    /**
+     * Execute the processor on the value of the given key. The processor may
+     * change the value, which is then saved. Stores that can, run the processor
+     * where the value is held and send back just the result. This default
+     * implementation loads the value, runs the processor locally and saves it.
+     *
+     * @return the result of the processor or null if there is no value for key
+     * @throws BackingStoreException if the underlying store implementation encounters any
+     *                               exception
+     */
+    public Serializable executeOnKey(K key, StoreEntryProcessor<K, V> processor)
+            throws BackingStoreException {
+        V value = load(key, null);
+        if (value == null) {
+            return null;
+        }
+        Serializable result = processor.process(key, value);
+        save(key, value, false);
+        return result;
+    }
+
+    /**
+     * Execute the processor on the value of each of the given keys.
+     *
+     * @return the results of the processor by key. Keys without a value are not
+     *         in the map
+     * @throws BackingStoreException if the underlying store implementation encounters any
+     *                               exception
+     */
+    public Map<K, Serializable> executeOnKeys(Collection<K> keys, StoreEntryProcessor<K, V> processor)
+            throws BackingStoreException {
+        Map<K, Serializable> result = new HashMap<K, Serializable>();
+        for (K key : keys) {
+            V value = load(key, null);
+            if (value != null) {
+                result.put(key, processor.process(key, value));
+                save(key, value, false);
+            }
+        }
+        return result;
+    }
+
     /**
      * Get the current size of the store
      *
@@ -207,11 +207,27 @@ public enum ServiceProviderConfigurationKeys {
      */
     MAX_MESSAGE_LENGTH,
 
+    /**
+     * Max length of a message that the transport sends as a sequence of fragments.
+     * Messages longer than MAX_MESSAGE_LENGTH are split into fragments that fit within MAX_MESSAGE_LENGTH
+     * and reassembled by the receiver. Only supported by point-to-point TCP messages.
+     */
+    MAX_FRAGMENTED_MESSAGE_LENGTH,
+
     /**
      * Configure number of threads for incoming message processing.
      */
     INCOMING_MESSAGE_THREAD_POOL_SIZE,
 
+    /**
+     * Configure number of lanes for incoming application message dispatching.
+     * When greater than 0, incoming messages are sharded by sender and target component across this many lanes,
+     * each with its own queue and thread, instead of being processed by a single message window thread.
+     * Messages from one sender to one target component are delivered in the order they were received.
+     * Defaults to 0, a single message window thread.
+     */
+    INCOMING_MESSAGE_DISPATCH_LANES,
+
     /**
      * Set MONITORING frequency in seconds.
      */
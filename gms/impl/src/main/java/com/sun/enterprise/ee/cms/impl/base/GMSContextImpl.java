@@ -66,6 +66,7 @@ public class GMSContextImpl extends GMSContextBase {
     private int MAX_MSGS_IN_QUEUE = DEFAULT_INCOMING_MSG_QUEUE_SIZE;
     private int DEFAULT_INCOMING_MSG_THREAD_POOL_SIZE = 5;
     private int INCOMING_MSG_THREAD_POOL_SIZE = DEFAULT_INCOMING_MSG_THREAD_POOL_SIZE;
+    private int INCOMING_MSG_DISPATCH_LANES = 0;
     private ViewWindowImpl viewWindow;
     private GroupCommunicationProvider groupCommunicationProvider;
     private DistributedStateCache distributedStateCache;
@@ -78,6 +79,7 @@ public class GMSContextImpl extends GMSContextBase {
     private AliveAndReadyViewWindow aliveAndReadyViewWindow = null;
     private final Map<String, RejoinSubevent> instanceRejoins = new ConcurrentHashMap<String, RejoinSubevent>();
     private MessageWindow messageWindow = null;
+    private ShardedMessageDispatcher shardedMessageDispatcher = null;
     private GMSMonitor gmsMonitor;
 
     public GMSMonitor getGMSMonitor() {
@@ -96,6 +98,10 @@ public class GMSContextImpl extends GMSContextBase {
         if (INCOMING_MSG_THREAD_POOL_SIZE != DEFAULT_INCOMING_MSG_THREAD_POOL_SIZE && logger.isLoggable(Level.CONFIG)) {
             logger.config("INCOMING_MSG_THREAD_POOL_SIZE: " + INCOMING_MSG_THREAD_POOL_SIZE + " overrides default value of " + DEFAULT_INCOMING_MSG_THREAD_POOL_SIZE);
         }
+        INCOMING_MSG_DISPATCH_LANES = Utility.getIntProperty(ServiceProviderConfigurationKeys.INCOMING_MESSAGE_DISPATCH_LANES.toString(), 0, configProperties);
+        if (INCOMING_MSG_DISPATCH_LANES > 0 && logger.isLoggable(Level.CONFIG)) {
+            logger.config("INCOMING_MESSAGE_DISPATCH_LANES: " + INCOMING_MSG_DISPATCH_LANES);
+        }
         long MAX_STARTCLUSTER_DURATION_MS = Utility.getLongProperty("MAX_STARTCLUSTER_DURATION_MS", 10000, configProperties);
         this.gmsMonitor = new GMSMonitor(serverToken, groupName, configProperties);
         aliveAndReadyViewWindow = new AliveAndReadyViewWindow(this);
@@ -115,7 +121,12 @@ public class GMSContextImpl extends GMSContextBase {
                     Boolean.TRUE);
             viewWindow = new ViewWindowImpl(groupName, viewQueue);
         }
-        messageQueue = new ArrayBlockingQueue<MessagePacket>(MAX_MSGS_IN_QUEUE, Boolean.TRUE);
+        if (INCOMING_MSG_DISPATCH_LANES > 0) {
+            messageQueue = null;
+            shardedMessageDispatcher = new ShardedMessageDispatcher(groupName, INCOMING_MSG_DISPATCH_LANES, MAX_MSGS_IN_QUEUE, gmsMonitor);
+        } else {
+            messageQueue = new ArrayBlockingQueue<MessagePacket>(MAX_MSGS_IN_QUEUE, Boolean.TRUE);
+        }
         gh = new GroupHandleImpl(groupName, serverToken);
         //TODO: consider untying the Dist State Cache creation from GMSContext.
         // It should be driven independent of GMSContext through a factory as
@@ -155,11 +166,15 @@ public class GMSContextImpl extends GMSContextBase {
     @Override
     public void join() throws GMSException {
         viewWindowThread = isWatchdog() ? null : new Thread(viewWindow, "GMS ViewWindowThread Group-" + groupName);
-        messageWindow = new MessageWindow(groupName, messageQueue);
+        if (shardedMessageDispatcher != null) {
+            shardedMessageDispatcher.start();
+        } else {
+            messageWindow = new MessageWindow(groupName, messageQueue);
 
-        messageWindowThread = new Thread(messageWindow, "GMS MessageWindowThread Group-" + groupName);
-        messageWindowThread.setDaemon(true);
-        messageWindowThread.start();
+            messageWindowThread = new Thread(messageWindow, "GMS MessageWindowThread Group-" + groupName);
+            messageWindowThread.setDaemon(true);
+            messageWindowThread.start();
+        }
 
         if (viewWindowThread != null) {
             viewWindowThread.setDaemon(true);
@@ -205,6 +220,9 @@ public class GMSContextImpl extends GMSContextBase {
         if (messageWindow != null) {
             messageWindow.stop();
         }
+        if (shardedMessageDispatcher != null) {
+            shardedMessageDispatcher.stop();
+        }
         if( router != null ) {
             router.shutdown();
         }
@@ -301,6 +319,14 @@ public class GMSContextImpl extends GMSContextBase {
         return messageQueue;
     }
 
+    /**
+     * @return the sharded incoming message dispatcher, or <code>null</code> if incoming messages
+     *         are queued on the single message queue
+     */
+    ShardedMessageDispatcher getShardedMessageDispatcher() {
+        return shardedMessageDispatcher;
+    }
+
     @Override
     public GroupCommunicationProvider getGroupCommunicationProvider() {
         return groupCommunicationProvider;
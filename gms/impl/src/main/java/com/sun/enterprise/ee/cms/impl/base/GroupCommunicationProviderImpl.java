@@ -48,6 +48,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -87,15 +95,21 @@ public class GroupCommunicationProviderImpl implements
     private final Logger monitorLogger = GMSLogDomain.getMonitorLogger();
     private GMSMonitor gmsMonitor = null;
 
-    // TBD:  Reintroduce this in future. Comment out unused field for now.
-    // private final ExecutorService msgSendPool;
-    //private Map<PeerID, CallableMessageSend> instanceCache = new Hashtable<PeerID, CallableMessageSend>();
+    // sends the point-to-point messages of a synchronous group broadcast concurrently
+    private static final int MAX_MSG_SEND_THREADS = 10;
+    // bounds the wait for the concurrent sends when no write timeout is configured.
+    static final long DEFAULT_SEND_TIMEOUT_MS = 10 * 1000;
+    private final ThreadPoolExecutor msgSendPool;
 
     public GroupCommunicationProviderImpl(final String groupName) {
         this.groupName = groupName;
         System.setProperty("JXTA_MGMT_LOGGER", logger.getName());
-        // TBD: Reintroduce this in future.  Comment unused field for now.
-        // msgSendPool = Executors.newCachedThreadPool();
+        // a saturated or shut down pool rejects the send, which the broadcasting thread then does itself.
+        msgSendPool = new ThreadPoolExecutor(MAX_MSG_SEND_THREADS, MAX_MSG_SEND_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(1024),
+                new GMSThreadFactory("GMS-MsgSendPool-Group-" + groupName + "-thread"),
+                new ThreadPoolExecutor.AbortPolicy());
+        msgSendPool.allowCoreThreadTimeOut(true);
     }
 
     private GMSContextImpl getGMSContext() {
@@ -217,6 +231,7 @@ public class GroupCommunicationProviderImpl implements
      */
     public void leave(final boolean isClusterShutdown) {
         clusterManager.stop(isClusterShutdown);
+        msgSendPool.shutdown();
     }
 
     // the cluster view is in flux when all the members are joining.
@@ -275,8 +290,8 @@ public class GroupCommunicationProviderImpl implements
                     List<SystemAdvertisement> currentMemberAdvs = clusterManager.getClusterViewManager().
                             getLocalView().getView();
 
+                    final List<CallableMessageSend> tasks = new ArrayList<CallableMessageSend>(currentMemberAdvs.size());
                     for (SystemAdvertisement currentMemberAdv : currentMemberAdvs) {
-                        final PeerID<?> id = currentMemberAdv.getID();
                         final String member = currentMemberAdv.getName();
                         final long INDOUBT_INTERVAL_MS = clusterManager.getHealthMonitor().getIndoubtDuration();
                         MemberStates memberState = getMemberState(member, INDOUBT_INTERVAL_MS, 0);
@@ -290,48 +305,13 @@ public class GroupCommunicationProviderImpl implements
                             }
                             continue;
                         }
+                        tasks.add(new CallableMessageSend(currentMemberAdv, message));
+                    }
 
-                        //TODO : make this multi-threaded via Callable
-                        /* final CallableMessageSend task = getInstanceOfCallableMessageSend(id);
-                        logger.fine("Message is = " + message.toString());
-                        task.setMessage(message);
-                        msgSendPool.submit(task);
-                        */
-                        logger.log(Level.FINER, "sending message to member: " + currentMemberAdv.getName());
-                        try {
-                            boolean localSent = clusterManager.send(id, message);
-                            if (!localSent) {
-                                if (logger.isLoggable(Level.FINE)) {
-                                    logger.fine("sendMessage(synchronous=true, to=group) failed to send msg " + message + " to member " + id);
-                                }
-                            }
-                        } catch (MemberNotInViewException e) {
-                            if (logger.isLoggable(Level.FINE)) {
-                                logger.fine("MemberNotInViewException during synchronous broadcast: " + e.toString());
-                            }
-                        } catch (MessageIOException mioe) {
-                            // this exception is thrown when message size is too big,  discontinue trying to send message and throw this exception to provide feedback to sender.
-                            throw new GMSException("message not sent", mioe);
-                        } catch (IOException ioe) {
-                            // don't allow an exception sending to one instance of the cluster to prevent ptp multicast to all other instances of
-                            // of the cluster.  Catch this exception, record it and continue sending to rest of instances in the cluster.
-                            if (logger.isLoggable(Level.FINE)) {
-                                logger.log(Level.FINE,
-                                        "IOException in reliable synchronous ptp multicast sending to instance " + currentMemberAdv.getName() +
-                                        ". Perhaps this instance has failed but that has not been detected yet. Peer id=" +
-                                        id.toString(),
-                                        ioe);
-                            }
-                        } catch (Throwable t) {
-                           // don't allow an exception sending to one instance of the cluster prevent ptp broadcast to all other instances of
-                           // of the cluster.  Catch this exception, record it and continue sending to rest of instances in the cluster.
-                           if (logger.isLoggable(Level.FINE)) {
-                                logger.log(Level.FINE,
-                                        "Exception in reliable synchronous ptp multicast sending to instance " + currentMemberAdv.getName() +
-                                        ", peer id=" + id.toString(),
-                                        t);
-                            }
-                        }
+                    final MessageIOException sendFailure = sendConcurrently(msgSendPool, tasks, getSendTimeout());
+                    if (sendFailure != null) {
+                        // this exception is thrown when message size is too big,  discontinue trying to send message and throw this exception to provide feedback to sender.
+                        throw new GMSException("message not sent", sendFailure);
                     }
                     duration = System.currentTimeMillis() - startTime;
                     monitorDoSend(gmsMessage, duration, true, null);
@@ -488,6 +468,11 @@ public class GroupCommunicationProviderImpl implements
                                      final Object message) {
         MessagePacket msgPkt = new MessagePacket(adv, message);
         try {
+            final ShardedMessageDispatcher dispatcher = getGMSContext().getShardedMessageDispatcher();
+            if (dispatcher != null) {
+                dispatcher.dispatch(msgPkt);
+                return;
+            }
             //logger.log(Level.FINE, "Received AppMessage Notification, placing in message queue = " + new String(((GMSMessage)message).getMessage()));
             boolean result = getMsgQueue().offer(msgPkt);
             if (result == false) {
@@ -526,47 +511,127 @@ public class GroupCommunicationProviderImpl implements
         clusterManager.reportJoinedAndReadyState();
     }
 
-    /*
-    private CallableMessageSend getInstanceOfCallableMessageSend(ID id) {
-        if (instanceCache.get(id) == null) {
-            CallableMessageSend c = new CallableMessageSend(id);
-            instanceCache.put(id, c);
-            return c;
-        } else {
-            return instanceCache.get(id);
+    private long getSendTimeout() {
+        final GMSMonitor monitor = getGMSContext().getGMSMonitor();
+        if (monitor != null && monitor.getSendWriteTimeout() != Long.MAX_VALUE) {
+            return monitor.getSendWriteTimeout();
         }
+        return DEFAULT_SEND_TIMEOUT_MS;
     }
-    */
 
     /**
-     * implements Callable.
-     * Used for handing off the job of calling sendMessage() method to a ThreadPool.
-     * REVISIT
-
-    private class CallableMessageSend implements Callable<Object> {
-        private PeerID member;
-        private Serializable msg;
+     * Sends to all members concurrently, the last member is sent to in the calling thread. A send that the pool
+     * rejects, because it is saturated or already shut down, is done in the calling thread too.
+     *
+     * @param pool the pool to send with
+     * @param tasks one send per member
+     * @param timeoutMillis how long to wait, after the calling thread's own sends, for the sends in the pool
+     * @return the last <code>MessageIOException</code> of a send, or <code>null</code>
+     */
+    static MessageIOException sendConcurrently(final ExecutorService pool, final List<? extends Callable<?>> tasks,
+                                               final long timeoutMillis) {
+        final Logger logger = GMSLogDomain.getLogger(GMSLogDomain.GMS_LOGGER);
+        final List<Future<?>> pending = new ArrayList<Future<?>>(tasks.size());
+        MessageIOException sendFailure = null;
+        for (int i = 0; i < tasks.size(); i++) {
+            if (i < tasks.size() - 1) {
+                try {
+                    pending.add(pool.submit(tasks.get(i)));
+                    continue;
+                } catch (RejectedExecutionException ree) {
+                    // send it in this thread
+                }
+            }
+            try {
+                tasks.get(i).call();
+            } catch (MessageIOException mioe) {
+                sendFailure = mioe;
+            } catch (Exception e) {
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.log(Level.FINE, "failed to send message in synchronous broadcast", e);
+                }
+            }
+        }
 
-        private CallableMessageSend(final PeerID member) {
-            this.member = member;
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        boolean interrupted = false;
+        for (Future<?> future : pending) {
+            try {
+                future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ie) {
+                interrupted = true;
+                break;
+            } catch (ExecutionException ee) {
+                if (ee.getCause() instanceof MessageIOException) {
+                    sendFailure = (MessageIOException) ee.getCause();
+                }
+            } catch (TimeoutException te) {
+                future.cancel(false);
+                logger.log(Level.WARNING, "synchronous broadcast did not complete sending to all members within " +
+                        timeoutMillis + " ms");
+            }
         }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return sendFailure;
+    }
 
-        public void setMessage(Serializable msg) {
-            this.msg = null;
+    /**
+     * Sends a message of a synchronous group broadcast to one member.
+     * Used for handing off the job of calling sendMessage() method to a ThreadPool.
+     *
+     * Failures to send to one member are logged and do not prevent the message from being sent to the other members.
+     * Only a {@link MessageIOException}, thrown when the message is too big, is propagated.
+     */
+    private class CallableMessageSend implements Callable<Object> {
+        private final SystemAdvertisement memberAdv;
+        private final Serializable msg;
+
+        private CallableMessageSend(final SystemAdvertisement memberAdv, final Serializable msg) {
+            this.memberAdv = memberAdv;
             this.msg = msg;
         }
 
-        public Object call() throws Exception {
-            boolean sent = clusterManager.send(member, msg);
-            if (!sent) {
+        public Object call() throws MessageIOException {
+            final PeerID<?> id = memberAdv.getID();
+            logger.log(Level.FINER, "sending message to member: " + memberAdv.getName());
+            try {
+                boolean localSent = clusterManager.send(id, msg);
+                if (!localSent) {
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.fine("sendMessage(synchronous=true, to=group) failed to send msg " + msg + " to member " + id);
+                    }
+                }
+            } catch (MemberNotInViewException e) {
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("MemberNotInViewException during synchronous broadcast: " + e.toString());
+                }
+            } catch (MessageIOException mioe) {
+                throw mioe;
+            } catch (IOException ioe) {
+                // don't allow an exception sending to one instance of the cluster to prevent ptp multicast to all other instances of
+                // of the cluster.  Catch this exception, record it and continue sending to rest of instances in the cluster.
                 if (logger.isLoggable(Level.FINE)) {
-                    logger.fine("CallableMessageSend failed to send msg " + msg + " to member " + member);
+                    logger.log(Level.FINE,
+                            "IOException in reliable synchronous ptp multicast sending to instance " + memberAdv.getName() +
+                            ". Perhaps this instance has failed but that has not been detected yet. Peer id=" +
+                            id.toString(),
+                            ioe);
+                }
+            } catch (Throwable t) {
+               // don't allow an exception sending to one instance of the cluster prevent ptp broadcast to all other instances of
+               // of the cluster.  Catch this exception, record it and continue sending to rest of instances in the cluster.
+               if (logger.isLoggable(Level.FINE)) {
+                    logger.log(Level.FINE,
+                            "Exception in reliable synchronous ptp multicast sending to instance " + memberAdv.getName() +
+                            ", peer id=" + id.toString(),
+                            t);
                 }
             }
             return null;
         }
     }
-    */
 
     public void announceWatchdogObservedFailure(String serverToken) throws GMSException {
         if (clusterManager == null) {
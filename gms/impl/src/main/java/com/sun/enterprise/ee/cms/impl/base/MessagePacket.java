@@ -48,10 +48,19 @@ package com.sun.enterprise.ee.cms.impl.base;
 public class MessagePacket {
     private SystemAdvertisement advertisement;
     private Object message;
+    private final long receivedTime;
 
     public MessagePacket(final SystemAdvertisement advertisement, final Object message) {
         this.advertisement = advertisement;
         this.message = message;
+        this.receivedTime = System.currentTimeMillis();
+    }
+
+    /**
+     * @return time in milliseconds when this packet was received
+     */
+    public long getReceivedTime() {
+        return receivedTime;
     }
 
     public SystemAdvertisement getAdvertisement() {
@@ -61,6 +61,10 @@ import java.util.Iterator;
  * DistributedStateCacheImpl (the default implementation) for synchronization
  * actions.
  *
+ * When used as a lane of a {@link ShardedMessageDispatcher}, application messages are
+ * delivered to their message action in this thread, so messages are handled in the order
+ * they were queued.
+ *
  * @author Shreedhar Ganapathy
  *         Date: Jul 11, 2006
  * @version $Revision$
@@ -73,16 +77,39 @@ public class MessageWindow implements Runnable {
     private AtomicInteger messageQueueHighWaterMark = new AtomicInteger(0);
     private final String groupName;
     private final ExecutorService dscExecutor;
+    private final boolean ownsDscExecutor;
+    private final GMSMonitor.DispatchLaneStats laneStats;
 
     public MessageWindow(final String groupName, final ArrayBlockingQueue<MessagePacket> messageQueue) {
         this.groupName = groupName;
         this.messageQueue = messageQueue;
         GMSThreadFactory gtf = new GMSThreadFactory("GMS-DistributedStateCache-Group-" + groupName + "-thread");
         this.dscExecutor = Executors.newSingleThreadExecutor(gtf);
+        this.ownsDscExecutor = true;
+        this.laneStats = null;
+    }
+
+    /**
+     * Creates a dispatch lane of a {@link ShardedMessageDispatcher}
+     *
+     * @param groupName group name
+     * @param messageQueue queue of the lane
+     * @param dscExecutor executor for DistributedStateCache messages, shared by all lanes
+     * @param laneStats statistics of the lane
+     */
+    MessageWindow(final String groupName, final ArrayBlockingQueue<MessagePacket> messageQueue,
+                  final ExecutorService dscExecutor, final GMSMonitor.DispatchLaneStats laneStats) {
+        this.groupName = groupName;
+        this.messageQueue = messageQueue;
+        this.dscExecutor = dscExecutor;
+        this.ownsDscExecutor = false;
+        this.laneStats = laneStats;
     }
 
    void stop() {
-        dscExecutor.shutdown();
+        if (ownsDscExecutor) {
+            dscExecutor.shutdown();
+        }
    }
 
     private GMSContext getGMSContext() {
@@ -112,6 +139,9 @@ public class MessageWindow implements Runnable {
                         logger.log(Level.FINER, "Processing received message .... "+ packet.getMessage());
                     }
                     newMessageReceived(packet);
+                    if (laneStats != null) {
+                        laneStats.recordDispatch(System.currentTimeMillis() - packet.getReceivedTime());
+                    }
                 }
             } catch (InterruptedException e) {
                 logger.log(Level.FINE, e.getLocalizedMessage());
@@ -227,8 +257,12 @@ public class MessageWindow implements Runnable {
                 writeLog(sender, gMsg);
                 final MessageSignal ms = new MessageSignalImpl(gMsg.getMessage(), gMsg.getComponentName(), sender,
                         gMsg.getGroupName(), gMsg.getStartTime());
-                final SignalPacket signalPacket = new SignalPacket(ms);
-                getRouter().queueSignal(signalPacket);
+                if (laneStats != null) {
+                    getRouter().dispatchMessageSignal(ms);
+                } else {
+                    final SignalPacket signalPacket = new SignalPacket(ms);
+                    getRouter().queueSignal(signalPacket);
+                }
             }
         }
     }
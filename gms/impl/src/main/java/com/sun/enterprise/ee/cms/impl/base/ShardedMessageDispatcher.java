@@ -0,0 +1,159 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2012 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.ee.cms.impl.base;
+
+import com.sun.enterprise.ee.cms.impl.common.GMSMonitor;
+import com.sun.enterprise.ee.cms.logging.GMSLogDomain;
+import com.sun.enterprise.ee.cms.spi.GMSMessage;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Dispatches incoming messages across a fixed number of lanes instead of a single
+ * {@link MessageWindow} thread. Each lane has its own bounded queue and thread.
+ *
+ * A message is assigned to a lane by its sender and target component, so all messages
+ * from one sender to one target component are delivered in order by the same lane,
+ * while messages of other senders or components are delivered concurrently.
+ * DistributedStateCache messages are assigned by sender and handled by one shared thread.
+ *
+ * Queue depth and dispatch latency of each lane are kept in {@link GMSMonitor.DispatchLaneStats}.
+ */
+public class ShardedMessageDispatcher {
+    private final Logger monitorLogger = GMSLogDomain.getMonitorLogger();
+
+    private final String groupName;
+    private final ArrayBlockingQueue<MessagePacket>[] queues;
+    private final GMSMonitor.DispatchLaneStats[] laneStats;
+    private final MessageWindow[] lanes;
+    private final Thread[] laneThreads;
+    private final ExecutorService dscExecutor;
+
+    @SuppressWarnings("unchecked")
+    public ShardedMessageDispatcher(final String groupName, final int numLanes, final int queueSize, final GMSMonitor gmsMonitor) {
+        if (numLanes <= 0) {
+            throw new IllegalArgumentException("number of lanes must be greater than 0: " + numLanes);
+        }
+        this.groupName = groupName;
+        GMSThreadFactory gtf = new GMSThreadFactory("GMS-DistributedStateCache-Group-" + groupName + "-thread");
+        this.dscExecutor = Executors.newSingleThreadExecutor(gtf);
+        final int laneQueueSize = Math.max(1, queueSize / numLanes);
+        queues = new ArrayBlockingQueue[numLanes];
+        laneStats = new GMSMonitor.DispatchLaneStats[numLanes];
+        lanes = new MessageWindow[numLanes];
+        laneThreads = new Thread[numLanes];
+        for (int i = 0; i < numLanes; i++) {
+            queues[i] = new ArrayBlockingQueue<MessagePacket>(laneQueueSize);
+            laneStats[i] = gmsMonitor.getDispatchLaneStats(i, queues[i]);
+            lanes[i] = new MessageWindow(groupName, queues[i], dscExecutor, laneStats[i]);
+        }
+    }
+
+    public void start() {
+        for (int i = 0; i < lanes.length; i++) {
+            laneThreads[i] = new Thread(lanes[i], "GMS MessageDispatchLane-" + i + " Group-" + groupName);
+            laneThreads[i].setDaemon(true);
+            laneThreads[i].start();
+        }
+    }
+
+    public void stop() {
+        for (Thread laneThread : laneThreads) {
+            if (laneThread != null) {
+                laneThread.interrupt();
+            }
+        }
+        for (MessageWindow lane : lanes) {
+            lane.stop();
+        }
+        dscExecutor.shutdown();
+    }
+
+    public int getNumLanes() {
+        return lanes.length;
+    }
+
+    public GMSMonitor.DispatchLaneStats getLaneStats(final int lane) {
+        return laneStats[lane];
+    }
+
+    /**
+     * Queues an incoming message on its lane, blocking while the lane's queue is full.
+     *
+     * @param packet the incoming message
+     * @throws InterruptedException if interrupted while waiting for space in the lane's queue
+     */
+    public void dispatch(final MessagePacket packet) throws InterruptedException {
+        final int lane = getLane(packet);
+        final ArrayBlockingQueue<MessagePacket> queue = queues[lane];
+        if (!queue.offer(packet)) {
+            // lane queue is full.  log how long we were blocked.
+            long starttime = System.currentTimeMillis();
+            try {
+                queue.put(packet);
+            } finally {
+                long duration = System.currentTimeMillis() - starttime;
+                if (duration > 0) {
+                    monitorLogger.info("remote message reception blocked due to incoming message dispatch lane " + lane +
+                            " being full for " + duration + " ms. Lane queue capacity: " + queue.size());
+                }
+            }
+        }
+        laneStats[lane].recordQueueDepth();
+    }
+
+    int getLane(final MessagePacket packet) {
+        int hash = packet.getAdvertisement().getName().hashCode();
+        final Object message = packet.getMessage();
+        if (message instanceof GMSMessage) {
+            final String targetComponent = ((GMSMessage) message).getComponentName();
+            if (targetComponent != null) {
+                hash = 31 * hash + targetComponent.hashCode();
+            }
+        }
+        // spread the hash bits, sender names often differ only in their last characters
+        hash ^= (hash >>> 16);
+        return (hash & 0x7fffffff) % lanes.length;
+    }
+}
@@ -43,10 +43,12 @@ import com.sun.enterprise.ee.cms.core.ServiceProviderConfigurationKeys;
 import com.sun.enterprise.ee.cms.impl.base.Utility;
 import com.sun.enterprise.ee.cms.logging.GMSLogDomain;
 
+import java.util.Collection;
 import java.util.Properties;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -109,6 +111,9 @@ public class GMSMonitor {
             for (MessageStats stat : gmsMsgStats.values()) {
                 logger.log(Level.INFO, "gmsMonitor: " + stat.toString());
             }
+            for (DispatchLaneStats stat : dispatchLaneStats.values()) {
+                logger.log(Level.INFO, "gmsMonitor: " + stat.toString());
+            }
         }
     }
 
@@ -134,6 +139,30 @@ public class GMSMonitor {
         return result;
     }
 
+    // map from incoming message dispatch lane to DispatchLaneStats
+    private final ConcurrentHashMap<Integer, DispatchLaneStats> dispatchLaneStats =
+            new ConcurrentHashMap<Integer, DispatchLaneStats>();
+
+    /**
+     * Returns the statistics of an incoming message dispatch lane.
+     *
+     * @param lane the lane number
+     * @param queue the queue of the lane, used to report its current depth
+     * @return the statistics of the lane
+     */
+    public DispatchLaneStats getDispatchLaneStats(int lane, Collection<?> queue) {
+        DispatchLaneStats result = dispatchLaneStats.get(lane);
+        if (result == null) {
+            DispatchLaneStats newEntry = new DispatchLaneStats(lane, queue, this);
+            result = dispatchLaneStats.putIfAbsent(lane, newEntry);
+            if (result == null) {
+                result = newEntry;
+                result.register();
+            }
+        }
+        return result;
+    }
+
     public void closeGMSMessageMonitorStats(String targetComponent) {
         MessageStats closeEntry = gmsMsgStats.remove(targetComponent);
         if (closeEntry != null) {
@@ -439,6 +468,123 @@ public class GMSMonitor {
         }
     }
 
+    static public interface GMSDispatchLaneStatsMBean {
+        int getQueueDepth();
+
+        int getQueueHighWaterMark();
+
+        long getNumMsgsDispatched();
+
+        long getDispatchLatency();
+
+        long getAvgDispatchLatency();
+
+        long getMaxDispatchLatency();
+    }
+
+    /**
+     * Statistics of one incoming message dispatch lane.
+     * Dispatch latency is the time in milliseconds from receiving a message until its handler returned.
+     */
+    static public class DispatchLaneStats implements GMSDispatchLaneStatsMBean {
+        final private int lane;
+        final private Collection<?> queue;
+        final private GMSMonitor gmsMonitor;
+        private MBeanServer mbs = null;
+        private ObjectName mbeanObjectName = null;
+
+        private AtomicInteger queueHighWaterMark = new AtomicInteger(0);
+        private AtomicLong numMsgsDispatched = new AtomicLong(0);
+        private AtomicLong dispatchLatency = new AtomicLong(0);
+        private AtomicLong maxDispatchLatency = new AtomicLong(0);
+
+        private static final Logger _logger = GMSLogDomain.getMonitorLogger();
+
+        public DispatchLaneStats(int lane, Collection<?> queue, GMSMonitor gmsMonitor) {
+            this.lane = lane;
+            this.queue = queue;
+            this.gmsMonitor = gmsMonitor;
+            this.mbs = gmsMonitor.mbs;
+        }
+
+        public void register() {
+            if (mbs != null) {
+                try {
+                    mbeanObjectName = new ObjectName("com.sun.enterprise.ee.cms.impl.common.GMSMonitor.DispatchLaneStats"
+                            + ":name=" + gmsMonitor.groupName + "_" + gmsMonitor.instanceName + "_lane" + lane);
+
+                    mbs.registerMBean(new StandardMBean(this, GMSDispatchLaneStatsMBean.class), mbeanObjectName);
+                } catch (Exception e) {
+                    _logger.log(Level.INFO, "Couldn't register MBean for dispatch lane " + lane + " : " + e);
+                }
+            }
+        }
+
+        public void close() {
+            if (mbs != null && mbeanObjectName != null) {
+                try {
+                    mbs.unregisterMBean(mbeanObjectName);
+                    mbeanObjectName = null;
+                    mbs = null;
+                } catch (Exception e) {}
+            }
+        }
+
+        public void recordQueueDepth() {
+            int currentQueueSize = queue.size();
+            int localHighWater = queueHighWaterMark.get();
+            if (currentQueueSize > localHighWater) {
+                queueHighWaterMark.compareAndSet(localHighWater, currentQueueSize);
+            }
+        }
+
+        public void recordDispatch(long latency) {
+            numMsgsDispatched.incrementAndGet();
+            dispatchLatency.addAndGet(latency);
+            long localMax = maxDispatchLatency.get();
+            if (latency > localMax) {
+                maxDispatchLatency.compareAndSet(localMax, latency);
+            }
+        }
+
+        public int getQueueDepth() {
+            return queue.size();
+        }
+
+        public int getQueueHighWaterMark() {
+            return queueHighWaterMark.get();
+        }
+
+        public long getNumMsgsDispatched() {
+            return numMsgsDispatched.get();
+        }
+
+        public long getDispatchLatency() {
+            return dispatchLatency.get();
+        }
+
+        public long getAvgDispatchLatency() {
+            long num = numMsgsDispatched.get();
+            return num == 0 ? 0 : dispatchLatency.get() / num;
+        }
+
+        public long getMaxDispatchLatency() {
+            return maxDispatchLatency.get();
+        }
+
+        public String toString() {
+            StringBuffer sb = new StringBuffer();
+            sb.append("dispatchLane:").append(lane);
+            sb.append(" [queueDepth:").append(getQueueDepth());
+            sb.append(" highWaterMark:").append(getQueueHighWaterMark());
+            sb.append(" numMsgs:").append(getNumMsgsDispatched());
+            sb.append(" avg latency:").append(getAvgDispatchLatency());
+            sb.append(" max latency:").append(getMaxDispatchLatency());
+            sb.append("]");
+            return sb.toString();
+        }
+    }
+
     public void stop() {
         if (timer != null) {
             timer.cancel();
@@ -449,6 +595,9 @@ public class GMSMonitor {
         for (MessageStats componentMsgStats: gmsMsgStats.values()) {
             componentMsgStats.close();
         }
+        for (DispatchLaneStats laneStats : dispatchLaneStats.values()) {
+            laneStats.close();
+        }
     }
 
     public static class Report extends TimerTask {
@@ -415,6 +415,10 @@ public class Router {
     private ConcurrentHashMap<String, AtomicInteger> undeliveredMessages = new ConcurrentHashMap<String, AtomicInteger>();
 
     private void notifyMessageAction(final MessageSignal signal, String targetComponent) {
+        notifyMessageAction(signal, targetComponent, false);
+    }
+
+    private void notifyMessageAction(final MessageSignal signal, String targetComponent, boolean inCallingThread) {
         MessageActionFactory maf = null;
         maf = messageAF.get(targetComponent);
         if (maf == null) {
@@ -447,7 +451,31 @@ public class Router {
             }
         } else {
             MessageAction a = (MessageAction) maf.produceAction();
-            callMessageAction(a, signal);
+            if (inCallingThread) {
+                try {
+                    new CallableAction(a, signal).call();
+                } catch (ActionException e) {
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.log(Level.FINE, "message action for target component " + targetComponent + " failed", e);
+                    }
+                }
+            } else {
+                callMessageAction(a, signal);
+            }
+        }
+    }
+
+    /**
+     * Delivers a message signal to the message action of its target component in the calling thread.
+     * Used by the incoming message dispatch lanes, which deliver the messages of one sender
+     * to one target component in order.
+     *
+     * @param signal the message signal
+     */
+    public void dispatchMessageSignal(final MessageSignal signal) {
+        String targetComponent = signal.getTargetComponent();
+        if (targetComponent != null) {
+            notifyMessageAction(signal, targetComponent, true);
         }
     }
 
@@ -274,8 +274,13 @@ public abstract class AbstractNetworkManager implements NetworkManager {
                                                     MessageImpl.DEFAULT_MAX_TOTAL_MESSAGE_LENGTH,
                                                     properties );
         MessageImpl.setMaxMessageLength(maxMsgLength);
+        int maxFragmentedMsgLength = Utility.getIntProperty( ServiceProviderConfigurationKeys.MAX_FRAGMENTED_MESSAGE_LENGTH.toString(),
+                                                    MessageImpl.DEFAULT_MAX_FRAGMENTED_MESSAGE_LENGTH,
+                                                    properties );
+        MessageImpl.setMaxFragmentedMessageLength(maxFragmentedMsgLength);
         if (LOG.isLoggable(Level.CONFIG))  {
             LOG.log(Level.CONFIG, "GMS MAX_MESSAGE_LENGTH={0}", maxMsgLength);
+            LOG.log(Level.CONFIG, "GMS MAX_FRAGMENTED_MESSAGE_LENGTH={0}", maxFragmentedMsgLength);
         }
     }
 }
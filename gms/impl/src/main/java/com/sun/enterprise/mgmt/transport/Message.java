@@ -97,6 +97,12 @@ public interface Message extends Serializable {
      */
     public static final int TYPE_PONG_MESSAGE = 6;
 
+    /**
+     * Currently, this type is used in only Grizzly transport layer in order to send one fragment of a message
+     * which is longer than {@link MessageImpl#getMaxMessageLength()}
+     */
+    public static final int TYPE_FRAGMENT_MESSAGE = 7;
+
     /**
      * The element's key for storing and getting source's {@link com.sun.enterprise.ee.cms.impl.base.PeerID}
      */
@@ -89,6 +89,8 @@ public class MessageImpl implements Message {
 
     public static final int DEFAULT_MAX_TOTAL_MESSAGE_LENGTH = 128 * 1024 + (2 * 1024);
     private static int maxTotalMessageLength = DEFAULT_MAX_TOTAL_MESSAGE_LENGTH;
+    public static final int DEFAULT_MAX_FRAGMENTED_MESSAGE_LENGTH = 16 * 1024 * 1024;
+    private static int maxFragmentedMessageLength = DEFAULT_MAX_FRAGMENTED_MESSAGE_LENGTH;
     public static final int UNSPECIFIED_MESSAGE_LENGTH = -1;
 
     private static final int MAGIC_NUMBER = 770303;
@@ -117,6 +119,35 @@ public class MessageImpl implements Message {
         maxTotalMessageLength = maxMsgLength;
     }
 
+    /**
+     * Returns the max length of a message that a transport may split into fragments.
+     * Messages longer than {@link #getMaxMessageLength()} but not longer than this length
+     * are only supported by transports that fragment messages, i.g. the Grizzly TCP transport.
+     *
+     * @return the max length of a fragmented message
+     */
+    public static int getMaxFragmentedMessageLength() {
+        return Math.max(maxTotalMessageLength, maxFragmentedMessageLength);
+    }
+
+    public static void setMaxFragmentedMessageLength(int maxMsgLength) {
+        maxFragmentedMessageLength = maxMsgLength;
+    }
+
+    /**
+     * Writes a message header at the current position of the given buffer
+     *
+     * @param buffer buffer the header is written to
+     * @param type message type
+     * @param messageLength length of the message body that follows the header
+     */
+    public static void writeHeader( final Buffer buffer, final int type, final int messageLength ) {
+        buffer.putInt( MAGIC_NUMBER );
+        buffer.putInt( VERSION );
+        buffer.putInt( type );
+        buffer.putInt( messageLength );
+    }
+
     public MessageImpl() {
     }
 
@@ -224,10 +255,10 @@ public class MessageImpl implements Message {
 
         if( length > 0 ) {
             int msgSize = HEADER_LENGTH + length;
-            if( msgSize > maxTotalMessageLength ) {
+            if( msgSize > getMaxFragmentedMessageLength() ) {
                 if( LOG.isLoggable( Level.WARNING ) )
                     LOG.log( Level.WARNING,
-                             "total message size is too big: size = " + msgSize + ", max size = " + maxTotalMessageLength );
+                             "total message size is too big: size = " + msgSize + ", max size = " + getMaxFragmentedMessageLength() );
     }
 
             if (bytes.length - offset < length) {
@@ -261,10 +292,10 @@ public class MessageImpl implements Message {
             throw new IllegalArgumentException( "length is too small" );
         if( length > 0 ) {
             int msgSize = HEADER_LENGTH + length;
-            if( msgSize > maxTotalMessageLength ) {
+            if( msgSize > getMaxFragmentedMessageLength() ) {
                 if( LOG.isLoggable( Level.WARNING ) )
                     LOG.log( Level.WARNING,
-                             "total message size is too big: size = " + msgSize + ", max size = " + maxTotalMessageLength );
+                             "total message size is too big: size = " + msgSize + ", max size = " + getMaxFragmentedMessageLength() );
             }
             int restorePosition = buffer.position();
             int restoreLimit = buffer.limit();
@@ -499,14 +530,16 @@ public class MessageImpl implements Message {
                 throw new MessageIOException(ie);
             }
             
+            // the transport splits messages longer than maxTotalMessageLength into fragments
             final int msgSize = bufferWriter.position();
-            if( msgSize > maxTotalMessageLength ) {
+            final int maxMsgSize = getMaxFragmentedMessageLength();
+            if( msgSize > maxMsgSize ) {
                 if( LOG.isLoggable( Level.WARNING ) ) {
-                    LOG.log( Level.WARNING, "messageImpl.msg.too.big", new Object[]{msgSize, maxTotalMessageLength} );
+                    LOG.log( Level.WARNING, "messageImpl.msg.too.big", new Object[]{msgSize, maxMsgSize} );
                 }
                 
                 throw new MessageIOException("total message size is too big: size = " +
-                        msgSize + ", max size = " + maxTotalMessageLength + toString());
+                        msgSize + ", max size = " + maxMsgSize + toString());
             }
 
             bufferWriter.putInt(headerStart, MAGIC_NUMBER);
@@ -536,6 +569,8 @@ public class MessageImpl implements Message {
                 return "PING_MESSAGE";
             case TYPE_PONG_MESSAGE:
                 return "PONG_MESSAGE";
+            case TYPE_FRAGMENT_MESSAGE:
+                return "FRAGMENT_MESSAGE";
             default:
                 return "UNKNOWN_MESSAGE(" + type + ")";
         }
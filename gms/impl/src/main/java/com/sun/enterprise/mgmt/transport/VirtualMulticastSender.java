@@ -41,13 +41,23 @@
 package com.sun.enterprise.mgmt.transport;
 
 import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -63,6 +73,11 @@ import com.sun.enterprise.ee.cms.logging.GMSLogDomain;
  * So, this {@link MulticastMessageSender} will broadcast a message
  * to endpoints which <code>virtualPeerIdList</code> includes as well as one subnet on TCP protocol.
  *
+ * If an <code>executor</code> is given, the message is sent to all endpoints concurrently so that
+ * one slow or unreachable endpoint does not delay the broadcast to the others. A send that the <code>executor</code>
+ * rejects is done in the broadcasting thread, and the concurrent sends are awaited for at most
+ * <code>sendTimeoutMillis</code>.
+ *
  * @author Bongjae Chang
  */
 public class VirtualMulticastSender extends AbstractMulticastMessageSender {
@@ -76,9 +91,18 @@ public class VirtualMulticastSender extends AbstractMulticastMessageSender {
     static final long LAST_REPORTED_FAILURE_DURATION_MS = 10000;  // 10 seconds between reporting failed send.
     final long DISCOVERY_PERIOD_COMPLETED_TIME;
     boolean discoveryCleanupPending = true;
+    final ExecutorService executor;
+    final long sendTimeoutMillis;
 
     public VirtualMulticastSender(NetworkManager networkManager, List<? extends PeerID<?>> initialPeerIds) throws IOException {
+        this(networkManager, initialPeerIds, null, 0);
+    }
+
+    public VirtualMulticastSender(NetworkManager networkManager, List<? extends PeerID<?>> initialPeerIds,
+                                  ExecutorService executor, long sendTimeoutMillis) throws IOException {
         this.networkManager = networkManager;
+        this.executor = executor;
+        this.sendTimeoutMillis = sendTimeoutMillis;
         if( initialPeerIds != null && !initialPeerIds.isEmpty() ) {
             this.virtualPeerIdList.addAll(initialPeerIds);
         }
@@ -127,39 +151,126 @@ public class VirtualMulticastSender extends AbstractMulticastMessageSender {
                 removeUnknownInstances();
             }
         }
-        for( PeerID<?> peerID : virtualPeerIdList ) {
-            try {
-                if (LOG.isLoggable(Level.FINEST)) {
-                    LOG.log(Level.FINEST, "VirtualMulticastSender.doBroadcast prepare to send msg to peerID " + peerID);
-                }
-                if( !tcpSender.send( peerID, message ) ) {
-                    if (LOG.isLoggable(Level.FINE)) {
-                        LOG.log(Level.FINE, "VirtualMulticastSender.doBroadcast failed to send msg to peerID " + peerID);
-                    }
+        if (executor == null || virtualPeerIdList.size() < 2) {
+            for( PeerID<?> peerID : virtualPeerIdList ) {
+                if( !send( tcpSender, peerID, message ) ) {
                     result = false;
-                } else {
-                    if (LOG.isLoggable(Level.FINEST)) {
-                        LOG.log(Level.FINEST, "VirtualMulticastSender.doBroadcast succeded to send msg to peerID " + peerID);
-                    }
                 }
+            }
+            return result;
+        }
 
-            } catch( IOException ie ) {
-                Long lastFail = lastReportedSendFailure.get(peerID);
-                long currentTime = System.currentTimeMillis();
-                if (lastFail == null ||
-                   ((lastFail - currentTime) > LAST_REPORTED_FAILURE_DURATION_MS) ) {
-                    if( LOG.isLoggable( Level.FINE ) ) {
-                        LOG.log( Level.FINE, "failed to send message to a virtual multicast endpoint[" + peerID +
-                                            "] message=[" + message + "]", ie );
+        // fan out to all endpoints concurrently. The last endpoint is sent to in the calling thread.
+        final List<PeerID<?>> peerIDs = new ArrayList<PeerID<?>>( virtualPeerIdList );
+        final List<Future<Boolean>> pending = new ArrayList<Future<Boolean>>( peerIDs.size() - 1 );
+        final PeerID<?> last = peerIDs.remove( peerIDs.size() - 1 );
+        for( PeerID<?> peerID : peerIDs ) {
+            final Callable<Boolean> task = new CallableSend( tcpSender, peerID, copy( message ) );
+            try {
+                pending.add( executor.submit( task ) );
+            } catch( RejectedExecutionException ree ) {
+                try {
+                    if( !task.call() ) {
+                        result = false;
                     }
-                    lastReportedSendFailure.put(peerID, currentTime);
+                } catch( Exception e ) {
+                    result = false;
                 }
-                purge();
             }
         }
+        if( !send( tcpSender, last, message ) ) {
+            result = false;
+        }
+        final long deadline = System.currentTimeMillis() + sendTimeoutMillis;
+        boolean interrupted = false;
+        for( Future<Boolean> future : pending ) {
+            try {
+                if( !future.get( Math.max( 0, deadline - System.currentTimeMillis() ), TimeUnit.MILLISECONDS ) ) {
+                    result = false;
+                }
+            } catch( TimeoutException te ) {
+                future.cancel( false );
+                if( LOG.isLoggable( Level.FINE ) ) {
+                    LOG.log( Level.FINE, "VirtualMulticastSender.doBroadcast did not send msg " + message +
+                                         " to all endpoints within " + sendTimeoutMillis + " ms" );
+                }
+                result = false;
+            } catch( InterruptedException ie ) {
+                interrupted = true;
+                result = false;
+                break;
+            } catch( ExecutionException ee ) {
+                if( LOG.isLoggable( Level.FINE ) ) {
+                    LOG.log( Level.FINE, "VirtualMulticastSender.doBroadcast failed to send msg " + message, ee.getCause() );
+                }
+                result = false;
+            }
+        }
+        if( interrupted ) {
+            Thread.currentThread().interrupt();
+        }
         return result;
     }
 
+    private boolean send( final MessageSender tcpSender, final PeerID<?> peerID, final Message message ) {
+        try {
+            if (LOG.isLoggable(Level.FINEST)) {
+                LOG.log(Level.FINEST, "VirtualMulticastSender.doBroadcast prepare to send msg to peerID " + peerID);
+            }
+            if( !tcpSender.send( peerID, message ) ) {
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.log(Level.FINE, "VirtualMulticastSender.doBroadcast failed to send msg to peerID " + peerID);
+                }
+                return false;
+            } else {
+                if (LOG.isLoggable(Level.FINEST)) {
+                    LOG.log(Level.FINEST, "VirtualMulticastSender.doBroadcast succeded to send msg to peerID " + peerID);
+                }
+            }
+
+        } catch( IOException ie ) {
+            Long lastFail = lastReportedSendFailure.get(peerID);
+            long currentTime = System.currentTimeMillis();
+            if (lastFail == null ||
+               ((lastFail - currentTime) > LAST_REPORTED_FAILURE_DURATION_MS) ) {
+                if( LOG.isLoggable( Level.FINE ) ) {
+                    LOG.log( Level.FINE, "failed to send message to a virtual multicast endpoint[" + peerID +
+                                        "] message=[" + message + "]", ie );
+                }
+                lastReportedSendFailure.put(peerID, currentTime);
+            }
+            purge();
+        }
+        return true;
+    }
+
+    /**
+     * The sender adds the target's {@link PeerID} to the message, so every concurrent send needs its own copy.
+     */
+    private static Message copy( final Message message ) {
+        final Map<String, Serializable> elements = new HashMap<String, Serializable>();
+        for( Map.Entry<String, Serializable> entry : message.getMessageElements() ) {
+            elements.put( entry.getKey(), entry.getValue() );
+        }
+        return new MessageImpl( message.getType(), elements );
+    }
+
+    private class CallableSend implements Callable<Boolean> {
+        private final MessageSender tcpSender;
+        private final PeerID<?> peerID;
+        private final Message message;
+
+        private CallableSend( final MessageSender tcpSender, final PeerID<?> peerID, final Message message ) {
+            this.tcpSender = tcpSender;
+            this.peerID = peerID;
+            this.message = message;
+        }
+
+        public Boolean call() {
+            return send( tcpSender, peerID, message );
+        }
+    }
+
     /**
      * Remove all PeerID entries added via DISCOVERY_URI_LIST.  These entries have "Unknown_" at start for instance
      * name.
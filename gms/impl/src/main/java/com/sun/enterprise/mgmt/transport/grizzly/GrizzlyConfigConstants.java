@@ -66,6 +66,9 @@ public enum GrizzlyConfigConstants {
     START_TIMEOUT, // ms
     WRITE_TIMEOUT, // ms
 
+    ASYNC_WRITE, // if true, point to point sends are pipelined on one connection per peer and do not wait for the write to complete
+    MAX_PENDING_WRITES, // maximum number of in flight asynchronous writes to a single destination before senders are blocked
+
     MAX_WRITE_SELECTOR_POOL_SIZE,
 
     // comma separated list of tcp uri endpoints
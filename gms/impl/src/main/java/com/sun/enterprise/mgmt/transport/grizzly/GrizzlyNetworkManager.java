@@ -45,9 +45,11 @@ import static com.sun.enterprise.mgmt.ConfigConstants.FAILURE_DETECTION_TCP_RETR
 import static com.sun.enterprise.mgmt.ConfigConstants.MULTICASTADDRESS;
 import static com.sun.enterprise.mgmt.ConfigConstants.MULTICASTPORT;
 import static com.sun.enterprise.mgmt.ConfigConstants.MULTICAST_PACKET_SIZE;
+import static com.sun.enterprise.mgmt.transport.grizzly.GrizzlyConfigConstants.ASYNC_WRITE;
 import static com.sun.enterprise.mgmt.transport.grizzly.GrizzlyConfigConstants.DISCOVERY_URI_LIST;
 import static com.sun.enterprise.mgmt.transport.grizzly.GrizzlyConfigConstants.HIGH_WATER_MARK;
 import static com.sun.enterprise.mgmt.transport.grizzly.GrizzlyConfigConstants.MAX_PARALLEL;
+import static com.sun.enterprise.mgmt.transport.grizzly.GrizzlyConfigConstants.MAX_PENDING_WRITES;
 import static com.sun.enterprise.mgmt.transport.grizzly.GrizzlyConfigConstants.MAX_WRITE_SELECTOR_POOL_SIZE;
 import static com.sun.enterprise.mgmt.transport.grizzly.GrizzlyConfigConstants.MULTICAST_TIME_TO_LIVE;
 import static com.sun.enterprise.mgmt.transport.grizzly.GrizzlyConfigConstants.NUMBER_TO_RECLAIM;
@@ -127,6 +129,8 @@ public abstract class GrizzlyNetworkManager extends AbstractNetworkManager {
 
     public long startTimeoutMillis; // ms
     public long sendWriteTimeoutMillis; // ms
+    public boolean asyncWrite;
+    public int maxPendingWrites;
     public int multicastPacketSize;
     public int writeSelectorPoolSize;
     static final public String UNKNOWN = "Unknown_";
@@ -210,6 +214,8 @@ public abstract class GrizzlyNetworkManager extends AbstractNetworkManager {
 
         startTimeoutMillis = Utility.getLongProperty( START_TIMEOUT.toString(), 15 * 1000, properties );
         sendWriteTimeoutMillis = Utility.getLongProperty( WRITE_TIMEOUT.toString(), 10 * 1000, properties );
+        asyncWrite = Utility.getBooleanProperty( ASYNC_WRITE.toString(), false, properties );
+        maxPendingWrites = Utility.getIntProperty( MAX_PENDING_WRITES.toString(), 1024, properties );
         multicastPacketSize = Utility.getIntProperty( MULTICAST_PACKET_SIZE.toString(), 64 * 1024, properties );
         multicastTimeToLive = Utility.getIntProperty(MULTICAST_TIME_TO_LIVE.toString(),
                                       GMSConstants.DEFAULT_MULTICAST_TIME_TO_LIVE, properties);
@@ -234,6 +240,7 @@ public abstract class GrizzlyNetworkManager extends AbstractNetworkManager {
             buf.append("FAILURE_DETECT_TCP_RETRANSMIT_TIMEOUT(ms):").append(failTcpTimeout).append('\n');
             buf.append(" MAX_PARALLEL:").append(maxParallelSendConnections).append('\n');
             buf.append("START_TIMEOUT(ms):").append(startTimeoutMillis).append(" WRITE_TIMEOUT(ms):").append(sendWriteTimeoutMillis).append('\n');
+            buf.append("ASYNC_WRITE:").append(asyncWrite).append(" MAX_PENDING_WRITES:").append(maxPendingWrites).append('\n');
             buf.append("MAX_WRITE_SELECTOR_POOL_SIZE:").append(writeSelectorPoolSize).append('\n');
             shoalLogger.log(Level.CONFIG, buf.toString());
         }
@@ -0,0 +1,239 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2011 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.enterprise.mgmt.transport.grizzly.grizzly2;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.glassfish.grizzly.Buffer;
+import org.glassfish.grizzly.memory.Buffers;
+import org.glassfish.grizzly.memory.CompositeBuffer;
+import org.glassfish.grizzly.memory.MemoryManager;
+
+import com.sun.enterprise.mgmt.transport.Message;
+import com.sun.enterprise.mgmt.transport.MessageIOException;
+import com.sun.enterprise.mgmt.transport.MessageImpl;
+import com.sun.enterprise.mgmt.transport.grizzly.GrizzlyNetworkManager;
+
+/**
+ * Reassembles messages that were split into {@link Message#TYPE_FRAGMENT_MESSAGE} frames by {@link MessageFilter}.
+ *
+ * Fragment frame body is composed of following fields.
+ *      messageId      long        identifies the fragmented message on the connection
+ *      fragmentIndex  integer     zero based index of this fragment
+ *      fragmentCount  integer     number of fragments of the message
+ *      payload        byte[frameLength - FRAGMENT_HEADER_LENGTH]
+ *
+ * The payloads of all fragments, in fragmentIndex order, are the complete serialized message,
+ * including its own message header.
+ *
+ * One instance is kept per connection. The fragments are kept as separate buffers, so no contiguous
+ * buffer of the size of the whole message is allocated. At most {@link #MAX_PENDING_MESSAGES} messages
+ * are reassembled at a time, and partially received messages are discarded
+ * after {@link #REASSEMBLY_TIMEOUT_MILLIS}. The ids of discarded messages are remembered until their
+ * fragments stop arriving for {@link #REASSEMBLY_TIMEOUT_MILLIS}, so their remaining fragments are dropped
+ * instead of being buffered again.
+ */
+final class FragmentReassembler {
+
+    private static final Logger LOG = GrizzlyNetworkManager.getLogger();
+
+    static final int FRAGMENT_HEADER_LENGTH = 8 + 4 + 4;
+    static final int MAX_PENDING_MESSAGES = 16;
+    static final long REASSEMBLY_TIMEOUT_MILLIS = 60 * 1000;
+    static final int MAX_DISCARDED_MESSAGES = 256;
+
+    private final Map<Long, PartialMessage> partialMessages = new LinkedHashMap<Long, PartialMessage>();
+
+    // messageId -> time the last fragment of the discarded message was received
+    private final Map<Long, Long> discardedMessages = new LinkedHashMap<Long, Long>();
+
+    /**
+     * Adds a fragment frame
+     *
+     * @param buffer buffer which contains the fragment frame body
+     * @param offset offset of the fragment frame body
+     * @param length length of the fragment frame body
+     * @param memoryManager memory manager used to wrap the fragment payloads
+     * @return the reassembled message if this was its last missing fragment, otherwise <code>null</code>
+     * @throws MessageIOException if the reassembled message could not be parsed
+     */
+    MessageImpl add(final Buffer buffer, final int offset, final int length,
+            final MemoryManager<Buffer> memoryManager) throws MessageIOException {
+        final long now = System.currentTimeMillis();
+        expire(now);
+
+        if (length < FRAGMENT_HEADER_LENGTH) {
+            throw new IllegalStateException("fragment frame is too short. length=" + length);
+        }
+        final long messageId = buffer.getLong(offset);
+        final int fragmentIndex = buffer.getInt(offset + 8);
+        final int fragmentCount = buffer.getInt(offset + 12);
+        if (fragmentCount <= 0 || fragmentIndex < 0 || fragmentIndex >= fragmentCount) {
+            throw new IllegalStateException("invalid fragment " + fragmentIndex + " of " + fragmentCount);
+        }
+
+        if (discardedMessages.containsKey(messageId)) {
+            discardedMessages.put(messageId, now);
+            if (LOG.isLoggable(Level.FINEST)) {
+                LOG.log(Level.FINEST, "dropping fragment " + fragmentIndex + " of discarded message " + messageId);
+            }
+            return null;
+        }
+
+        PartialMessage partial = partialMessages.get(messageId);
+        if (partial == null) {
+            if (partialMessages.size() >= MAX_PENDING_MESSAGES) {
+                final Iterator<Map.Entry<Long, PartialMessage>> it = partialMessages.entrySet().iterator();
+                final Map.Entry<Long, PartialMessage> eldest = it.next();
+                it.remove();
+                discard(eldest.getKey(), now);
+                LOG.log(Level.WARNING, "discarding partially received message " + eldest.getKey() +
+                        ", too many messages are being reassembled. max=" + MAX_PENDING_MESSAGES);
+            }
+            partial = new PartialMessage(fragmentCount, now);
+            partialMessages.put(messageId, partial);
+        } else if (partial.fragmentCount != fragmentCount) {
+            throw new IllegalStateException("fragment count mismatch for message " + messageId +
+                    ": " + fragmentCount + " != " + partial.fragmentCount);
+        }
+
+        // copy the payload, the connection's input buffer is reused for the following frames
+        final int payloadLength = length - FRAGMENT_HEADER_LENGTH;
+        final byte[] payload = new byte[payloadLength];
+        final int restorePosition = buffer.position();
+        buffer.position(offset + FRAGMENT_HEADER_LENGTH);
+        buffer.get(payload);
+        buffer.position(restorePosition);
+
+        partial.lastUpdated = now;
+        if (partial.fragments.put(fragmentIndex, payload) == null) {
+            partial.length += payloadLength;
+        }
+        if (partial.length > MessageImpl.getMaxFragmentedMessageLength()) {
+            partialMessages.remove(messageId);
+            discard(messageId, now);
+            LOG.log(Level.WARNING, "discarding fragmented message " + messageId + ", message is too big. size >= " +
+                    partial.length + ", max size = " + MessageImpl.getMaxFragmentedMessageLength());
+            return null;
+        }
+        if (partial.fragments.size() < fragmentCount) {
+            return null;
+        }
+
+        partialMessages.remove(messageId);
+        return partial.toMessage(memoryManager);
+    }
+
+    /**
+     * Discards all partially received messages
+     */
+    void clear() {
+        partialMessages.clear();
+        discardedMessages.clear();
+    }
+
+    int getPendingCount() {
+        return partialMessages.size();
+    }
+
+    private void discard(final long messageId, final long now) {
+        if (discardedMessages.size() >= MAX_DISCARDED_MESSAGES) {
+            final Iterator<Long> it = discardedMessages.keySet().iterator();
+            it.next();
+            it.remove();
+        }
+        discardedMessages.put(messageId, now);
+    }
+
+    private void expire(final long now) {
+        final Iterator<Map.Entry<Long, PartialMessage>> it = partialMessages.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<Long, PartialMessage> entry = it.next();
+            if (now - entry.getValue().lastUpdated > REASSEMBLY_TIMEOUT_MILLIS) {
+                it.remove();
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.log(Level.FINE, "discarding partially received message " + entry.getKey() +
+                            ", missing fragments were not received within " + REASSEMBLY_TIMEOUT_MILLIS + " ms");
+                }
+            }
+        }
+        final Iterator<Long> discarded = discardedMessages.values().iterator();
+        while (discarded.hasNext()) {
+            if (now - discarded.next() > REASSEMBLY_TIMEOUT_MILLIS) {
+                discarded.remove();
+            }
+        }
+    }
+
+    private static final class PartialMessage {
+        final int fragmentCount;
+        final Map<Integer, byte[]> fragments = new HashMap<Integer, byte[]>();
+        long lastUpdated;
+        int length;
+
+        PartialMessage(final int fragmentCount, final long now) {
+            this.fragmentCount = fragmentCount;
+            this.lastUpdated = now;
+        }
+
+        MessageImpl toMessage(final MemoryManager<Buffer> memoryManager) throws MessageIOException {
+            final Buffer[] buffers = new Buffer[fragmentCount];
+            for (int i = 0; i < fragmentCount; i++) {
+                buffers[i] = Buffers.wrap(memoryManager, fragments.get(i));
+            }
+            final CompositeBuffer composite = CompositeBuffer.newBuffer(memoryManager, buffers);
+            final GMSBufferWrapper gmsBuffer = new GMSBufferWrapper().wrap(composite);
+
+            final MessageImpl message = new MessageImpl();
+            final int messageLength = message.parseHeader(gmsBuffer, 0);
+            if (messageLength + MessageImpl.HEADER_LENGTH != length) {
+                throw new IllegalStateException("reassembled message length " + length + " does not match message header length " +
+                        (messageLength + MessageImpl.HEADER_LENGTH));
+            }
+            message.parseMessage(gmsBuffer, MessageImpl.HEADER_LENGTH, messageLength);
+            return message;
+        }
+    }
+}
@@ -43,11 +43,16 @@ package com.sun.enterprise.mgmt.transport.grizzly.grizzly2;
 import com.sun.enterprise.mgmt.transport.buffers.Buffer;
 import com.sun.enterprise.mgmt.transport.buffers.ExpandableBufferWriter;
 import com.sun.enterprise.mgmt.transport.buffers.ExpandableBufferWriterFactory;
+import org.glassfish.grizzly.memory.CompositeBuffer;
 import org.glassfish.grizzly.memory.MemoryManager;
 
 /**
  * Grizzly 2.0 based expandable Buffer writer.
  *
+ * The buffer is reallocated while it is smaller than {@link #MAX_REALLOCATION_SIZE}.
+ * Beyond that, chunks are appended to a {@link CompositeBuffer}, so large messages
+ * are neither copied on growth nor held in one contiguous buffer.
+ *
  * @author Alexey Stashok
  */
 public final class Grizzly2ExpandableBufferWriter extends ExpandableBufferWriter {
@@ -63,6 +68,8 @@ public final class Grizzly2ExpandableBufferWriter extends ExpandableBufferWriter
         };
     }
 
+    static final int MAX_REALLOCATION_SIZE = 64 * 1024;
+
     private final MemoryManager<org.glassfish.grizzly.Buffer> memoryManager;
 
     private final GMSBufferWrapper wrapper = new GMSBufferWrapper();
@@ -103,9 +110,25 @@ public final class Grizzly2ExpandableBufferWriter extends ExpandableBufferWriter
     protected void ensureCapacity(final int delta) {
         if (delta <= 0 || grizzlyBuffer.remaining() >= delta) return;
 
-        grizzlyBuffer = memoryManager.reallocate(grizzlyBuffer,
-                Math.max(grizzlyBuffer.capacity() * 2,
-                grizzlyBuffer.capacity() + delta));
+        if (grizzlyBuffer.capacity() < MAX_REALLOCATION_SIZE) {
+            grizzlyBuffer = memoryManager.reallocate(grizzlyBuffer,
+                    Math.max(grizzlyBuffer.capacity() * 2,
+                    grizzlyBuffer.capacity() + delta));
+        } else {
+            final int pos = grizzlyBuffer.position();
+            final int remaining = grizzlyBuffer.remaining();
+            final CompositeBuffer compositeBuffer;
+            if (grizzlyBuffer.isComposite()) {
+                compositeBuffer = (CompositeBuffer) grizzlyBuffer;
+            } else {
+                grizzlyBuffer.position(0);
+                compositeBuffer = CompositeBuffer.newBuffer(memoryManager, grizzlyBuffer);
+            }
+            compositeBuffer.append(memoryManager.allocate(
+                    Math.max(MAX_REALLOCATION_SIZE, delta - remaining)));
+            compositeBuffer.position(pos);
+            grizzlyBuffer = compositeBuffer;
+        }
         wrapper.wrap(grizzlyBuffer);
     }
 }
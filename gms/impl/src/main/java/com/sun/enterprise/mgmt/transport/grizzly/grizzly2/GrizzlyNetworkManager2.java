@@ -281,19 +281,21 @@ public class GrizzlyNetworkManager2 extends com.sun.enterprise.mgmt.transport.gr
         }
 
         tcpSender = new GrizzlyTCPMessageSender(tcpNioTransport,
-                tcpNioConnectionCache, getLocalPeerID(), sendWriteTimeoutMillis);
+                tcpNioConnectionCache, getLocalPeerID(), sendWriteTimeoutMillis,
+                asyncWrite, maxPendingWrites);
         udpSender = null;
 
         List<GrizzlyPeerIdWrapper> virtualPeerIdList = getVirtualPeerIDList(virtualUriList);
         if (virtualPeerIdList != null && !virtualPeerIdList.isEmpty()) {
-            // Comment out this UDP receive thread pool until unicast UDP is implemented.
-//            final boolean FAIRNESS = true;
-//            ThreadFactory tf = new GMSThreadFactory("GMS-mcastSenderThreadPool-thread");
-//
-//            multicastSenderThreadPool = new ThreadPoolExecutor(
-//                    10, 10, 60 * 1000, TimeUnit.MILLISECONDS,
-//                    new ArrayBlockingQueue<Runnable>(1024, FAIRNESS), tf);
-            vms = new VirtualMulticastSender(this, virtualPeerIdList);
+            // fans out virtual multicast messages to the TCP endpoints concurrently.
+            // a saturated or shut down pool rejects the send, which the broadcasting thread then does itself.
+            ThreadFactory tf = new GMSThreadFactory("GMS-VirtualMcastSender-Group-" + groupName + "-thread");
+            ThreadPoolExecutor virtualMulticastPool = new ThreadPoolExecutor(
+                    10, 10, 60 * 1000, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(1024), tf, new ThreadPoolExecutor.AbortPolicy());
+            virtualMulticastPool.allowCoreThreadTimeOut(true);
+            multicastSenderThreadPool = virtualMulticastPool;
+            vms = new VirtualMulticastSender(this, virtualPeerIdList, multicastSenderThreadPool, sendWriteTimeoutMillis);
             multicastSender = vms;
         } else {
 //            if( GrizzlyUtil.isSupportNIOMulticast() ) {
@@ -43,12 +43,16 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.glassfish.grizzly.CompletionHandler;
 import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.EmptyCompletionHandler;
 import org.glassfish.grizzly.WriteResult;
 import org.glassfish.grizzly.impl.FutureImpl;
 import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
@@ -62,52 +66,135 @@ import com.sun.enterprise.mgmt.transport.grizzly.GrizzlyNetworkManager;
 import com.sun.enterprise.mgmt.transport.grizzly.GrizzlyPeerID;
 
 /**
+ * TCP message sender.
+ *
+ * By default every send polls a connection from the {@link ConnectionCache}, writes the message and
+ * waits for the write to complete before the connection is returned to the cache.
+ *
+ * If <code>asyncWrite</code> is enabled, messages are pipelined instead: each destination gets an
+ * outbound queue that borrows one connection from the cache, writes are queued on that connection
+ * without waiting and the connection goes back to the cache once no write is in flight. At most
+ * <code>maxPendingWrites</code> writes may be in flight per destination; after that senders block
+ * for up to the write timeout. A failed write closes the connection and the message is resent
+ * using the synchronous retry logic. If that fails too, the destination is marked as failed and
+ * the following sends to it are synchronous, so that the caller sees their result, until one of
+ * them succeeds.
+ *
  * @author Bongjae Chang
  */
 public class GrizzlyTCPMessageSender extends AbstractMessageSender {
 
     private final static Logger LOG = GrizzlyNetworkManager.getLogger();
+    private final static int MAX_RESEND_ATTEMPTS = 4;
     private final TCPNIOTransport tcpNioTransport;
 
     private final ConnectionCache connectionCache;
     private final long writeTimeoutMillis;
 
+    private final boolean asyncWrite;
+    private final int maxPendingWrites;
+    private final ConcurrentHashMap<SocketAddress, OutboundQueue> outboundQueues =
+            new ConcurrentHashMap<SocketAddress, OutboundQueue>();
+
     public GrizzlyTCPMessageSender(final TCPNIOTransport tcpNioTransport,
             final ConnectionCache connectionCache,
             final PeerID<GrizzlyPeerID> localPeerID,
             final long writeTimeoutMillis) {
+        this(tcpNioTransport, connectionCache, localPeerID, writeTimeoutMillis, false, 0);
+    }
+
+    public GrizzlyTCPMessageSender(final TCPNIOTransport tcpNioTransport,
+            final ConnectionCache connectionCache,
+            final PeerID<GrizzlyPeerID> localPeerID,
+            final long writeTimeoutMillis,
+            final boolean asyncWrite,
+            final int maxPendingWrites) {
         this.tcpNioTransport = tcpNioTransport;
         this.localPeerID = localPeerID;
         this.connectionCache = connectionCache;
         this.writeTimeoutMillis = writeTimeoutMillis;
+        this.asyncWrite = asyncWrite;
+        this.maxPendingWrites = maxPendingWrites > 0 ? maxPendingWrites : 1024;
     }
 
     @Override
     protected boolean doSend(final PeerID<?> peerID, final Message message)
             throws IOException {
 
+        SocketAddress remoteSocketAddress = getRemoteAddress(peerID);
+        if (asyncWrite) {
+            final OutboundQueue queue = getOutboundQueue(remoteSocketAddress);
+            if (queue.getFailure() == null) {
+                queue.write(message, peerID);
+                return true;
+            }
+
+            // an earlier asynchronous write to this peer failed, so the caller gets the result of this one
+            final boolean sent = send(null, remoteSocketAddress, message, peerID, 1);
+            if (sent) {
+                queue.clearFailure();
+            }
+            return sent;
+        }
+
+        return send(null, remoteSocketAddress, message, peerID, 1);
+    }
+
+    /**
+     * @return the failure of the last asynchronous write to the peer, if the peer is marked as failed
+     */
+    Throwable getAsyncWriteFailure(final PeerID<?> peerID) throws IOException {
+        final OutboundQueue queue = outboundQueues.get(getRemoteAddress(peerID));
+        return queue != null ? queue.getFailure() : null;
+    }
+
+    @Override
+    public void stop() throws IOException {
+        super.stop();
+        for (SocketAddress address : outboundQueues.keySet()) {
+            final OutboundQueue queue = outboundQueues.remove(address);
+            if (queue != null) {
+                queue.close();
+            }
+        }
+    }
+
+    private SocketAddress getRemoteAddress(final PeerID<?> peerID) throws IOException {
         if (peerID == null) {
             throw new IOException("peer ID can not be null");
         }
         Serializable uniqueID = peerID.getUniqueID();
-        SocketAddress remoteSocketAddress;
         if (uniqueID instanceof GrizzlyPeerID) {
             GrizzlyPeerID grizzlyPeerID = (GrizzlyPeerID) uniqueID;
-            remoteSocketAddress = new InetSocketAddress(grizzlyPeerID.getHost(),
+            return new InetSocketAddress(grizzlyPeerID.getHost(),
                     grizzlyPeerID.getTcpPort());
         } else {
             throw new IOException("peer ID must be GrizzlyPeerID type");
         }
-
-        return send(null, remoteSocketAddress, message, peerID);
     }
 
+    private OutboundQueue getOutboundQueue(final SocketAddress remoteAddress) throws IOException {
+        if (tcpNioTransport == null) {
+            throw new IOException("grizzly controller must be initialized");
+        }
+
+        OutboundQueue queue = outboundQueues.get(remoteAddress);
+        if (queue == null) {
+            final OutboundQueue newQueue = new OutboundQueue(remoteAddress);
+            queue = outboundQueues.putIfAbsent(remoteAddress, newQueue);
+            if (queue == null) {
+                queue = newQueue;
+            }
+        }
+
+        return queue;
+    }
 
     private boolean send(final SocketAddress localAddress,
             final SocketAddress remoteAddress,
-            final Message message, final PeerID<?> target) throws IOException {
+            final Message message, final PeerID<?> target,
+            final int firstAttemptNo) throws IOException {
 
-        final int MAX_RESEND_ATTEMPTS = 4;
         if (tcpNioTransport == null) {
             throw new IOException("grizzly controller must be initialized");
         }
@@ -118,7 +205,7 @@ public class GrizzlyTCPMessageSender extends AbstractMessageSender {
             throw new IOException("message can not be null");
         }
 
-        int attemptNo = 1;
+        int attemptNo = firstAttemptNo;
         do {
             final Connection<SocketAddress> connection;
 
@@ -172,4 +259,155 @@ public class GrizzlyTCPMessageSender extends AbstractMessageSender {
 
         return false;
     }
+
+    /**
+     * Pipelines writes to a single destination on one connection borrowed from the cache.
+     */
+    private final class OutboundQueue {
+        private final SocketAddress remoteAddress;
+        private final Semaphore pendingWrites;
+        private Connection<SocketAddress> connection;
+        // writes on any connection of this queue that did not complete yet. Guarded by this
+        private int inFlight;
+        private volatile Throwable failure;
+
+        OutboundQueue(final SocketAddress remoteAddress) {
+            this.remoteAddress = remoteAddress;
+            this.pendingWrites = new Semaphore(maxPendingWrites);
+        }
+
+        Throwable getFailure() {
+            return failure;
+        }
+
+        void clearFailure() {
+            failure = null;
+        }
+
+        void write(final Message message, final PeerID<?> target) throws IOException {
+            try {
+                if (!pendingWrites.tryAcquire(writeTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("too many pending writes (" + maxPendingWrites + ") to " + target);
+                }
+            } catch (InterruptedException ie) {
+                throw new IOException("interrupted while waiting to write to " + target, ie);
+            }
+
+            final Connection<SocketAddress> conn;
+            try {
+                conn = acquireConnection(target);
+            } catch (IOException ioe) {
+                pendingWrites.release();
+                throw ioe;
+            }
+
+            final CompletionHandler<WriteResult<Message, SocketAddress>> completionHandler =
+                    new EmptyCompletionHandler<WriteResult<Message, SocketAddress>>() {
+                @Override
+                public void completed(final WriteResult<Message, SocketAddress> writeResult) {
+                    pendingWrites.release();
+                    writeCompleted();
+                }
+
+                @Override
+                public void failed(final Throwable t) {
+                    pendingWrites.release();
+                    writeFailed(conn);
+                    if (t instanceof MessageIOException) {
+                        markFailed(target, t);
+                        return;
+                    }
+                    if (LOG.isLoggable(Level.INFO)) {
+                        LOG.log(Level.INFO, "exception writing message to connection. Retrying with another connection #1", t);
+                    }
+                    resend(message, target);
+                }
+            };
+            try {
+                conn.write(remoteAddress, message, completionHandler);
+            } catch (RuntimeException e) {
+                completionHandler.failed(e);
+            }
+        }
+
+        private void resend(final Message message, final PeerID<?> target) {
+            // completion handlers may run on a selector thread, so the blocking retry is done on a worker thread
+            final Runnable retry = new Runnable() {
+                public void run() {
+                    try {
+                        if (!send(null, remoteAddress, message, target, 2)) {
+                            markFailed(target, new IOException("failed to send message to " + target
+                                    + " after " + MAX_RESEND_ATTEMPTS + " attempts"));
+                        }
+                    } catch (Throwable t) {
+                        markFailed(target, t);
+                    }
+                }
+            };
+            final Executor executor = tcpNioTransport.getWorkerThreadPool();
+            if (executor != null) {
+                try {
+                    executor.execute(retry);
+                    return;
+                } catch (Exception e) {
+                    LOG.log(Level.FINE, "unable to schedule resend, resending in the current thread", e);
+                }
+            }
+            retry.run();
+        }
+
+        private void markFailed(final PeerID<?> target, final Throwable t) {
+            failure = t;
+            LOG.log(Level.WARNING, "asynchronous write to " + target + " failed. Messages to it are sent"
+                    + " synchronously until one of them succeeds", t);
+        }
+
+        private synchronized Connection<SocketAddress> acquireConnection(final PeerID<?> target) throws IOException {
+            if (connection == null || !connection.isOpen()) {
+                try {
+                    connection = connectionCache.poll(null, remoteAddress);
+                } catch (Throwable t) {
+                    throw new IOException("failed to connect to " + target, t);
+                }
+                if (connection == null) {
+                    throw new IOException("failed to get a connection from connectionCache for " + target);
+                }
+            }
+            inFlight++;
+            return connection;
+        }
+
+        private synchronized void writeCompleted() {
+            inFlight--;
+            releaseIfIdle();
+        }
+
+        private synchronized void writeFailed(final Connection<SocketAddress> conn) {
+            inFlight--;
+            if (connection == conn) {
+                connection = null;
+            }
+            conn.close();
+            releaseIfIdle();
+        }
+
+        /**
+         * Gives the connection back to the cache once no write is in flight, the next write polls it again.
+         */
+        private void releaseIfIdle() {
+            if (inFlight == 0 && connection != null) {
+                if (connection.isOpen()) {
+                    connectionCache.offer(connection);
+                }
+                connection = null;
+            }
+        }
+
+        synchronized void close() {
+            if (connection != null) {
+                connection.close();
+                connection = null;
+            }
+        }
+    }
 }
@@ -43,6 +43,7 @@ import com.sun.enterprise.mgmt.transport.Message;
 import com.sun.enterprise.mgmt.transport.MessageImpl;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.glassfish.grizzly.Buffer;
 import org.glassfish.grizzly.Connection;
@@ -51,6 +52,7 @@ import org.glassfish.grizzly.attributes.Attribute;
 import org.glassfish.grizzly.filterchain.BaseFilter;
 import org.glassfish.grizzly.filterchain.FilterChainContext;
 import org.glassfish.grizzly.filterchain.NextAction;
+import org.glassfish.grizzly.memory.CompositeBuffer;
 import org.glassfish.grizzly.memory.MemoryManager;
 import org.glassfish.grizzly.utils.NullaryFunction;
 
@@ -71,12 +73,20 @@ import org.glassfish.grizzly.utils.NullaryFunction;
  * MessageHeader  {@link Message#parseHeader(com.sun.enterprise.mgmt.transport.Buffer, int)}
  * MessageBody    {@link Message#parseMessage(com.sun.enterprise.mgmt.transport.Buffer, int, int)}
  *
+ * A message which is longer than {@link MessageImpl#getMaxMessageLength()} is split into
+ * {@link Message#TYPE_FRAGMENT_MESSAGE} frames that each fit within the max message length.
+ * See {@link FragmentReassembler} for the fragment frame format.
+ *
  * @author Bongjae Chang
  * @author Joe Fialli
  * @author Alexey Stashok
  */
 public class MessageFilter extends BaseFilter {
 
+    private static final int MAX_FRAGMENT_PAYLOAD_LENGTH = 64 * 1024;
+
+    private static final AtomicLong fragmentedMessageId = new AtomicLong();
+
     private final Attribute<MessageParsingState> preparsedMessageAttr =
             Grizzly.DEFAULT_ATTRIBUTE_BUILDER.createAttribute(
             MessageFilter.class + ".preparsedMessageAttr",
@@ -91,68 +101,87 @@ public class MessageFilter extends BaseFilter {
     @Override
     public NextAction handleRead(final FilterChainContext ctx) throws IOException {
         final Connection<?> connection = ctx.getConnection();
-        final Buffer buffer = ctx.getMessage();
+        Buffer buffer = ctx.getMessage();
 
         final MessageParsingState parsingState =
                 preparsedMessageAttr.get(connection);
 
-        if (!parsingState.isHeaderParsed) {
-            // Header was not parsed yet
-            if (buffer.remaining() < MessageImpl.HEADER_LENGTH) {
-                // not enough data to parse the header
-                return ctx.getStopAction(buffer);
-            }
-
-
-            final MessageImpl message = new MessageImpl();
-
-            final GMSBufferWrapper gmsBuffer =
-                    parsingState.gmsBufferWrapper.wrap(buffer);
+        while (true) {
+            if (!parsingState.isHeaderParsed) {
+                // Header was not parsed yet
+                if (buffer.remaining() < MessageImpl.HEADER_LENGTH) {
+                    // not enough data to parse the header
+                    return ctx.getStopAction(buffer);
+                }
 
-            final int messageLength =
-                    message.parseHeader(gmsBuffer, gmsBuffer.position());
 
-            gmsBuffer.recycle();
+                final MessageImpl message = new MessageImpl();
 
-            if (messageLength + MessageImpl.HEADER_LENGTH > MessageImpl.getMaxMessageLength()) {
-                throw new IllegalStateException("too large message."
-                        + " request-size=" + (messageLength + MessageImpl.HEADER_LENGTH)
-                        + " max-size=" + MessageImpl.getMaxMessageLength());
-            }
+                final GMSBufferWrapper gmsBuffer =
+                        parsingState.gmsBufferWrapper.wrap(buffer);
 
-            parsingState.isHeaderParsed = true;
-            parsingState.message = message;
-            parsingState.messageLength = messageLength;
-        }
+                final int messageLength =
+                        message.parseHeader(gmsBuffer, gmsBuffer.position());
 
-        final int totalMsgLength = MessageImpl.HEADER_LENGTH +
-                parsingState.messageLength;
+                gmsBuffer.recycle();
 
-        if (buffer.remaining() <  totalMsgLength) {
-            // We don't have entire message
-            return ctx.getStopAction(buffer);
-        }
+                if (messageLength + MessageImpl.HEADER_LENGTH > MessageImpl.getMaxMessageLength()) {
+                    throw new IllegalStateException("too large message."
+                            + " request-size=" + (messageLength + MessageImpl.HEADER_LENGTH)
+                            + " max-size=" + MessageImpl.getMaxMessageLength());
+                }
 
-        final int pos = buffer.position();
+                parsingState.isHeaderParsed = true;
+                parsingState.message = message;
+                parsingState.messageLength = messageLength;
+            }
 
-        final GMSBufferWrapper gmsBuffer =
-                parsingState.gmsBufferWrapper.wrap(buffer);
+            final int totalMsgLength = MessageImpl.HEADER_LENGTH +
+                    parsingState.messageLength;
 
-        parsingState.message.parseMessage(gmsBuffer,
-                pos + MessageImpl.HEADER_LENGTH,
-                parsingState.messageLength);
+            if (buffer.remaining() <  totalMsgLength) {
+                // We don't have entire message
+                return ctx.getStopAction(buffer);
+            }
 
-        ctx.setMessage(parsingState.message);
+            final int pos = buffer.position();
+
+            final MessageImpl message;
+            if (parsingState.message.getType() == Message.TYPE_FRAGMENT_MESSAGE) {
+                @SuppressWarnings("unchecked")
+                final MemoryManager<Buffer> mm = connection.getTransport().getMemoryManager();
+                message = parsingState.fragmentReassembler.add(buffer,
+                        pos + MessageImpl.HEADER_LENGTH,
+                        parsingState.messageLength, mm);
+            } else {
+                final GMSBufferWrapper gmsBuffer =
+                        parsingState.gmsBufferWrapper.wrap(buffer);
+
+                parsingState.message.parseMessage(gmsBuffer,
+                        pos + MessageImpl.HEADER_LENGTH,
+                        parsingState.messageLength);
+
+                gmsBuffer.recycle();
+                message = parsingState.message;
+            }
 
-        gmsBuffer.recycle();
+            // Go to the next message
+            final Buffer remainder =
+                    buffer.split(pos + totalMsgLength);
 
-        // Go to the next message
-        final Buffer remainder =
-                buffer.split(pos + totalMsgLength);
+            parsingState.reset();
 
-        parsingState.reset();
+            if (message != null) {
+                ctx.setMessage(message);
+                return ctx.getInvokeAction(remainder.hasRemaining() ? remainder : null);
+            }
 
-        return ctx.getInvokeAction(remainder.hasRemaining() ? remainder : null);
+            // only a part of a fragmented message was received
+            if (!remainder.hasRemaining()) {
+                return ctx.getStopAction();
+            }
+            buffer = remainder;
+        }
     }
 
     @Override
@@ -166,16 +195,59 @@ public class MessageFilter extends BaseFilter {
                 message.getPlainBuffer(
                 Grizzly2ExpandableBufferWriter.createFactory(mm));
 
-        ctx.setMessage(buffer.underlying());
+        final Buffer plainBuffer = (Buffer) buffer.underlying();
+        if (plainBuffer.remaining() > MessageImpl.getMaxMessageLength()) {
+            ctx.setMessage(fragment(plainBuffer, mm));
+        } else {
+            ctx.setMessage(plainBuffer);
+        }
 
         return ctx.getInvokeAction();
     }
 
+    /**
+     * Splits a serialized message into fragment frames which fit within the max message length.
+     * The frames share the message's buffer, the payload is not copied.
+     */
+    private static Buffer fragment(final Buffer plainBuffer, final MemoryManager<Buffer> mm) {
+        final int fragmentPayloadLength = Math.min(MAX_FRAGMENT_PAYLOAD_LENGTH,
+                MessageImpl.getMaxMessageLength() - MessageImpl.HEADER_LENGTH - FragmentReassembler.FRAGMENT_HEADER_LENGTH);
+        if (fragmentPayloadLength <= 0) {
+            throw new IllegalStateException("max message length " + MessageImpl.getMaxMessageLength() +
+                    " is too small to fragment messages");
+        }
+        final int start = plainBuffer.position();
+        final int messageLength = plainBuffer.remaining();
+        final int fragmentCount = (messageLength + fragmentPayloadLength - 1) / fragmentPayloadLength;
+        final long messageId = fragmentedMessageId.incrementAndGet();
+
+        final GMSBufferWrapper gmsBuffer = new GMSBufferWrapper();
+        final CompositeBuffer frames = CompositeBuffer.newBuffer(mm);
+        for (int i = 0; i < fragmentCount; i++) {
+            final int payloadStart = start + i * fragmentPayloadLength;
+            final int payloadLength = Math.min(fragmentPayloadLength, messageLength - i * fragmentPayloadLength);
+
+            final Buffer header = mm.allocate(MessageImpl.HEADER_LENGTH + FragmentReassembler.FRAGMENT_HEADER_LENGTH);
+            MessageImpl.writeHeader(gmsBuffer.wrap(header), Message.TYPE_FRAGMENT_MESSAGE,
+                    FragmentReassembler.FRAGMENT_HEADER_LENGTH + payloadLength);
+            header.putLong(messageId);
+            header.putInt(i);
+            header.putInt(fragmentCount);
+            header.flip();
+
+            frames.append(header);
+            frames.append(plainBuffer.slice(payloadStart, payloadStart + payloadLength));
+        }
+        gmsBuffer.recycle();
+        return frames;
+    }
+
     static final class MessageParsingState {
         final GMSBufferWrapper gmsBufferWrapper = new GMSBufferWrapper();
         boolean isHeaderParsed;
         int messageLength;
         MessageImpl message;
+        final FragmentReassembler fragmentReassembler = new FragmentReassembler();
 
         void reset() {
             isHeaderParsed = false;
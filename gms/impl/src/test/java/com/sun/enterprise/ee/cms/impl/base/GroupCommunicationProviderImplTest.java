@@ -0,0 +1,185 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.enterprise.ee.cms.impl.base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.sun.enterprise.mgmt.transport.MessageIOException;
+
+/**
+ * Tests the concurrent point-to-point sends of a synchronous group broadcast
+ */
+public class GroupCommunicationProviderImplTest extends TestCase {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private ThreadPoolExecutor pool;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // configured like the provider's own pool, only smaller
+        pool = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(1),
+                new GMSThreadFactory("GMS-MsgSendPool-Test-thread"), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.shutdownNow();
+        super.tearDown();
+    }
+
+    public void testSendsToAllMembersConcurrently() throws Exception {
+        // each send waits until all three sends run at the same time
+        final CyclicBarrier allSending = new CyclicBarrier(3);
+        final AtomicInteger sent = new AtomicInteger();
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int i = 0; i < 3; i++) {
+            tasks.add(new Callable<Object>() {
+                public Object call() throws Exception {
+                    allSending.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                    sent.incrementAndGet();
+                    return null;
+                }
+            });
+        }
+
+        assertNull(GroupCommunicationProviderImpl.sendConcurrently(pool, tasks, TIMEOUT_MILLIS));
+        assertEquals(3, sent.get());
+    }
+
+    public void testSaturatedPoolSendsInCallingThread() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Runnable blocked = new Runnable() {
+            public void run() {
+                try {
+                    release.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        // both threads and the queue are busy
+        pool.execute(blocked);
+        pool.execute(blocked);
+        pool.execute(blocked);
+        try {
+            final SendingThreadRecorder tasks = new SendingThreadRecorder(3);
+            final long start = System.currentTimeMillis();
+            assertNull(GroupCommunicationProviderImpl.sendConcurrently(pool, tasks.tasks, TIMEOUT_MILLIS));
+            assertTrue(System.currentTimeMillis() - start < TIMEOUT_MILLIS);
+            assertEquals(3, tasks.inCallingThread.get());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    public void testSendAfterLeave() throws Exception {
+        // leave() shuts the pool down
+        pool.shutdown();
+        final SendingThreadRecorder tasks = new SendingThreadRecorder(3);
+        final long start = System.currentTimeMillis();
+        assertNull(GroupCommunicationProviderImpl.sendConcurrently(pool, tasks.tasks, TIMEOUT_MILLIS));
+        assertTrue(System.currentTimeMillis() - start < TIMEOUT_MILLIS);
+        assertEquals(3, tasks.inCallingThread.get());
+    }
+
+    public void testStalledSendIsNotAwaitedForever() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        tasks.add(new Callable<Object>() {
+            public Object call() throws Exception {
+                release.await();
+                return null;
+            }
+        });
+        tasks.add(new SendingThreadRecorder(1).tasks.get(0));
+        try {
+            final long start = System.currentTimeMillis();
+            assertNull(GroupCommunicationProviderImpl.sendConcurrently(pool, tasks, 200));
+            final long duration = System.currentTimeMillis() - start;
+            assertTrue("waited " + duration + " ms", duration >= 200 && duration < TIMEOUT_MILLIS);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    public void testMessageTooBigIsReported() throws Exception {
+        final MessageIOException tooBig = new MessageIOException("too big");
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int i = 0; i < 3; i++) {
+            tasks.add(new Callable<Object>() {
+                public Object call() throws Exception {
+                    throw tooBig;
+                }
+            });
+        }
+        assertSame(tooBig, GroupCommunicationProviderImpl.sendConcurrently(pool, tasks, TIMEOUT_MILLIS));
+    }
+
+    private static class SendingThreadRecorder {
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        final AtomicInteger inCallingThread = new AtomicInteger();
+
+        SendingThreadRecorder(final int count) {
+            final Thread caller = Thread.currentThread();
+            for (int i = 0; i < count; i++) {
+                tasks.add(new Callable<Object>() {
+                    public Object call() {
+                        if (Thread.currentThread() == caller) {
+                            inCallingThread.incrementAndGet();
+                        }
+                        return null;
+                    }
+                });
+            }
+        }
+    }
+}
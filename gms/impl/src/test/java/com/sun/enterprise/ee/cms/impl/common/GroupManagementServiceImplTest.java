@@ -41,7 +41,10 @@
 
 package com.sun.enterprise.ee.cms.impl.common;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -57,6 +60,7 @@ import com.sun.enterprise.ee.cms.core.GMSFactory;
 import com.sun.enterprise.ee.cms.core.GroupManagementService;
 import com.sun.enterprise.ee.cms.core.JoinedAndReadyNotificationSignal;
 import com.sun.enterprise.ee.cms.core.MemberNotInViewException;
+import com.sun.enterprise.ee.cms.core.MessageSignal;
 import com.sun.enterprise.ee.cms.core.PlannedShutdownSignal;
 import com.sun.enterprise.ee.cms.core.ServiceProviderConfigurationKeys;
 import com.sun.enterprise.ee.cms.core.Signal;
@@ -88,7 +92,10 @@ public class GroupManagementServiceImplTest extends TestCase {
     }
 
     public void mySetUp() throws GMSException {
-        Properties props = new Properties();
+        mySetUp(new Properties());
+    }
+
+    public void mySetUp(Properties props) throws GMSException {
         // do not wait default of 5 seconds to make yourself the master.
         props.put(ServiceProviderConfigurationKeys.DISCOVERY_TIMEOUT.toString(), 5L);
         props.put(ServiceProviderConfigurationKeys.MONITORING.toString(), 2L); // in seconds
@@ -188,8 +195,18 @@ public class GroupManagementServiceImplTest extends TestCase {
         assertTrue(monitor.getGMSMessageMonitorStats("NotRegistered2testTargetComponent").getNumMsgsNoListener() == 10);
         monitor.report();
 
+        System.out.println("Test sending a message that is sent as fragments");
+        byte[] fragmentedPayload = new byte[MessageImpl.getMaxMessageLength()];
+        Arrays.fill(fragmentedPayload, (byte)'f');
+        try {
+            gms.getGroupHandle().sendMessage(instanceName, "testTargetComponent", fragmentedPayload);
+        } catch (Throwable t) {
+            log.log(Level.WARNING, "unexpected exception sending a message longer than max message length", t);
+            assertTrue("Failed. Message longer than max message length should be sent as fragments", false);
+        }
+
         System.out.println("Test sending too big of a message");
-        byte[] tooBigPayload = new byte[MessageImpl.getMaxMessageLength()];
+        byte[] tooBigPayload = new byte[MessageImpl.getMaxFragmentedMessageLength()];
         byte filler = 'e';
         Arrays.fill(tooBigPayload, filler);
         try {
@@ -212,6 +229,41 @@ public class GroupManagementServiceImplTest extends TestCase {
         log.setLevel(Level.INFO);
     }
 
+    public void testGMSMessageSendOnDispatchLanes() throws GMSException {
+        Properties props = new Properties();
+        props.put(ServiceProviderConfigurationKeys.INCOMING_MESSAGE_DISPATCH_LANES.toString(), "4");
+        mySetUp(props);
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        gms.addActionFactory(new MessageActionFactoryImpl(new CallBack() {
+            public void processNotification(Signal sig) {
+                received.add(new String(((MessageSignal)sig).getMessage()));
+            }
+        }), "testOrderedTargetComponent");
+        gms.join();
+        try {
+            Thread.sleep(3000);
+        } catch(InterruptedException ie) {}
+
+        final int NUM_MSGS = 100;
+        for (int i = 0; i < NUM_MSGS; i++) {
+            gms.getGroupHandle().sendMessage(instanceName, "testOrderedTargetComponent", String.valueOf(i).getBytes());
+            gms.getGroupHandle().sendMessage(instanceName, "testTargetComponent", "hello".getBytes());
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while ((received.size() < NUM_MSGS || numMsgReceived.get() < NUM_MSGS) && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(100);
+            } catch(InterruptedException ie) {}
+        }
+        assertEquals(NUM_MSGS, numMsgReceived.get());
+        assertEquals(NUM_MSGS, received.size());
+        for (int i = 0; i < NUM_MSGS; i++) {
+            assertEquals("messages from one sender to one target component must be delivered in order",
+                    String.valueOf(i), received.get(i));
+        }
+        gms.shutdown(GMSConstants.shutdownType.INSTANCE_SHUTDOWN);
+    }
+
     public void testMultipleJoinsLeaves() throws GMSException {
         MemberStates memberState;
 
@@ -40,6 +40,7 @@
 
 package com.sun.enterprise.mgmt.transport.grizzly.grizzly2;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -73,6 +74,7 @@ import com.sun.enterprise.mgmt.transport.MessageImpl;
 public class GrizzlyParserTest extends TestCase {
     public static final String NUMBER_ELEMENT_KEY = "Number";
     public static final String RESULT_ELEMENT = "RESULT";
+    public static final String PAYLOAD_ELEMENT = "PAYLOAD";
 
     public static final int PORT = 8998;
 
@@ -115,12 +117,35 @@ public class GrizzlyParserTest extends TestCase {
         }
     }
 
+    public void testFragmentedMessages() throws Exception {
+        // bigger than the max message length, the message is sent as fragments
+        final int payloadLength = MessageImpl.getMaxMessageLength() * 3 + 17;
+        for (int i = 0; i < 3; i++) {
+            final Message request = createMessage(i + 1, 1);
+            final byte[] payload = new byte[payloadLength];
+            for (int j = 0; j < payload.length; j++) {
+                payload[j] = (byte) (j * 31 + i);
+            }
+            request.addMessageElement(PAYLOAD_ELEMENT, payload);
+            final Message response = sendRequest(request, 64 * 1024);
+
+            final String result = (String) response.getMessageElement(RESULT_ELEMENT);
+            assertNotNull(result);
+            assertEquals("OK", result);
+            assertEquals(Integer.valueOf(Arrays.hashCode(payload)), response.getMessageElement(PAYLOAD_ELEMENT));
+        }
+    }
+
     public Message sendRequest(final Message request) throws Exception {
+        return sendRequest(request, 1);
+    }
+
+    public Message sendRequest(final Message request, final int chunkSize) throws Exception {
         final FutureImpl<Message> future = SafeFutureImpl.<Message>create();
 
         final FilterChain clientFilterChain = FilterChainBuilder.stateless()
                 .add(new TransportFilter())
-                .add(new ChunkingFilter(1))
+                .add(new ChunkingFilter(chunkSize))
                 .add(new MessageFilter())
                 .add(new ClientResultFilter(future))
                 .build();
@@ -196,6 +221,10 @@ public class GrizzlyParserTest extends TestCase {
 
             final Message outputMessage = new MessageImpl(100);
             outputMessage.addMessageElement(RESULT_ELEMENT, message != null ? "OK" : "FAILED");
+            if (message != null && message.getMessageElement(PAYLOAD_ELEMENT) != null) {
+                outputMessage.addMessageElement(PAYLOAD_ELEMENT,
+                        Arrays.hashCode((byte[]) message.getMessageElement(PAYLOAD_ELEMENT)));
+            }
 
             ctx.write(outputMessage);
 
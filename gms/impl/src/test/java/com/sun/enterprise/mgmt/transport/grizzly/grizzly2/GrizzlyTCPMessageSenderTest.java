@@ -0,0 +1,203 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2010 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.enterprise.mgmt.transport.grizzly.grizzly2;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.glassfish.grizzly.filterchain.BaseFilter;
+import org.glassfish.grizzly.filterchain.FilterChainBuilder;
+import org.glassfish.grizzly.filterchain.FilterChainContext;
+import org.glassfish.grizzly.filterchain.NextAction;
+import org.glassfish.grizzly.filterchain.TransportFilter;
+import org.glassfish.grizzly.nio.transport.TCPNIOConnectorHandler;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransportBuilder;
+
+import com.sun.enterprise.ee.cms.impl.base.PeerID;
+import com.sun.enterprise.mgmt.transport.Message;
+import com.sun.enterprise.mgmt.transport.MessageIOException;
+import com.sun.enterprise.mgmt.transport.MessageImpl;
+import com.sun.enterprise.mgmt.transport.grizzly.GrizzlyPeerID;
+
+/**
+ * Tests the asynchronous mode of GrizzlyTCPMessageSender
+ */
+public class GrizzlyTCPMessageSenderTest extends TestCase {
+    public static final int PORT = 8997;
+
+    private static final long WAIT_MILLIS = 10000;
+
+    private TCPNIOTransport serverTransport;
+    private TCPNIOTransport clientTransport;
+    private ConnectionCache connectionCache;
+    private CountingFilter countingFilter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        countingFilter = new CountingFilter();
+        serverTransport = TCPNIOTransportBuilder.newInstance().build();
+        serverTransport.setProcessor(FilterChainBuilder.stateless()
+                .add(new TransportFilter())
+                .add(new MessageFilter())
+                .add(countingFilter)
+                .build());
+        serverTransport.bind(PORT);
+        serverTransport.start();
+
+        clientTransport = TCPNIOTransportBuilder.newInstance().build();
+        clientTransport.start();
+        final TCPNIOConnectorHandler connectorHandler = TCPNIOConnectorHandler.builder(clientTransport)
+                .processor(FilterChainBuilder.stateless()
+                        .add(new TransportFilter())
+                        .add(new MessageFilter())
+                        .build())
+                .build();
+        connectionCache = new ConnectionCache(connectorHandler, 1024, 10, 10);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        connectionCache.close();
+        clientTransport.shutdownNow();
+        serverTransport.shutdownNow();
+
+        super.tearDown();
+    }
+
+    public void testAsyncWritesGiveTheConnectionBack() throws Exception {
+        final GrizzlyTCPMessageSender sender = createSender(true);
+        final PeerID<GrizzlyPeerID> peerID = createPeerID(PORT);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(sender.send(peerID, createMessage(i)));
+        }
+        waitForReceived(20);
+
+        // the idle connection is back in the cache, so a synchronous sender doesn't open another one
+        Thread.sleep(200);
+        assertTrue(createSender(false).send(peerID, createMessage(20)));
+        waitForReceived(21);
+        assertEquals(1, countingFilter.accepted.get());
+        sender.stop();
+    }
+
+    public void testFailedAsyncWriteIsReported() throws Exception {
+        final GrizzlyTCPMessageSender sender = createSender(true);
+        final PeerID<GrizzlyPeerID> peerID = createPeerID(PORT);
+
+        final Message unserializable = createMessage(0);
+        unserializable.addMessageElement("unserializable", new Unserializable());
+        assertTrue(sender.send(peerID, unserializable));
+
+        final long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (sender.getAsyncWriteFailure(peerID) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(sender.getAsyncWriteFailure(peerID) instanceof MessageIOException);
+
+        // the next send to the failed peer is synchronous and clears the failure once it succeeds
+        assertTrue(sender.send(peerID, createMessage(1)));
+        assertNull(sender.getAsyncWriteFailure(peerID));
+        waitForReceived(1);
+        assertTrue(sender.send(peerID, createMessage(2)));
+        waitForReceived(2);
+        sender.stop();
+    }
+
+    public void testAsyncSendToUnreachablePeerFails() throws Exception {
+        final GrizzlyTCPMessageSender sender = createSender(true);
+        try {
+            sender.send(createPeerID(PORT + 1), createMessage(0));
+            fail("send to a port nobody listens on must fail");
+        } catch (IOException expected) {
+        }
+        sender.stop();
+    }
+
+    private GrizzlyTCPMessageSender createSender(final boolean asyncWrite) {
+        return new GrizzlyTCPMessageSender(clientTransport, connectionCache, null, WAIT_MILLIS, asyncWrite, 16);
+    }
+
+    private static PeerID<GrizzlyPeerID> createPeerID(final int port) {
+        return new PeerID<GrizzlyPeerID>(new GrizzlyPeerID("localhost", port, null, 0), "group", "instance" + port);
+    }
+
+    private static Message createMessage(final int num) {
+        final Message message = new MessageImpl(100);
+        message.addMessageElement("Number", num);
+        return message;
+    }
+
+    private void waitForReceived(final int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (countingFilter.received.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, countingFilter.received.get());
+    }
+
+    private static class Unserializable implements Serializable {
+        private final Object lock = new Object();
+    }
+
+    private static class CountingFilter extends BaseFilter {
+        private final AtomicInteger accepted = new AtomicInteger();
+        private final AtomicInteger received = new AtomicInteger();
+
+        @Override
+        public NextAction handleAccept(final FilterChainContext ctx) throws IOException {
+            accepted.incrementAndGet();
+            return ctx.getInvokeAction();
+        }
+
+        @Override
+        public NextAction handleRead(final FilterChainContext ctx) throws IOException {
+            received.incrementAndGet();
+            return ctx.getStopAction();
+        }
+    }
+}